@@ -0,0 +1,211 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server;
+
+import org.apache.ratis.RaftConfigKeys;
+import org.apache.ratis.client.RaftClient;
+import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.grpc.GrpcConfigKeys;
+import org.apache.ratis.netty.NettyConfigKeys;
+import org.apache.ratis.proto.RaftProtos.LogEntryProto;
+import org.apache.ratis.protocol.Message;
+import org.apache.ratis.protocol.RaftClientReply;
+import org.apache.ratis.protocol.RaftGroup;
+import org.apache.ratis.protocol.RaftGroupId;
+import org.apache.ratis.protocol.RaftPeer;
+import org.apache.ratis.protocol.RaftPeerId;
+import org.apache.ratis.rpc.SupportedRpcType;
+import org.apache.ratis.statemachine.TransactionContext;
+import org.apache.ratis.statemachine.impl.BaseStateMachine;
+import org.apache.ratis.thirdparty.com.google.protobuf.ByteString;
+import org.apache.ratis.util.FileUtils;
+import org.apache.ratis.util.NetUtils;
+import org.apache.ratis.util.Preconditions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An end-to-end benchmark of the write path.
+ * It starts a cluster in this process, where the servers communicate over the loopback interface,
+ * and sends write requests from each benchmark thread with its own client.
+ *
+ * Run it with a JSON result file, e.g.
+ *
+ *   java -jar ratis-benchmarks/target/ratis-benchmarks-*-jmh.jar RaftClusterBenchmark -rf json -rff result.json
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(8)
+public class RaftClusterBenchmark {
+  static final int ASYNC_BATCH_SIZE = 32;
+
+  /** A state machine accepting all the transactions. */
+  public static class BenchmarkStateMachine extends BaseStateMachine {
+    @Override
+    public CompletableFuture<Message> applyTransaction(TransactionContext trx) {
+      final LogEntryProto entry = trx.getLogEntry();
+      updateLastAppliedTermIndex(entry.getTerm(), entry.getIndex());
+      return CompletableFuture.completedFuture(Message.EMPTY);
+    }
+  }
+
+  @State(Scope.Benchmark)
+  public static class Cluster {
+    @Param({"GRPC", "NETTY"})
+    private String rpcType;
+
+    @Param({"1", "3"})
+    private int numServers;
+
+    @Param({"64", "4096"})
+    private int messageSize;
+
+    private RaftGroup group;
+    private final List<RaftServer> servers = new ArrayList<>();
+    private final List<File> dirs = new ArrayList<>();
+
+    private RaftProperties newProperties(RaftPeer peer) throws IOException {
+      final RaftProperties properties = new RaftProperties();
+      final SupportedRpcType type = SupportedRpcType.valueOfIgnoreCase(rpcType);
+      RaftConfigKeys.Rpc.setType(properties, type);
+      if (peer != null) {
+        final int port = NetUtils.createSocketAddr(peer.getAddress()).getPort();
+        if (type == SupportedRpcType.GRPC) {
+          GrpcConfigKeys.Server.setPort(properties, port);
+        } else {
+          NettyConfigKeys.Server.setPort(properties, port);
+        }
+        final File dir = Files.createTempDirectory(RaftClusterBenchmark.class.getSimpleName()).toFile();
+        dirs.add(dir);
+        RaftServerConfigKeys.setStorageDirs(properties, Collections.singletonList(dir));
+      }
+      return properties;
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+      final List<RaftPeer> peers = new ArrayList<>();
+      for(int i = 0; i < numServers; i++) {
+        peers.add(new RaftPeer(RaftPeerId.valueOf("s" + i), NetUtils.createLocalServerAddress()));
+      }
+      group = RaftGroup.valueOf(RaftGroupId.randomId(), peers);
+      for(RaftPeer peer : peers) {
+        final RaftServer server = RaftServer.newBuilder()
+            .setServerId(peer.getId())
+            .setGroup(group)
+            .setStateMachine(new BenchmarkStateMachine())
+            .setProperties(newProperties(peer))
+            .build();
+        server.start();
+        servers.add(server);
+      }
+
+      // the client retries until a leader is elected
+      try(RaftClient client = newClient()) {
+        Preconditions.assertTrue(client.send(Message.EMPTY).isSuccess());
+      }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+      for(RaftServer server : servers) {
+        server.close();
+      }
+      servers.clear();
+      for(File dir : dirs) {
+        FileUtils.deleteFully(dir);
+      }
+      dirs.clear();
+    }
+
+    RaftClient newClient() throws IOException {
+      return RaftClient.newBuilder()
+          .setRaftGroup(group)
+          .setProperties(newProperties(null))
+          .build();
+    }
+
+    Message newMessage() {
+      final byte[] data = new byte[messageSize];
+      ThreadLocalRandom.current().nextBytes(data);
+      return Message.valueOf(ByteString.copyFrom(data));
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class Client {
+    private RaftClient client;
+    private Message message;
+
+    @Setup(Level.Trial)
+    public void setup(Cluster cluster) throws IOException {
+      client = cluster.newClient();
+      message = cluster.newMessage();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+      client.close();
+    }
+  }
+
+  /** Send a request and wait for the reply. */
+  @Benchmark
+  public RaftClientReply send(Client c) throws IOException {
+    return c.client.send(c.message);
+  }
+
+  /** Send {@link #ASYNC_BATCH_SIZE} async requests and wait for all the replies. */
+  @Benchmark
+  public RaftClientReply sendAsyncBatch(Client c) {
+    final List<CompletableFuture<RaftClientReply>> futures = new ArrayList<>(ASYNC_BATCH_SIZE);
+    for(int i = 0; i < ASYNC_BATCH_SIZE; i++) {
+      futures.add(c.client.sendAsync(c.message));
+    }
+    RaftClientReply last = null;
+    for(CompletableFuture<RaftClientReply> f : futures) {
+      last = f.join();
+    }
+    return last;
+  }
+}
@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.impl;
+
+import org.apache.ratis.client.impl.ClientProtoUtils;
+import org.apache.ratis.proto.RaftProtos.AppendEntriesRequestProto;
+import org.apache.ratis.proto.RaftProtos.CommitInfoProto;
+import org.apache.ratis.proto.RaftProtos.LogEntryProto;
+import org.apache.ratis.proto.RaftProtos.RaftClientReplyProto;
+import org.apache.ratis.proto.RaftProtos.RaftClientRequestProto;
+import org.apache.ratis.proto.RaftProtos.StateMachineLogEntryProto;
+import org.apache.ratis.protocol.ClientId;
+import org.apache.ratis.protocol.Message;
+import org.apache.ratis.protocol.RaftClientReply;
+import org.apache.ratis.protocol.RaftClientRequest;
+import org.apache.ratis.protocol.RaftGroupId;
+import org.apache.ratis.protocol.RaftPeer;
+import org.apache.ratis.protocol.RaftPeerId;
+import org.apache.ratis.server.protocol.TermIndex;
+import org.apache.ratis.thirdparty.com.google.protobuf.ByteString;
+import org.apache.ratis.util.ProtoUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark the conversions in {@link ClientProtoUtils} and {@link ServerProtoUtils} on the write path:
+ * the client request and reply in both directions,
+ * the log entry built from a client request and the appendEntries request built from the log entries.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ProtoUtilsBenchmark {
+  static final int NUM_ENTRIES_PER_APPEND = 16;
+
+  @Param({"64", "4096"})
+  private int messageSize;
+
+  private final ClientId clientId = ClientId.randomId();
+  private final RaftPeerId leaderId = RaftPeerId.valueOf("s0");
+  private final RaftPeerId followerId = RaftPeerId.valueOf("s1");
+  private final RaftGroupId groupId = RaftGroupId.randomId();
+  private final List<CommitInfoProto> commitInfos = new ArrayList<>();
+
+  private RaftClientRequest request;
+  private RaftClientRequestProto requestProto;
+  private RaftClientReply reply;
+  private RaftClientReplyProto replyProto;
+  private final List<LogEntryProto> entries = new ArrayList<>();
+  private long callId;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    final byte[] data = new byte[messageSize];
+    ThreadLocalRandom.current().nextBytes(data);
+    final Message message = Message.valueOf(ByteString.copyFrom(data));
+
+    for(String id : new String[]{"s0", "s1", "s2"}) {
+      commitInfos.add(ProtoUtils.toCommitInfoProto(new RaftPeer(RaftPeerId.valueOf(id)), 100));
+    }
+    request = new RaftClientRequest(clientId, leaderId, groupId, 1, 1, message,
+        RaftClientRequest.writeRequestType());
+    requestProto = ClientProtoUtils.toRaftClientRequestProto(request);
+    reply = new RaftClientReply(clientId, leaderId, groupId, 1, true, message, null, 100, commitInfos);
+    replyProto = ClientProtoUtils.toRaftClientReplyProto(reply);
+
+    for(int i = 0; i < NUM_ENTRIES_PER_APPEND; i++) {
+      entries.add(newLogEntry(i));
+    }
+  }
+
+  private LogEntryProto newLogEntry(long index) {
+    final StateMachineLogEntryProto smLog = ServerProtoUtils.toStateMachineLogEntryProto(request, null, null);
+    return ServerProtoUtils.toLogEntryProto(smLog, 1, index);
+  }
+
+  @Benchmark
+  public RaftClientRequestProto clientRequestToProto() {
+    return ClientProtoUtils.toRaftClientRequestProto(request);
+  }
+
+  @Benchmark
+  public RaftClientRequest clientRequestFromProto() {
+    return ClientProtoUtils.toRaftClientRequest(requestProto);
+  }
+
+  @Benchmark
+  public RaftClientReplyProto clientReplyToProto() {
+    return ClientProtoUtils.toRaftClientReplyProto(reply);
+  }
+
+  @Benchmark
+  public RaftClientReply clientReplyFromProto() {
+    return ClientProtoUtils.toRaftClientReply(replyProto);
+  }
+
+  @Benchmark
+  public LogEntryProto logEntry() {
+    return newLogEntry(callId++);
+  }
+
+  @Benchmark
+  public AppendEntriesRequestProto appendEntriesRequest() {
+    return ServerProtoUtils.toAppendEntriesRequestProto(leaderId, followerId, groupId, 1, entries, 100, false,
+        TermIndex.newTermIndex(1, 0), commitInfos, callId++);
+  }
+}
@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.impl;
+
+import org.apache.ratis.protocol.ClientId;
+import org.apache.ratis.protocol.RaftClientReply;
+import org.apache.ratis.server.RaftServerConfigKeys;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Benchmark {@link RetryCache#queryCache(ClientId, long)}, which is called for each write request.
+ *
+ * A miss queries a new call id, as for a new request, and a hit queries a replied call id, as for a retry.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class RetryCacheBenchmark {
+  @Param({"1", "64"})
+  private int numClients;
+
+  private RetryCache cache;
+  private ClientId[] clientIds;
+  private final AtomicLong callIds = new AtomicLong();
+  private int numHits;
+
+  @Setup(Level.Iteration)
+  public void setup() {
+    cache = new RetryCache(RaftServerConfigKeys.RetryCache.CAPACITY_DEFAULT,
+        RaftServerConfigKeys.RetryCache.EXPIRY_TIME_DEFAULT);
+    clientIds = new ClientId[numClients];
+    for(int i = 0; i < clientIds.length; i++) {
+      clientIds[i] = ClientId.randomId();
+    }
+
+    // fill half of the cache with the replied entries
+    numHits = RaftServerConfigKeys.RetryCache.CAPACITY_DEFAULT / 2;
+    for(int callId = 0; callId < numHits; callId++) {
+      final ClientId clientId = getClientId(callId);
+      final RetryCache.CacheEntry entry = cache.queryCache(clientId, callId).getEntry();
+      entry.updateResult(new RaftClientReply(clientId, null, null, callId, true, null, null, 0,
+          Collections.emptyList()));
+    }
+    callIds.set(numHits);
+  }
+
+  @TearDown(Level.Iteration)
+  public void tearDown() {
+    cache.close();
+  }
+
+  private ClientId getClientId(long callId) {
+    return clientIds[(int) (callId % clientIds.length)];
+  }
+
+  @Benchmark
+  public RetryCache.CacheQueryResult miss() {
+    final long callId = callIds.getAndIncrement();
+    return cache.queryCache(getClientId(callId), callId);
+  }
+
+  @Benchmark
+  public RetryCache.CacheQueryResult hit() {
+    final long callId = ThreadLocalRandom.current().nextInt(numHits);
+    return cache.queryCache(getClientId(callId), callId);
+  }
+}
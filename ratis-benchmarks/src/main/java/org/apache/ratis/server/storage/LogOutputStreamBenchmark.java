@@ -0,0 +1,200 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.storage;
+
+import org.apache.ratis.proto.RaftProtos.LogEntryProto;
+import org.apache.ratis.proto.RaftProtos.StateMachineLogEntryProto;
+import org.apache.ratis.thirdparty.com.google.protobuf.ByteString;
+import org.apache.ratis.thirdparty.com.google.protobuf.CodedOutputStream;
+import org.apache.ratis.util.FileUtils;
+import org.apache.ratis.util.IOUtils;
+import org.apache.ratis.util.PureJavaCrc32C;
+import org.apache.ratis.util.SizeInBytes;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Checksum;
+
+/**
+ * Compare {@link LogOutputStream#write(LogEntryProto)},
+ * which encodes the entries directly into the write buffer,
+ * with the previous encoding path, which allocates a byte[] for each entry.
+ *
+ * The bytes/sec is reported by the "bytes" counter.
+ * Run it with the gc profiler in order to compare the allocation rate, e.g.
+ *
+ *   java -jar ratis-benchmarks/target/ratis-benchmarks-*-jmh.jar LogOutputStreamBenchmark -prof gc
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class LogOutputStreamBenchmark {
+  static final long SEGMENT_SIZE_MAX = SizeInBytes.valueOf("64MB").getSize();
+  static final int WRITE_BUFFER_SIZE = SizeInBytes.valueOf("64KB").getSizeInt();
+
+  /** The data size of an entry; the largest size does not fit in the write buffer. */
+  @Param({"64", "1024", "131072"})
+  private int dataSize;
+
+  private File file;
+  private LogEntryProto entry;
+  private int entrySize;
+  /** The number of bytes written to the current segment. */
+  private long segmentSize;
+
+  private LogOutputStream out;
+
+  private RandomAccessFile previousFile;
+  private BufferedWriteChannel previousOut;
+  private final Checksum previousChecksum = new PureJavaCrc32C();
+
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  @State(Scope.Thread)
+  public static class Bytes {
+    public long bytes;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      bytes = 0;
+    }
+  }
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    file = File.createTempFile(getClass().getSimpleName(), ".log");
+    final byte[] data = new byte[dataSize];
+    ThreadLocalRandom.current().nextBytes(data);
+    entry = LogEntryProto.newBuilder()
+        .setTerm(1)
+        .setIndex(1)
+        .setStateMachineLogEntry(StateMachineLogEntryProto.newBuilder().setLogData(ByteString.copyFrom(data)))
+        .build();
+    final int serialized = entry.getSerializedSize();
+    entrySize = CodedOutputStream.computeUInt32SizeNoTag(serialized) + serialized + 4;
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    close();
+    FileUtils.deleteFully(file);
+  }
+
+  @TearDown(Level.Iteration)
+  public void close() throws IOException {
+    segmentSize = 0;
+    if (out != null) {
+      out.close();
+      out = null;
+    }
+    if (previousOut != null) {
+      previousOut.close();
+      previousOut = null;
+      previousFile.close();
+      previousFile = null;
+    }
+  }
+
+  /**
+   * Roll the segment when it reaches the max size, as the log worker does.
+   * Both paths preallocate the entire segment when it is created.
+   */
+  private boolean shouldRoll() {
+    segmentSize += entrySize;
+    return segmentSize > SEGMENT_SIZE_MAX;
+  }
+
+  @Benchmark
+  public void writeDirect(Bytes bytes) throws IOException {
+    if (out == null || shouldRoll()) {
+      close();
+      // a new segment file is always created by the log worker
+      FileUtils.deleteFully(file);
+      out = new LogOutputStream(file, false, SEGMENT_SIZE_MAX, SEGMENT_SIZE_MAX, WRITE_BUFFER_SIZE);
+      segmentSize = entrySize;
+    }
+    out.write(entry);
+    bytes.bytes += entrySize;
+  }
+
+  @Benchmark
+  public void writePrevious(Bytes bytes) throws IOException {
+    if (previousOut == null || shouldRoll()) {
+      close();
+      FileUtils.deleteFully(file);
+      previousFile = new RandomAccessFile(file, "rw");
+      final FileChannel fc = previousFile.getChannel();
+      preallocate(fc);
+      fc.position(0);
+      previousOut = new BufferedWriteChannel(fc, WRITE_BUFFER_SIZE);
+      segmentSize = entrySize;
+    }
+    writePrevious(entry);
+    bytes.bytes += entrySize;
+  }
+
+  private static void preallocate(FileChannel fc) throws IOException {
+    final ByteBuffer zeros = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+    for(long pos = 0; pos < SEGMENT_SIZE_MAX; pos += WRITE_BUFFER_SIZE) {
+      zeros.clear();
+      IOUtils.writeFully(fc, zeros, pos);
+    }
+  }
+
+  /** The encoding path before the entries were encoded directly into the write buffer. */
+  private void writePrevious(LogEntryProto e) throws IOException {
+    final int serialized = e.getSerializedSize();
+    final int bufferSize = CodedOutputStream.computeUInt32SizeNoTag(serialized) + serialized;
+
+    final byte[] buf = new byte[bufferSize];
+    final CodedOutputStream cout = CodedOutputStream.newInstance(buf);
+    cout.writeUInt32NoTag(serialized);
+    e.writeTo(cout);
+
+    previousChecksum.reset();
+    previousChecksum.update(buf, 0, buf.length);
+    final int sum = (int) previousChecksum.getValue();
+
+    previousOut.write(buf);
+    previousOut.write((sum >>> 24) & 0xFF);
+    previousOut.write((sum >>> 16) & 0xFF);
+    previousOut.write((sum >>>  8) & 0xFF);
+    previousOut.write((sum) & 0xFF);
+  }
+}
@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.storage;
+
+import org.apache.ratis.proto.RaftProtos.LogEntryProto;
+import org.apache.ratis.proto.RaftProtos.StateMachineLogEntryProto;
+import org.apache.ratis.thirdparty.com.google.protobuf.ByteString;
+import org.apache.ratis.thirdparty.com.google.protobuf.CodedOutputStream;
+import org.apache.ratis.util.FileUtils;
+import org.apache.ratis.util.Preconditions;
+import org.apache.ratis.util.PureJavaCrc32C;
+import org.apache.ratis.util.SizeInBytes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark reading the entries of a segment file
+ * using {@link LogReader#readEntry()}, the stream path used when a segment is loaded,
+ * and {@link LogReader#decodeEntry(ByteBuffer, int, PureJavaCrc32C, File)}, the buffer path used by the mapped reader.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class LogReaderBenchmark {
+  static final int NUM_ENTRIES = 10_000;
+
+  @Param({"64", "1024", "16384"})
+  private int dataSize;
+
+  private File file;
+
+  private LogReader reader;
+  private int numRead;
+
+  private ByteBuffer buffer;
+  /** The offset of each entry in the buffer. */
+  private final int[] offsets = new int[NUM_ENTRIES];
+  private int i;
+  private final PureJavaCrc32C checksum = new PureJavaCrc32C();
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    file = File.createTempFile(getClass().getSimpleName(), ".log");
+    FileUtils.deleteFully(file);
+
+    final byte[] data = new byte[dataSize];
+    ThreadLocalRandom.current().nextBytes(data);
+    final StateMachineLogEntryProto smLog = StateMachineLogEntryProto.newBuilder()
+        .setLogData(ByteString.copyFrom(data))
+        .build();
+    final long segmentSize = SizeInBytes.valueOf("1GB").getSize();
+    int offset = SegmentedRaftLogFormat.getHeaderLength();
+    try(LogOutputStream out = new LogOutputStream(file, false, segmentSize, 0, 64 << 10)) {
+      for(int n = 0; n < NUM_ENTRIES; n++) {
+        final LogEntryProto entry = LogEntryProto.newBuilder()
+            .setTerm(1).setIndex(n).setStateMachineLogEntry(smLog).build();
+        out.write(entry);
+        offsets[n] = offset;
+        final int serialized = entry.getSerializedSize();
+        offset += CodedOutputStream.computeUInt32SizeNoTag(serialized) + serialized + 4;
+      }
+    }
+    buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+    Preconditions.assertTrue(buffer.capacity() >= offset);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    closeReader();
+    FileUtils.deleteFully(file);
+  }
+
+  private void closeReader() throws IOException {
+    if (reader != null) {
+      reader.close();
+      reader = null;
+    }
+  }
+
+  @Benchmark
+  public LogEntryProto readEntry() throws IOException {
+    if (reader == null || numRead == NUM_ENTRIES) {
+      closeReader();
+      reader = new LogReader(file);
+      Preconditions.assertTrue(reader.verifyHeader());
+      numRead = 0;
+    }
+    numRead++;
+    return reader.readEntry();
+  }
+
+  @Benchmark
+  public LogEntryProto decodeEntry() throws IOException {
+    if (i == NUM_ENTRIES) {
+      i = 0;
+    }
+    return LogReader.decodeEntry(buffer, offsets[i++], checksum, file);
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.storage;
+
+import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.proto.RaftProtos.LogEntryProto;
+import org.apache.ratis.proto.RaftProtos.StateMachineLogEntryProto;
+import org.apache.ratis.server.protocol.TermIndex;
+import org.apache.ratis.server.storage.LogSegment.LogRecord;
+import org.apache.ratis.thirdparty.com.google.protobuf.ByteString;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark the lookups in {@link RaftLogCache} with the given number of segments,
+ * where all the segments except the last one are closed.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class RaftLogCacheBenchmark {
+  static final int NUM_ENTRIES_PER_SEGMENT = 1000;
+  static final int NUM_TERM_INDICES = 64;
+
+  @Param({"1", "16", "256"})
+  private int numSegments;
+
+  private RaftLogCache cache;
+  private long numEntries;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    cache = new RaftLogCache(null, null, new RaftProperties());
+    final StateMachineLogEntryProto smLog = StateMachineLogEntryProto.newBuilder()
+        .setLogData(ByteString.copyFromUtf8("data"))
+        .build();
+    long index = 0;
+    for(int s = 0; s < numSegments; s++) {
+      final LogSegment segment = LogSegment.newOpenSegment(null, index);
+      for(int i = 0; i < NUM_ENTRIES_PER_SEGMENT; i++) {
+        segment.appendToOpenSegment(LogEntryProto.newBuilder()
+            .setTerm(s).setIndex(index++).setStateMachineLogEntry(smLog).build());
+      }
+      if (s < numSegments - 1) {
+        segment.close();
+      }
+      cache.addSegment(segment);
+    }
+    numEntries = index;
+  }
+
+  private long nextIndex() {
+    return ThreadLocalRandom.current().nextLong(numEntries);
+  }
+
+  @Benchmark
+  public LogSegment getSegment() {
+    return cache.getSegment(nextIndex());
+  }
+
+  @Benchmark
+  public LogRecord getLogRecord() {
+    return cache.getLogRecord(nextIndex());
+  }
+
+  @Benchmark
+  public TermIndex[] getTermIndices() {
+    final long start = nextIndex();
+    return cache.getTermIndices(start, start + NUM_TERM_INDICES);
+  }
+
+  @Benchmark
+  public TermIndex getLastTermIndex() {
+    return cache.getLastTermIndex();
+  }
+}
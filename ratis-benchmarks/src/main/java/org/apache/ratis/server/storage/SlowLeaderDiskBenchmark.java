@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.storage;
+
+import org.apache.ratis.RaftConfigKeys;
+import org.apache.ratis.client.RaftClient;
+import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.grpc.GrpcConfigKeys;
+import org.apache.ratis.protocol.Message;
+import org.apache.ratis.protocol.RaftClientReply;
+import org.apache.ratis.protocol.RaftGroup;
+import org.apache.ratis.protocol.RaftGroupId;
+import org.apache.ratis.protocol.RaftPeer;
+import org.apache.ratis.protocol.RaftPeerId;
+import org.apache.ratis.rpc.SupportedRpcType;
+import org.apache.ratis.server.RaftClusterBenchmark;
+import org.apache.ratis.server.RaftServer;
+import org.apache.ratis.server.RaftServerConfigKeys;
+import org.apache.ratis.thirdparty.com.google.protobuf.ByteString;
+import org.apache.ratis.util.CodeInjectionForTesting;
+import org.apache.ratis.util.FileUtils;
+import org.apache.ratis.util.NetUtils;
+import org.apache.ratis.util.Preconditions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark the write latency of a 3-server cluster
+ * when the log flush of some servers is delayed, i.e. the servers have slow disks.
+ * The commit latency should follow the fastest majority:
+ * a slow leader alone should not increase the latency
+ * but a slow leader with a slow follower should increase it by the delay.
+ *
+ *   java -jar ratis-benchmarks/target/ratis-benchmarks-*-jmh.jar SlowLeaderDiskBenchmark
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SlowLeaderDiskBenchmark {
+  static final int NUM_SERVERS = 3;
+
+  public enum SlowServers {NONE, LEADER, LEADER_AND_FOLLOWER}
+
+  @Param({"NONE", "LEADER", "LEADER_AND_FOLLOWER"})
+  private SlowServers slowServers;
+
+  @Param({"20"})
+  private int flushDelayMs;
+
+  private final List<RaftServer> servers = new ArrayList<>();
+  private final List<File> dirs = new ArrayList<>();
+  private final Set<RaftPeerId> slowIds = ConcurrentHashMap.newKeySet();
+  private RaftClient client;
+  private Message message;
+
+  /** Delay the flush of the slow servers. */
+  private boolean delayFlush(Object localId, Object remoteId, Object... args) {
+    if (!slowIds.contains(localId)) {
+      return false;
+    }
+    try {
+      TimeUnit.MILLISECONDS.sleep(flushDelayMs);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    return true;
+  }
+
+  private RaftProperties newProperties() {
+    final RaftProperties properties = new RaftProperties();
+    RaftConfigKeys.Rpc.setType(properties, SupportedRpcType.GRPC);
+    return properties;
+  }
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    final List<RaftPeer> peers = new ArrayList<>();
+    for(int i = 0; i < NUM_SERVERS; i++) {
+      peers.add(new RaftPeer(RaftPeerId.valueOf("s" + i), NetUtils.createLocalServerAddress()));
+    }
+    final RaftGroup group = RaftGroup.valueOf(RaftGroupId.randomId(), peers);
+    for(RaftPeer peer : peers) {
+      final RaftProperties properties = newProperties();
+      GrpcConfigKeys.Server.setPort(properties, NetUtils.createSocketAddr(peer.getAddress()).getPort());
+      final File dir = Files.createTempDirectory(getClass().getSimpleName()).toFile();
+      dirs.add(dir);
+      RaftServerConfigKeys.setStorageDirs(properties, Collections.singletonList(dir));
+      final RaftServer server = RaftServer.newBuilder()
+          .setServerId(peer.getId())
+          .setGroup(group)
+          .setStateMachine(new RaftClusterBenchmark.BenchmarkStateMachine())
+          .setProperties(properties)
+          .build();
+      server.start();
+      servers.add(server);
+    }
+
+    client = RaftClient.newBuilder().setRaftGroup(group).setProperties(newProperties()).build();
+    message = Message.valueOf(ByteString.copyFrom(new byte[1024]));
+    final RaftClientReply reply = client.send(message);
+    Preconditions.assertTrue(reply.isSuccess());
+
+    // the reply is sent by the leader
+    final RaftPeerId leaderId = reply.getServerId();
+    if (slowServers != SlowServers.NONE) {
+      slowIds.add(leaderId);
+    }
+    if (slowServers == SlowServers.LEADER_AND_FOLLOWER) {
+      peers.stream().map(RaftPeer::getId).filter(id -> !id.equals(leaderId)).findFirst().ifPresent(slowIds::add);
+    }
+    CodeInjectionForTesting.put(RaftLogWorker.FLUSH_WRITES, this::delayFlush);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    slowIds.clear();
+    client.close();
+    for(RaftServer server : servers) {
+      server.close();
+    }
+    servers.clear();
+    for(File dir : dirs) {
+      FileUtils.deleteFully(dir);
+    }
+    dirs.clear();
+  }
+
+  /** Send a write request and wait for the reply. */
+  @Benchmark
+  public RaftClientReply send() throws IOException {
+    return client.send(message);
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Compare {@link PureJavaCrc32C}, which computes the checksums of the log entries,
+ * with {@link NativeCrc32} and {@link CRC32} of the JDK.
+ *
+ * The native benchmark fails in its setup if the native library is not loaded.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ChecksumBenchmark {
+  @Param({"64", "1024", "65536"})
+  private int dataSize;
+
+  private byte[] array;
+  private ByteBuffer direct;
+
+  private final PureJavaCrc32C pureJavaCrc32C = new PureJavaCrc32C();
+  private final CRC32 crc32 = new CRC32();
+
+  @Setup(Level.Trial)
+  public void setup() {
+    array = new byte[dataSize];
+    ThreadLocalRandom.current().nextBytes(array);
+    direct = ByteBuffer.allocateDirect(dataSize);
+    direct.put(array).flip();
+  }
+
+  @State(Scope.Thread)
+  public static class Native {
+    private final byte[] sums = new byte[4];
+
+    @Setup(Level.Trial)
+    public void setup() {
+      if (!NativeCrc32.isAvailable()) {
+        throw new IllegalStateException(NativeCrc32.class.getSimpleName() + " is not available");
+      }
+    }
+  }
+
+  @Benchmark
+  public long pureJavaCrc32CArray() {
+    pureJavaCrc32C.reset();
+    pureJavaCrc32C.update(array, 0, array.length);
+    return pureJavaCrc32C.getValue();
+  }
+
+  @Benchmark
+  public long pureJavaCrc32CDirectBuffer() {
+    pureJavaCrc32C.reset();
+    pureJavaCrc32C.update(direct, 0, direct.limit());
+    return pureJavaCrc32C.getValue();
+  }
+
+  @Benchmark
+  public long jdkCrc32() {
+    crc32.reset();
+    crc32.update(array, 0, array.length);
+    return crc32.getValue();
+  }
+
+  @Benchmark
+  public byte[] nativeCrc32C(Native n) {
+    NativeCrc32.calculateChunkedSumsByteArray(array.length, NativeCrc32.CHECKSUM_CRC32C,
+        n.sums, 0, array, 0, array.length);
+    return n.sums;
+  }
+}
@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark {@link DataQueue}, which buffers the entries in the log appenders,
+ * and {@link DataBlockingQueue}, which is the queue of the log worker.
+ *
+ * The single-thread benchmarks measure the offer-poll cost of a queue holding {@link #numElements} elements.
+ * The producerConsumer group measures the blocking queue with a producer and a consumer thread,
+ * as the raft server and the log worker use it.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DataQueueBenchmark {
+  static final SizeInBytes BYTE_LIMIT = SizeInBytes.valueOf("64MB");
+  static final int ELEMENT_LIMIT = 4096;
+  static final int ELEMENT_SIZE = 100;
+
+  @State(Scope.Thread)
+  public static class Queues {
+    @Param({"1", "1024"})
+    private int numElements;
+
+    private DataQueue<Integer> dataQueue;
+    private DataBlockingQueue<Integer> blockingQueue;
+
+    @Setup(Level.Trial)
+    public void setup() {
+      dataQueue = new DataQueue<>(this, BYTE_LIMIT, ELEMENT_LIMIT, e -> ELEMENT_SIZE);
+      blockingQueue = new DataBlockingQueue<>(this, BYTE_LIMIT, ELEMENT_LIMIT, e -> ELEMENT_SIZE);
+      // keep numElements - 1 elements in the queues so that each operation offers one and polls one
+      for(int i = 1; i < numElements; i++) {
+        dataQueue.offer(i);
+        blockingQueue.offer(i);
+      }
+    }
+  }
+
+  @Benchmark
+  public Integer dataQueueOfferPoll(Queues q) {
+    q.dataQueue.offer(0);
+    return q.dataQueue.poll();
+  }
+
+  @Benchmark
+  public List<Integer> dataQueueOfferPollList(Queues q) {
+    q.dataQueue.offer(0);
+    return q.dataQueue.pollList(0, (e, timeout) -> e, (e, time, exception) -> { });
+  }
+
+  @Benchmark
+  public Integer blockingQueueOfferPoll(Queues q) {
+    q.blockingQueue.offer(0);
+    return q.blockingQueue.poll();
+  }
+
+  @State(Scope.Group)
+  public static class Shared {
+    private final DataBlockingQueue<Integer> queue
+        = new DataBlockingQueue<>(this, BYTE_LIMIT, ELEMENT_LIMIT, e -> ELEMENT_SIZE);
+  }
+
+  static final TimeDuration TIMEOUT = TimeDuration.valueOf(10, TimeUnit.MILLISECONDS);
+
+  @Benchmark
+  @Group("producerConsumer")
+  @GroupThreads(1)
+  public boolean produce(Shared s) throws InterruptedException {
+    return s.queue.offer(0, TIMEOUT);
+  }
+
+  @Benchmark
+  @Group("producerConsumer")
+  @GroupThreads(1)
+  public Integer consume(Shared s) throws InterruptedException {
+    return s.queue.poll(TIMEOUT);
+  }
+}
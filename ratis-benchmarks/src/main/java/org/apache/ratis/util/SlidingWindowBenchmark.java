@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Benchmark the client and the server sides of {@link SlidingWindow},
+ * which order the async requests of a client.
+ *
+ * Each operation submits a new request and replies the oldest outstanding request,
+ * so that there are always {@link #windowSize} outstanding requests.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SlidingWindowBenchmark {
+  static class Request implements SlidingWindow.Request<Long> {
+    private final long seqNum;
+    private Long reply;
+
+    Request(long seqNum) {
+      this.seqNum = seqNum;
+    }
+
+    @Override
+    public long getSeqNum() {
+      return seqNum;
+    }
+
+    @Override
+    public void setReply(Long reply) {
+      this.reply = reply;
+    }
+
+    @Override
+    public boolean hasReply() {
+      return reply != null;
+    }
+  }
+
+  @Param({"1", "64"})
+  private int windowSize;
+
+  private SlidingWindow.Client<Request, Long> client;
+  private SlidingWindow.Server<Request, Long> server;
+  private final Queue<Request> outstanding = new ArrayDeque<>();
+  private long nextServerSeqNum;
+
+  private Consumer<Request> sendMethod;
+
+  @Setup(Level.Iteration)
+  public void setup(Blackhole blackhole) {
+    client = new SlidingWindow.Client<>(getClass().getSimpleName());
+    server = new SlidingWindow.Server<>(getClass().getSimpleName(), new Request(Long.MAX_VALUE));
+    outstanding.clear();
+    nextServerSeqNum = 0;
+    sendMethod = blackhole::consume;
+
+    // send the first request and reply it so that the following requests are not delayed
+    final Request first = client.submitNewRequest(Request::new, sendMethod);
+    client.receiveReply(first.getSeqNum(), first.getSeqNum(), sendMethod);
+    for(int i = 1; i < windowSize; i++) {
+      outstanding.offer(client.submitNewRequest(Request::new, sendMethod));
+    }
+    for(int i = 1; i < windowSize; i++) {
+      server.receivedRequest(new Request(nextServerSeqNum++), sendMethod);
+    }
+  }
+
+  @TearDown(Level.Iteration)
+  public void tearDown() {
+    server.close();
+  }
+
+  @Benchmark
+  public void client() {
+    outstanding.offer(client.submitNewRequest(Request::new, sendMethod));
+    final long seqNum = outstanding.poll().getSeqNum();
+    client.receiveReply(seqNum, seqNum, sendMethod);
+  }
+
+  @Benchmark
+  public void server() {
+    server.receivedRequest(new Request(nextServerSeqNum), sendMethod);
+    final long seqNum = nextServerSeqNum++ - windowSize + 1;
+    server.receiveReply(seqNum, seqNum, sendMethod, sendMethod);
+  }
+}
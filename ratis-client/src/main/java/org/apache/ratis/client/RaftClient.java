@@ -57,6 +57,12 @@ public interface RaftClient extends Closeable {
   /** Async call to send the given readonly message to the raft service. */
   CompletableFuture<RaftClientReply> sendReadOnlyAsync(Message message);
 
+  /**
+   * Async call to send the given readonly message to the given server, which may be a follower.
+   * The server must have enabled the follower read; see raft.server.read.follower.enabled.
+   */
+  CompletableFuture<RaftClientReply> sendReadOnlyAsync(Message message, RaftPeerId server);
+
   /** Async call to send the given stale-read message to the given server (not the raft service). */
   CompletableFuture<RaftClientReply> sendStaleReadAsync(Message message, long minIndex, RaftPeerId server);
 
@@ -76,6 +82,9 @@ public interface RaftClient extends Closeable {
   /** Send the given readonly message to the raft service. */
   RaftClientReply sendReadOnly(Message message) throws IOException;
 
+  /** Send the given readonly message to the given server, which may be a follower. */
+  RaftClientReply sendReadOnly(Message message, RaftPeerId server) throws IOException;
+
   /** Send the given stale-read message to the given server (not the raft service). */
   RaftClientReply sendStaleRead(Message message, long minIndex, RaftPeerId server) throws IOException;
 
@@ -18,6 +18,7 @@
 package org.apache.ratis.client;
 
 import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.util.SizeInBytes;
 import org.apache.ratis.util.TimeDuration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -74,6 +75,45 @@ public interface RaftClientConfigKeys {
     }
   }
 
+  /**
+   * Coalesce the small async write messages into batched write requests,
+   * each of which is appended to the log as a single entry.
+   * The state machine applies a batch with {@code StateMachine.applyTransactionBatch}.
+   */
+  interface Batch {
+    String PREFIX = RaftClientConfigKeys.PREFIX + ".batch";
+
+    String ENABLED_KEY = PREFIX + ".enabled";
+    boolean ENABLED_DEFAULT = false;
+    static boolean enabled(RaftProperties properties) {
+      return getBoolean(properties::getBoolean, ENABLED_KEY, ENABLED_DEFAULT, getDefaultLog());
+    }
+    static void setEnabled(RaftProperties properties, boolean enabled) {
+      setBoolean(properties::setBoolean, ENABLED_KEY, enabled);
+    }
+
+    /** A batch is sent once its messages have at least this many bytes. */
+    String BYTE_LIMIT_KEY = PREFIX + ".byte-limit";
+    SizeInBytes BYTE_LIMIT_DEFAULT = SizeInBytes.valueOf("16KB");
+    static SizeInBytes byteLimit(RaftProperties properties) {
+      return getSizeInBytes(properties::getSizeInBytes, BYTE_LIMIT_KEY, BYTE_LIMIT_DEFAULT, getDefaultLog());
+    }
+    static void setByteLimit(RaftProperties properties, SizeInBytes byteLimit) {
+      setSizeInBytes(properties::set, BYTE_LIMIT_KEY, byteLimit);
+    }
+
+    /** A batch is sent at most this long after its first message. */
+    String DELAY_KEY = PREFIX + ".delay";
+    TimeDuration DELAY_DEFAULT = TimeDuration.valueOf(500, TimeUnit.MICROSECONDS);
+    static TimeDuration delay(RaftProperties properties) {
+      return getTimeDuration(properties.getTimeDuration(DELAY_DEFAULT.getUnit()),
+          DELAY_KEY, DELAY_DEFAULT, getDefaultLog());
+    }
+    static void setDelay(RaftProperties properties, TimeDuration delay) {
+      setTimeDuration(properties::setTimeDuration, DELAY_KEY, delay);
+    }
+  }
+
   static void main(String[] args) {
     printAll(RaftClientConfigKeys.class);
   }
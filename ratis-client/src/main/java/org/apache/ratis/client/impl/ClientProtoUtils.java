@@ -19,12 +19,15 @@ package org.apache.ratis.client.impl;
 
 import org.apache.ratis.protocol.*;
 import org.apache.ratis.thirdparty.com.google.protobuf.ByteString;
+import org.apache.ratis.thirdparty.com.google.protobuf.InvalidProtocolBufferException;
 import org.apache.ratis.proto.RaftProtos.*;
 import org.apache.ratis.util.ProtoUtils;
 import org.apache.ratis.util.ReflectionUtils;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 import static org.apache.ratis.proto.RaftProtos.RaftClientReplyProto.ExceptionDetailsCase.NOTLEADEREXCEPTION;
@@ -141,6 +144,13 @@ public interface ClientProtoUtils {
   }
 
   static RaftClientReplyProto toRaftClientReplyProto(RaftClientReply reply) {
+    return toRaftClientReplyProto(reply, false);
+  }
+
+  /**
+   * @param includeStackTrace should the stack trace of a {@link StateMachineException} be included?
+   */
+  static RaftClientReplyProto toRaftClientReplyProto(RaftClientReply reply, boolean includeStackTrace) {
     final RaftClientReplyProto.Builder b = RaftClientReplyProto.newBuilder();
     if (reply != null) {
       b.setRpcReply(toRaftRpcReplyProtoBuilder(reply.getClientId().toByteString(),
@@ -168,9 +178,11 @@ public interface ClientProtoUtils {
         StateMachineExceptionProto.Builder smeBuilder =
             StateMachineExceptionProto.newBuilder();
         final Throwable t = sme.getCause() != null ? sme.getCause() : sme;
-        smeBuilder.setExceptionClassName(t.getClass().getName())
-            .setErrorMsg(t.getMessage())
-            .setStacktrace(ProtoUtils.writeObject2ByteString(t.getStackTrace()));
+        smeBuilder.setExceptionClassName(t.getClass().getName());
+        Optional.ofNullable(t.getMessage()).ifPresent(smeBuilder::setErrorMsg);
+        if (includeStackTrace) {
+          smeBuilder.addAllStackTrace(ProtoUtils.toStackTraceElementProtos(t.getStackTrace()));
+        }
         b.setStateMachineException(smeBuilder.build());
       }
 
@@ -237,7 +249,7 @@ public interface ClientProtoUtils {
       StateMachineExceptionProto smeProto = replyProto.getStateMachineException();
       e = wrapStateMachineException(RaftPeerId.valueOf(rp.getReplyId()),
           smeProto.getExceptionClassName(), smeProto.getErrorMsg(),
-          smeProto.getStacktrace());
+          smeProto.getStackTraceList());
     } else {
       e = null;
     }
@@ -276,7 +288,7 @@ public interface ClientProtoUtils {
 
   static StateMachineException wrapStateMachineException(
       RaftPeerId serverId, String className, String errorMsg,
-      ByteString stackTraceBytes) {
+      List<StackTraceElementProto> stackTrace) {
     StateMachineException sme;
     if (className == null) {
       sme = new StateMachineException(errorMsg);
@@ -290,9 +302,9 @@ public interface ClientProtoUtils {
         sme = new StateMachineException(className + ": " + errorMsg);
       }
     }
-    StackTraceElement[] stacktrace =
-        (StackTraceElement[]) ProtoUtils.toObject(stackTraceBytes);
-    sme.setStackTrace(stacktrace);
+    if (!stackTrace.isEmpty()) {
+      sme.setStackTrace(ProtoUtils.toStackTrace(stackTrace));
+    }
     return sme;
   }
 
@@ -300,6 +312,35 @@ public interface ClientProtoUtils {
     return Message.valueOf(p.getContent());
   }
 
+  /**
+   * @return a message with a {@link BatchMessageProto} of the given messages.
+   *         The messages can be null, e.g. the replies of a batch.
+   */
+  static Message toBatchMessage(List<Message> messages) {
+    final BatchMessageProto.Builder b = BatchMessageProto.newBuilder();
+    for(Message m : messages) {
+      b.addMessage(m == null? ByteString.EMPTY: m.getContent());
+      b.addPresent(m != null);
+    }
+    return Message.valueOf(b.build().toByteString(), () -> "Batch:" + messages.size());
+  }
+
+  /** @return the messages in the given {@link BatchMessageProto} bytes, where the absent messages are null. */
+  static List<Message> toMessages(ByteString batch) throws InvalidProtocolBufferException {
+    final BatchMessageProto proto = BatchMessageProto.parseFrom(batch);
+    final List<ByteString> contents = proto.getMessageList();
+    final List<Boolean> present = proto.getPresentList();
+    if (!present.isEmpty() && present.size() != contents.size()) {
+      throw new InvalidProtocolBufferException("The number of presence flags " + present.size()
+          + " does not match the number of messages " + contents.size());
+    }
+    final List<Message> messages = new ArrayList<>(contents.size());
+    for(int i = 0; i < contents.size(); i++) {
+      messages.add(present.isEmpty() || present.get(i)? Message.valueOf(contents.get(i)): null);
+    }
+    return messages;
+  }
+
   static ClientMessageEntryProto.Builder toClientMessageEntryProtoBuilder(ByteString message) {
     return ClientMessageEntryProto.newBuilder().setContent(message);
   }
@@ -37,8 +37,10 @@ import java.util.function.LongFunction;
 import java.util.function.Supplier;
 import java.util.stream.Stream;
 
+import static org.apache.ratis.proto.RaftProtos.RaftClientRequestProto.TypeCase.READ;
 import static org.apache.ratis.proto.RaftProtos.RaftClientRequestProto.TypeCase.STALEREAD;
 import static org.apache.ratis.proto.RaftProtos.RaftClientRequestProto.TypeCase.WATCH;
+import static org.apache.ratis.proto.RaftProtos.RaftClientRequestProto.TypeCase.WRITE;
 
 /** A client who sends requests to a raft service. */
 final class RaftClientImpl implements RaftClient {
@@ -111,6 +113,8 @@ final class RaftClientImpl implements RaftClient {
       slidingWindows = new ConcurrentHashMap<>();
   private final TimeoutScheduler scheduler;
   private final Semaphore asyncRequestSemaphore;
+  /** Non-null if the async write messages are batched. */
+  private final RequestBatcher batcher;
 
   RaftClientImpl(ClientId clientId, RaftGroup group, RaftPeerId leaderId,
       RaftClientRpc clientRpc, RaftProperties properties, RetryPolicy retryPolicy) {
@@ -125,6 +129,10 @@ final class RaftClientImpl implements RaftClient {
 
     asyncRequestSemaphore = new Semaphore(RaftClientConfigKeys.Async.maxOutstandingRequests(properties));
     scheduler = TimeoutScheduler.newInstance(RaftClientConfigKeys.Async.schedulerThreads(properties));
+    batcher = !RaftClientConfigKeys.Batch.enabled(properties)? null
+        : new RequestBatcher(clientId + "-batcher", properties, scheduler,
+            message -> sendAsync(RaftClientRequest.writeRequestType(), message, null),
+            batch -> sendAsync(RaftClientRequest.batchWriteRequestType(), batch, null));
     clientRpc.addServers(peers);
   }
 
@@ -134,7 +142,12 @@ final class RaftClientImpl implements RaftClient {
   }
 
   private SlidingWindow.Client<PendingAsyncRequest, RaftClientReply> getSlidingWindow(RaftClientRequest request) {
-    return getSlidingWindow(request.is(STALEREAD)? request.getServerId(): null);
+    return getSlidingWindow(isToServer(request)? request.getServerId(): null);
+  }
+
+  /** Is the request sent to a particular server instead of the raft service? */
+  private static boolean isToServer(RaftClientRequest request) {
+    return request.is(STALEREAD) || (request.is(READ) && request.getType().getRead().getFollowerRead());
   }
 
   private SlidingWindow.Client<PendingAsyncRequest, RaftClientReply> getSlidingWindow(RaftPeerId target) {
@@ -144,6 +157,9 @@ final class RaftClientImpl implements RaftClient {
 
   @Override
   public CompletableFuture<RaftClientReply> sendAsync(Message message) {
+    if (batcher != null) {
+      return batcher.submit(Objects.requireNonNull(message, "message == null"));
+    }
     return sendAsync(RaftClientRequest.writeRequestType(), message, null);
   }
 
@@ -152,6 +168,11 @@ final class RaftClientImpl implements RaftClient {
     return sendAsync(RaftClientRequest.readRequestType(), message, null);
   }
 
+  @Override
+  public CompletableFuture<RaftClientReply> sendReadOnlyAsync(Message message, RaftPeerId server) {
+    return sendAsync(RaftClientRequest.followerReadRequestType(), message, server);
+  }
+
   @Override
   public CompletableFuture<RaftClientReply> sendStaleReadAsync(Message message, long minIndex, RaftPeerId server) {
     return sendAsync(RaftClientRequest.staleReadRequestType(minIndex), message, server);
@@ -167,6 +188,9 @@ final class RaftClientImpl implements RaftClient {
     if (!type.is(WATCH)) {
       Objects.requireNonNull(message, "message == null");
     }
+    if (!type.is(WRITE)) {
+      flushBatch();
+    }
     try {
       asyncRequestSemaphore.acquire();
     } catch (InterruptedException e) {
@@ -183,6 +207,16 @@ final class RaftClientImpl implements RaftClient {
     ).whenComplete((r, e) -> asyncRequestSemaphore.release());
   }
 
+  /**
+   * Send the pending batched writes, if there are any,
+   * so that a request not batched cannot overtake the writes submitted before it.
+   */
+  private void flushBatch() {
+    if (batcher != null) {
+      batcher.flush();
+    }
+  }
+
   private RaftClientRequest newRaftClientRequest(
       RaftPeerId server, long callId, long seq, Message message, RaftClientRequest.Type type) {
     return new RaftClientRequest(clientId, server != null? server: leaderId, groupId,
@@ -199,6 +233,11 @@ final class RaftClientImpl implements RaftClient {
     return send(RaftClientRequest.readRequestType(), message, null);
   }
 
+  @Override
+  public RaftClientReply sendReadOnly(Message message, RaftPeerId server) throws IOException {
+    return send(RaftClientRequest.followerReadRequestType(), message, server);
+  }
+
   @Override
   public RaftClientReply sendStaleRead(Message message, long minIndex, RaftPeerId server)
       throws IOException {
@@ -215,6 +254,7 @@ final class RaftClientImpl implements RaftClient {
     if (!type.is(WATCH)) {
       Objects.requireNonNull(message, "message == null");
     }
+    flushBatch();
 
     final long callId = nextCallId();
     return sendRequestWithRetry(() -> newRaftClientRequest(
@@ -459,6 +499,9 @@ final class RaftClientImpl implements RaftClient {
 
   @Override
   public void close() throws IOException {
+    if (batcher != null) {
+      batcher.close();
+    }
     clientRpc.close();
   }
 }
@@ -0,0 +1,220 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.client.impl;
+
+import org.apache.ratis.client.RaftClientConfigKeys;
+import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.protocol.AlreadyClosedException;
+import org.apache.ratis.protocol.Message;
+import org.apache.ratis.protocol.RaftClientReply;
+import org.apache.ratis.protocol.RaftException;
+import org.apache.ratis.util.JavaUtils;
+import org.apache.ratis.util.TimeDuration;
+import org.apache.ratis.util.TimeoutScheduler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+/**
+ * Coalesce async write messages into batched write requests.
+ * A batch is sent once its messages reach the byte limit or once the delay has elapsed since its first message.
+ * The reply of a batch carries a reply message for each message,
+ * so that the future of each message is completed individually.
+ *
+ * @see RaftClientConfigKeys.Batch
+ */
+class RequestBatcher {
+  static final Logger LOG = LoggerFactory.getLogger(RequestBatcher.class);
+
+  private static class Pending {
+    private final Message message;
+    private final CompletableFuture<RaftClientReply> future = new CompletableFuture<>();
+
+    Pending(Message message) {
+      this.message = message;
+    }
+  }
+
+  private final String name;
+  private final long byteLimit;
+  private final TimeDuration delay;
+  /** The max time to wait for the outstanding messages in {@link #close()}. */
+  private final TimeDuration closeTimeout;
+  private final TimeoutScheduler scheduler;
+  /** Send a single message as a regular write request. */
+  private final Function<Message, CompletableFuture<RaftClientReply>> sendSingle;
+  /** Send a batch message as a batched write request. */
+  private final Function<Message, CompletableFuture<RaftClientReply>> sendBatch;
+
+  private List<Pending> pendings = new ArrayList<>();
+  private long numBytes = 0;
+  /** Incremented for each batch taken, in order to skip the delayed flush of a batch already sent. */
+  private long batchCount = 0;
+  /** The messages submitted but not yet replied, including the pending ones. */
+  private final Set<Pending> outstandings = new LinkedHashSet<>();
+  private boolean closed = false;
+
+  RequestBatcher(String name, RaftProperties properties, TimeoutScheduler scheduler,
+      Function<Message, CompletableFuture<RaftClientReply>> sendSingle,
+      Function<Message, CompletableFuture<RaftClientReply>> sendBatch) {
+    this.name = name;
+    this.byteLimit = RaftClientConfigKeys.Batch.byteLimit(properties).getSize();
+    this.delay = RaftClientConfigKeys.Batch.delay(properties);
+    this.closeTimeout = RaftClientConfigKeys.Rpc.requestTimeout(properties);
+    this.scheduler = scheduler;
+    this.sendSingle = sendSingle;
+    this.sendBatch = sendBatch;
+  }
+
+  /**
+   * Submit the given message to the current batch.
+   * The batches are sent while holding the lock so that they are sent in order.
+   */
+  synchronized CompletableFuture<RaftClientReply> submit(Message message) {
+    if (closed) {
+      return JavaUtils.completeExceptionally(new AlreadyClosedException(name + " is closed"));
+    }
+    final Pending pending = new Pending(message);
+    outstandings.add(pending);
+    pending.future.whenComplete((r, e) -> removeOutstanding(pending));
+    pendings.add(pending);
+    numBytes += message.getContent().size();
+    if (numBytes >= byteLimit) {
+      flush();
+    } else if (pendings.size() == 1) {
+      final long current = batchCount;
+      scheduler.onTimeout(delay, () -> flush(current), LOG, () -> name + ": Failed to flush batch " + current);
+    }
+    return pending.future;
+  }
+
+  private synchronized void removeOutstanding(Pending pending) {
+    outstandings.remove(pending);
+  }
+
+  private synchronized void flush(long expectedBatchCount) {
+    if (batchCount == expectedBatchCount) {
+      flush();
+    }
+  }
+
+  /** Send the pending messages now. */
+  synchronized void flush() {
+    if (pendings.isEmpty()) {
+      return;
+    }
+    final List<Pending> batch = pendings;
+    pendings = new ArrayList<>();
+    numBytes = 0;
+    batchCount++;
+    send(batch);
+  }
+
+  private void send(List<Pending> batch) {
+    if (batch.size() == 1) {
+      final Pending p = batch.get(0);
+      sendSingle.apply(p.message).whenComplete((reply, e) -> complete(p, reply, e));
+      return;
+    }
+
+    final List<Message> messages = new ArrayList<>(batch.size());
+    batch.forEach(p -> messages.add(p.message));
+    LOG.debug("{}: send a batch of {} messages", name, messages.size());
+    sendBatch.apply(ClientProtoUtils.toBatchMessage(messages)).whenComplete((reply, e) -> {
+      if (e != null) {
+        batch.forEach(p -> p.future.completeExceptionally(e));
+        return;
+      }
+      if (!reply.isSuccess()) {
+        // the same reply as an unbatched request, with the original exception
+        final RaftException exception = reply.getException();
+        final boolean notReplicated = reply.getNotReplicatedException() != null;
+        batch.forEach(p -> p.future.complete(new RaftClientReply(reply.getClientId(), reply.getServerId(),
+            reply.getRaftGroupId(), reply.getCallId(), false, notReplicated? p.message: null,
+            exception, reply.getLogIndex(), reply.getCommitInfos())));
+        return;
+      }
+      final List<Message> replies;
+      try {
+        if (reply.getMessage() == null) {
+          throw new IOException("The reply does not have a message");
+        }
+        replies = ClientProtoUtils.toMessages(reply.getMessage().getContent());
+        if (replies.size() != batch.size()) {
+          throw new IOException("Expected " + batch.size() + " replies but received " + replies.size());
+        }
+      } catch (IOException ioe) {
+        final IOException failure = new IOException(name + ": Failed to parse the reply of a batch: " + reply, ioe);
+        batch.forEach(p -> p.future.completeExceptionally(failure));
+        return;
+      }
+      for(int i = 0; i < batch.size(); i++) {
+        batch.get(i).future.complete(new RaftClientReply(reply.getClientId(), reply.getServerId(),
+            reply.getRaftGroupId(), reply.getCallId(), reply.isSuccess(), replies.get(i), null,
+            reply.getLogIndex(), reply.getCommitInfos()));
+      }
+    });
+  }
+
+  /**
+   * Send the pending messages and then wait, up to the request timeout, for the replies of the outstanding messages.
+   * The messages not yet replied after that are failed with {@link AlreadyClosedException}.
+   * No more messages can be submitted.
+   */
+  void close() {
+    final List<CompletableFuture<RaftClientReply>> futures = new ArrayList<>();
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      flush();
+      outstandings.forEach(p -> futures.add(p.future));
+    }
+    if (futures.isEmpty()) {
+      return;
+    }
+
+    try {
+      JavaUtils.allOf(futures).get(closeTimeout.getDuration(), closeTimeout.getUnit());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException | TimeoutException e) {
+      LOG.debug("{}: Failed to wait for the outstanding messages", name, e);
+    }
+    final AlreadyClosedException e = new AlreadyClosedException(name + " is closed");
+    futures.forEach(f -> f.completeExceptionally(e));
+  }
+
+  private static void complete(Pending p, RaftClientReply reply, Throwable e) {
+    if (e != null) {
+      p.future.completeExceptionally(e);
+    } else {
+      p.future.complete(reply);
+    }
+  }
+}
@@ -30,13 +30,7 @@ public class MD5Hash {
   public static final int MD5_LEN = 16;
 
   private static final ThreadLocal<MessageDigest> DIGESTER_FACTORY =
-      ThreadLocal.withInitial(() -> {
-    try {
-      return MessageDigest.getInstance("MD5");
-    } catch (NoSuchAlgorithmException e) {
-      throw new RuntimeException(e);
-    }
-  });
+      ThreadLocal.withInitial(MD5Hash::newDigester);
 
   private byte[] digest;
 
@@ -85,6 +79,15 @@ public class MD5Hash {
     return digest(data, 0, data.length);
   }
 
+  /** Create a new MD5 digester, e.g. for digesting the data arriving in multiple threads. */
+  public static MessageDigest newDigester() {
+    try {
+      return MessageDigest.getInstance("MD5");
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
   /**
    * Create a thread local MD5 digester
    */
@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.metrics;
+
+import com.codahale.metrics.MetricRegistry;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.ratis.util.Daemon;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/** An HTTP endpoint serving the metrics in the {@link PrometheusTextFormat} at {@link #PATH}. */
+public class PrometheusHttpServer implements Closeable {
+  public static final Logger LOG = LoggerFactory.getLogger(PrometheusHttpServer.class);
+
+  public static final String PATH = "/metrics";
+
+  private final MetricRegistry registry;
+  private final HttpServer server;
+  private final ExecutorService executor = Executors.newSingleThreadExecutor(Daemon::new);
+
+  public PrometheusHttpServer(MetricRegistry registry, InetSocketAddress address) throws IOException {
+    this.registry = registry;
+    this.server = HttpServer.create(address, 0);
+    server.createContext(PATH, this::handle);
+    server.setExecutor(executor);
+    server.start();
+    LOG.info("Started {} at {}", getClass().getSimpleName(), getAddress());
+  }
+
+  public InetSocketAddress getAddress() {
+    return server.getAddress();
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    try {
+      final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      try(Writer writer = new OutputStreamWriter(bytes, StandardCharsets.UTF_8)) {
+        PrometheusTextFormat.write(registry, writer);
+      }
+      exchange.getResponseHeaders().set("Content-Type", PrometheusTextFormat.CONTENT_TYPE);
+      exchange.sendResponseHeaders(200, bytes.size());
+      try(OutputStream out = exchange.getResponseBody()) {
+        bytes.writeTo(out);
+      }
+    } catch (IOException | RuntimeException e) {
+      LOG.warn("Failed to serve " + exchange.getRequestURI(), e);
+      throw e;
+    } finally {
+      exchange.close();
+    }
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+}
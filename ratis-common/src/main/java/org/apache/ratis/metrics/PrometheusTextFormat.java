@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.metrics;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write the metrics in a {@link MetricRegistry}
+ * using the Prometheus text exposition format (version 0.0.4).
+ *
+ * Counters and meters are written as counters, gauges with numeric values as gauges
+ * and histograms and timers as summaries; the durations of the timers are in seconds.
+ */
+public final class PrometheusTextFormat {
+  public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+  private static final double[] QUANTILES = {0.5, 0.75, 0.95, 0.99, 0.999};
+  private static final double SECONDS_PER_NANOSECOND = 1.0 / TimeUnit.SECONDS.toNanos(1);
+
+  private PrometheusTextFormat() {}
+
+  /** @return the given name with the characters not allowed by Prometheus replaced with '_'. */
+  static String sanitize(String name) {
+    final StringBuilder b = new StringBuilder(name.length());
+    for(int i = 0; i < name.length(); i++) {
+      final char c = name.charAt(i);
+      final boolean valid = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' || c == ':'
+          || (i > 0 && c >= '0' && c <= '9');
+      b.append(valid? c: '_');
+    }
+    return b.toString();
+  }
+
+  public static void write(MetricRegistry registry, Writer out) throws IOException {
+    for(Map.Entry<String, Gauge> e : registry.getGauges().entrySet()) {
+      final Object value = e.getValue().getValue();
+      if (value instanceof Number) {
+        final String name = sanitize(e.getKey());
+        writeType(out, name, "gauge");
+        writeSample(out, name, null, ((Number) value).doubleValue());
+      }
+    }
+    for(Map.Entry<String, Counter> e : registry.getCounters().entrySet()) {
+      final String name = sanitize(e.getKey());
+      writeType(out, name, "counter");
+      writeSample(out, name, null, e.getValue().getCount());
+    }
+    for(Map.Entry<String, Meter> e : registry.getMeters().entrySet()) {
+      final String name = sanitize(e.getKey()) + "_total";
+      writeType(out, name, "counter");
+      writeSample(out, name, null, e.getValue().getCount());
+    }
+    for(Map.Entry<String, Histogram> e : registry.getHistograms().entrySet()) {
+      writeSummary(out, e.getKey(), e.getValue().getSnapshot(), e.getValue().getCount(), 1);
+    }
+    for(Map.Entry<String, Timer> e : registry.getTimers().entrySet()) {
+      writeSummary(out, e.getKey(), e.getValue().getSnapshot(), e.getValue().getCount(), SECONDS_PER_NANOSECOND);
+    }
+    out.flush();
+  }
+
+  private static void writeSummary(Writer out, String name, Snapshot snapshot, long count, double factor)
+      throws IOException {
+    final String sanitized = sanitize(name);
+    writeType(out, sanitized, "summary");
+    for(double q : QUANTILES) {
+      writeSample(out, sanitized, "quantile=\"" + q + "\"", snapshot.getValue(q) * factor);
+    }
+    writeSample(out, sanitized + "_count", null, count);
+  }
+
+  /** Write the type line; the name must be the same as the name of the samples. */
+  private static void writeType(Writer out, String name, String type) throws IOException {
+    out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+  }
+
+  private static void writeSample(Writer out, String name, String label, double value) throws IOException {
+    out.append(name);
+    if (label != null) {
+      out.append('{').append(label).append('}');
+    }
+    out.append(' ').append(toString(value)).append('\n');
+  }
+
+  private static String toString(double value) {
+    if (Double.isNaN(value)) {
+      return "NaN";
+    } else if (Double.isInfinite(value)) {
+      return value > 0? "+Inf": "-Inf";
+    } else if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+      return Long.toString((long) value);
+    }
+    return Double.toString(value);
+  }
+}
@@ -32,4 +32,13 @@ public class RatisMetricsRegistry {
   public static MetricRegistry getRegistry() {
     return metricsRegistry;
   }
+
+  /**
+   * Remove the metrics having the given key as a component of their names,
+   * e.g. the metrics of a group when the group is removed.
+   */
+  public static void removeMetrics(String key) {
+    final String component = "." + key + ".";
+    metricsRegistry.removeMatching((name, metric) -> name.contains(component));
+  }
 }
@@ -18,6 +18,7 @@
 package org.apache.ratis.protocol;
 
 public class NotLeaderException extends RaftException {
+  private final RaftPeerId serverId;
   private final RaftPeer suggestedLeader;
   /** the client may need to update its RaftPeer list */
   private final RaftPeer[] peers;
@@ -26,10 +27,15 @@ public class NotLeaderException extends RaftException {
       RaftPeer[] peers) {
     super("Server " + id + " is not the leader (" + suggestedLeader
         + "). Request must be sent to leader.");
+    this.serverId = id;
     this.suggestedLeader = suggestedLeader;
     this.peers = peers == null ? RaftPeer.emptyArray(): peers;
   }
 
+  public RaftPeerId getServerId() {
+    return serverId;
+  }
+
   public RaftPeer getSuggestedLeader() {
     return suggestedLeader;
   }
@@ -135,6 +135,11 @@ public class RaftClientReply extends RaftClientMessage {
     return message;
   }
 
+  /** @return the exception of this reply, or null if there is no exception. */
+  public RaftException getException() {
+    return exception;
+  }
+
   /** If this reply has {@link NotLeaderException}, return it; otherwise return null. */
   public NotLeaderException getNotLeaderException() {
     return JavaUtils.cast(exception, NotLeaderException.class);
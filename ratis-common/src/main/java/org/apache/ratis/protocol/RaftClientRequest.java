@@ -29,18 +29,29 @@ import static org.apache.ratis.proto.RaftProtos.RaftClientRequestProto.TypeCase.
  */
 public class RaftClientRequest extends RaftClientMessage {
   private static final Type WRITE_DEFAULT = new Type(WriteRequestTypeProto.getDefaultInstance());
+  private static final Type WRITE_BATCH = new Type(WriteRequestTypeProto.newBuilder().setBatch(true).build());
 
   private static final Type DEFAULT_READ = new Type(ReadRequestTypeProto.getDefaultInstance());
+  private static final Type FOLLOWER_READ = new Type(ReadRequestTypeProto.newBuilder().setFollowerRead(true).build());
   private static final Type DEFAULT_STALE_READ = new Type(StaleReadRequestTypeProto.getDefaultInstance());
 
   public static Type writeRequestType() {
     return WRITE_DEFAULT;
   }
 
+  /** The message of a batched write request is a {@link BatchMessageProto}. */
+  public static Type batchWriteRequestType() {
+    return WRITE_BATCH;
+  }
+
   public static Type readRequestType() {
     return DEFAULT_READ;
   }
 
+  public static Type followerReadRequestType() {
+    return FOLLOWER_READ;
+  }
+
   public static Type staleReadRequestType(long minIndex) {
     return minIndex == 0L? DEFAULT_STALE_READ
         : new Type(StaleReadRequestTypeProto.newBuilder().setMinIndex(minIndex).build());
@@ -53,11 +64,11 @@ public class RaftClientRequest extends RaftClientMessage {
   /** The type of a request (oneof write, read, staleRead, watch; see the message RaftClientRequestProto). */
   public static class Type {
     public static Type valueOf(WriteRequestTypeProto write) {
-      return WRITE_DEFAULT;
+      return write.getBatch()? WRITE_BATCH: WRITE_DEFAULT;
     }
 
     public static Type valueOf(ReadRequestTypeProto read) {
-      return DEFAULT_READ;
+      return read.getFollowerRead()? FOLLOWER_READ: DEFAULT_READ;
     }
 
     public static Type valueOf(StaleReadRequestTypeProto staleRead) {
@@ -138,9 +149,9 @@ public class RaftClientRequest extends RaftClientMessage {
     public String toString() {
       switch (typeCase) {
         case WRITE:
-          return "RW";
+          return getWrite().getBatch()? "RW-Batch": "RW";
         case READ:
-          return "RO";
+          return getRead().getFollowerRead()? "FollowerRead": "RO";
         case STALEREAD:
           return "StaleRead(" + getStaleRead().getMinIndex() + ")";
         case WATCH:
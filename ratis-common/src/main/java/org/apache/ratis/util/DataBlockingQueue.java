@@ -22,6 +22,8 @@ import org.apache.ratis.util.function.TriConsumer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.TimeUnit;
@@ -139,6 +141,33 @@ public class DataBlockingQueue<E> extends DataQueue<E> {
     }
   }
 
+  /**
+   * Poll out all the elements, up to the given maximum number, from this queue,
+   * waiting up to the given timeout for the first element.
+   *
+   * @return a list of the polled elements in FIFO order;
+   *         or an empty list if the timeout elapsed.
+   */
+  public List<E> pollAll(int maxElements, TimeDuration timeout) throws InterruptedException {
+    Preconditions.assertTrue(maxElements > 0, () -> "maxElements = " + maxElements + " <= 0");
+    long nanos = timeout.toLong(TimeUnit.NANOSECONDS);
+    try(AutoCloseableLock auto = AutoCloseableLock.acquire(lock)) {
+      for(; super.getNumElements() == 0; ) {
+        if (nanos <= 0) {
+          return Collections.emptyList();
+        }
+        nanos = notEmpty.awaitNanos(nanos);
+      }
+
+      final List<E> polled = new ArrayList<>(Math.min(maxElements, super.getNumElements()));
+      for(E e; polled.size() < maxElements && (e = super.poll()) != null; ) {
+        polled.add(e);
+      }
+      notFull.signalAll();
+      return polled;
+    }
+  }
+
   @Override
   public <RESULT, THROWABLE extends Throwable> List<RESULT> pollList(long timeoutMs,
       CheckedFunctionWithTimeout<E, RESULT, THROWABLE> getResult,
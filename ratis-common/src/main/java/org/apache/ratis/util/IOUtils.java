@@ -139,6 +139,27 @@ public interface IOUtils {
     } while (buf.remaining() > 0);
   }
 
+  /**
+   * Read a FileChannel from a given offset to fill up a ByteBuffer,
+   * handling short reads.
+   *
+   * @param fc               The FileChannel to read from
+   * @param buf              The output buffer
+   * @param offset           The offset in the file to start reading at
+   * @throws IOException     On I/O error, or EOF before the buffer is filled up
+   */
+  static void readFully(FileChannel fc, ByteBuffer buf, long offset)
+      throws IOException {
+    while (buf.remaining() > 0) {
+      final int n = fc.read(buf, offset);
+      if (n < 0) {
+        throw new EOFException("Premature EOF at offset " + offset
+            + " with " + buf.remaining() + " bytes remaining");
+      }
+      offset += n;
+    }
+  }
+
   /**
    * Similar to readFully(). Skips bytes in a loop.
    * @param in The InputStream to skip bytes from
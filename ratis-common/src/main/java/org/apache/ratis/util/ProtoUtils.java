@@ -19,51 +19,169 @@ package org.apache.ratis.util;
 
 import org.apache.ratis.proto.RaftProtos.AppendEntriesReplyProto;
 import org.apache.ratis.proto.RaftProtos.CommitInfoProto;
+import org.apache.ratis.proto.RaftProtos.NotLeaderExceptionProto;
+import org.apache.ratis.proto.RaftProtos.NotReplicatedExceptionProto;
 import org.apache.ratis.proto.RaftProtos.RaftGroupIdProto;
 import org.apache.ratis.proto.RaftProtos.RaftGroupProto;
 import org.apache.ratis.proto.RaftProtos.RaftPeerProto;
 import org.apache.ratis.proto.RaftProtos.RaftRpcReplyProto;
 import org.apache.ratis.proto.RaftProtos.RaftRpcRequestProto;
 import org.apache.ratis.proto.RaftProtos.RequestVoteReplyProto;
+import org.apache.ratis.proto.RaftProtos.StackTraceElementProto;
+import org.apache.ratis.proto.RaftProtos.ThrowableProto;
+import org.apache.ratis.protocol.ChecksumException;
+import org.apache.ratis.protocol.NotLeaderException;
+import org.apache.ratis.protocol.NotReplicatedException;
 import org.apache.ratis.protocol.RaftGroup;
 import org.apache.ratis.protocol.RaftGroupId;
 import org.apache.ratis.protocol.RaftPeer;
 import org.apache.ratis.protocol.RaftPeerId;
+import org.apache.ratis.protocol.TimeoutIOException;
 import org.apache.ratis.thirdparty.com.google.protobuf.ByteString;
 import org.apache.ratis.thirdparty.com.google.protobuf.ServiceException;
 
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 public interface ProtoUtils {
-  static ByteString writeObject2ByteString(Object obj) {
-    final ByteString.Output byteOut = ByteString.newOutput();
-    try(final ObjectOutputStream objOut = new ObjectOutputStream(byteOut)) {
-      objOut.writeObject(obj);
-    } catch (IOException e) {
-      throw new IllegalStateException(
-          "Unexpected IOException when writing an object to a ByteString.", e);
+  static StackTraceElementProto toStackTraceElementProto(StackTraceElement e) {
+    final StackTraceElementProto.Builder b = StackTraceElementProto.newBuilder()
+        .setDeclaringClass(e.getClassName())
+        .setMethodName(e.getMethodName())
+        .setLineNumber(e.getLineNumber());
+    Optional.ofNullable(e.getFileName()).ifPresent(b::setFileName);
+    return b.build();
+  }
+
+  static StackTraceElement toStackTraceElement(StackTraceElementProto proto) {
+    final String fileName = proto.getFileName().isEmpty()? null: proto.getFileName();
+    return new StackTraceElement(proto.getDeclaringClass(), proto.getMethodName(), fileName, proto.getLineNumber());
+  }
+
+  static List<StackTraceElementProto> toStackTraceElementProtos(StackTraceElement[] stackTrace) {
+    return Arrays.stream(stackTrace).map(ProtoUtils::toStackTraceElementProto).collect(Collectors.toList());
+  }
+
+  static StackTraceElement[] toStackTrace(List<StackTraceElementProto> protos) {
+    return protos.stream().map(ProtoUtils::toStackTraceElement).toArray(StackTraceElement[]::new);
+  }
+
+  /**
+   * Encode the given {@link Throwable} and its causes without Java serialization.
+   * The stack traces are encoded only if includeStackTrace is true.
+   */
+  static ThrowableProto toThrowableProto(Throwable t, boolean includeStackTrace) {
+    // collect the causes first so that a cyclic cause chain is encoded only once
+    final List<Throwable> causes = new ArrayList<>();
+    final Set<Throwable> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+    for(Throwable c = t; c != null && visited.add(c); c = c.getCause()) {
+      causes.add(c);
     }
-    return byteOut.toByteString();
+
+    ThrowableProto proto = null;
+    for(int i = causes.size() - 1; i >= 0; i--) {
+      final Throwable c = causes.get(i);
+      final ThrowableProto.Builder b = ThrowableProto.newBuilder().setClassName(c.getClass().getName());
+      Optional.ofNullable(c.getMessage()).ifPresent(b::setErrorMessage);
+      if (includeStackTrace) {
+        b.addAllStackTrace(toStackTraceElementProtos(c.getStackTrace()));
+      }
+      setExceptionDetails(c, b);
+      if (proto != null) {
+        b.setCause(proto);
+      }
+      proto = b.build();
+    }
+    return proto;
   }
 
-  static Object toObject(ByteString bytes) {
-    try(final ObjectInputStream in = new ObjectInputStream(bytes.newInput())) {
-      return in.readObject();
-    } catch (IOException e) {
-      throw new IllegalStateException(
-          "Unexpected IOException when reading an object from a ByteString.", e);
-    } catch (ClassNotFoundException e) {
-      throw new IllegalStateException(e);
+  /** Set the data of the exceptions which cannot be recreated from the class name and the message. */
+  static void setExceptionDetails(Throwable t, ThrowableProto.Builder b) {
+    if (t instanceof NotLeaderException) {
+      final NotLeaderException nle = (NotLeaderException) t;
+      final NotLeaderExceptionProto.Builder nleBuilder = NotLeaderExceptionProto.newBuilder()
+          .addAllPeersInConf(toRaftPeerProtos(Arrays.asList(nle.getPeers())));
+      Optional.ofNullable(nle.getServerId()).map(RaftPeerId::toByteString).ifPresent(nleBuilder::setServerId);
+      Optional.ofNullable(nle.getSuggestedLeader()).map(RaftPeer::getRaftPeerProto)
+          .ifPresent(nleBuilder::setSuggestedLeader);
+      b.setNotLeaderException(nleBuilder);
+    } else if (t instanceof NotReplicatedException) {
+      final NotReplicatedException nre = (NotReplicatedException) t;
+      b.setNotReplicatedException(NotReplicatedExceptionProto.newBuilder()
+          .setCallId(nre.getCallId())
+          .setReplication(nre.getRequiredReplication())
+          .setLogIndex(nre.getLogIndex()));
+    } else if (t instanceof ChecksumException) {
+      b.setChecksumPosition(((ChecksumException) t).getPos());
     }
   }
 
+  /**
+   * Recreate the exceptions which cannot be instantiated with only a message.
+   * @return the exception, or null if the given proto is not such an exception.
+   */
+  static Throwable toRaftException(ThrowableProto proto, String message) {
+    switch (proto.getExceptionDetailsCase()) {
+      case NOTLEADEREXCEPTION: {
+        final NotLeaderExceptionProto nle = proto.getNotLeaderException();
+        final RaftPeerId serverId = nle.getServerId().isEmpty()? null: RaftPeerId.valueOf(nle.getServerId());
+        final RaftPeer suggestedLeader = nle.hasSuggestedLeader()? toRaftPeer(nle.getSuggestedLeader()): null;
+        return new NotLeaderException(serverId, suggestedLeader, toRaftPeerArray(nle.getPeersInConfList()));
+      }
+      case NOTREPLICATEDEXCEPTION: {
+        final NotReplicatedExceptionProto nre = proto.getNotReplicatedException();
+        return new NotReplicatedException(nre.getCallId(), nre.getReplication(), nre.getLogIndex());
+      }
+      case CHECKSUMPOSITION:
+        return new ChecksumException(message, proto.getChecksumPosition());
+      default:
+        return TimeoutIOException.class.getName().equals(proto.getClassName())?
+            new TimeoutIOException(message, null): null;
+    }
+  }
+
+  /**
+   * Decode the given {@link ThrowableProto}.
+   * If the exception class cannot be instantiated, return an {@link IOException} instead.
+   */
+  static Throwable toThrowable(ThrowableProto proto) {
+    final String message = proto.getErrorMessage().isEmpty()? null: proto.getErrorMessage();
+    Throwable t = toRaftException(proto, message);
+    if (t == null) {
+      try {
+        final Class<?> clazz = Class.forName(proto.getClassName());
+        t = ReflectionUtils.instantiateException(clazz.asSubclass(Exception.class), message, null);
+      } catch (Exception e) {
+        t = new IOException(proto.getClassName() + ": " + message);
+      }
+    }
+    if (proto.hasCause()) {
+      try {
+        t.initCause(toThrowable(proto.getCause()));
+      } catch (IllegalStateException ignored) {
+        // the cause is already set by the constructor
+      }
+    }
+    if (proto.getStackTraceCount() > 0) {
+      t.setStackTrace(toStackTrace(proto.getStackTraceList()));
+    }
+    return t;
+  }
+
+  static IOException toIOException(ThrowableProto proto) {
+    return IOUtils.asIOException(toThrowable(proto));
+  }
+
   static ByteString toByteString(String string) {
     return ByteString.copyFromUtf8(string);
   }
@@ -20,6 +20,8 @@
  */
 package org.apache.ratis.util;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.zip.Checksum;
 
 /**
@@ -89,6 +91,44 @@ public class PureJavaCrc32C implements Checksum {
     crc = localCrc;
   }
 
+  /**
+   * Update the checksum with the bytes in the given buffer
+   * from the given offset (absolute index) to the given length.
+   * The position and the limit of the buffer are not changed.
+   *
+   * Unlike {@link #update(byte[], int, int)},
+   * this method also supports direct buffers without copying the bytes to an array.
+   */
+  public void update(ByteBuffer b, int off, int len) {
+    if (b.hasArray()) {
+      update(b.array(), b.arrayOffset() + off, len);
+      return;
+    }
+
+    int localCrc = crc;
+
+    while(len > 7) {
+      // read 8 bytes at once; the bytes are reordered so that b[off] is the lowest byte
+      final long v = b.order() == ByteOrder.BIG_ENDIAN? Long.reverseBytes(b.getLong(off)): b.getLong(off);
+      final int lo = (int) v ^ localCrc;
+      final int hi = (int) (v >>> 32);
+      localCrc = (T[T8_7_start + (lo & 0xff)] ^ T[T8_6_start + ((lo >>> 8) & 0xff)])
+          ^ (T[T8_5_start + ((lo >>> 16) & 0xff)] ^ T[T8_4_start + (lo >>> 24)]);
+      localCrc ^= (T[T8_3_start + (hi & 0xff)] ^ T[T8_2_start + ((hi >>> 8) & 0xff)])
+          ^ (T[T8_1_start + ((hi >>> 16) & 0xff)] ^ T[T8_0_start + (hi >>> 24)]);
+
+      off += 8;
+      len -= 8;
+    }
+
+    for(; len > 0; len--) {
+      localCrc = (localCrc >>> 8) ^ T[T8_0_start + ((localCrc ^ b.get(off++)) & 0xff)];
+    }
+
+    // Publish crc out to object
+    crc = localCrc;
+  }
+
   @Override
   final public void update(int b) {
     crc = (crc >>> 8) ^ T[T8_0_start + ((crc ^ b) & 0xff)];
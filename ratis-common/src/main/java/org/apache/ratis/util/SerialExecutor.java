@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * An {@link Executor} running its tasks one at a time in the submission order
+ * using the threads of an underlying executor.
+ * Many serial executors may share a small thread pool.
+ *
+ * A thread runs only one task before the next task is resubmitted to the underlying executor,
+ * so that a busy serial executor does not starve the others.
+ */
+public class SerialExecutor implements Executor {
+  public static final Logger LOG = LoggerFactory.getLogger(SerialExecutor.class);
+
+  private final Executor executor;
+  private final Queue<Runnable> tasks = new ArrayDeque<>();
+  /** Is there a task submitted to the underlying executor? */
+  private boolean running = false;
+
+  public SerialExecutor(Executor executor) {
+    this.executor = Objects.requireNonNull(executor, "executor == null");
+  }
+
+  @Override
+  public void execute(Runnable task) {
+    Objects.requireNonNull(task, "task == null");
+    synchronized (this) {
+      tasks.offer(task);
+      if (running) {
+        return;
+      }
+      running = true;
+    }
+    submit();
+  }
+
+  private void submit() {
+    try {
+      executor.execute(this::runNext);
+    } catch (RejectedExecutionException e) {
+      synchronized (this) {
+        tasks.clear();
+        running = false;
+      }
+      throw e;
+    }
+  }
+
+  private void runNext() {
+    final Runnable task;
+    synchronized (this) {
+      task = tasks.poll();
+    }
+    try {
+      task.run();
+    } catch (Throwable t) {
+      LOG.error(this + ": Failed to run " + task, t);
+    }
+
+    synchronized (this) {
+      if (tasks.isEmpty()) {
+        running = false;
+        return;
+      }
+    }
+    submit();
+  }
+
+  public synchronized int getQueueSize() {
+    return tasks.size();
+  }
+}
@@ -23,6 +23,7 @@ import org.apache.log4j.Level;
 import org.apache.ratis.client.RaftClient;
 import org.apache.ratis.examples.arithmetic.cli.Arithmetic;
 import org.apache.ratis.examples.filestore.cli.FileStore;
+import org.apache.ratis.examples.loadgen.cli.LoadGen;
 import org.apache.ratis.server.impl.RaftServerImpl;
 import org.apache.ratis.util.LogUtils;
 
@@ -80,6 +81,8 @@ public class Runner {
       return FileStore.getSubCommands();
     } else if (command.equals(Arithmetic.class.getSimpleName().toLowerCase())) {
       return Arithmetic.getSubCommands();
+    } else if (command.equals(LoadGen.class.getSimpleName().toLowerCase())) {
+      return LoadGen.getSubCommands();
     }
     return null;
   }
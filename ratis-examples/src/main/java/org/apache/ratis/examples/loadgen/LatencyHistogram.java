@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.examples.loadgen;
+
+import org.apache.ratis.util.Preconditions;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A thread-safe histogram of latencies in nanoseconds.
+ *
+ * Values less than {@link #LINEAR_LIMIT} are recorded exactly.
+ * Larger values are recorded in log-linear buckets,
+ * i.e. each power of two is divided into {@link #SUB_BUCKETS} buckets,
+ * so that the relative error of a percentile is less than 1/{@link #SUB_BUCKETS}.
+ * Unlike a sampling reservoir, all the recorded values are counted,
+ * which is required for the high percentiles such as p999.
+ */
+public class LatencyHistogram {
+  static final int SUB_BUCKET_BITS = 6;
+  static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  static final int LINEAR_LIMIT = SUB_BUCKETS << 1;
+  static final int NUM_BUCKETS = LINEAR_LIMIT + (Long.SIZE - 1 - SUB_BUCKET_BITS - 1) * SUB_BUCKETS;
+
+  static int getIndex(long value) {
+    Preconditions.assertTrue(value >= 0, () -> "value = " + value + " < 0");
+    if (value < LINEAR_LIMIT) {
+      return (int) value;
+    }
+    final int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+    final int top = (int) (value >>> shift);
+    return LINEAR_LIMIT + (shift - 1) * SUB_BUCKETS + (top - SUB_BUCKETS);
+  }
+
+  /** @return the smallest value recorded in the bucket with the given index. */
+  static long getLowerBound(int index) {
+    if (index < LINEAR_LIMIT) {
+      return index;
+    }
+    final int shift = (index - LINEAR_LIMIT) / SUB_BUCKETS + 1;
+    final long top = (index - LINEAR_LIMIT) % SUB_BUCKETS + SUB_BUCKETS;
+    return top << shift;
+  }
+
+  /** @return the largest value recorded in the bucket with the given index. */
+  static long getUpperBound(int index) {
+    return index + 1 < NUM_BUCKETS? getLowerBound(index + 1) - 1: Long.MAX_VALUE;
+  }
+
+  private final AtomicLongArray buckets = new AtomicLongArray(NUM_BUCKETS);
+  private final LongAdder count = new LongAdder();
+  private final LongAdder sum = new LongAdder();
+  private final AtomicLong max = new AtomicLong();
+
+  public void record(long nanos) {
+    final long value = Math.max(0, nanos);
+    buckets.incrementAndGet(getIndex(value));
+    count.increment();
+    sum.add(value);
+    max.accumulateAndGet(value, Math::max);
+  }
+
+  public long getCount() {
+    return count.sum();
+  }
+
+  public long getMax() {
+    return max.get();
+  }
+
+  public double getMean() {
+    final long n = getCount();
+    return n == 0? 0: sum.sum() / (double) n;
+  }
+
+  /**
+   * @param percentile in the range [0, 100].
+   * @return the value at the given percentile, or 0 if there are no recorded values.
+   */
+  public long getPercentile(double percentile) {
+    Preconditions.assertTrue(percentile >= 0 && percentile <= 100, () -> "percentile = " + percentile);
+    final long n = getCount();
+    if (n == 0) {
+      return 0;
+    }
+    final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * n));
+    long accumulated = 0;
+    for(int i = 0; i < NUM_BUCKETS; i++) {
+      accumulated += buckets.get(i);
+      if (accumulated >= rank) {
+        return Math.min(getUpperBound(i), getMax());
+      }
+    }
+    return getMax();
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.examples.loadgen;
+
+import org.apache.ratis.proto.RaftProtos.LogEntryProto;
+import org.apache.ratis.protocol.Message;
+import org.apache.ratis.statemachine.TransactionContext;
+import org.apache.ratis.statemachine.impl.BaseStateMachine;
+import org.apache.ratis.thirdparty.com.google.protobuf.ByteString;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A state machine accepting any payload, so that the cost measured by {@link LoadGenerator}
+ * is the cost of raft itself.
+ * It only counts the applied transactions and bytes, and replies the count to the queries.
+ */
+public class LoadGenStateMachine extends BaseStateMachine {
+  private final AtomicLong numTransactions = new AtomicLong();
+  private final AtomicLong numBytes = new AtomicLong();
+
+  static long toLong(Message message) {
+    return message.getContent().asReadOnlyByteBuffer().getLong();
+  }
+
+  private Message toMessage(long value) {
+    final ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
+    buffer.putLong(value).flip();
+    return Message.valueOf(ByteString.copyFrom(buffer));
+  }
+
+  @Override
+  public CompletableFuture<Message> applyTransaction(TransactionContext trx) {
+    final LogEntryProto entry = trx.getLogEntry();
+    numTransactions.incrementAndGet();
+    numBytes.addAndGet(entry.getStateMachineLogEntry().getLogData().size());
+    updateLastAppliedTermIndex(entry.getTerm(), entry.getIndex());
+    return CompletableFuture.completedFuture(Message.EMPTY);
+  }
+
+  @Override
+  public CompletableFuture<Message> query(Message request) {
+    return CompletableFuture.completedFuture(toMessage(numTransactions.get()));
+  }
+
+  public long getNumTransactions() {
+    return numTransactions.get();
+  }
+
+  public long getNumBytes() {
+    return numBytes.get();
+  }
+}
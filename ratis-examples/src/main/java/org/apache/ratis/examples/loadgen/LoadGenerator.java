@@ -0,0 +1,323 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.examples.loadgen;
+
+import org.apache.ratis.client.RaftClient;
+import org.apache.ratis.proto.RaftProtos.ReplicationLevel;
+import org.apache.ratis.protocol.Message;
+import org.apache.ratis.protocol.RaftClientReply;
+import org.apache.ratis.protocol.RaftPeer;
+import org.apache.ratis.protocol.RaftPeerId;
+import org.apache.ratis.thirdparty.com.google.protobuf.ByteString;
+import org.apache.ratis.util.Preconditions;
+import org.apache.ratis.util.TimeDuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Generate load to a raft group using {@link RaftClient} async APIs
+ * and report the throughput and the latencies in a {@link LoadReport}.
+ *
+ * The requests are a weighted mix of the {@link Op}s.
+ * It runs in one of the following modes.
+ * <ul>
+ *   <li>Closed-loop (the default):
+ *       there are at most {@link Builder#setConcurrency(int)} outstanding requests
+ *       and a new request is sent once a reply is received.
+ *       The latency is measured from sending a request.</li>
+ *   <li>Open-loop, when {@link Builder#setRate(double)} is set:
+ *       the requests are scheduled at the given rate regardless of the replies.
+ *       The latency is measured from the scheduled time, instead of the actual sending time,
+ *       so that a stalled cluster cannot hide its latency by delaying the sender (coordinated omission).</li>
+ * </ul>
+ */
+public class LoadGenerator {
+  public static final Logger LOG = LoggerFactory.getLogger(LoadGenerator.class);
+
+  public enum Op {
+    /** A write request, {@link RaftClient#sendAsync(Message)}. */
+    WRITE,
+    /** A linearizable read request, {@link RaftClient#sendReadOnlyAsync(Message)}. */
+    READ,
+    /** A stale read request to a server, {@link RaftClient#sendStaleReadAsync(Message, long, RaftPeerId)}. */
+    STALE_READ,
+    /** A watch request for the last written index, {@link RaftClient#sendWatchAsync(long, ReplicationLevel)}. */
+    WATCH
+  }
+
+  public static Builder newBuilder() {
+    return new Builder();
+  }
+
+  public static class Builder {
+    private final List<RaftClient> clients = new ArrayList<>();
+    private final List<RaftPeerId> servers = new ArrayList<>();
+    private final Map<Op, Integer> weights = new EnumMap<>(Op.class);
+    private int payloadSize = 1024;
+    private Supplier<Message> writeMessage;
+    private Supplier<Message> readMessage = () -> Message.EMPTY;
+    private ReplicationLevel watchReplication = ReplicationLevel.ALL;
+    private int concurrency = 1;
+    private long numRequests = 0;
+    private TimeDuration duration = null;
+    private double rate = 0;
+
+    /** The requests are sent by the clients in a round-robin manner. */
+    public Builder addClients(Collection<RaftClient> c) {
+      clients.addAll(c);
+      return this;
+    }
+
+    /** The stale read requests are sent to the servers in a round-robin manner. */
+    public Builder addServers(Collection<RaftPeer> peers) {
+      peers.stream().map(RaftPeer::getId).forEach(servers::add);
+      return this;
+    }
+
+    /** Set the relative weight of the given {@link Op}; the default is 1 for {@link Op#WRITE} and 0 for the others. */
+    public Builder setWeight(Op op, int weight) {
+      Preconditions.assertTrue(weight >= 0, () -> "weight = " + weight + " < 0 for " + op);
+      weights.put(op, weight);
+      return this;
+    }
+
+    /** Set the size of the random payload of the write requests. */
+    public Builder setPayloadSize(int payloadSize) {
+      this.payloadSize = payloadSize;
+      return this;
+    }
+
+    /** Use the given messages, instead of the random payload, for a state machine requiring a particular format. */
+    public Builder setWriteMessage(Supplier<Message> writeMessage) {
+      this.writeMessage = writeMessage;
+      return this;
+    }
+
+    /** Use the given messages for the read and the stale read requests; the default is {@link Message#EMPTY}. */
+    public Builder setReadMessage(Supplier<Message> readMessage) {
+      this.readMessage = readMessage;
+      return this;
+    }
+
+    public Builder setWatchReplication(ReplicationLevel watchReplication) {
+      this.watchReplication = watchReplication;
+      return this;
+    }
+
+    /** Set the maximum number of outstanding requests in the closed-loop mode. */
+    public Builder setConcurrency(int concurrency) {
+      this.concurrency = concurrency;
+      return this;
+    }
+
+    /** Stop after sending the given number of requests; 0 means unlimited. */
+    public Builder setNumRequests(long numRequests) {
+      this.numRequests = numRequests;
+      return this;
+    }
+
+    /** Stop sending requests after the given duration. */
+    public Builder setDuration(TimeDuration duration) {
+      this.duration = duration;
+      return this;
+    }
+
+    /** Send requests at the given rate per second in the open-loop mode; 0 means the closed-loop mode. */
+    public Builder setRate(double rate) {
+      this.rate = rate;
+      return this;
+    }
+
+    public LoadGenerator build() {
+      Preconditions.assertTrue(!clients.isEmpty(), "No clients");
+      Preconditions.assertTrue(numRequests > 0 || duration != null, "Neither numRequests nor duration is set");
+      Preconditions.assertTrue(concurrency > 0, () -> "concurrency = " + concurrency + " <= 0");
+      Preconditions.assertTrue(rate >= 0, () -> "rate = " + rate + " < 0");
+      if (weights.isEmpty()) {
+        weights.put(Op.WRITE, 1);
+      }
+      Preconditions.assertTrue(weights.getOrDefault(Op.STALE_READ, 0) == 0 || !servers.isEmpty(),
+          "No servers for stale read");
+      if (writeMessage == null) {
+        final byte[] payload = new byte[payloadSize];
+        ThreadLocalRandom.current().nextBytes(payload);
+        final Message message = Message.valueOf(ByteString.copyFrom(payload));
+        writeMessage = () -> message;
+      }
+      return new LoadGenerator(this);
+    }
+  }
+
+  private final List<RaftClient> clients;
+  private final List<RaftPeerId> servers;
+  private final Op[] ops;
+  private final int[] cumulativeWeights;
+  private final Supplier<Message> writeMessage;
+  private final Supplier<Message> readMessage;
+  private final ReplicationLevel watchReplication;
+  private final int concurrency;
+  private final long numRequests;
+  private final long durationNanos;
+  private final double rate;
+
+  /** The largest log index of the completed write requests. */
+  private final AtomicLong lastWriteIndex = new AtomicLong();
+
+  private LoadGenerator(Builder b) {
+    this.clients = Collections.unmodifiableList(new ArrayList<>(b.clients));
+    this.servers = Collections.unmodifiableList(new ArrayList<>(b.servers));
+    this.ops = b.weights.entrySet().stream().filter(e -> e.getValue() > 0).map(Map.Entry::getKey).toArray(Op[]::new);
+    Preconditions.assertTrue(ops.length > 0, "All the weights are zero");
+    this.cumulativeWeights = new int[ops.length];
+    for(int i = 0, sum = 0; i < ops.length; i++) {
+      sum += b.weights.get(ops[i]);
+      cumulativeWeights[i] = sum;
+    }
+    this.writeMessage = b.writeMessage;
+    this.readMessage = b.readMessage;
+    this.watchReplication = b.watchReplication;
+    this.concurrency = b.concurrency;
+    this.numRequests = b.numRequests;
+    this.durationNanos = b.duration != null? b.duration.toLong(TimeUnit.NANOSECONDS): Long.MAX_VALUE;
+    this.rate = b.rate;
+  }
+
+  private boolean isOpenLoop() {
+    return rate > 0;
+  }
+
+  private Op nextOp() {
+    if (ops.length == 1) {
+      return ops[0];
+    }
+    final int r = ThreadLocalRandom.current().nextInt(cumulativeWeights[ops.length - 1]);
+    for(int i = 0; ; i++) {
+      if (r < cumulativeWeights[i]) {
+        return ops[i];
+      }
+    }
+  }
+
+  private CompletableFuture<RaftClientReply> send(long i, Op op, Message message) {
+    final RaftClient client = clients.get((int) (i % clients.size()));
+    switch (op) {
+      case WRITE:
+        return client.sendAsync(message);
+      case READ:
+        return client.sendReadOnlyAsync(message);
+      case STALE_READ:
+        return client.sendStaleReadAsync(message, 0, servers.get((int) (i % servers.size())));
+      case WATCH:
+        return client.sendWatchAsync(lastWriteIndex.get(), watchReplication);
+      default:
+        throw new IllegalStateException("Unexpected op " + op);
+    }
+  }
+
+  private static int getSize(RaftClientReply reply) {
+    final Message m = reply.getMessage();
+    return m != null? m.getContent().size(): 0;
+  }
+
+  private void onComplete(Op op, int requestSize, long startNanos, RaftClientReply reply, Throwable t,
+      LoadReport report) {
+    final long nanos = System.nanoTime() - startNanos;
+    final LoadReport.OpStats stats = report.getStats(op);
+    if (t != null || !reply.isSuccess()) {
+      LOG.debug("Failed {}: reply={}", op, reply, t);
+      stats.onError(nanos);
+      return;
+    }
+    report.onReply(reply.getServerId());
+    if (op == Op.WRITE) {
+      lastWriteIndex.accumulateAndGet(reply.getLogIndex(), Math::max);
+    }
+    stats.onSuccess(nanos, requestSize + getSize(reply));
+  }
+
+  /** Send the requests and then wait for all the replies. */
+  public LoadReport run() throws InterruptedException {
+    final LoadReport report = new LoadReport();
+    final int permits = isOpenLoop()? Integer.MAX_VALUE: concurrency;
+    final Semaphore outstanding = new Semaphore(permits);
+    final double intervalNanos = isOpenLoop()? TimeUnit.SECONDS.toNanos(1) / rate: 0;
+
+    final long startNanos = System.nanoTime();
+    for(long i = 0; numRequests == 0 || i < numRequests; i++) {
+      long scheduled = startNanos + (long) (i * intervalNanos);
+      if (isOpenLoop()) {
+        for(long wait; (wait = scheduled - System.nanoTime()) > 0; ) {
+          LockSupport.parkNanos(wait);
+        }
+      }
+      outstanding.acquire();
+      if (System.nanoTime() - startNanos >= durationNanos) {
+        outstanding.release();
+        break;
+      }
+      if (!isOpenLoop()) {
+        scheduled = System.nanoTime();
+      }
+
+      final Op op = nextOp();
+      final long requestStart = scheduled;
+      final Message message = op == Op.WRITE? writeMessage.get(): op == Op.WATCH? null: readMessage.get();
+      final int requestSize = message != null? message.getContent().size(): 0;
+      final CompletableFuture<RaftClientReply> f;
+      try {
+        f = send(i, op, message);
+      } catch (RuntimeException e) {
+        outstanding.release();
+        throw e;
+      }
+      f.whenComplete((reply, t) -> {
+        try {
+          onComplete(op, requestSize, requestStart, reply, t, report);
+        } finally {
+          outstanding.release();
+        }
+      });
+    }
+
+    outstanding.acquire(permits);
+    report.setElapsedNanos(System.nanoTime() - startNanos);
+    return report;
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName()
+        + (isOpenLoop()? "(open-loop, rate=" + rate + "/s": "(closed-loop, concurrency=" + concurrency)
+        + ", clients=" + clients.size() + ", ops=" + Arrays.toString(ops) + ")";
+  }
+}
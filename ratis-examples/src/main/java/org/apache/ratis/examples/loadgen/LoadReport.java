@@ -0,0 +1,169 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.examples.loadgen;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.Timer;
+import org.apache.ratis.examples.loadgen.LoadGenerator.Op;
+import org.apache.ratis.metrics.RatisMetricsRegistry;
+import org.apache.ratis.protocol.RaftPeerId;
+
+import java.io.PrintStream;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/** The throughput, the latencies and the per-server counters of a {@link LoadGenerator} run. */
+public class LoadReport {
+  /** The statistics of an {@link Op}. */
+  public static class OpStats {
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+
+    void onSuccess(long nanos, int numBytes) {
+      latency.record(nanos);
+      bytes.add(numBytes);
+    }
+
+    void onError(long nanos) {
+      latency.record(nanos);
+      errors.increment();
+    }
+
+    public LatencyHistogram getLatency() {
+      return latency;
+    }
+
+    public long getCount() {
+      return latency.getCount();
+    }
+
+    public long getErrors() {
+      return errors.sum();
+    }
+
+    public long getBytes() {
+      return bytes.sum();
+    }
+  }
+
+  private static final Comparator<RaftPeerId> BY_ID = Comparator.comparing(RaftPeerId::toString);
+
+  private final Map<Op, OpStats> ops = new EnumMap<>(Op.class);
+  private final Map<RaftPeerId, LongAdder> replies = new ConcurrentHashMap<>();
+  private final Map<RaftPeerId, SortedMap<String, Long>> serverCounters = new TreeMap<>(BY_ID);
+  private volatile long elapsedNanos;
+
+  LoadReport() {
+    for(Op op : Op.values()) {
+      ops.put(op, new OpStats());
+    }
+  }
+
+  public OpStats getStats(Op op) {
+    return ops.get(op);
+  }
+
+  void onReply(RaftPeerId serverId) {
+    if (serverId != null) {
+      replies.computeIfAbsent(serverId, k -> new LongAdder()).increment();
+    }
+  }
+
+  /** @return the number of replies from each server. */
+  public Map<RaftPeerId, Long> getReplies() {
+    final Map<RaftPeerId, Long> map = new TreeMap<>(BY_ID);
+    replies.forEach((id, n) -> map.put(id, n.sum()));
+    return map;
+  }
+
+  void setElapsedNanos(long elapsedNanos) {
+    this.elapsedNanos = elapsedNanos;
+  }
+
+  public long getElapsedNanos() {
+    return elapsedNanos;
+  }
+
+  /** @return the number of completed requests per second. */
+  public double getThroughput(Op op) {
+    return elapsedNanos == 0? 0: getStats(op).getCount() * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+  }
+
+  /**
+   * Add the counters and the timer counts of the given server from {@link RatisMetricsRegistry}.
+   * It only works for the servers running in this process.
+   */
+  public void addServerCounters(RaftPeerId serverId) {
+    final String component = "." + serverId + ".";
+    final SortedMap<String, Long> counters = new TreeMap<>();
+    for(Map.Entry<String, Metric> e : RatisMetricsRegistry.getRegistry().getMetrics().entrySet()) {
+      final String name = e.getKey();
+      if (!name.contains(component)) {
+        continue;
+      }
+      final Metric m = e.getValue();
+      if (m instanceof Counter) {
+        counters.put(name, ((Counter) m).getCount());
+      } else if (m instanceof Timer) {
+        counters.put(name, ((Timer) m).getCount());
+      }
+    }
+    serverCounters.put(serverId, counters);
+  }
+
+  public Map<RaftPeerId, SortedMap<String, Long>> getServerCounters() {
+    return Collections.unmodifiableMap(serverCounters);
+  }
+
+  private static String toMillis(double nanos) {
+    return String.format("%.3f", nanos / TimeUnit.MILLISECONDS.toNanos(1));
+  }
+
+  public void print(PrintStream out) {
+    out.printf("Elapsed time: %s ms%n", toMillis(elapsedNanos));
+    out.printf("%-10s %10s %8s %12s %12s %10s %10s %10s %10s %10s%n",
+        "op", "count", "errors", "ops/s", "MB/s", "mean(ms)", "p50(ms)", "p99(ms)", "p999(ms)", "max(ms)");
+    for(Map.Entry<Op, OpStats> e : ops.entrySet()) {
+      final OpStats s = e.getValue();
+      if (s.getCount() == 0) {
+        continue;
+      }
+      final LatencyHistogram h = s.getLatency();
+      final double seconds = elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1);
+      out.printf("%-10s %10d %8d %12.1f %12.3f %10s %10s %10s %10s %10s%n",
+          e.getKey(), s.getCount(), s.getErrors(), getThroughput(e.getKey()), s.getBytes() / seconds / (1 << 20),
+          toMillis(h.getMean()), toMillis(h.getPercentile(50)), toMillis(h.getPercentile(99)),
+          toMillis(h.getPercentile(99.9)), toMillis(h.getMax()));
+    }
+
+    out.println("Replies per server: " + getReplies());
+    serverCounters.forEach((id, counters) -> {
+      out.println("Counters of server " + id + ":");
+      counters.forEach((name, value) -> out.printf("  %-80s %d%n", name, value));
+    });
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.examples.loadgen.cli;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.Parameters;
+import org.apache.ratis.client.RaftClient;
+import org.apache.ratis.examples.loadgen.LoadGenerator;
+import org.apache.ratis.examples.loadgen.LoadGenerator.Op;
+import org.apache.ratis.examples.loadgen.LoadReport;
+import org.apache.ratis.protocol.RaftGroup;
+import org.apache.ratis.protocol.RaftPeer;
+import org.apache.ratis.server.RaftServer;
+import org.apache.ratis.util.FileUtils;
+import org.apache.ratis.util.TimeDuration;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generate load to a cluster started by {@link Server}
+ * or, with --inProcess, to the servers started in this process.
+ */
+@Parameters(commandDescription = "Generate load and report the throughput and the latencies")
+public class Generate extends LoadGenCommand {
+  @Parameter(names = {"--writes"}, description = "Weight of the write requests")
+  private int writes = 1;
+
+  @Parameter(names = {"--reads"}, description = "Weight of the read requests")
+  private int reads = 0;
+
+  @Parameter(names = {"--staleReads"}, description = "Weight of the stale read requests")
+  private int staleReads = 0;
+
+  @Parameter(names = {"--watches"}, description = "Weight of the watch requests")
+  private int watches = 0;
+
+  @Parameter(names = {"--size"}, description = "Payload size of the write requests in bytes")
+  private int size = 1024;
+
+  @Parameter(names = {"--clients"}, description = "Number of clients")
+  private int numClients = 1;
+
+  @Parameter(names = {"--concurrency"}, description = "Number of outstanding requests in the closed-loop mode")
+  private int concurrency = 100;
+
+  @Parameter(names = {"--numRequests"}, description = "Number of requests; 0 means unlimited")
+  private long numRequests = 0;
+
+  @Parameter(names = {"--duration"}, description = "Duration in seconds")
+  private long duration = 60;
+
+  @Parameter(names = {"--rate"}, description = "Requests per second in the open-loop mode; 0 means closed-loop")
+  private double rate = 0;
+
+  @Parameter(names = {"--inProcess"}, description = "Start the peers as servers in this process")
+  private boolean inProcess = false;
+
+  @Override
+  public void run() throws Exception {
+    final RaftGroup group = getRaftGroup();
+    final List<RaftServer> servers = new ArrayList<>();
+    final List<File> dirs = new ArrayList<>();
+    final List<RaftClient> clients = new ArrayList<>();
+    try {
+      if (inProcess) {
+        for(RaftPeer peer : group.getPeers()) {
+          final File dir = Files.createTempDirectory("loadgen-" + peer.getId()).toFile();
+          dirs.add(dir);
+          final RaftServer server = newServer(peer, dir);
+          server.start();
+          servers.add(server);
+        }
+      }
+      for(int i = 0; i < numClients; i++) {
+        clients.add(RaftClient.newBuilder().setRaftGroup(group).setProperties(newProperties(null)).build());
+      }
+
+      final LoadGenerator generator = LoadGenerator.newBuilder()
+          .addClients(clients)
+          .addServers(group.getPeers())
+          .setWeight(Op.WRITE, writes)
+          .setWeight(Op.READ, reads)
+          .setWeight(Op.STALE_READ, staleReads)
+          .setWeight(Op.WATCH, watches)
+          .setPayloadSize(size)
+          .setConcurrency(concurrency)
+          .setNumRequests(numRequests)
+          .setDuration(TimeDuration.valueOf(duration, TimeUnit.SECONDS))
+          .setRate(rate)
+          .build();
+      System.out.println("Starting " + generator);
+      final LoadReport report = generator.run();
+      servers.forEach(s -> report.addServerCounters(s.getId()));
+      report.print(System.out);
+    } finally {
+      for(RaftClient client : clients) {
+        client.close();
+      }
+      for(RaftServer server : servers) {
+        server.close();
+      }
+      for(File dir : dirs) {
+        FileUtils.deleteFully(dir);
+      }
+    }
+  }
+}
@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.examples.loadgen.cli;
+
+import com.beust.jcommander.DynamicParameter;
+import com.beust.jcommander.Parameter;
+import org.apache.ratis.RaftConfigKeys;
+import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.examples.common.SubCommandBase;
+import org.apache.ratis.examples.loadgen.LoadGenStateMachine;
+import org.apache.ratis.grpc.GrpcConfigKeys;
+import org.apache.ratis.netty.NettyConfigKeys;
+import org.apache.ratis.protocol.RaftGroup;
+import org.apache.ratis.protocol.RaftGroupId;
+import org.apache.ratis.protocol.RaftPeer;
+import org.apache.ratis.rpc.RpcType;
+import org.apache.ratis.rpc.SupportedRpcType;
+import org.apache.ratis.server.RaftServer;
+import org.apache.ratis.server.RaftServerConfigKeys;
+import org.apache.ratis.thirdparty.com.google.protobuf.ByteString;
+import org.apache.ratis.util.NetUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The base of the load generator subcommands,
+ * which includes the rpc type and the additional raft properties.
+ */
+public abstract class LoadGenCommand extends SubCommandBase {
+  @Parameter(names = {"--rpcType"}, description = "Rpc type, GRPC or NETTY")
+  private String rpcType = SupportedRpcType.GRPC.name();
+
+  @DynamicParameter(names = "-D", description = "Raft properties, e.g. -Draft.server.log.force.sync.num=64")
+  private Map<String, String> conf = new HashMap<>();
+
+  RaftGroup getRaftGroup() {
+    return RaftGroup.valueOf(RaftGroupId.valueOf(ByteString.copyFromUtf8(raftGroupId)), getPeers());
+  }
+
+  /** @return the properties for a client if the peer is null; otherwise, for the server of the peer. */
+  RaftProperties newProperties(RaftPeer peer) {
+    final RaftProperties properties = new RaftProperties();
+    final RpcType type = RpcType.valueOf(rpcType);
+    RaftConfigKeys.Rpc.setType(properties, type);
+    if (peer != null) {
+      final int port = NetUtils.createSocketAddr(peer.getAddress()).getPort();
+      if (type == SupportedRpcType.GRPC) {
+        GrpcConfigKeys.Server.setPort(properties, port);
+      } else if (type == SupportedRpcType.NETTY) {
+        NettyConfigKeys.Server.setPort(properties, port);
+      } else {
+        throw new IllegalArgumentException("Unsupported rpc type " + type + " for starting a server");
+      }
+    }
+    conf.forEach(properties::set);
+    return properties;
+  }
+
+  RaftServer newServer(RaftPeer peer, File storageDir) throws IOException {
+    final RaftProperties properties = newProperties(peer);
+    RaftServerConfigKeys.setStorageDirs(properties, Collections.singletonList(storageDir));
+    return RaftServer.newBuilder()
+        .setServerId(peer.getId())
+        .setGroup(getRaftGroup())
+        .setStateMachine(new LoadGenStateMachine())
+        .setProperties(properties)
+        .build();
+  }
+}
@@ -0,0 +1,55 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.examples.loadgen.cli;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.Parameters;
+import org.apache.ratis.protocol.RaftPeer;
+import org.apache.ratis.protocol.RaftPeerId;
+import org.apache.ratis.server.RaftServer;
+import org.apache.ratis.util.LifeCycle;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Start a server with {@link org.apache.ratis.examples.loadgen.LoadGenStateMachine}.
+ */
+@Parameters(commandDescription = "Start a load generator server")
+public class Server extends LoadGenCommand {
+  @Parameter(names = {"--id", "-i"}, description = "Raft id of this server", required = true)
+  private String id;
+
+  @Parameter(names = {"--storage", "-s"}, description = "Storage dir", required = true)
+  private File storageDir;
+
+  @Override
+  public void run() throws Exception {
+    final RaftPeerId peerId = RaftPeerId.valueOf(id);
+    final RaftPeer peer = Stream.of(getPeers()).filter(p -> p.getId().equals(peerId)).findFirst()
+        .orElseThrow(() -> new IllegalArgumentException(
+            "Raft peer id " + id + " is not part of the raft group definitions " + peers));
+    final RaftServer server = newServer(peer, storageDir);
+    server.start();
+
+    for(; server.getLifeCycleState() != LifeCycle.State.CLOSED;) {
+      TimeUnit.SECONDS.sleep(1);
+    }
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.examples.loadgen;
+
+import org.apache.ratis.BaseTest;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestLatencyHistogram extends BaseTest {
+  @Test
+  public void testBuckets() {
+    Assert.assertEquals(LatencyHistogram.NUM_BUCKETS - 1, LatencyHistogram.getIndex(Long.MAX_VALUE));
+    for(int i = 0; i < LatencyHistogram.NUM_BUCKETS; i++) {
+      final long lower = LatencyHistogram.getLowerBound(i);
+      final long upper = LatencyHistogram.getUpperBound(i);
+      Assert.assertEquals(i, LatencyHistogram.getIndex(lower));
+      Assert.assertEquals(i, LatencyHistogram.getIndex(upper));
+      if (i > 0) {
+        Assert.assertEquals(LatencyHistogram.getUpperBound(i - 1) + 1, lower);
+      }
+    }
+  }
+
+  @Test
+  public void testPercentiles() {
+    final LatencyHistogram h = new LatencyHistogram();
+    Assert.assertEquals(0, h.getPercentile(99));
+
+    final int n = 100_000;
+    for(int i = 1; i <= n; i++) {
+      h.record(i * 1000L);
+    }
+    Assert.assertEquals(n, h.getCount());
+    Assert.assertEquals(n * 1000L, h.getMax());
+    Assert.assertEquals((n + 1) * 500.0, h.getMean(), 1e-6);
+    for(double p : new double[]{50, 99, 99.9, 100}) {
+      final double expected = p / 100 * n * 1000;
+      final long actual = h.getPercentile(p);
+      Assert.assertTrue(p + ": expected=" + expected + ", actual=" + actual,
+          actual >= expected && actual <= expected * (1 + 1.0 / LatencyHistogram.SUB_BUCKETS));
+    }
+  }
+
+  @Test
+  public void testSmallValues() {
+    // the values less than LINEAR_LIMIT are exact
+    final LatencyHistogram h = new LatencyHistogram();
+    for(int i = 0; i < LatencyHistogram.LINEAR_LIMIT; i++) {
+      h.record(i);
+    }
+    Assert.assertEquals(0, h.getPercentile(0));
+    Assert.assertEquals(LatencyHistogram.LINEAR_LIMIT / 2 - 1, h.getPercentile(50));
+    Assert.assertEquals(LatencyHistogram.LINEAR_LIMIT - 1, h.getPercentile(100));
+  }
+}
@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.examples.loadgen;
+
+import org.apache.ratis.MiniRaftCluster;
+import org.apache.ratis.client.RaftClient;
+import org.apache.ratis.examples.ParameterizedBaseTest;
+import org.apache.ratis.examples.loadgen.LoadGenerator.Op;
+import org.apache.ratis.grpc.MiniRaftClusterWithGrpc;
+import org.apache.ratis.netty.MiniRaftClusterWithNetty;
+import org.apache.ratis.protocol.Message;
+import org.apache.ratis.protocol.RaftClientReply;
+import org.apache.ratis.util.TimeDuration;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runners.Parameterized;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+public class TestLoadGenerator extends ParameterizedBaseTest {
+  @Parameterized.Parameters
+  public static Collection<Object[]> data() throws IOException {
+    // the simulated client rpc does not support async requests
+    return getMiniRaftClusters(LoadGenStateMachine.class, 3,
+        MiniRaftClusterWithGrpc.class, MiniRaftClusterWithNetty.class);
+  }
+
+  @Parameterized.Parameter
+  public MiniRaftCluster cluster;
+
+  @Test
+  public void testClosedLoop() throws Exception {
+    setAndStart(cluster);
+    try (final RaftClient client = cluster.createClient()) {
+      final long numWrites = getNumTransactions(client);
+      final int numRequests = 200;
+      final LoadReport report = LoadGenerator.newBuilder()
+          .addClients(Collections.singletonList(client))
+          .addServers(cluster.getPeers())
+          .setWeight(Op.WRITE, 4)
+          .setWeight(Op.READ, 1)
+          .setWeight(Op.STALE_READ, 1)
+          .setWeight(Op.WATCH, 1)
+          .setPayloadSize(100)
+          .setConcurrency(10)
+          .setNumRequests(numRequests)
+          .build()
+          .run();
+      assertLatencies(report);
+
+      long count = 0;
+      for(Op op : Op.values()) {
+        final LoadReport.OpStats stats = report.getStats(op);
+        Assert.assertEquals(op + " failed", 0, stats.getErrors());
+        count += stats.getCount();
+      }
+      Assert.assertEquals(numRequests, count);
+
+      final LoadReport.OpStats writes = report.getStats(Op.WRITE);
+      Assert.assertEquals(100 * writes.getCount(), writes.getBytes());
+      Assert.assertEquals(numWrites + writes.getCount(), getNumTransactions(client));
+      Assert.assertEquals(count, report.getReplies().values().stream().mapToLong(Long::longValue).sum());
+    }
+  }
+
+  @Test
+  public void testOpenLoop() throws Exception {
+    setAndStart(cluster);
+    try (final RaftClient client = cluster.createClient()) {
+      final int numRequests = 50;
+      final double rate = 200;
+      final LoadReport report = LoadGenerator.newBuilder()
+          .addClients(Collections.singletonList(client))
+          .setNumRequests(numRequests)
+          .setDuration(TimeDuration.valueOf(1, TimeUnit.MINUTES))
+          .setRate(rate)
+          .build()
+          .run();
+      assertLatencies(report);
+
+      final LoadReport.OpStats writes = report.getStats(Op.WRITE);
+      Assert.assertEquals(0, writes.getErrors());
+      Assert.assertEquals(numRequests, writes.getCount());
+      // the last request is scheduled at (numRequests - 1)/rate seconds
+      final long minElapsed = TimeUnit.SECONDS.toNanos(numRequests - 1) / (long) rate;
+      Assert.assertTrue(report.getElapsedNanos() >= minElapsed);
+    }
+  }
+
+  /** Assert the latencies and the throughput of the ops which have been sent. */
+  static void assertLatencies(LoadReport report) {
+    for(Op op : Op.values()) {
+      final LoadReport.OpStats stats = report.getStats(op);
+      if (stats.getCount() == 0) {
+        continue;
+      }
+      final LatencyHistogram latency = stats.getLatency();
+      Assert.assertTrue(op + " max latency", latency.getMax() > 0);
+      Assert.assertTrue(op + " p50 latency", latency.getPercentile(50) <= latency.getPercentile(99));
+      Assert.assertTrue(op + " p99 latency", latency.getPercentile(99) <= latency.getMax());
+      Assert.assertTrue(op + " throughput", report.getThroughput(op) > 0);
+    }
+  }
+
+  static long getNumTransactions(RaftClient client) throws IOException {
+    final RaftClientReply reply = client.sendReadOnly(Message.EMPTY);
+    Assert.assertTrue(reply.isSuccess());
+    return LoadGenStateMachine.toLong(reply.getMessage());
+  }
+}
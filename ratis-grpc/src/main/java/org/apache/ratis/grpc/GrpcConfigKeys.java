@@ -108,6 +108,17 @@ public interface GrpcConfigKeys {
     static void setLeaderOutstandingAppendsMax(RaftProperties properties, int maxAppend) {
       setInt(properties::setInt, LEADER_OUTSTANDING_APPENDS_MAX_KEY, maxAppend);
     }
+
+    /** The max number of snapshot chunks sent to a follower but not yet acknowledged. */
+    String LEADER_OUTSTANDING_SNAPSHOT_CHUNKS_MAX_KEY = PREFIX + ".leader.outstanding.snapshot.chunks.max";
+    int LEADER_OUTSTANDING_SNAPSHOT_CHUNKS_MAX_DEFAULT = 4;
+    static int leaderOutstandingSnapshotChunksMax(RaftProperties properties) {
+      return getInt(properties::getInt, LEADER_OUTSTANDING_SNAPSHOT_CHUNKS_MAX_KEY,
+          LEADER_OUTSTANDING_SNAPSHOT_CHUNKS_MAX_DEFAULT, getDefaultLog(), requireMin(1));
+    }
+    static void setLeaderOutstandingSnapshotChunksMax(RaftProperties properties, int maxChunks) {
+      setInt(properties::setInt, LEADER_OUTSTANDING_SNAPSHOT_CHUNKS_MAX_KEY, maxChunks);
+    }
   }
 
   interface OutputStream {
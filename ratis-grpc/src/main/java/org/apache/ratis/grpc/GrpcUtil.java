@@ -17,8 +17,10 @@
  */
 package org.apache.ratis.grpc;
 
+import org.apache.ratis.proto.RaftProtos.ThrowableProto;
 import org.apache.ratis.protocol.RaftClientReply;
 import org.apache.ratis.protocol.ServerNotReadyException;
+import org.apache.ratis.thirdparty.com.google.protobuf.InvalidProtocolBufferException;
 import org.apache.ratis.thirdparty.io.grpc.Metadata;
 import org.apache.ratis.thirdparty.io.grpc.Status;
 import org.apache.ratis.thirdparty.io.grpc.StatusRuntimeException;
@@ -26,6 +28,7 @@ import org.apache.ratis.thirdparty.io.grpc.stub.StreamObserver;
 import org.apache.ratis.util.IOUtils;
 import org.apache.ratis.util.JavaUtils;
 import org.apache.ratis.util.LogUtils;
+import org.apache.ratis.util.ProtoUtils;
 import org.apache.ratis.util.ReflectionUtils;
 import org.apache.ratis.util.function.CheckedSupplier;
 import org.slf4j.Logger;
@@ -38,6 +41,9 @@ import java.util.function.Supplier;
 public interface GrpcUtil {
   Metadata.Key<String> EXCEPTION_TYPE_KEY =
       Metadata.Key.of("exception-type", Metadata.ASCII_STRING_MARSHALLER);
+  /** The exception encoded as a {@link ThrowableProto}, without the stack traces. */
+  Metadata.Key<byte[]> EXCEPTION_KEY =
+      Metadata.Key.of("exception" + Metadata.BINARY_HEADER_SUFFIX, Metadata.BINARY_BYTE_MARSHALLER);
   Metadata.Key<String> CALL_ID =
       Metadata.Key.of("call-id", Metadata.ASCII_STRING_MARSHALLER);
 
@@ -50,6 +56,7 @@ public interface GrpcUtil {
 
     Metadata trailers = new Metadata();
     trailers.put(EXCEPTION_TYPE_KEY, t.getClass().getCanonicalName());
+    trailers.put(EXCEPTION_KEY, ProtoUtils.toThrowableProto(t, false).toByteArray());
     if (callId > 0) {
       trailers.put(CALL_ID, String.valueOf(callId));
     }
@@ -74,6 +81,17 @@ public interface GrpcUtil {
 
   static IOException tryUnwrapException(StatusRuntimeException se) {
     final Metadata trailers = se.getTrailers();
+    if (trailers != null) {
+      final byte[] bytes = trailers.get(EXCEPTION_KEY);
+      if (bytes != null) {
+        try {
+          return ProtoUtils.toIOException(ThrowableProto.parseFrom(bytes));
+        } catch (InvalidProtocolBufferException e) {
+          se.addSuppressed(e);
+        }
+      }
+    }
+
     final Status status = se.getStatus();
     if (trailers != null && status != null) {
       final String className = trailers.get(EXCEPTION_TYPE_KEY);
@@ -80,10 +80,17 @@ public class GrpcClientProtocolService extends RaftClientProtocolServiceImplBase
 
   private final Supplier<RaftPeerId> idSupplier;
   private final RaftClientAsynchronousProtocol protocol;
+  private final boolean exceptionStackTraceEnabled;
 
-  public GrpcClientProtocolService(Supplier<RaftPeerId> idSupplier, RaftClientAsynchronousProtocol protocol) {
+  public GrpcClientProtocolService(Supplier<RaftPeerId> idSupplier, RaftClientAsynchronousProtocol protocol,
+      boolean exceptionStackTraceEnabled) {
     this.idSupplier = idSupplier;
     this.protocol = protocol;
+    this.exceptionStackTraceEnabled = exceptionStackTraceEnabled;
+  }
+
+  private RaftClientReplyProto toRaftClientReplyProto(RaftClientReply reply) {
+    return ClientProtoUtils.toRaftClientReplyProto(reply, exceptionStackTraceEnabled);
   }
 
   RaftPeerId getId() {
@@ -95,7 +102,7 @@ public class GrpcClientProtocolService extends RaftClientProtocolServiceImplBase
       StreamObserver<RaftClientReplyProto> responseObserver) {
     final SetConfigurationRequest request = ClientProtoUtils.toSetConfigurationRequest(proto);
     GrpcUtil.asyncCall(responseObserver, () -> protocol.setConfigurationAsync(request),
-        ClientProtoUtils::toRaftClientReplyProto);
+        this::toRaftClientReplyProto);
   }
 
   @Override
@@ -155,7 +162,7 @@ public class GrpcClientProtocolService extends RaftClientProtocolServiceImplBase
         } else {
           LOG.debug("{}: sendReply seq={}, {}", name, ready.getSeqNum(), ready.getReply());
           responseObserver.onNext(
-              ClientProtoUtils.toRaftClientReplyProto(ready.getReply()));
+              toRaftClientReplyProto(ready.getReply()));
         }
     }
 
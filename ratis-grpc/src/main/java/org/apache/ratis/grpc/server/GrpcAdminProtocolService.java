@@ -31,16 +31,18 @@ import org.apache.ratis.proto.grpc.AdminProtocolServiceGrpc.AdminProtocolService
 
 public class GrpcAdminProtocolService extends AdminProtocolServiceImplBase {
   private final AdminAsynchronousProtocol protocol;
+  private final boolean exceptionStackTraceEnabled;
 
-  public GrpcAdminProtocolService(AdminAsynchronousProtocol protocol) {
+  public GrpcAdminProtocolService(AdminAsynchronousProtocol protocol, boolean exceptionStackTraceEnabled) {
     this.protocol = protocol;
+    this.exceptionStackTraceEnabled = exceptionStackTraceEnabled;
   }
 
   @Override
   public void groupManagement(GroupManagementRequestProto proto, StreamObserver<RaftClientReplyProto> responseObserver) {
     final GroupManagementRequest request = ClientProtoUtils.toGroupManagementRequest(proto);
     GrpcUtil.asyncCall(responseObserver, () -> protocol.groupManagementAsync(request),
-        ClientProtoUtils::toRaftClientReplyProto);
+        reply -> ClientProtoUtils.toRaftClientReplyProto(reply, exceptionStackTraceEnabled));
   }
 
   @Override
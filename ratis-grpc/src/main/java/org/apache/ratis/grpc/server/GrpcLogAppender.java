@@ -48,12 +48,15 @@ public class GrpcLogAppender extends LogAppender {
 
   private final GrpcService rpcService;
   private final Map<Long, AppendEntriesRequestProto> pendingRequests;
+  /** The send times of the pending requests, for acknowledging the leadership. */
+  private final Map<Long, Timestamp> pendingRequestSendTimes = new ConcurrentHashMap<>();
   private final int maxPendingRequestsNum;
+  private final int maxPendingSnapshotChunks;
   private long callId = 0;
   private volatile boolean firstResponseReceived = false;
 
   private final TimeDuration requestTimeoutDuration;
-  private final TimeoutScheduler scheduler = TimeoutScheduler.newInstance(1);
+  private final TimeoutScheduler scheduler;
 
   private volatile StreamObserver<AppendEntriesRequestProto> appendLogRequestObserver;
 
@@ -62,9 +65,12 @@ public class GrpcLogAppender extends LogAppender {
     super(server, leaderState, f);
 
     this.rpcService = (GrpcService) server.getServerRpc();
+    this.scheduler = server.getProxy().getExecutors().getScheduler();
 
     maxPendingRequestsNum = GrpcConfigKeys.Server.leaderOutstandingAppendsMax(
         server.getProxy().getProperties());
+    maxPendingSnapshotChunks = GrpcConfigKeys.Server.leaderOutstandingSnapshotChunksMax(
+        server.getProxy().getProperties());
     requestTimeoutDuration = RaftServerConfigKeys.Rpc.requestTimeout(server.getProxy().getProperties());
     pendingRequests = new ConcurrentHashMap<>();
   }
@@ -171,6 +177,7 @@ public class GrpcLogAppender extends LogAppender {
     CodeInjectionForTesting.execute(GrpcService.GRPC_SEND_SERVER_REQUEST,
         server.getId(), null, request);
 
+    pendingRequestSendTimes.put(request.getServerRequest().getCallId(), Timestamp.currentTime());
     s.onNext(request);
     scheduler.onTimeout(requestTimeoutDuration, () -> timeoutAppendRequest(request), LOG,
         () -> "Timeout check failed for append entry request: " + request);
@@ -179,6 +186,7 @@ public class GrpcLogAppender extends LogAppender {
 
   private void timeoutAppendRequest(AppendEntriesRequestProto request) {
     AppendEntriesRequestProto pendingRequest = pendingRequests.remove(request.getServerRequest().getCallId());
+    pendingRequestSendTimes.remove(request.getServerRequest().getCallId());
     if (pendingRequest != null) {
       LOG.warn( "{}: appendEntries Timeout, request={}", this, ProtoUtils.toString(pendingRequest.getServerRequest()));
     }
@@ -221,6 +229,11 @@ public class GrpcLogAppender extends LogAppender {
     private void onNextImpl(AppendEntriesReplyProto reply) {
       // update the last rpc time
       follower.updateLastRpcResponseTime();
+      final Timestamp sendTime = pendingRequestSendTimes.remove(reply.getServerReply().getCallId());
+      if (sendTime != null) {
+        updateRoundTripTime(sendTime);
+        acknowledgeLeadership(reply, sendTime);
+      }
 
       if (!firstResponseReceived) {
         firstResponseReceived = true;
@@ -265,6 +278,7 @@ public class GrpcLogAppender extends LogAppender {
 
   private void clearPendingRequests(long newNextIndex) {
     pendingRequests.clear();
+    pendingRequestSendTimes.clear();
     follower.decreaseNextIndex(newNextIndex);
   }
 
@@ -315,17 +329,21 @@ public class GrpcLogAppender extends LogAppender {
       return;
     }
     Preconditions.assertTrue(request.hasPreviousLog());
-    if (request.getPreviousLog().getIndex() >= reply.getNextIndex()) {
-      clearPendingRequests(reply.getNextIndex());
+    final long nextIndex = getNextIndexForInconsistency(reply);
+    if (request.getPreviousLog().getIndex() >= nextIndex) {
+      clearPendingRequests(nextIndex);
     }
   }
 
   private class InstallSnapshotResponseHandler
       implements StreamObserver<InstallSnapshotReplyProto> {
+    private final SnapshotRequestIter requests;
     private final Queue<Integer> pending;
     private final AtomicBoolean done = new AtomicBoolean(false);
+    private volatile boolean outOfOrder = false;
 
-    InstallSnapshotResponseHandler() {
+    InstallSnapshotResponseHandler(SnapshotRequestIter requests) {
+      this.requests = requests;
       pending = new LinkedList<>();
     }
 
@@ -336,14 +354,34 @@ public class GrpcLogAppender extends LogAppender {
     synchronized void removePending(InstallSnapshotReplyProto reply) {
       int index = pending.poll();
       Preconditions.assertTrue(index == reply.getRequestIndex());
+      requests.acknowledge(index);
+      notifyAll();
+    }
+
+    /**
+     * Wait until the number of pending requests is below the given limit.
+     * @return true if more requests can be sent; otherwise, the handler is done.
+     */
+    synchronized boolean waitForPending(int limit) throws InterruptedException {
+      while (pending.size() >= limit && !isDone() && isAppenderRunning()) {
+        wait();
+      }
+      return !isDone();
     }
 
     boolean isDone() {
       return done.get();
     }
 
+    boolean isOutOfOrder() {
+      return outOfOrder;
+    }
+
     void close() {
       done.set(true);
+      synchronized (this) {
+        notifyAll();
+      }
       GrpcLogAppender.this.notifyAppend();
     }
 
@@ -353,6 +391,14 @@ public class GrpcLogAppender extends LogAppender {
 
     @Override
     public void onNext(InstallSnapshotReplyProto reply) {
+      try {
+        onNextImpl(reply);
+      } catch(Throwable t) {
+        LOG.error("Failed onNext " + reply, t);
+      }
+    }
+
+    private void onNextImpl(InstallSnapshotReplyProto reply) {
       LOG.debug("{} received {} response from {}", server.getId(),
           (!firstResponseReceived ? "the first" : "a"),
           follower.getPeer());
@@ -371,6 +417,10 @@ public class GrpcLogAppender extends LogAppender {
         case NOT_LEADER:
           checkResponseTerm(reply.getTerm());
           break;
+        case OUT_OF_ORDER:
+          outOfOrder = true;
+          close();
+          break;
         case UNRECOGNIZED:
           break;
       }
@@ -402,17 +452,17 @@ public class GrpcLogAppender extends LogAppender {
         server.getId(), follower.getPeer(), follower.getNextIndex(),
         raftLog.getStartIndex());
 
-    final InstallSnapshotResponseHandler responseHandler = new InstallSnapshotResponseHandler();
+    final SnapshotRequestIter requests = getSnapshotRequests(snapshot);
+    final InstallSnapshotResponseHandler responseHandler = new InstallSnapshotResponseHandler(requests);
     StreamObserver<InstallSnapshotRequestProto> snapshotRequestObserver = null;
-    final String requestId = UUID.randomUUID().toString();
     try {
       snapshotRequestObserver = getClient().installSnapshot(responseHandler);
-      for (InstallSnapshotRequestProto request :
-          new SnapshotRequestIter(snapshot, requestId)) {
-        if (isAppenderRunning()) {
+      for (InstallSnapshotRequestProto request : requests) {
+        if (isAppenderRunning() && responseHandler.waitForPending(maxPendingSnapshotChunks)) {
+          // add to pending before sending since the reply may arrive before onNext returns
+          responseHandler.addPending(request);
           snapshotRequestObserver.onNext(request);
           follower.updateLastRpcSendTime();
-          responseHandler.addPending(request);
         } else {
           break;
         }
@@ -436,7 +486,10 @@ public class GrpcLogAppender extends LogAppender {
       }
     }
 
-    if (responseHandler.hasAllResponse()) {
+    if (responseHandler.isOutOfOrder()) {
+      resetSnapshotRequests();
+    } else if (responseHandler.hasAllResponse()) {
+      resetSnapshotRequests();
       follower.setSnapshotIndex(snapshot.getTermIndex().getIndex());
       LOG.info("{}: install snapshot-{} successfully on follower {}",
           server.getId(), snapshot.getTermIndex().getIndex(), follower.getPeer());
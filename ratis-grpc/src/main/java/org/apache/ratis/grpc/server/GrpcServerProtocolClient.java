@@ -84,6 +84,12 @@ public class GrpcServerProtocolClient implements Closeable {
     return r;
   }
 
+  public ReadIndexReplyProto readIndex(ReadIndexRequestProto request) {
+    // the StatusRuntimeException will be handled by the caller
+    return blockingStub.withDeadlineAfter(requestTimeoutDuration.getDuration(), requestTimeoutDuration.getUnit())
+        .readIndex(request);
+  }
+
   StreamObserver<AppendEntriesRequestProto> appendEntries(
       StreamObserver<AppendEntriesReplyProto> responseHandler) {
     return asyncStub.appendEntries(responseHandler);
@@ -61,6 +61,25 @@ public class GrpcServerProtocolService extends RaftServerProtocolServiceImplBase
     }
   }
 
+  @Override
+  public void readIndex(ReadIndexRequestProto request,
+      StreamObserver<ReadIndexReplyProto> responseObserver) {
+    try {
+      server.readIndexAsync(request).whenComplete((reply, e) -> {
+        if (e != null) {
+          GrpcUtil.warn(LOG, () -> getId() + ": Failed readIndex " + ProtoUtils.toString(request.getServerRequest()), e);
+          responseObserver.onError(GrpcUtil.wrapException(e));
+        } else {
+          responseObserver.onNext(reply);
+          responseObserver.onCompleted();
+        }
+      });
+    } catch (Throwable e) {
+      GrpcUtil.warn(LOG, () -> getId() + ": Failed readIndex " + ProtoUtils.toString(request.getServerRequest()), e);
+      responseObserver.onError(GrpcUtil.wrapException(e));
+    }
+  }
+
   @Override
   public StreamObserver<AppendEntriesRequestProto> appendEntries(
       StreamObserver<AppendEntriesReplyProto> responseObserver) {
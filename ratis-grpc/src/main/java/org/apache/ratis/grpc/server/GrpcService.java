@@ -103,12 +103,14 @@ public class GrpcService extends RaftServerRpcWithProxy<GrpcServerProtocolClient
           + " > " + GrpcConfigKeys.MESSAGE_SIZE_MAX_KEY + " = " + grpcMessageSizeMax);
     }
 
+    final boolean exceptionStackTraceEnabled
+        = RaftServerConfigKeys.Rpc.exceptionStackTraceEnabled(raftServer.getProperties());
     NettyServerBuilder nettyServerBuilder = NettyServerBuilder.forPort(port)
         .maxInboundMessageSize(grpcMessageSizeMax.getSizeInt())
         .flowControlWindow(flowControlWindow.getSizeInt())
         .addService(new GrpcServerProtocolService(idSupplier, raftServer))
-        .addService(new GrpcClientProtocolService(idSupplier, raftServer))
-        .addService(new GrpcAdminProtocolService(raftServer));
+        .addService(new GrpcClientProtocolService(idSupplier, raftServer, exceptionStackTraceEnabled))
+        .addService(new GrpcAdminProtocolService(raftServer, exceptionStackTraceEnabled));
 
     if (tlsConfig != null) {
       SslContextBuilder sslContextBuilder =
@@ -186,4 +188,13 @@ public class GrpcService extends RaftServerRpcWithProxy<GrpcServerProtocolClient
     final RaftPeerId target = RaftPeerId.valueOf(request.getServerRequest().getReplyId());
     return getProxies().getProxy(target).requestVote(request);
   }
+
+  @Override
+  public ReadIndexReplyProto readIndex(ReadIndexRequestProto request) throws IOException {
+    CodeInjectionForTesting.execute(GRPC_SEND_SERVER_REQUEST, getId(),
+        null, request);
+
+    final RaftPeerId target = RaftPeerId.valueOf(request.getServerRequest().getReplyId());
+    return getProxies().getProxy(target).readIndex(request);
+  }
 }
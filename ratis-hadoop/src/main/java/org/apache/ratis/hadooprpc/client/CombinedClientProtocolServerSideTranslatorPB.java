@@ -24,6 +24,7 @@ import org.apache.ratis.client.impl.ClientProtoUtils;
 import org.apache.ratis.proto.RaftProtos;
 import org.apache.ratis.protocol.*;
 import org.apache.ratis.server.RaftServer;
+import org.apache.ratis.server.RaftServerConfigKeys;
 import org.apache.ratis.thirdparty.com.google.protobuf.RpcController;
 import org.apache.ratis.thirdparty.com.google.protobuf.ServiceException;
 import org.apache.ratis.proto.RaftProtos.RaftClientReplyProto;
@@ -40,9 +41,15 @@ import org.apache.ratis.proto.RaftProtos.GroupInfoReplyProto;
 public class CombinedClientProtocolServerSideTranslatorPB
     implements CombinedClientProtocolPB {
   private final RaftServer impl;
+  private final boolean exceptionStackTraceEnabled;
 
   public CombinedClientProtocolServerSideTranslatorPB(RaftServer impl) {
     this.impl = impl;
+    this.exceptionStackTraceEnabled = RaftServerConfigKeys.Rpc.exceptionStackTraceEnabled(impl.getProperties());
+  }
+
+  private RaftClientReplyProto toRaftClientReplyProto(RaftClientReply reply) {
+    return ClientProtoUtils.toRaftClientReplyProto(reply, exceptionStackTraceEnabled);
   }
 
   @Override
@@ -52,7 +59,7 @@ public class CombinedClientProtocolServerSideTranslatorPB
     final RaftClientRequest request = ClientProtoUtils.toRaftClientRequest(proto);
     try {
       final RaftClientReply reply = impl.submitClientRequest(request);
-      return ClientProtoUtils.toRaftClientReplyProto(reply);
+      return toRaftClientReplyProto(reply);
     } catch(IOException ioe) {
       throw new ServiceException(ioe);
     }
@@ -66,7 +73,7 @@ public class CombinedClientProtocolServerSideTranslatorPB
     try {
       request = ClientProtoUtils.toSetConfigurationRequest(proto);
       final RaftClientReply reply = impl.setConfiguration(request);
-      return ClientProtoUtils.toRaftClientReplyProto(reply);
+      return toRaftClientReplyProto(reply);
     } catch(IOException ioe) {
       throw new ServiceException(ioe);
     }
@@ -79,7 +86,7 @@ public class CombinedClientProtocolServerSideTranslatorPB
     try {
       request = ClientProtoUtils.toGroupManagementRequest(proto);
       final RaftClientReply reply = impl.groupManagement(request);
-      return ClientProtoUtils.toRaftClientReplyProto(reply);
+      return toRaftClientReplyProto(reply);
     } catch(IOException ioe) {
       throw new ServiceException(ioe);
     }
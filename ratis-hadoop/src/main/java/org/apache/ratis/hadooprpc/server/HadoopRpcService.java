@@ -28,6 +28,8 @@ import org.apache.ratis.proto.RaftProtos.AppendEntriesReplyProto;
 import org.apache.ratis.proto.RaftProtos.AppendEntriesRequestProto;
 import org.apache.ratis.proto.RaftProtos.InstallSnapshotReplyProto;
 import org.apache.ratis.proto.RaftProtos.InstallSnapshotRequestProto;
+import org.apache.ratis.proto.RaftProtos.ReadIndexReplyProto;
+import org.apache.ratis.proto.RaftProtos.ReadIndexRequestProto;
 import org.apache.ratis.proto.RaftProtos.RequestVoteReplyProto;
 import org.apache.ratis.proto.RaftProtos.RequestVoteRequestProto;
 import org.apache.ratis.proto.hadoop.HadoopProtos.CombinedClientProtocolService;
@@ -180,6 +182,13 @@ public class HadoopRpcService extends RaftServerRpcWithProxy<Proxy<RaftServerPro
         proxy -> proxy.requestVote(null, request));
   }
 
+  @Override
+  public ReadIndexReplyProto readIndex(
+      ReadIndexRequestProto request) throws IOException {
+    return processRequest(request, request.getServerRequest().getReplyId(),
+        proxy -> proxy.readIndex(null, request));
+  }
+
   private <REQUEST, REPLY> REPLY processRequest(
       REQUEST request, ByteString replyId,
       CheckedFunction<RaftServerProtocolPB, REPLY, ServiceException> f)
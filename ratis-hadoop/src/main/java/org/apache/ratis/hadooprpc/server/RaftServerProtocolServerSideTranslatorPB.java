@@ -27,6 +27,8 @@ import org.apache.ratis.proto.RaftProtos.AppendEntriesReplyProto;
 import org.apache.ratis.proto.RaftProtos.AppendEntriesRequestProto;
 import org.apache.ratis.proto.RaftProtos.InstallSnapshotReplyProto;
 import org.apache.ratis.proto.RaftProtos.InstallSnapshotRequestProto;
+import org.apache.ratis.proto.RaftProtos.ReadIndexReplyProto;
+import org.apache.ratis.proto.RaftProtos.ReadIndexRequestProto;
 import org.apache.ratis.proto.RaftProtos.RequestVoteReplyProto;
 import org.apache.ratis.proto.RaftProtos.RequestVoteRequestProto;
 
@@ -70,4 +72,14 @@ public class RaftServerProtocolServerSideTranslatorPB
       throw new ServiceException(ioe);
     }
   }
+
+  @Override
+  public ReadIndexReplyProto readIndex(RpcController controller,
+      ReadIndexRequestProto request) throws ServiceException {
+    try {
+      return impl.readIndex(request);
+    } catch(IOException ioe) {
+      throw new ServiceException(ioe);
+    }
+  }
 }
@@ -135,12 +135,21 @@ public class MetaServiceProtoUtil {
     }
 
     public static MetaServiceExceptionProto toMetaServiceExceptionProto(Exception exception) {
+        return toMetaServiceExceptionProto(exception, false);
+    }
+
+    public static MetaServiceExceptionProto toMetaServiceExceptionProto(
+            Exception exception, boolean includeStackTrace) {
         final Throwable t = exception.getCause() != null ? exception.getCause() : exception;
-        return MetaServiceExceptionProto.newBuilder()
-                .setExceptionClassName(t.getClass().getName())
-                .setErrorMsg(t.getMessage())
-                .setStacktrace(ProtoUtils.writeObject2ByteString(t.getStackTrace()))
-                .build();
+        final MetaServiceExceptionProto.Builder builder = MetaServiceExceptionProto.newBuilder()
+                .setExceptionClassName(t.getClass().getName());
+        if (t.getMessage() != null) {
+            builder.setErrorMsg(t.getMessage());
+        }
+        if (includeStackTrace) {
+            builder.addAllStackTrace(ProtoUtils.toStackTraceElementProtos(t.getStackTrace()));
+        }
+        return builder.build();
     }
 
     public static CreateLogReplyProto.Builder toCreateLogExceptionReplyProto(Exception e) {
@@ -166,9 +175,9 @@ public class MetaServiceProtoUtil {
             } else {
                 result = new IOException(e);
             }
-            StackTraceElement[] stacktrace =
-                    (StackTraceElement[]) ProtoUtils.toObject(exceptionProto.getStacktrace());
-            result.setStackTrace(stacktrace);
+            if (exceptionProto.getStackTraceCount() > 0) {
+                result.setStackTrace(ProtoUtils.toStackTrace(exceptionProto.getStackTraceList()));
+            }
 
             return result;
         } catch (Exception e) {
@@ -28,6 +28,27 @@ import static org.apache.ratis.conf.ConfUtils.*;
 public interface NettyConfigKeys {
   String PREFIX = "raft.netty";
 
+  interface Client {
+    Logger LOG = LoggerFactory.getLogger(Client.class);
+    static Consumer<String> getDefaultLog() {
+      return LOG::info;
+    }
+
+    String PREFIX = NettyConfigKeys.PREFIX + ".client";
+
+    /** Use the native epoll transport if it is available. */
+    String USE_EPOLL_KEY = PREFIX + ".use.epoll";
+    boolean USE_EPOLL_DEFAULT = false;
+
+    static boolean useEpoll(RaftProperties properties) {
+      return getBoolean(properties::getBoolean, USE_EPOLL_KEY, USE_EPOLL_DEFAULT, getDefaultLog());
+    }
+
+    static void setUseEpoll(RaftProperties properties, boolean useEpoll) {
+      setBoolean(properties::setBoolean, USE_EPOLL_KEY, useEpoll);
+    }
+  }
+
   interface Server {
     Logger LOG = LoggerFactory.getLogger(Server.class);
     static Consumer<String> getDefaultLog() {
@@ -47,6 +68,34 @@ public interface NettyConfigKeys {
     static void setPort(RaftProperties properties, int port) {
       setInt(properties::setInt, PORT_KEY, port);
     }
+
+    /** Use the native epoll transport if it is available. */
+    String USE_EPOLL_KEY = PREFIX + ".use.epoll";
+    boolean USE_EPOLL_DEFAULT = false;
+
+    static boolean useEpoll(RaftProperties properties) {
+      return getBoolean(properties::getBoolean, USE_EPOLL_KEY, USE_EPOLL_DEFAULT, getDefaultLog());
+    }
+
+    static void setUseEpoll(RaftProperties properties, boolean useEpoll) {
+      setBoolean(properties::setBoolean, USE_EPOLL_KEY, useEpoll);
+    }
+
+    /**
+     * The number of threads for handling the requests,
+     * so that the requests are not handled in the event loop threads.
+     */
+    String HANDLER_THREADS_KEY = PREFIX + ".handler.threads";
+    int HANDLER_THREADS_DEFAULT = 16;
+
+    static int handlerThreads(RaftProperties properties) {
+      return getInt(properties::getInt, HANDLER_THREADS_KEY, HANDLER_THREADS_DEFAULT, getDefaultLog(),
+          requireMin(1));
+    }
+
+    static void setHandlerThreads(RaftProperties properties, int handlerThreads) {
+      setInt(properties::setInt, HANDLER_THREADS_KEY, handlerThreads);
+    }
   }
 
   static void main(String[] args) {
@@ -18,8 +18,8 @@
 package org.apache.ratis.netty;
 
 import org.apache.ratis.protocol.RaftPeer;
+import org.apache.ratis.protocol.TimeoutIOException;
 import org.apache.ratis.thirdparty.io.netty.channel.*;
-import org.apache.ratis.thirdparty.io.netty.channel.nio.NioEventLoopGroup;
 import org.apache.ratis.thirdparty.io.netty.channel.socket.SocketChannel;
 import org.apache.ratis.thirdparty.io.netty.handler.codec.protobuf.ProtobufDecoder;
 import org.apache.ratis.thirdparty.io.netty.handler.codec.protobuf.ProtobufEncoder;
@@ -31,29 +31,40 @@ import org.apache.ratis.proto.netty.NettyProtos.RaftNettyServerRequestProto;
 import org.apache.ratis.util.IOUtils;
 import org.apache.ratis.util.PeerProxyMap;
 import org.apache.ratis.util.ProtoUtils;
+import org.apache.ratis.util.TimeDuration;
+import org.apache.ratis.util.TimeoutScheduler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.Closeable;
 import java.io.IOException;
-import java.util.LinkedList;
-import java.util.Queue;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.apache.ratis.proto.netty.NettyProtos.RaftNettyServerReplyProto.RaftNettyServerReplyCase.EXCEPTIONREPLY;
 
 public class NettyRpcProxy implements Closeable {
+  public static final Logger LOG = LoggerFactory.getLogger(NettyRpcProxy.class);
+
   public static class PeerMap extends PeerProxyMap<NettyRpcProxy> {
-    private final EventLoopGroup group = new NioEventLoopGroup();
+    private final EventLoopGroup group;
+    private final TimeDuration requestTimeout;
+    private final TimeoutScheduler scheduler = TimeoutScheduler.newInstance(1);
 
-    public PeerMap(String name) {
+    public PeerMap(String name, boolean useEpoll, TimeDuration requestTimeout) {
       super(name);
+      this.group = NettyUtils.newEventLoopGroup(0, useEpoll);
+      this.requestTimeout = requestTimeout;
     }
 
     @Override
     public NettyRpcProxy createProxyImpl(RaftPeer peer)
         throws IOException {
       try {
-        return new NettyRpcProxy(peer, group);
+        return new NettyRpcProxy(peer, this);
       } catch (InterruptedException e) {
         throw IOUtils.toInterruptedIOException("Failed connecting to " + peer, e);
       }
@@ -74,6 +85,8 @@ public class NettyRpcProxy implements Closeable {
         return proto.getAppendEntriesReply().getServerReply().getCallId();
       case INSTALLSNAPSHOTREPLY:
         return proto.getInstallSnapshotReply().getServerReply().getCallId();
+      case READINDEXREPLY:
+        return proto.getReadIndexReply().getServerReply().getCallId();
       case RAFTCLIENTREPLY:
         return proto.getRaftClientReply().getRpcReply().getCallId();
       case EXCEPTIONREPLY:
@@ -90,8 +103,9 @@ public class NettyRpcProxy implements Closeable {
 
   class Connection implements Closeable {
     private final NettyClient client = new NettyClient();
-    private final Queue<CompletableFuture<RaftNettyServerReplyProto>> replies
-        = new LinkedList<>();
+    private final AtomicLong callIdCounter = new AtomicLong();
+    /** The pending replies keyed by callId, so that the replies can arrive out of order. */
+    private final Map<Long, CompletableFuture<RaftNettyServerReplyProto>> replies = new ConcurrentHashMap<>();
 
     Connection(EventLoopGroup group) throws InterruptedException {
       final ChannelInboundHandler inboundHandler
@@ -99,18 +113,24 @@ public class NettyRpcProxy implements Closeable {
         @Override
         protected void channelRead0(ChannelHandlerContext ctx,
                                     RaftNettyServerReplyProto proto) {
-          final CompletableFuture<RaftNettyServerReplyProto> future = pollReply();
+          final CompletableFuture<RaftNettyServerReplyProto> future = replies.remove(proto.getCallId());
           if (future == null) {
-            throw new IllegalStateException("Request #" + getCallId(proto)
-                + " not found");
+            // the request may have timed out
+            LOG.debug("Request #{} to {} not found, ignoring the reply", proto.getCallId(), peer);
+            return;
           }
           if (proto.getRaftNettyServerReplyCase() == EXCEPTIONREPLY) {
-            final Object ioe = ProtoUtils.toObject(proto.getExceptionReply().getException());
-            future.completeExceptionally((IOException)ioe);
+            future.completeExceptionally(ProtoUtils.toIOException(proto.getExceptionReply().getException()));
           } else {
             future.complete(proto);
           }
         }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+          failReplies(new IOException("Connection to " + peer + " is inactive."));
+          super.channelInactive(ctx);
+        }
       };
       final ChannelInitializer<SocketChannel> initializer
           = new ChannelInitializer<SocketChannel>() {
@@ -130,33 +150,58 @@ public class NettyRpcProxy implements Closeable {
       client.connect(peer.getAddress(), group, initializer);
     }
 
-    synchronized ChannelFuture offer(RaftNettyServerRequestProto request,
-        CompletableFuture<RaftNettyServerReplyProto> reply) {
-      replies.offer(reply);
-      return client.writeAndFlush(request);
+    CompletableFuture<RaftNettyServerReplyProto> sendAsync(RaftNettyServerRequestProto request) {
+      final long callId = callIdCounter.getAndIncrement();
+      final CompletableFuture<RaftNettyServerReplyProto> reply = new CompletableFuture<>();
+      replies.put(callId, reply);
+      try {
+        client.writeAndFlush(request.toBuilder().setCallId(callId).build()).addListener(f -> {
+          if (!f.isSuccess()) {
+            failReply(callId, f.cause());
+          }
+        });
+      } catch (Throwable t) {
+        failReply(callId, t);
+        return reply;
+      }
+      scheduler.onTimeout(requestTimeout, () -> failReply(callId, new TimeoutIOException(
+              "Request #" + callId + " to " + peer + " timeout " + requestTimeout, null)),
+          LOG, () -> "Failed to timeout request #" + callId + " to " + peer);
+      return reply;
+    }
+
+    private void failReply(long callId, Throwable t) {
+      final CompletableFuture<RaftNettyServerReplyProto> reply = replies.remove(callId);
+      if (reply != null) {
+        reply.completeExceptionally(IOUtils.asIOException(t));
+      }
     }
 
-    synchronized CompletableFuture<RaftNettyServerReplyProto> pollReply() {
-      return replies.poll();
+    private void failReplies(IOException e) {
+      for(Iterator<CompletableFuture<RaftNettyServerReplyProto>> i = replies.values().iterator(); i.hasNext(); ) {
+        final CompletableFuture<RaftNettyServerReplyProto> reply = i.next();
+        i.remove();
+        reply.completeExceptionally(e);
+      }
     }
 
     @Override
-    public synchronized void close() {
+    public void close() {
       client.close();
-      if (!replies.isEmpty()) {
-        final IOException e = new IOException("Connection to " + peer + " is closed.");
-        replies.stream().forEach(f -> f.completeExceptionally(e));
-        replies.clear();
-      }
+      failReplies(new IOException("Connection to " + peer + " is closed."));
     }
   }
 
   private final RaftPeer peer;
+  private final TimeDuration requestTimeout;
+  private final TimeoutScheduler scheduler;
   private final Connection connection;
 
-  public NettyRpcProxy(RaftPeer peer, EventLoopGroup group) throws InterruptedException {
+  private NettyRpcProxy(RaftPeer peer, PeerMap peerMap) throws InterruptedException {
     this.peer = peer;
-    this.connection = new Connection(group);
+    this.requestTimeout = peerMap.requestTimeout;
+    this.scheduler = peerMap.scheduler;
+    this.connection = new Connection(peerMap.group);
   }
 
   @Override
@@ -164,20 +209,14 @@ public class NettyRpcProxy implements Closeable {
     connection.close();
   }
 
+  public CompletableFuture<RaftNettyServerReplyProto> sendAsync(RaftNettyServerRequestProto proto) {
+    return connection.sendAsync(proto);
+  }
+
   public RaftNettyServerReplyProto send(
       RaftRpcRequestProto request, RaftNettyServerRequestProto proto)
       throws IOException {
-    final CompletableFuture<RaftNettyServerReplyProto> reply = new CompletableFuture<>();
-    final ChannelFuture channelFuture = connection.offer(proto, reply);
-
-    try {
-      channelFuture.sync();
-      return reply.get();
-    } catch (InterruptedException e) {
-      throw IOUtils.toInterruptedIOException(ProtoUtils.toString(request)
-          + " sending from " + peer + " is interrupted.", e);
-    } catch (ExecutionException e) {
-      throw IOUtils.toIOException(e);
-    }
+    return IOUtils.getFromFuture(sendAsync(proto),
+        () -> ProtoUtils.toString(request) + " sending from " + peer);
   }
 }
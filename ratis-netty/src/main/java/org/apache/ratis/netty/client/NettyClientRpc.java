@@ -17,65 +17,87 @@
  */
 package org.apache.ratis.netty.client;
 
+import org.apache.ratis.client.RaftClientConfigKeys;
 import org.apache.ratis.client.impl.ClientProtoUtils;
 import org.apache.ratis.client.impl.RaftClientRpcWithProxy;
+import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.netty.NettyConfigKeys;
 import org.apache.ratis.netty.NettyRpcProxy;
 import org.apache.ratis.protocol.*;
 import org.apache.ratis.proto.RaftProtos;
 import org.apache.ratis.proto.RaftProtos.RaftClientRequestProto;
-import org.apache.ratis.proto.RaftProtos.RaftRpcRequestProto;
 import org.apache.ratis.proto.RaftProtos.GroupManagementRequestProto;
 import org.apache.ratis.proto.RaftProtos.SetConfigurationRequestProto;
+import org.apache.ratis.proto.netty.NettyProtos.RaftNettyServerReplyProto;
 import org.apache.ratis.proto.netty.NettyProtos.RaftNettyServerRequestProto;
+import org.apache.ratis.util.IOUtils;
+import org.apache.ratis.util.JavaUtils;
 
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 public class NettyClientRpc extends RaftClientRpcWithProxy<NettyRpcProxy> {
-  public NettyClientRpc(ClientId clientId) {
-    super(new NettyRpcProxy.PeerMap(clientId.toString()));
+  public NettyClientRpc(ClientId clientId, RaftProperties properties) {
+    super(new NettyRpcProxy.PeerMap(clientId.toString(), NettyConfigKeys.Client.useEpoll(properties),
+        RaftClientConfigKeys.Rpc.requestTimeout(properties)));
   }
 
   @Override
-  public RaftClientReply sendRequest(RaftClientRequest request) throws IOException {
+  public CompletableFuture<RaftClientReply> sendRequestAsync(RaftClientRequest request) {
     final RaftPeerId serverId = request.getServerId();
-    final NettyRpcProxy proxy = getProxies().getProxy(serverId);
+    try {
+      final NettyRpcProxy proxy = getProxies().getProxy(serverId);
+      // handle the reply outside the event loop since the caller may block,
+      // e.g. connecting to another server for a retry.
+      return proxy.sendAsync(toRaftNettyServerRequestProto(request)).handleAsync((reply, e) -> {
+        if (e != null) {
+          throw e instanceof CompletionException? (CompletionException)e: new CompletionException(e);
+        }
+        return toRaftClientReply(request, reply);
+      });
+    } catch (Throwable e) {
+      return JavaUtils.completeExceptionally(e);
+    }
+  }
 
+  @Override
+  public RaftClientReply sendRequest(RaftClientRequest request) throws IOException {
+    return IOUtils.getFromFuture(sendRequestAsync(request), () -> request);
+  }
+
+  private static RaftNettyServerRequestProto toRaftNettyServerRequestProto(RaftClientRequest request) {
     final RaftNettyServerRequestProto.Builder b = RaftNettyServerRequestProto.newBuilder();
-    final RaftRpcRequestProto rpcRequest;
     if (request instanceof GroupManagementRequest) {
       final GroupManagementRequestProto proto = ClientProtoUtils.toGroupManagementRequestProto(
           (GroupManagementRequest)request);
       b.setGroupManagementRequest(proto);
-      rpcRequest = proto.getRpcRequest();
     } else if (request instanceof SetConfigurationRequest) {
       final SetConfigurationRequestProto proto = ClientProtoUtils.toSetConfigurationRequestProto(
           (SetConfigurationRequest)request);
       b.setSetConfigurationRequest(proto);
-      rpcRequest = proto.getRpcRequest();
     } else if (request instanceof GroupListRequest) {
       final RaftProtos.GroupListRequestProto proto = ClientProtoUtils.toGroupListRequestProto(
           (GroupListRequest)request);
       b.setGroupListRequest(proto);
-      rpcRequest = proto.getRpcRequest();
     } else if (request instanceof GroupInfoRequest) {
       final RaftProtos.GroupInfoRequestProto proto = ClientProtoUtils.toGroupInfoRequestProto(
           (GroupInfoRequest)request);
       b.setGroupInfoRequest(proto);
-      rpcRequest = proto.getRpcRequest();
     } else {
       final RaftClientRequestProto proto = ClientProtoUtils.toRaftClientRequestProto(request);
       b.setRaftClientRequest(proto);
-      rpcRequest = proto.getRpcRequest();
     }
+    return b.build();
+  }
+
+  private static RaftClientReply toRaftClientReply(RaftClientRequest request, RaftNettyServerReplyProto reply) {
     if (request instanceof GroupListRequest) {
-      return ClientProtoUtils.toGroupListReply(
-          proxy.send(rpcRequest, b.build()).getGroupListReply());
+      return ClientProtoUtils.toGroupListReply(reply.getGroupListReply());
     } else if (request instanceof GroupInfoRequest) {
-      return ClientProtoUtils.toGroupInfoReply(
-          proxy.send(rpcRequest, b.build()).getGroupInfoReply());
+      return ClientProtoUtils.toGroupInfoReply(reply.getGroupInfoReply());
     } else {
-      return ClientProtoUtils.toRaftClientReply(
-          proxy.send(rpcRequest, b.build()).getRaftClientReply());
+      return ClientProtoUtils.toRaftClientReply(reply.getRaftClientReply());
     }
   }
 }
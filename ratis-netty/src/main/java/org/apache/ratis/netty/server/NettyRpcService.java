@@ -20,35 +20,37 @@ package org.apache.ratis.netty.server;
 import org.apache.ratis.client.impl.ClientProtoUtils;
 import org.apache.ratis.netty.NettyConfigKeys;
 import org.apache.ratis.netty.NettyRpcProxy;
-import org.apache.ratis.protocol.GroupInfoReply;
-import org.apache.ratis.protocol.GroupListReply;
+import org.apache.ratis.netty.NettyUtils;
 import org.apache.ratis.protocol.RaftClientReply;
 import org.apache.ratis.protocol.RaftPeerId;
 import org.apache.ratis.rpc.SupportedRpcType;
 import org.apache.ratis.server.RaftServer;
+import org.apache.ratis.server.RaftServerConfigKeys;
 import org.apache.ratis.server.RaftServerRpc;
 import org.apache.ratis.server.impl.RaftServerRpcWithProxy;
 import org.apache.ratis.thirdparty.io.netty.bootstrap.ServerBootstrap;
 import org.apache.ratis.thirdparty.io.netty.channel.*;
-import org.apache.ratis.thirdparty.io.netty.channel.nio.NioEventLoopGroup;
 import org.apache.ratis.thirdparty.io.netty.channel.socket.SocketChannel;
-import org.apache.ratis.thirdparty.io.netty.channel.socket.nio.NioServerSocketChannel;
 import org.apache.ratis.thirdparty.io.netty.handler.codec.protobuf.ProtobufDecoder;
 import org.apache.ratis.thirdparty.io.netty.handler.codec.protobuf.ProtobufEncoder;
 import org.apache.ratis.thirdparty.io.netty.handler.codec.protobuf.ProtobufVarint32FrameDecoder;
 import org.apache.ratis.thirdparty.io.netty.handler.codec.protobuf.ProtobufVarint32LengthFieldPrepender;
 import org.apache.ratis.thirdparty.io.netty.handler.logging.LogLevel;
 import org.apache.ratis.thirdparty.io.netty.handler.logging.LoggingHandler;
+import org.apache.ratis.thirdparty.io.netty.util.concurrent.DefaultEventExecutorGroup;
+import org.apache.ratis.thirdparty.io.netty.util.concurrent.EventExecutorGroup;
 import org.apache.ratis.proto.RaftProtos.*;
 import org.apache.ratis.proto.netty.NettyProtos.RaftNettyExceptionReplyProto;
 import org.apache.ratis.proto.netty.NettyProtos.RaftNettyServerReplyProto;
 import org.apache.ratis.proto.netty.NettyProtos.RaftNettyServerRequestProto;
 import org.apache.ratis.util.CodeInjectionForTesting;
+import org.apache.ratis.util.IOUtils;
+import org.apache.ratis.util.JavaUtils;
 import org.apache.ratis.util.ProtoUtils;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * A netty server endpoint that acts as the communication layer.
@@ -76,24 +78,42 @@ public final class NettyRpcService extends RaftServerRpcWithProxy<NettyRpcProxy,
   }
 
   private final RaftServer server;
+  private final boolean exceptionStackTraceEnabled;
 
-  private final EventLoopGroup bossGroup = new NioEventLoopGroup();
-  private final EventLoopGroup workerGroup = new NioEventLoopGroup();
+  private final EventLoopGroup bossGroup;
+  private final EventLoopGroup workerGroup;
+  /** For handling the requests outside the event loop threads. */
+  private final EventExecutorGroup handlerGroup;
   private final ChannelFuture channelFuture;
 
+  /**
+   * Each channel is handled by a single thread in {@link #handlerGroup},
+   * so that the requests from the same connection are started in order.
+   * The replies are sent once the requests have completed, possibly out of order.
+   */
   @ChannelHandler.Sharable
   class InboundHandler extends SimpleChannelInboundHandler<RaftNettyServerRequestProto> {
     @Override
     protected void channelRead0(ChannelHandlerContext ctx, RaftNettyServerRequestProto proto) {
-      final RaftNettyServerReplyProto reply = handle(proto);
-      ctx.writeAndFlush(reply);
+      handleAsync(proto).whenComplete((reply, e) -> ctx.writeAndFlush(e == null? reply
+          : toRaftNettyServerReplyProto(null, proto.getCallId(),
+              IOUtils.asIOException(JavaUtils.unwrapCompletionException(e)))));
     }
   }
 
   /** Constructs a netty server with the given port. */
   private NettyRpcService(RaftServer server) {
-    super(server::getId, id -> new NettyRpcProxy.PeerMap(id.toString()));
+    super(server::getId, id -> new NettyRpcProxy.PeerMap(id.toString(),
+        NettyConfigKeys.Server.useEpoll(server.getProperties()),
+        RaftServerConfigKeys.Rpc.requestTimeout(server.getProperties())));
     this.server = server;
+    this.exceptionStackTraceEnabled = RaftServerConfigKeys.Rpc.exceptionStackTraceEnabled(server.getProperties());
+
+    final boolean useEpoll = NettyConfigKeys.Server.useEpoll(server.getProperties());
+    this.bossGroup = NettyUtils.newEventLoopGroup(1, useEpoll);
+    this.workerGroup = NettyUtils.newEventLoopGroup(0, useEpoll);
+    this.handlerGroup = new DefaultEventExecutorGroup(
+        NettyConfigKeys.Server.handlerThreads(server.getProperties()));
 
     final ChannelInitializer<SocketChannel> initializer
         = new ChannelInitializer<SocketChannel>() {
@@ -106,14 +126,14 @@ public final class NettyRpcService extends RaftServerRpcWithProxy<NettyRpcProxy,
         p.addLast(new ProtobufVarint32LengthFieldPrepender());
         p.addLast(new ProtobufEncoder());
 
-        p.addLast(new InboundHandler());
+        p.addLast(handlerGroup, new InboundHandler());
       }
     };
 
     final int port = NettyConfigKeys.Server.port(server.getProperties());
     channelFuture = new ServerBootstrap()
         .group(bossGroup, workerGroup)
-        .channel(NioServerSocketChannel.class)
+        .channel(NettyUtils.getServerChannelClass(bossGroup))
         .handler(new LoggingHandler(LogLevel.INFO))
         .childHandler(initializer)
         .bind(port);
@@ -141,6 +161,7 @@ public final class NettyRpcService extends RaftServerRpcWithProxy<NettyRpcProxy,
   public void closeImpl() throws IOException {
     bossGroup.shutdownGracefully();
     workerGroup.shutdownGracefully();
+    handlerGroup.shutdownGracefully();
     final ChannelFuture f = getChannel().close();
     super.closeImpl();
     f.syncUninterruptibly();
@@ -151,78 +172,81 @@ public final class NettyRpcService extends RaftServerRpcWithProxy<NettyRpcProxy,
     return (InetSocketAddress)getChannel().localAddress();
   }
 
-  RaftNettyServerReplyProto handle(RaftNettyServerRequestProto proto) {
+  /**
+   * Handle the given request.
+   * The blocking requests are handled in the caller thread
+   * and the other requests are handled using the asynchronous protocols.
+   * Any failure is returned as an exception reply.
+   */
+  CompletableFuture<RaftNettyServerReplyProto> handleAsync(RaftNettyServerRequestProto proto) {
+    final RaftNettyServerReplyProto.Builder b = RaftNettyServerReplyProto.newBuilder()
+        .setCallId(proto.getCallId());
     RaftRpcRequestProto rpcRequest = null;
     try {
+      final CompletableFuture<RaftNettyServerReplyProto> future;
       switch (proto.getRaftNettyServerRequestCase()) {
         case REQUESTVOTEREQUEST: {
           final RequestVoteRequestProto request = proto.getRequestVoteRequest();
           rpcRequest = request.getServerRequest();
           final RequestVoteReplyProto reply = server.requestVote(request);
-          return RaftNettyServerReplyProto.newBuilder()
-              .setRequestVoteReply(reply)
-              .build();
+          future = CompletableFuture.completedFuture(b.setRequestVoteReply(reply).build());
+          break;
         }
         case APPENDENTRIESREQUEST: {
           final AppendEntriesRequestProto request = proto.getAppendEntriesRequest();
           rpcRequest = request.getServerRequest();
-          final AppendEntriesReplyProto reply = server.appendEntries(request);
-          return RaftNettyServerReplyProto.newBuilder()
-              .setAppendEntriesReply(reply)
-              .build();
+          future = server.appendEntriesAsync(request)
+              .thenApply(reply -> b.setAppendEntriesReply(reply).build());
+          break;
         }
         case INSTALLSNAPSHOTREQUEST: {
           final InstallSnapshotRequestProto request = proto.getInstallSnapshotRequest();
           rpcRequest = request.getServerRequest();
           final InstallSnapshotReplyProto reply = server.installSnapshot(request);
-          return RaftNettyServerReplyProto.newBuilder()
-              .setInstallSnapshotReply(reply)
-              .build();
+          future = CompletableFuture.completedFuture(b.setInstallSnapshotReply(reply).build());
+          break;
+        }
+        case READINDEXREQUEST: {
+          final ReadIndexRequestProto request = proto.getReadIndexRequest();
+          rpcRequest = request.getServerRequest();
+          future = server.readIndexAsync(request)
+              .thenApply(reply -> b.setReadIndexReply(reply).build());
+          break;
         }
         case RAFTCLIENTREQUEST: {
           final RaftClientRequestProto request = proto.getRaftClientRequest();
           rpcRequest = request.getRpcRequest();
-          final RaftClientReply reply = server.submitClientRequest(
-              ClientProtoUtils.toRaftClientRequest(request));
-          return RaftNettyServerReplyProto.newBuilder()
-              .setRaftClientReply(ClientProtoUtils.toRaftClientReplyProto(reply))
-              .build();
+          future = server.submitClientRequestAsync(ClientProtoUtils.toRaftClientRequest(request))
+              .thenApply(reply -> b.setRaftClientReply(toRaftClientReplyProto(reply)).build());
+          break;
         }
         case SETCONFIGURATIONREQUEST: {
           final SetConfigurationRequestProto request = proto.getSetConfigurationRequest();
           rpcRequest = request.getRpcRequest();
-          final RaftClientReply reply = server.setConfiguration(
-              ClientProtoUtils.toSetConfigurationRequest(request));
-          return RaftNettyServerReplyProto.newBuilder()
-              .setRaftClientReply(ClientProtoUtils.toRaftClientReplyProto(reply))
-              .build();
+          future = server.setConfigurationAsync(ClientProtoUtils.toSetConfigurationRequest(request))
+              .thenApply(reply -> b.setRaftClientReply(toRaftClientReplyProto(reply)).build());
+          break;
         }
         case GROUPMANAGEMENTREQUEST: {
           final GroupManagementRequestProto request = proto.getGroupManagementRequest();
           rpcRequest = request.getRpcRequest();
-          final RaftClientReply reply = server.groupManagement(
-              ClientProtoUtils.toGroupManagementRequest(request));
-          return RaftNettyServerReplyProto.newBuilder()
-              .setRaftClientReply(ClientProtoUtils.toRaftClientReplyProto(reply))
-              .build();
+          future = server.groupManagementAsync(ClientProtoUtils.toGroupManagementRequest(request))
+              .thenApply(reply -> b.setRaftClientReply(toRaftClientReplyProto(reply)).build());
+          break;
         }
         case GROUPLISTREQUEST: {
           final GroupListRequestProto request = proto.getGroupListRequest();
           rpcRequest = request.getRpcRequest();
-          final GroupListReply reply = server.getGroupList(
-              ClientProtoUtils.toGroupListRequest(request));
-          return RaftNettyServerReplyProto.newBuilder()
-              .setGroupListReply(ClientProtoUtils.toGroupListReplyProto(reply))
-              .build();
+          future = server.getGroupListAsync(ClientProtoUtils.toGroupListRequest(request))
+              .thenApply(reply -> b.setGroupListReply(ClientProtoUtils.toGroupListReplyProto(reply)).build());
+          break;
         }
         case GROUPINFOREQUEST: {
           final GroupInfoRequestProto request = proto.getGroupInfoRequest();
           rpcRequest = request.getRpcRequest();
-          final GroupInfoReply reply = server.getGroupInfo(
-              ClientProtoUtils.toGroupInfoRequest(request));
-          return RaftNettyServerReplyProto.newBuilder()
-              .setGroupInfoReply(ClientProtoUtils.toGroupInfoReplyProto(reply))
-              .build();
+          future = server.getGroupInfoAsync(ClientProtoUtils.toGroupInfoRequest(request))
+              .thenApply(reply -> b.setGroupInfoReply(ClientProtoUtils.toGroupInfoReplyProto(reply)).build());
+          break;
         }
         case RAFTNETTYSERVERREQUEST_NOT_SET:
           throw new IllegalArgumentException("Request case not set in proto: "
@@ -231,23 +255,38 @@ public final class NettyRpcService extends RaftServerRpcWithProxy<NettyRpcProxy,
           throw new UnsupportedOperationException("Request case not supported: "
               + proto.getRaftNettyServerRequestCase());
       }
-    } catch (IOException ioe) {
-      return toRaftNettyServerReplyProto(
-          Objects.requireNonNull(rpcRequest, "rpcRequest = null"), ioe);
+      final RaftRpcRequestProto r = rpcRequest;
+      return future.exceptionally(e -> toRaftNettyServerReplyProto(r, proto.getCallId(),
+          IOUtils.asIOException(JavaUtils.unwrapCompletionException(e))));
+    } catch (Throwable t) {
+      return CompletableFuture.completedFuture(toRaftNettyServerReplyProto(
+          rpcRequest, proto.getCallId(), IOUtils.asIOException(t)));
     }
   }
 
-  private static RaftNettyServerReplyProto toRaftNettyServerReplyProto(
-      RaftRpcRequestProto request, IOException e) {
+  private RaftClientReplyProto toRaftClientReplyProto(RaftClientReply reply) {
+    return ClientProtoUtils.toRaftClientReplyProto(reply, exceptionStackTraceEnabled);
+  }
+
+  /**
+   * @param request the rpc request, or null if the request failed before it was known,
+   *                e.g. the request case is not set.
+   */
+  private RaftNettyServerReplyProto toRaftNettyServerReplyProto(
+      RaftRpcRequestProto request, long callId, IOException e) {
     final RaftRpcReplyProto.Builder rpcReply = RaftRpcReplyProto.newBuilder()
-        .setRequestorId(request.getRequestorId())
-        .setReplyId(request.getReplyId())
-        .setCallId(request.getCallId())
         .setSuccess(false);
+    if (request != null) {
+      rpcReply.setRequestorId(request.getRequestorId())
+          .setReplyId(request.getReplyId())
+          .setCallId(request.getCallId());
+    } else {
+      rpcReply.setCallId(callId);
+    }
     final RaftNettyExceptionReplyProto.Builder ioe = RaftNettyExceptionReplyProto.newBuilder()
         .setRpcReply(rpcReply)
-        .setException(ProtoUtils.writeObject2ByteString(e));
-    return RaftNettyServerReplyProto.newBuilder().setExceptionReply(ioe).build();
+        .setException(ProtoUtils.toThrowableProto(e, exceptionStackTraceEnabled));
+    return RaftNettyServerReplyProto.newBuilder().setExceptionReply(ioe).setCallId(callId).build();
   }
 
   @Override
@@ -283,6 +322,17 @@ public final class NettyRpcService extends RaftServerRpcWithProxy<NettyRpcProxy,
     return sendRaftNettyServerRequestProto(serverRequest, proto).getInstallSnapshotReply();
   }
 
+  @Override
+  public ReadIndexReplyProto readIndex(ReadIndexRequestProto request) throws IOException {
+    CodeInjectionForTesting.execute(SEND_SERVER_REQUEST, getId(), null, request);
+
+    final RaftNettyServerRequestProto proto = RaftNettyServerRequestProto.newBuilder()
+        .setReadIndexRequest(request)
+        .build();
+    final RaftRpcRequestProto serverRequest = request.getServerRequest();
+    return sendRaftNettyServerRequestProto(serverRequest, proto).getReadIndexReply();
+  }
+
   private RaftNettyServerReplyProto sendRaftNettyServerRequestProto(
       RaftRpcRequestProto request, RaftNettyServerRequestProto proto)
       throws IOException {
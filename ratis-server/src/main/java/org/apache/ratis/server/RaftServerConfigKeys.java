@@ -19,6 +19,8 @@ package org.apache.ratis.server;
 
 import org.apache.ratis.conf.ConfUtils;
 import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.server.storage.CacheInvalidationPolicy;
+import org.apache.ratis.server.storage.CacheInvalidationPolicy.CacheInvalidationPolicyDefault;
 import org.apache.ratis.util.SizeInBytes;
 import org.apache.ratis.util.TimeDuration;
 import org.slf4j.Logger;
@@ -28,6 +30,7 @@ import java.io.File;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
 import java.util.function.Consumer;
 
 import static org.apache.ratis.conf.ConfUtils.*;
@@ -49,6 +52,20 @@ public interface RaftServerConfigKeys {
     setFiles(properties::setFiles, STORAGE_DIR_KEY, storageDir);
   }
 
+  /**
+   * A new group is placed on the least loaded storage directory having at least this much usable space.
+   * If no storage directory has enough space, the least loaded one is used.
+   */
+  String STORAGE_FREE_SPACE_MIN_KEY = PREFIX + ".storage.free.space.min";
+  SizeInBytes STORAGE_FREE_SPACE_MIN_DEFAULT = SizeInBytes.valueOf("0MB");
+  static SizeInBytes storageFreeSpaceMin(RaftProperties properties) {
+    return getSizeInBytes(properties::getSizeInBytes,
+        STORAGE_FREE_SPACE_MIN_KEY, STORAGE_FREE_SPACE_MIN_DEFAULT, getDefaultLog());
+  }
+  static void setStorageFreeSpaceMin(RaftProperties properties, SizeInBytes freeSpaceMin) {
+    setSizeInBytes(properties::set, STORAGE_FREE_SPACE_MIN_KEY, freeSpaceMin);
+  }
+
   /**
    * When bootstrapping a new peer, If the gap between the match index of the
    * peer and the leader's latest committed index is less than this gap, we
@@ -114,6 +131,20 @@ public interface RaftServerConfigKeys {
       setBoolean(properties::setBoolean, USE_MEMORY_KEY, useMemory);
     }
 
+    /**
+     * The directories, e.g. on low-latency devices, for the log segments and the metadata files.
+     * The state machine and the snapshot files remain in the storage directories.
+     * When it is empty, the log is in the storage directories.
+     */
+    String DIRS_KEY = PREFIX + ".dirs";
+    List<File> DIRS_DEFAULT = Collections.emptyList();
+    static List<File> dirs(RaftProperties properties) {
+      return getFiles(properties::getFiles, DIRS_KEY, DIRS_DEFAULT, getDefaultLog());
+    }
+    static void setDirs(RaftProperties properties, List<File> dirs) {
+      setFiles(properties::setFiles, DIRS_KEY, dirs);
+    }
+
     String QUEUE_ELEMENT_LIMIT_KEY = PREFIX + ".queue.element-limit";
     int QUEUE_ELEMENT_LIMIT_DEFAULT = 4096;
     static int queueElementLimit(RaftProperties properties) {
@@ -157,6 +188,20 @@ public interface RaftServerConfigKeys {
       setInt(properties::setInt, SEGMENT_CACHE_MAX_NUM_KEY, maxCachedSegmentNum);
     }
 
+    /**
+     * When a segment is closed, write an index file next to the segment file
+     * so that the segment can be loaded without reading all the entries.
+     */
+    String SEGMENT_INDEX_ENABLED_KEY = PREFIX + ".segment.index.enabled";
+    boolean SEGMENT_INDEX_ENABLED_DEFAULT = true;
+    static boolean segmentIndexEnabled(RaftProperties properties) {
+      return getBoolean(properties::getBoolean,
+          SEGMENT_INDEX_ENABLED_KEY, SEGMENT_INDEX_ENABLED_DEFAULT, getDefaultLog());
+    }
+    static void setSegmentIndexEnabled(RaftProperties properties, boolean segmentIndexEnabled) {
+      setBoolean(properties::setBoolean, SEGMENT_INDEX_ENABLED_KEY, segmentIndexEnabled);
+    }
+
     String PREALLOCATED_SIZE_KEY = PREFIX + ".preallocated.size";
     SizeInBytes PREALLOCATED_SIZE_DEFAULT = SizeInBytes.valueOf("4MB");
     static SizeInBytes preallocatedSize(RaftProperties properties) {
@@ -187,6 +232,222 @@ public interface RaftServerConfigKeys {
       setInt(properties::setInt, FORCE_SYNC_NUM_KEY, forceSyncNum);
     }
 
+    /**
+     * When group commit is enabled, the log worker drains the queued tasks as a batch,
+     * writes all the entries in the batch and then syncs them with a single flush.
+     */
+    interface GroupCommit {
+      String PREFIX = Log.PREFIX + ".group.commit";
+
+      String ENABLED_KEY = PREFIX + ".enabled";
+      boolean ENABLED_DEFAULT = false;
+      static boolean enabled(RaftProperties properties) {
+        return getBoolean(properties::getBoolean, ENABLED_KEY, ENABLED_DEFAULT, getDefaultLog());
+      }
+      static void setEnabled(RaftProperties properties, boolean enabled) {
+        setBoolean(properties::setBoolean, ENABLED_KEY, enabled);
+      }
+
+      /** The max number of tasks drained from the queue in a batch. */
+      String BATCH_NUM_MAX_KEY = PREFIX + ".batch.num.max";
+      int BATCH_NUM_MAX_DEFAULT = 1024;
+      static int batchNumMax(RaftProperties properties) {
+        return getInt(properties::getInt,
+            BATCH_NUM_MAX_KEY, BATCH_NUM_MAX_DEFAULT, getDefaultLog(), requireMin(1));
+      }
+      static void setBatchNumMax(RaftProperties properties, int batchNumMax) {
+        setInt(properties::setInt, BATCH_NUM_MAX_KEY, batchNumMax, requireMin(1));
+      }
+    }
+
+    /**
+     * When the shared write-ahead log is enabled, the groups in a server using the same storage directory
+     * append their entries to a shared journal, which is synced once for a batch of entries from many groups.
+     * The segment files of a group are then synced only when the journal needs to delete an old journal file.
+     */
+    interface SharedWal {
+      String PREFIX = Log.PREFIX + ".shared.wal";
+
+      String ENABLED_KEY = PREFIX + ".enabled";
+      boolean ENABLED_DEFAULT = false;
+      static boolean enabled(RaftProperties properties) {
+        return getBoolean(properties::getBoolean, ENABLED_KEY, ENABLED_DEFAULT, getDefaultLog());
+      }
+      static void setEnabled(RaftProperties properties, boolean enabled) {
+        setBoolean(properties::setBoolean, ENABLED_KEY, enabled);
+      }
+
+      /** The size at which the journal rolls to a new file. */
+      String JOURNAL_SIZE_MAX_KEY = PREFIX + ".journal.size.max";
+      SizeInBytes JOURNAL_SIZE_MAX_DEFAULT = SizeInBytes.valueOf("64MB");
+      static SizeInBytes journalSizeMax(RaftProperties properties) {
+        return getSizeInBytes(properties::getSizeInBytes,
+            JOURNAL_SIZE_MAX_KEY, JOURNAL_SIZE_MAX_DEFAULT, getDefaultLog());
+      }
+      static void setJournalSizeMax(RaftProperties properties, SizeInBytes journalSizeMax) {
+        setSizeInBytes(properties::set, JOURNAL_SIZE_MAX_KEY, journalSizeMax);
+      }
+    }
+
+    /**
+     * When purge is enabled, the closed segments are deleted after a snapshot is taken or installed.
+     * The last entries in the snapshot, up to the purge gap, are kept in the log.
+     * The entries still needed by the followers are also kept
+     * so that the leader does not have to install snapshots to them.
+     */
+    interface Purge {
+      String PREFIX = Log.PREFIX + ".purge";
+
+      String ENABLED_KEY = PREFIX + ".enabled";
+      boolean ENABLED_DEFAULT = false;
+      static boolean enabled(RaftProperties properties) {
+        return getBoolean(properties::getBoolean, ENABLED_KEY, ENABLED_DEFAULT, getDefaultLog());
+      }
+      static void setEnabled(RaftProperties properties, boolean enabled) {
+        setBoolean(properties::setBoolean, ENABLED_KEY, enabled);
+      }
+
+      /** The number of entries in the snapshot retained in the log. */
+      String GAP_KEY = PREFIX + ".gap";
+      int GAP_DEFAULT = 1024;
+      static int gap(RaftProperties properties) {
+        return getInt(properties::getInt, GAP_KEY, GAP_DEFAULT, getDefaultLog(), requireMin(0));
+      }
+      static void setGap(RaftProperties properties, int gap) {
+        setInt(properties::setInt, GAP_KEY, gap, requireMin(0));
+      }
+    }
+
+    /**
+     * When memory mapping is enabled, the entries evicted from the closed segments
+     * are read directly from the memory-mapped segment files
+     * instead of reloading the entire segment.
+     */
+    interface Mapped {
+      String PREFIX = Log.PREFIX + ".mapped";
+
+      String ENABLED_KEY = PREFIX + ".enabled";
+      boolean ENABLED_DEFAULT = false;
+      static boolean enabled(RaftProperties properties) {
+        return getBoolean(properties::getBoolean, ENABLED_KEY, ENABLED_DEFAULT, getDefaultLog());
+      }
+      static void setEnabled(RaftProperties properties, boolean enabled) {
+        setBoolean(properties::setBoolean, ENABLED_KEY, enabled);
+      }
+
+      /** The max total size of the mapped segment files. */
+      String SIZE_MAX_KEY = PREFIX + ".size.max";
+      SizeInBytes SIZE_MAX_DEFAULT = SizeInBytes.valueOf("256MB");
+      static SizeInBytes sizeMax(RaftProperties properties) {
+        return getSizeInBytes(properties::getSizeInBytes,
+            SIZE_MAX_KEY, SIZE_MAX_DEFAULT, getDefaultLog());
+      }
+      static void setSizeMax(RaftProperties properties, SizeInBytes sizeMax) {
+        setSizeInBytes(properties::set, SIZE_MAX_KEY, sizeMax);
+      }
+    }
+
+    /**
+     * When the off-heap cache is enabled, the log entries are cached in direct buffers
+     * and the cache is bounded by its total size instead of the number of the cached segments,
+     * i.e. {@link #SEGMENT_CACHE_MAX_NUM_KEY} is only used for the initial loading.
+     * Note that the JVM max direct memory size must be larger than the cache size.
+     */
+    interface OffHeapCache {
+      String PREFIX = Log.PREFIX + ".offheap-cache";
+
+      String ENABLED_KEY = PREFIX + ".enabled";
+      boolean ENABLED_DEFAULT = false;
+      static boolean enabled(RaftProperties properties) {
+        return getBoolean(properties::getBoolean, ENABLED_KEY, ENABLED_DEFAULT, getDefaultLog());
+      }
+      static void setEnabled(RaftProperties properties, boolean enabled) {
+        setBoolean(properties::setBoolean, ENABLED_KEY, enabled);
+      }
+
+      /** The max total size of the cached entries. */
+      String SIZE_MAX_KEY = PREFIX + ".size.max";
+      SizeInBytes SIZE_MAX_DEFAULT = SizeInBytes.valueOf("256MB");
+      static SizeInBytes sizeMax(RaftProperties properties) {
+        return getSizeInBytes(properties::getSizeInBytes,
+            SIZE_MAX_KEY, SIZE_MAX_DEFAULT, getDefaultLog());
+      }
+      static void setSizeMax(RaftProperties properties, SizeInBytes sizeMax) {
+        setSizeInBytes(properties::set, SIZE_MAX_KEY, sizeMax);
+      }
+
+      /** The size of each direct buffer allocated for the cache. */
+      String SLAB_SIZE_KEY = PREFIX + ".slab.size";
+      SizeInBytes SLAB_SIZE_DEFAULT = SizeInBytes.valueOf("1MB");
+      static SizeInBytes slabSize(RaftProperties properties) {
+        return getSizeInBytes(properties::getSizeInBytes,
+            SLAB_SIZE_KEY, SLAB_SIZE_DEFAULT, getDefaultLog());
+      }
+      static void setSlabSize(RaftProperties properties, SizeInBytes slabSize) {
+        setSizeInBytes(properties::set, SLAB_SIZE_KEY, slabSize);
+      }
+    }
+
+    /**
+     * The eviction of the log entry cache.
+     * Besides {@link #SEGMENT_CACHE_MAX_NUM_KEY}, the eviction is triggered
+     * when the cached entries in the closed segments exceed the byte limit
+     * or when the heap usage after a garbage collection exceeds the heap pressure threshold.
+     * The eviction runs in the background; the segments to evict are chosen by the policy.
+     * Note that these keys do not apply to the off-heap cache, which is bounded by its own size.
+     */
+    interface CacheEviction {
+      String PREFIX = Log.PREFIX + ".cache.eviction";
+
+      String POLICY_KEY = PREFIX + ".policy";
+      Class<? extends CacheInvalidationPolicy> POLICY_DEFAULT = CacheInvalidationPolicyDefault.class;
+      static Class<? extends CacheInvalidationPolicy> policy(RaftProperties properties) {
+        final BiFunction<String, Class<? extends CacheInvalidationPolicy>, Class<? extends CacheInvalidationPolicy>>
+            getter = (key, defaultValue) -> properties.getClass(key, defaultValue, CacheInvalidationPolicy.class);
+        return get(getter, POLICY_KEY, POLICY_DEFAULT, getDefaultLog());
+      }
+      static void setPolicy(RaftProperties properties, Class<? extends CacheInvalidationPolicy> policy) {
+        properties.setClass(POLICY_KEY, policy, CacheInvalidationPolicy.class);
+      }
+
+      /** The max total size of the cached entries in the closed segments; zero means unlimited. */
+      String BYTE_LIMIT_KEY = PREFIX + ".byte-limit";
+      SizeInBytes BYTE_LIMIT_DEFAULT = SizeInBytes.valueOf("0MB");
+      static SizeInBytes byteLimit(RaftProperties properties) {
+        return getSizeInBytes(properties::getSizeInBytes,
+            BYTE_LIMIT_KEY, BYTE_LIMIT_DEFAULT, getDefaultLog());
+      }
+      static void setByteLimit(RaftProperties properties, SizeInBytes byteLimit) {
+        setSizeInBytes(properties::set, BYTE_LIMIT_KEY, byteLimit);
+      }
+
+      /** A segment read within this duration is hot, e.g. it is being re-read by a lagging follower. */
+      String HOT_DURATION_KEY = PREFIX + ".hot.duration";
+      TimeDuration HOT_DURATION_DEFAULT = TimeDuration.valueOf(10, TimeUnit.SECONDS);
+      static TimeDuration hotDuration(RaftProperties properties) {
+        return getTimeDuration(properties.getTimeDuration(HOT_DURATION_DEFAULT.getUnit()),
+            HOT_DURATION_KEY, HOT_DURATION_DEFAULT, getDefaultLog());
+      }
+      static void setHotDuration(RaftProperties properties, TimeDuration hotDuration) {
+        setTimeDuration(properties::setTimeDuration, HOT_DURATION_KEY, hotDuration);
+      }
+
+      /**
+       * The fraction of the max heap size.
+       * When the heap usage after a garbage collection exceeds it, the cache is evicted.
+       * A non-positive value disables the heap pressure detection.
+       */
+      String HEAP_PRESSURE_THRESHOLD_KEY = PREFIX + ".heap-pressure.threshold";
+      double HEAP_PRESSURE_THRESHOLD_DEFAULT = 0;
+      static double heapPressureThreshold(RaftProperties properties) {
+        return get(properties::getDouble, HEAP_PRESSURE_THRESHOLD_KEY, HEAP_PRESSURE_THRESHOLD_DEFAULT,
+            getDefaultLog());
+      }
+      static void setHeapPressureThreshold(RaftProperties properties, double threshold) {
+        set(properties::setDouble, HEAP_PRESSURE_THRESHOLD_KEY, threshold);
+      }
+    }
+
     interface StateMachineData {
       String PREFIX = Log.PREFIX + ".statemachine.data";
 
@@ -298,6 +559,111 @@ public interface RaftServerConfigKeys {
     }
   }
 
+  interface Read {
+    String PREFIX = RaftServerConfigKeys.PREFIX + ".read";
+
+    enum Option {
+      /** Directly query the state machine; the result may be stale if the leader has been changed. */
+      DEFAULT,
+      /** Confirm the leadership with a heartbeat round (the ReadIndex protocol) before the query. */
+      LINEARIZABLE
+    }
+
+    String OPTION_KEY = PREFIX + ".option";
+    Option OPTION_DEFAULT = Option.DEFAULT;
+    static Option option(RaftProperties properties) {
+      return get(properties::getEnum, OPTION_KEY, OPTION_DEFAULT, getDefaultLog());
+    }
+    static void setOption(RaftProperties properties, Option option) {
+      set(properties::setEnum, OPTION_KEY, option);
+    }
+
+    /** The timeout for a linearizable read to get its read index and then to wait for the apply up to the index. */
+    String TIMEOUT_KEY = PREFIX + ".timeout";
+    TimeDuration TIMEOUT_DEFAULT = TimeDuration.valueOf(10, TimeUnit.SECONDS);
+    static TimeDuration timeout(RaftProperties properties) {
+      return getTimeDuration(properties.getTimeDuration(TIMEOUT_DEFAULT.getUnit()),
+          TIMEOUT_KEY, TIMEOUT_DEFAULT, getDefaultLog(), requirePositive());
+    }
+    static void setTimeout(RaftProperties properties, TimeDuration timeout) {
+      setTimeDuration(properties::setTimeDuration, TIMEOUT_KEY, timeout);
+    }
+
+    /**
+     * When the follower read is enabled, a follower serves a follower read request
+     * after it has applied up to the read index obtained from the leader.
+     * The reads are linearizable regardless of the {@link Option}.
+     */
+    String FOLLOWER_ENABLED_KEY = PREFIX + ".follower.enabled";
+    boolean FOLLOWER_ENABLED_DEFAULT = false;
+    static boolean followerEnabled(RaftProperties properties) {
+      return getBoolean(properties::getBoolean, FOLLOWER_ENABLED_KEY, FOLLOWER_ENABLED_DEFAULT, getDefaultLog());
+    }
+    static void setFollowerEnabled(RaftProperties properties, boolean enabled) {
+      setBoolean(properties::setBoolean, FOLLOWER_ENABLED_KEY, enabled);
+    }
+
+    /**
+     * When the leader lease is enabled, a linearizable read is served by the leader
+     * without a heartbeat round as long as the lease is valid.
+     * The lease lasts for (min rpc timeout - clock drift bound)
+     * since a majority has acknowledged the leadership.
+     * A follower withholds its votes while it may be within the lease of its leader,
+     * so that the lease must be enabled in all the servers of a group.
+     */
+    interface LeaderLease {
+      String PREFIX = Read.PREFIX + ".leader.lease";
+
+      String ENABLED_KEY = PREFIX + ".enabled";
+      boolean ENABLED_DEFAULT = false;
+      static boolean enabled(RaftProperties properties) {
+        return getBoolean(properties::getBoolean, ENABLED_KEY, ENABLED_DEFAULT, getDefaultLog());
+      }
+      static void setEnabled(RaftProperties properties, boolean enabled) {
+        setBoolean(properties::setBoolean, ENABLED_KEY, enabled);
+      }
+
+      /** The max clock drift between the servers during a lease; it must be less than the min rpc timeout. */
+      String CLOCK_DRIFT_BOUND_KEY = PREFIX + ".clock-drift.bound";
+      TimeDuration CLOCK_DRIFT_BOUND_DEFAULT = TimeDuration.valueOf(50, TimeUnit.MILLISECONDS);
+      static TimeDuration clockDriftBound(RaftProperties properties) {
+        return getTimeDuration(properties.getTimeDuration(CLOCK_DRIFT_BOUND_DEFAULT.getUnit()),
+            CLOCK_DRIFT_BOUND_KEY, CLOCK_DRIFT_BOUND_DEFAULT, getDefaultLog(), requireNonNegativeTimeDuration());
+      }
+      static void setClockDriftBound(RaftProperties properties, TimeDuration bound) {
+        setTimeDuration(properties::setTimeDuration, CLOCK_DRIFT_BOUND_KEY, bound);
+      }
+    }
+  }
+
+  /**
+   * When the parallel apply mode is enabled, the committed transactions are applied
+   * by a number of lanes according to {@link org.apache.ratis.statemachine.StateMachine#getPartitionKey}.
+   * Each lane applies its transactions in the log order.
+   */
+  interface ApplyTransaction {
+    String PREFIX = RaftServerConfigKeys.PREFIX + ".apply.transaction";
+
+    String PARALLEL_ENABLED_KEY = PREFIX + ".parallel.enabled";
+    boolean PARALLEL_ENABLED_DEFAULT = false;
+    static boolean parallelEnabled(RaftProperties properties) {
+      return getBoolean(properties::getBoolean, PARALLEL_ENABLED_KEY, PARALLEL_ENABLED_DEFAULT, getDefaultLog());
+    }
+    static void setParallelEnabled(RaftProperties properties, boolean enabled) {
+      setBoolean(properties::setBoolean, PARALLEL_ENABLED_KEY, enabled);
+    }
+
+    /** The number of lanes, i.e. the max number of transactions applied in parallel. */
+    String PARALLEL_LANES_KEY = PREFIX + ".parallel.lanes";
+    int PARALLEL_LANES_DEFAULT = 8;
+    static int parallelLanes(RaftProperties properties) {
+      return getInt(properties::getInt, PARALLEL_LANES_KEY, PARALLEL_LANES_DEFAULT, getDefaultLog(), requireMin(1));
+    }
+    static void setParallelLanes(RaftProperties properties, int lanes) {
+      setInt(properties::setInt, PARALLEL_LANES_KEY, lanes, requireMin(1));
+    }
+  }
+
   /** server rpc timeout related */
   interface Rpc {
     String PREFIX = RaftServerConfigKeys.PREFIX + ".rpc";
@@ -351,6 +717,17 @@ public interface RaftServerConfigKeys {
     static void setSlownessTimeout(RaftProperties properties, TimeDuration expiryTime) {
       setTimeDuration(properties::setTimeDuration, SLOWNESS_TIMEOUT_KEY, expiryTime);
     }
+
+    /** Should the exceptions sent to the clients include the stack traces? */
+    String EXCEPTION_STACK_TRACE_ENABLED_KEY = PREFIX + ".exception.stacktrace.enabled";
+    boolean EXCEPTION_STACK_TRACE_ENABLED_DEFAULT = false;
+    static boolean exceptionStackTraceEnabled(RaftProperties properties) {
+      return getBoolean(properties::getBoolean,
+          EXCEPTION_STACK_TRACE_ENABLED_KEY, EXCEPTION_STACK_TRACE_ENABLED_DEFAULT, getDefaultLog());
+    }
+    static void setExceptionStackTraceEnabled(RaftProperties properties, boolean enabled) {
+      setBoolean(properties::setBoolean, EXCEPTION_STACK_TRACE_ENABLED_KEY, enabled);
+    }
   }
 
   /** server retry cache related */
@@ -379,6 +756,144 @@ public interface RaftServerConfigKeys {
     }
   }
 
+  /**
+   * The thread pools shared by all the groups in a server for the timers and the short tasks,
+   * which do not need a thread per group.
+   * The log appenders, the log worker, the state machine updater and the leader event processor
+   * still have a thread per group.
+   */
+  interface ThreadPool {
+    String PREFIX = RaftServerConfigKeys.PREFIX + ".threadpool";
+
+    /**
+     * The number of threads for the timers, e.g. the election timeouts and the request timeouts.
+     * The timer tasks must not block; a blocking task is passed to the rpc thread pool.
+     */
+    String SCHEDULER_SIZE_KEY = PREFIX + ".scheduler.size";
+    int SCHEDULER_SIZE_DEFAULT = 4;
+    static int schedulerSize(RaftProperties properties) {
+      return getInt(properties::getInt, SCHEDULER_SIZE_KEY, SCHEDULER_SIZE_DEFAULT, getDefaultLog(), requireMin(1));
+    }
+    static void setSchedulerSize(RaftProperties properties, int size) {
+      setInt(properties::setInt, SCHEDULER_SIZE_KEY, size, requireMin(1));
+    }
+
+    /**
+     * The max number of threads for the blocking tasks,
+     * e.g. requestVote, the election timeout checks and the storage migrations.
+     */
+    String RPC_SIZE_KEY = PREFIX + ".rpc.size";
+    int RPC_SIZE_DEFAULT = 32;
+    static int rpcSize(RaftProperties properties) {
+      return getInt(properties::getInt, RPC_SIZE_KEY, RPC_SIZE_DEFAULT, getDefaultLog(), requireMin(1));
+    }
+    static void setRpcSize(RaftProperties properties, int size) {
+      setInt(properties::setInt, RPC_SIZE_KEY, size, requireMin(1));
+    }
+
+    /** The max number of threads for applying transactions in parallel; see {@link ApplyTransaction}. */
+    String APPLY_SIZE_KEY = PREFIX + ".apply.size";
+    int APPLY_SIZE_DEFAULT = 16;
+    static int applySize(RaftProperties properties) {
+      return getInt(properties::getInt, APPLY_SIZE_KEY, APPLY_SIZE_DEFAULT, getDefaultLog(), requireMin(1));
+    }
+    static void setApplySize(RaftProperties properties, int size) {
+      setInt(properties::setInt, APPLY_SIZE_KEY, size, requireMin(1));
+    }
+  }
+
+  /**
+   * The reporters of the metrics in addition to JMX, which is always enabled.
+   * Note that the metrics registry is shared by all the servers in a JVM.
+   */
+  interface Metrics {
+    String PREFIX = RaftServerConfigKeys.PREFIX + ".metrics";
+
+    interface Csv {
+      String PREFIX = Metrics.PREFIX + ".csv";
+
+      String ENABLED_KEY = PREFIX + ".enabled";
+      boolean ENABLED_DEFAULT = false;
+      static boolean enabled(RaftProperties properties) {
+        return getBoolean(properties::getBoolean, ENABLED_KEY, ENABLED_DEFAULT, getDefaultLog());
+      }
+      static void setEnabled(RaftProperties properties, boolean enabled) {
+        setBoolean(properties::setBoolean, ENABLED_KEY, enabled);
+      }
+
+      /** The directory for the csv files, one file for each metric. */
+      String DIR_KEY = PREFIX + ".dir";
+      File DIR_DEFAULT = new File("/tmp/raft-server/metrics");
+      static File dir(RaftProperties properties) {
+        return getFile(properties::getFile, DIR_KEY, DIR_DEFAULT, getDefaultLog());
+      }
+      static void setDir(RaftProperties properties, File dir) {
+        setFile(properties::setFile, DIR_KEY, dir);
+      }
+
+      String PERIOD_KEY = PREFIX + ".period";
+      TimeDuration PERIOD_DEFAULT = TimeDuration.valueOf(10, TimeUnit.SECONDS);
+      static TimeDuration period(RaftProperties properties) {
+        return getTimeDuration(properties.getTimeDuration(PERIOD_DEFAULT.getUnit()),
+            PERIOD_KEY, PERIOD_DEFAULT, getDefaultLog());
+      }
+      static void setPeriod(RaftProperties properties, TimeDuration period) {
+        setTimeDuration(properties::setTimeDuration, PERIOD_KEY, period);
+      }
+    }
+
+    /** Serve the metrics in the Prometheus text format over HTTP. */
+    interface Prometheus {
+      String PREFIX = Metrics.PREFIX + ".prometheus";
+
+      String ENABLED_KEY = PREFIX + ".enabled";
+      boolean ENABLED_DEFAULT = false;
+      static boolean enabled(RaftProperties properties) {
+        return getBoolean(properties::getBoolean, ENABLED_KEY, ENABLED_DEFAULT, getDefaultLog());
+      }
+      static void setEnabled(RaftProperties properties, boolean enabled) {
+        setBoolean(properties::setBoolean, ENABLED_KEY, enabled);
+      }
+
+      /** The port of the HTTP endpoint; use 0 for an ephemeral port. */
+      String PORT_KEY = PREFIX + ".port";
+      int PORT_DEFAULT = 9464;
+      static int port(RaftProperties properties) {
+        return getInt(properties::getInt, PORT_KEY, PORT_DEFAULT, getDefaultLog(), requireMin(0));
+      }
+      static void setPort(RaftProperties properties, int port) {
+        setInt(properties::setInt, PORT_KEY, port);
+      }
+    }
+
+    /** Trace the stages of the sampled write requests in the leader. */
+    interface Tracing {
+      String PREFIX = Metrics.PREFIX + ".tracing";
+
+      /** Trace one of every n write requests; use 0 to disable tracing. */
+      String SAMPLING_INTERVAL_KEY = PREFIX + ".sampling.interval";
+      int SAMPLING_INTERVAL_DEFAULT = 0;
+      static int samplingInterval(RaftProperties properties) {
+        return getInt(properties::getInt, SAMPLING_INTERVAL_KEY, SAMPLING_INTERVAL_DEFAULT, getDefaultLog(),
+            requireMin(0));
+      }
+      static void setSamplingInterval(RaftProperties properties, int interval) {
+        setInt(properties::setInt, SAMPLING_INTERVAL_KEY, interval);
+      }
+
+      /** The stages of a traced request taking longer than the threshold are logged. */
+      String SLOW_REQUEST_THRESHOLD_KEY = PREFIX + ".slow-request.threshold";
+      TimeDuration SLOW_REQUEST_THRESHOLD_DEFAULT = TimeDuration.valueOf(1, TimeUnit.SECONDS);
+      static TimeDuration slowRequestThreshold(RaftProperties properties) {
+        return getTimeDuration(properties.getTimeDuration(SLOW_REQUEST_THRESHOLD_DEFAULT.getUnit()),
+            SLOW_REQUEST_THRESHOLD_KEY, SLOW_REQUEST_THRESHOLD_DEFAULT, getDefaultLog());
+      }
+      static void setSlowRequestThreshold(RaftProperties properties, TimeDuration threshold) {
+        setTimeDuration(properties::setTimeDuration, SLOW_REQUEST_THRESHOLD_KEY, threshold);
+      }
+    }
+  }
+
   static void main(String[] args) {
     printAll(RaftServerConfigKeys.class);
   }
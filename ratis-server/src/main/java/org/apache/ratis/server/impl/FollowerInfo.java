@@ -37,6 +37,8 @@ public class FollowerInfo {
   private final RaftPeer peer;
   private final AtomicReference<Timestamp> lastRpcResponseTime;
   private final AtomicReference<Timestamp> lastRpcSendTime;
+  /** The send time of the last appendEntries request acknowledged by the follower. */
+  private final AtomicReference<Timestamp> lastRespondedAppendEntriesSendTime;
   private final RaftLogIndex nextIndex;
   private final RaftLogIndex matchIndex = new RaftLogIndex("matchIndex", 0L);
   private final RaftLogIndex commitIndex = new RaftLogIndex("commitIndex", RaftServerConstants.INVALID_LOG_INDEX);
@@ -53,6 +55,7 @@ public class FollowerInfo {
     this.peer = peer;
     this.lastRpcResponseTime = new AtomicReference<>(lastRpcTime);
     this.lastRpcSendTime = new AtomicReference<>(lastRpcTime);
+    this.lastRespondedAppendEntriesSendTime = new AtomicReference<>(lastRpcTime);
     this.nextIndex = new RaftLogIndex("nextIndex", nextIndex);
     this.attendVote = attendVote;
     this.rpcSlownessTimeoutMs = rpcSlownessTimeoutMs;
@@ -130,6 +133,18 @@ public class FollowerInfo {
     return Timestamp.latest(lastRpcResponseTime.get(), lastRpcSendTime.get());
   }
 
+  /**
+   * The follower has acknowledged the leadership by replying an appendEntries request
+   * which was sent at the given time.
+   */
+  public void updateLastRespondedAppendEntriesSendTime(Timestamp sendTime) {
+    lastRespondedAppendEntriesSendTime.updateAndGet(t -> Timestamp.latest(t, sendTime));
+  }
+
+  public Timestamp getLastRespondedAppendEntriesSendTime() {
+    return lastRespondedAppendEntriesSendTime.get();
+  }
+
   public boolean isSlow() {
     return lastRpcResponseTime.get().elapsedTimeMs() > rpcSlownessTimeoutMs;
   }
@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.impl;
+
+import org.apache.ratis.proto.RaftProtos.ReadIndexReplyProto;
+import org.apache.ratis.proto.RaftProtos.ReadIndexRequestProto;
+import org.apache.ratis.protocol.AlreadyClosedException;
+import org.apache.ratis.protocol.RaftPeerId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Get the read index from the leader for the reads served by a follower.
+ *
+ * A read must use a read index obtained after the read has arrived.
+ * The reads arrived while a readIndex request is outstanding
+ * share the next readIndex request.
+ */
+class FollowerReadIndex {
+  public static final Logger LOG = LoggerFactory.getLogger(FollowerReadIndex.class);
+
+  private final RaftServerImpl server;
+
+  /** The reads waiting for the next readIndex request. */
+  private List<CompletableFuture<Long>> pendings = new ArrayList<>();
+  /** Is a readIndex request outstanding? */
+  private boolean sending = false;
+  private boolean closed = false;
+
+  FollowerReadIndex(RaftServerImpl server) {
+    this.server = server;
+  }
+
+  /** @return a future of the read index from the leader. */
+  CompletableFuture<Long> getReadIndex() {
+    final CompletableFuture<Long> future = new CompletableFuture<>();
+    synchronized (this) {
+      if (closed) {
+        future.completeExceptionally(new AlreadyClosedException(this + " is already closed"));
+        return future;
+      }
+      pendings.add(future);
+      if (sending) {
+        return future;
+      }
+      sending = true;
+    }
+    server.getProxy().getExecutors().getRpcExecutor().submit(this::sendReadIndexRequests);
+    return future;
+  }
+
+  private void sendReadIndexRequests() {
+    for(;;) {
+      final List<CompletableFuture<Long>> batch;
+      synchronized (this) {
+        if (pendings.isEmpty()) {
+          sending = false;
+          return;
+        }
+        batch = pendings;
+        pendings = new ArrayList<>();
+      }
+
+      try {
+        final long readIndex = sendReadIndexRequest();
+        LOG.trace("{}: readIndex {} for {} read(s)", server.getId(), readIndex, batch.size());
+        batch.forEach(f -> f.complete(readIndex));
+      } catch (Throwable t) {
+        LOG.debug("{}: Failed to get readIndex for {} read(s)", server.getId(), batch.size(), t);
+        batch.forEach(f -> f.completeExceptionally(t));
+      }
+    }
+  }
+
+  private long sendReadIndexRequest() throws IOException {
+    final RaftPeerId leaderId = server.getState().getLeaderId();
+    if (leaderId == null || leaderId.equals(server.getId())) {
+      throw server.generateNotLeaderException();
+    }
+    final ReadIndexRequestProto request = ServerProtoUtils.toReadIndexRequestProto(
+        server.getId(), leaderId, server.getGroupId());
+    final ReadIndexReplyProto reply = server.getServerRpc().readIndex(request);
+    if (!reply.getServerReply().getSuccess()) {
+      throw server.generateNotLeaderException();
+    }
+    return reply.getReadIndex();
+  }
+
+  void close() {
+    final List<CompletableFuture<Long>> failed;
+    synchronized (this) {
+      closed = true;
+      failed = pendings;
+      pendings = new ArrayList<>();
+    }
+    final AlreadyClosedException e = new AlreadyClosedException(this + " is closed");
+    failed.forEach(f -> f.completeExceptionally(e));
+  }
+
+  @Override
+  public String toString() {
+    return server.getId() + "-" + getClass().getSimpleName();
+  }
+}
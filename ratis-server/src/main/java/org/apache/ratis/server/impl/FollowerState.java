@@ -17,18 +17,23 @@
  */
 package org.apache.ratis.server.impl;
 
-import org.apache.ratis.util.Daemon;
+import org.apache.ratis.util.TimeDuration;
 import org.apache.ratis.util.Timestamp;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.ToIntFunction;
 
 /**
  * Used when the peer is a follower. Used to track the election timeout.
+ *
+ * Instead of a dedicated thread, the timeouts are scheduled on the scheduler shared by all the groups in the server.
+ * Since a check may wait for the server lock, it runs on the shared rpc executor
+ * so that a busy group cannot delay the timers of the other groups.
  */
-class FollowerState extends Daemon {
+class FollowerState {
   enum UpdateType {
     APPEND_START(AtomicInteger::incrementAndGet),
     APPEND_COMPLETE(AtomicInteger::decrementAndGet),
@@ -85,33 +90,46 @@ class FollowerState extends Daemon {
     this.monitorRunning = false;
   }
 
-  @Override
-  public  void run() {
-    while (monitorRunning && server.isFollower()) {
-      final long electionTimeout = server.getRandomTimeoutMs();
-      try {
-        Thread.sleep(electionTimeout);
-        if (!monitorRunning || !server.isFollower()) {
-          LOG.info("{} heartbeat monitor quit", server.getId());
-          break;
-        }
-        synchronized (server) {
-          if (outstandingOp.get() == 0 && lastRpcTime.elapsedTimeMs() >= electionTimeout) {
-            LOG.info("{} changes to CANDIDATE, lastRpcTime:{}, electionTimeout:{}ms",
-                server.getId(), lastRpcTime.elapsedTimeMs(), electionTimeout);
-            // election timeout, should become a candidate
-            server.changeToCandidate();
-            break;
+  void start() {
+    scheduleCheck();
+  }
+
+  private void scheduleCheck() {
+    final long electionTimeout = server.getRandomTimeoutMs();
+    final ServerExecutors executors = server.getProxy().getExecutors();
+    executors.getScheduler().onTimeout(TimeDuration.valueOf(electionTimeout, TimeUnit.MILLISECONDS),
+        () -> {
+          if (isRunning()) {
+            executors.getRpcExecutor().execute(() -> check(electionTimeout));
+          } else {
+            LOG.info("{} heartbeat monitor quit", server.getId());
           }
+        }, LOG, () -> this + " failed to check election timeout");
+  }
+
+  private boolean isRunning() {
+    return monitorRunning && server.isFollower();
+  }
+
+  private void check(long electionTimeout) {
+    if (!isRunning()) {
+      LOG.info("{} heartbeat monitor quit", server.getId());
+      return;
+    }
+    try {
+      synchronized (server) {
+        if (isRunning() && outstandingOp.get() == 0 && lastRpcTime.elapsedTimeMs() >= electionTimeout) {
+          LOG.info("{} changes to CANDIDATE, lastRpcTime:{}, electionTimeout:{}ms",
+              server.getId(), lastRpcTime.elapsedTimeMs(), electionTimeout);
+          // election timeout, should become a candidate
+          server.changeToCandidate();
+          return;
         }
-      } catch (InterruptedException e) {
-        LOG.info(this + " was interrupted: " + e);
-        LOG.trace("TRACE", e);
-        return;
-      } catch (Exception e) {
-        LOG.warn(this + " caught an exception", e);
       }
+    } catch (Exception e) {
+      LOG.warn(this + " caught an exception", e);
     }
+    scheduleCheck();
   }
 
   @Override
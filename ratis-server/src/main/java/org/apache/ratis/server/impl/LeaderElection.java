@@ -69,7 +69,6 @@ class LeaderElection extends Daemon {
 
   private final RaftServerImpl server;
   private ExecutorCompletionService<RequestVoteReplyProto> service;
-  private ExecutorService executor;
   private volatile boolean running;
   /**
    * The Raft configuration should not change while the peer is in candidate
@@ -90,10 +89,10 @@ class LeaderElection extends Daemon {
     this.running = false;
   }
 
-  private void initExecutor() {
+  /** Use a new completion service for each round so that the replies from the previous rounds are ignored. */
+  private void initService() {
     Preconditions.assertTrue(!others.isEmpty());
-    executor = Executors.newFixedThreadPool(others.size(), Daemon::new);
-    service = new ExecutorCompletionService<>(executor);
+    service = new ExecutorCompletionService<>(server.getProxy().getExecutors().getRpcExecutor());
   }
 
   @Override
@@ -119,6 +118,7 @@ class LeaderElection extends Daemon {
     final ServerState state = server.getState();
     while (running && server.isCandidate()) {
       // one round of requestVotes
+      final Timestamp startTime = Timestamp.currentTime();
       final long electionTerm;
       synchronized (server) {
         electionTerm = state.initElection();
@@ -140,16 +140,11 @@ class LeaderElection extends Daemon {
       if (others.isEmpty()) {
         r = new ResultAndTerm(Result.PASSED, electionTerm);
       } else {
-        try {
-          initExecutor();
-          int submitted = submitRequests(electionTerm, lastEntry);
-          r = waitForResults(electionTerm, submitted);
-        } finally {
-          if (executor != null) {
-            executor.shutdown();
-          }
-        }
+        initService();
+        int submitted = submitRequests(electionTerm, lastEntry);
+        r = waitForResults(electionTerm, submitted);
       }
+      RaftServerMetrics.updateElapsedTime(server.getMetrics().getElectionTime(), startTime);
 
       synchronized (server) {
         if (electionTerm != state.getCurrentTerm() || !running ||
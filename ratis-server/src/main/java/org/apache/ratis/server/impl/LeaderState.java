@@ -17,7 +17,10 @@
  */
 package org.apache.ratis.server.impl;
 
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
 import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.metrics.RatisMetricsRegistry;
 import org.apache.ratis.proto.RaftProtos.ReplicationLevel;
 import org.apache.ratis.protocol.*;
 import org.apache.ratis.server.RaftServerConfigKeys;
@@ -41,6 +44,7 @@ import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.function.LongSupplier;
 import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.function.ToLongFunction;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -183,8 +187,17 @@ public class LeaderState {
   private final EventProcessor processor;
   private final PendingRequests pendingRequests;
   private final WatchRequests watchRequests;
+  private final ReadIndexHeartbeats readIndexHeartbeats;
   private volatile boolean running = true;
 
+  /** The duration of the leader lease; a non-positive value means that the lease is disabled. */
+  private final long leaderLeaseMs;
+  /** Was the lease valid at the last check? */
+  private volatile boolean leaseValid = false;
+  private final Supplier<Counter> leaseHitCounter;
+  private final Supplier<Counter> leaseMissCounter;
+  private final Supplier<Counter> leaseExpiredCounter;
+
   private final int stagingCatchupGap;
   private final TimeDuration syncInterval;
   private final long placeHolderIndex;
@@ -199,8 +212,19 @@ public class LeaderState {
     this.raftLog = state.getLog();
     this.currentTerm = state.getCurrentTerm();
     processor = new EventProcessor();
-    this.pendingRequests = new PendingRequests(server.getId());
-    this.watchRequests = new WatchRequests(server.getId(), properties);
+    this.pendingRequests = new PendingRequests(server.getId(), server.getMetrics().getCommitLatency());
+    final TimeoutScheduler scheduler = server.getProxy().getExecutors().getScheduler();
+    this.watchRequests = new WatchRequests(server.getId(), properties, scheduler);
+    this.readIndexHeartbeats = new ReadIndexHeartbeats(server.getId(), properties, scheduler);
+    this.leaderLeaseMs = !RaftServerConfigKeys.Read.LeaderLease.enabled(properties)? 0
+        : server.getMinTimeoutMs() - RaftServerConfigKeys.Read.LeaderLease.clockDriftBound(properties)
+            .toLong(TimeUnit.MILLISECONDS);
+    this.leaseHitCounter = JavaUtils.memoize(() -> RatisMetricsRegistry.getRegistry()
+        .counter(MetricRegistry.name(LeaderState.class, server.getId().toString(), "lease-hit")));
+    this.leaseMissCounter = JavaUtils.memoize(() -> RatisMetricsRegistry.getRegistry()
+        .counter(MetricRegistry.name(LeaderState.class, server.getId().toString(), "lease-miss")));
+    this.leaseExpiredCounter = JavaUtils.memoize(() -> RatisMetricsRegistry.getRegistry()
+        .counter(MetricRegistry.name(LeaderState.class, server.getId().toString(), "lease-expired")));
 
     final RaftConfiguration conf = server.getRaftConf();
     Collection<RaftPeer> others = conf.getOtherPeers(state.getSelfId());
@@ -237,12 +261,14 @@ public class LeaderState {
     this.running = false;
     // do not interrupt event processor since it may be in the middle of logSync
     senders.forEach(LogAppender::stopAppender);
+    server.getTracer().clear();
     final NotLeaderException nle = server.generateNotLeaderException();
     final Collection<CommitInfoProto> commitInfos = server.getCommitInfos();
     try {
       final Collection<TransactionContext> transactions = pendingRequests.sendNotLeaderResponses(nle, commitInfos);
       server.getStateMachine().notifyNotLeader(transactions);
       watchRequests.failWatches(nle);
+      readIndexHeartbeats.failAll(nle);
     } catch (IOException e) {
       LOG.warn(server.getId() + ": Caught exception in sendNotLeaderResponses", e);
     }
@@ -292,6 +318,10 @@ public class LeaderState {
     return pending;
   }
 
+  int getNumPendingRequests() {
+    return pendingRequests.size();
+  }
+
   PendingRequest addPendingRequest(RaftClientRequest request, TransactionContext entry) {
     if (LOG.isDebugEnabled()) {
       LOG.debug("{}: addPendingRequest at {}, entry=", server.getId(), request,
@@ -314,6 +344,72 @@ public class LeaderState {
         });
   }
 
+  /**
+   * The ReadIndex protocol: the read index is the current commit index,
+   * which is returned once the leadership is confirmed by a heartbeat round.
+   * The concurrent reads share the same heartbeat round.
+   *
+   * Before the placeholder entry of the current term is committed,
+   * the commit index may lag behind the entries committed by the previous leaders.
+   * In such case, the read index is the placeholder index.
+   *
+   * When the leader lease is valid, the leadership is confirmed without a heartbeat round.
+   */
+  CompletableFuture<Long> getReadIndex() {
+    final long readIndex = Math.max(raftLog.getLastCommittedIndex(), placeHolderIndex);
+    if (isLeadershipConfirmed(Timestamp.currentTime()) || checkLeaderLease()) {
+      // no other voting peers (e.g. a single-member group) or the lease is valid
+      return CompletableFuture.completedFuture(readIndex);
+    }
+    final CompletableFuture<Long> future = readIndexHeartbeats.add(readIndex);
+    if (!running) {
+      readIndexHeartbeats.failAll(server.generateNotLeaderException());
+    }
+    senders.forEach(LogAppender::triggerHeartbeat);
+    return future;
+  }
+
+  /**
+   * The lease is valid if a majority has acknowledged the leadership within the lease duration.
+   * Since a follower does not vote within the min rpc timeout after it has received a request from the leader,
+   * no other leader can be elected during the lease, provided that the clock drift is bounded.
+   *
+   * @return true iff the leader lease is enabled and valid.
+   */
+  private boolean checkLeaderLease() {
+    if (leaderLeaseMs <= 0) {
+      return false;
+    }
+    final boolean valid = isLeadershipConfirmed(Timestamp.currentTime().addTimeMs(-leaderLeaseMs));
+    if (valid) {
+      leaseHitCounter.get().inc();
+    } else {
+      leaseMissCounter.get().inc();
+      if (leaseValid) {
+        leaseExpiredCounter.get().inc();
+      }
+    }
+    leaseValid = valid;
+    return valid;
+  }
+
+  /** A follower has acknowledged the leadership; see {@link FollowerInfo#getLastRespondedAppendEntriesSendTime()}. */
+  void onLeadershipAcknowledged() {
+    if (!readIndexHeartbeats.isEmpty()) {
+      readIndexHeartbeats.onHeartbeatAck(this::isLeadershipConfirmed);
+    }
+  }
+
+  /** @return true iff a majority has acknowledged the leadership at or after the given time. */
+  private boolean isLeadershipConfirmed(Timestamp time) {
+    final List<RaftPeerId> acknowledged = senders.stream()
+        .map(LogAppender::getFollower)
+        .filter(f -> f.getLastRespondedAppendEntriesSendTime().compareTo(time) >= 0)
+        .map(f -> f.getPeer().getId())
+        .collect(Collectors.toList());
+    return server.getRaftConf().hasMajority(acknowledged, server.getId());
+  }
+
   void commitIndexChanged() {
     getMajorityMin(FollowerInfo::getCommitIndex, raftLog::getLastCommittedIndex).ifPresent(m -> {
       // Normally, leader commit index is always ahead followers.
@@ -583,7 +679,9 @@ public class LeaderState {
       // the log gets purged after the statemachine does a snapshot
       final TermIndex[] entriesToCommit = raftLog.getEntries(
           oldLastCommitted + 1, majority + 1);
-      if (server.getState().updateStatemachine(majority, currentTerm)) {
+      if (server.getState().updateStatemachine(majority, currentTerm, true)) {
+        pendingRequests.committed(oldLastCommitted + 1, majority);
+        server.getTracer().stampUpTo(majority, RequestTracer.Stage.COMMIT);
         watchRequests.update(ReplicationLevel.MAJORITY, majority);
         logMetadata(majority);
         commitIndexChanged();
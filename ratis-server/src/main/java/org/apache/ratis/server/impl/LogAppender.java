@@ -17,6 +17,7 @@
  */
 package org.apache.ratis.server.impl;
 
+import com.codahale.metrics.Timer;
 import org.apache.ratis.conf.RaftProperties;
 import org.apache.ratis.protocol.RaftPeerId;
 import org.apache.ratis.server.RaftServerConfigKeys;
@@ -26,17 +27,20 @@ import org.apache.ratis.server.storage.FileInfo;
 import org.apache.ratis.server.storage.RaftLog;
 import org.apache.ratis.server.storage.RaftLogIOException;
 import org.apache.ratis.thirdparty.com.google.protobuf.ByteString;
+import org.apache.ratis.thirdparty.com.google.protobuf.UnsafeByteOperations;
 import org.apache.ratis.proto.RaftProtos.*;
 import org.apache.ratis.statemachine.SnapshotInfo;
 import org.apache.ratis.util.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.File;
-import java.io.FileInputStream;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
 
 import static org.apache.ratis.server.impl.RaftServerConstants.DEFAULT_CALLID;
@@ -65,6 +69,11 @@ public class LogAppender {
 
   private final LifeCycle lifeCycle;
   private final Daemon daemon = new Daemon(this::runAppender);
+  private final Timer appendEntriesRoundTripTime;
+  /** Send a heartbeat immediately, e.g. to confirm the leadership for a read. */
+  private volatile boolean heartbeatTriggered = false;
+  /** The requests of the snapshot being installed, if there is any. */
+  private SnapshotRequestIter snapshotRequests;
 
   public LogAppender(RaftServerImpl server, LeaderState leaderState, FollowerInfo f) {
     this.follower = f;
@@ -80,6 +89,7 @@ public class LogAppender {
     final int bufferElementLimit = RaftServerConfigKeys.Log.Appender.bufferElementLimit(properties);
     this.buffer = new DataQueue<>(this, bufferByteLimit, bufferElementLimit, EntryWithData::getSerializedSize);
     this.lifeCycle = new LifeCycle(this);
+    this.appendEntriesRoundTripTime = server.getMetrics().getAppendEntriesRoundTripTime(f.getPeer().getId());
   }
 
   @Override
@@ -91,12 +101,17 @@ public class LogAppender {
   void startAppender() {
     // The life cycle state could be already closed due to server shutdown.
     if (lifeCycle.compareAndTransition(NEW, STARTING)) {
+      server.getMetrics().addFollower(follower, raftLog);
       daemon.start();
     }
   }
 
   private void runAppender() {
-    lifeCycle.transition(RUNNING);
+    if (!lifeCycle.compareAndTransition(STARTING, RUNNING)) {
+      // the appender is stopped before it runs
+      lifeCycle.compareAndTransition(CLOSING, CLOSED);
+      return;
+    }
     try {
       runAppenderImpl();
     } catch (InterruptedException | InterruptedIOException e) {
@@ -108,6 +123,7 @@ public class LogAppender {
       LOG.error(this + " unexpected exception", e);
       lifeCycle.transition(EXCEPTION);
     } finally {
+      resetSnapshotRequests();
       if (!lifeCycle.compareAndTransition(CLOSING, CLOSED)) {
         lifeCycle.transitionIfNotEqual(EXCEPTION);
       }
@@ -123,6 +139,7 @@ public class LogAppender {
       return;
     }
     lifeCycle.transition(CLOSING);
+    server.getMetrics().removeFollower(getFollowerId());
     daemon.interrupt();
   }
 
@@ -151,6 +168,7 @@ public class LogAppender {
   protected AppendEntriesRequestProto createRequest(long callId) throws RaftLogIOException {
     final TermIndex previous = getPrevious();
     final long heartbeatRemainingMs = getHeartbeatRemainingTime();
+    heartbeatTriggered = false;
     if (heartbeatRemainingMs <= 0L) {
       return leaderState.newAppendEntriesRequestProto(
           getFollowerId(), previous, Collections.emptyList(), !follower.isAttendingVote(), callId);
@@ -158,12 +176,8 @@ public class LogAppender {
 
     Preconditions.assertTrue(buffer.isEmpty(), () -> "buffer has " + buffer.getNumElements() + " elements.");
 
-    final long leaderNext = raftLog.getNextIndex();
-    for (long next = follower.getNextIndex(); leaderNext > next; ) {
-      if (!buffer.offer(raftLog.getEntryWithData(next++))) {
-        break;
-      }
-    }
+    // read the entries until the buffer is full
+    raftLog.getEntriesWithData(follower.getNextIndex(), raftLog.getNextIndex(), buffer::offer);
     if (buffer.isEmpty()) {
       return null;
     }
@@ -171,6 +185,9 @@ public class LogAppender {
     final List<LogEntryProto> protos = buffer.pollList(heartbeatRemainingMs, EntryWithData::getEntry,
         (entry, time, exception) -> LOG.warn(this + ": Failed get " + entry + " in " + time, exception));
     buffer.clear();
+    if (!protos.isEmpty()) {
+      server.getTracer().stampUpTo(protos.get(protos.size() - 1).getIndex(), RequestTracer.Stage.APPENDER_SEND);
+    }
     return leaderState.newAppendEntriesRequestProto(
         getFollowerId(), previous, protos, !follower.isAttendingVote(), callId);
   }
@@ -195,9 +212,12 @@ public class LogAppender {
           return null;
         }
 
+        final Timestamp sendTime = Timestamp.currentTime();
         follower.updateLastRpcSendTime();
         final AppendEntriesReplyProto r = server.getServerRpc().appendEntries(request);
         follower.updateLastRpcResponseTime();
+        updateRoundTripTime(sendTime);
+        acknowledgeLeadership(r, sendTime);
 
         updateCommitIndex(r.getFollowerCommit());
         return r;
@@ -217,97 +237,171 @@ public class LogAppender {
     return null;
   }
 
+  /** Update the round-trip time metric for the appendEntries request sent at the given time. */
+  protected void updateRoundTripTime(Timestamp sendTime) {
+    RaftServerMetrics.updateElapsedTime(appendEntriesRoundTripTime, sendTime);
+  }
+
+  /**
+   * A successful or an inconsistency reply means that the follower
+   * still recognized this leader when it received the request sent at the given time.
+   */
+  protected void acknowledgeLeadership(AppendEntriesReplyProto reply, Timestamp sendTime) {
+    final AppendEntriesReplyProto.AppendResult result = reply.getResult();
+    if (result == AppendEntriesReplyProto.AppendResult.SUCCESS
+        || result == AppendEntriesReplyProto.AppendResult.INCONSISTENCY) {
+      follower.updateLastRespondedAppendEntriesSendTime(sendTime);
+      leaderState.onLeadershipAcknowledged();
+    }
+  }
+
+  /** @return the next index of the follower after the given INCONSISTENCY reply. */
+  protected long getNextIndexForInconsistency(AppendEntriesReplyProto reply) {
+    return getNextIndexForInconsistency(raftLog, reply);
+  }
+
+  /**
+   * Use the conflict hint, if there is any, to skip all the conflicting entries of a term in one step;
+   * see the "fast log backtracking" optimization in Section 5.3 of the Raft paper.
+   * If the leader also has entries with the conflicting term,
+   * the follower may match the leader up to the last of them.
+   * Otherwise, the follower entries with the conflicting term all conflict.
+   */
+  static long getNextIndexForInconsistency(RaftLog log, AppendEntriesReplyProto reply) {
+    final long nextIndex = reply.getNextIndex();
+    if (!reply.hasConflictTermIndex()) {
+      return nextIndex;
+    }
+    final TermIndex conflict = ServerProtoUtils.toTermIndex(reply.getConflictTermIndex());
+    final long last = log.findLastIndex(conflict.getTerm(), nextIndex - 1);
+    return Math.min(last >= 0? last + 1: conflict.getIndex(), nextIndex);
+  }
+
   protected void updateCommitIndex(long commitIndex) {
     if (follower.updateCommitIndex(commitIndex)) {
       leaderState.commitIndexChanged();
     }
   }
 
+  /**
+   * The requests for installing a snapshot, each of which carries a chunk of a snapshot file.
+   * A file is read through a {@link FileChannel} kept open across the chunks
+   * and the data are wrapped into the requests without copying.
+   *
+   * Once the replies are {@link #acknowledge(int)}d,
+   * the iteration can be {@link #rewind()}ed to the first unacknowledged request
+   * so that a retry resumes the installation, instead of starting it over.
+   */
   protected class SnapshotRequestIter
-      implements Iterable<InstallSnapshotRequestProto> {
+      implements Iterable<InstallSnapshotRequestProto>, Closeable {
+    /** The position of a request in the snapshot files. */
+    private class Position {
+      private final int requestIndex;
+      private final int fileIndex;
+      private final long offset;
+      private final int chunkIndex;
+
+      Position(int requestIndex, int fileIndex, long offset, int chunkIndex) {
+        this.requestIndex = requestIndex;
+        this.fileIndex = fileIndex;
+        this.offset = offset;
+        this.chunkIndex = chunkIndex;
+      }
+    }
+
     private final SnapshotInfo snapshot;
     private final List<FileInfo> files;
-    private FileInputStream in;
-    private int fileIndex = 0;
+    private final String requestId;
 
-    private FileInfo currentFileInfo;
-    private byte[] currentBuf;
-    private long currentFileSize;
-    private long currentOffset = 0;
-    private int chunkIndex = 0;
+    /** The position of the next request. */
+    private Position next = new Position(0, 0, 0, 0);
+    /** The position of the first unacknowledged request. */
+    private Position acknowledged = next;
+    /** The positions of the sent requests not yet acknowledged, in request order. */
+    private final LinkedList<Position> sent = new LinkedList<>();
 
-    private final String requestId;
-    private int requestIndex = 0;
+    private FileChannel in;
 
-    public SnapshotRequestIter(SnapshotInfo snapshot, String requestId)
-        throws IOException {
+    public SnapshotRequestIter(SnapshotInfo snapshot, String requestId) {
       this.snapshot = snapshot;
       this.requestId = requestId;
       this.files = snapshot.getFiles();
-      if (files.size() > 0) {
-        startReadFile();
+    }
+
+    boolean isFor(SnapshotInfo s) {
+      return snapshot.getTermIndex().equals(s.getTermIndex());
+    }
+
+    /** The reply of the given request is received. */
+    public synchronized void acknowledge(int requestIndex) {
+      for(; !sent.isEmpty() && sent.getFirst().requestIndex <= requestIndex; ) {
+        sent.removeFirst();
+        acknowledged = sent.isEmpty()? next: sent.getFirst();
       }
     }
 
-    private void startReadFile() throws IOException {
-      currentFileInfo = files.get(fileIndex);
-      File snapshotFile = currentFileInfo.getPath().toFile();
-      currentFileSize = snapshotFile.length();
-      final int bufLength = getSnapshotChunkLength(currentFileSize);
-      currentBuf = new byte[bufLength];
-      currentOffset = 0;
-      chunkIndex = 0;
-      in = new FileInputStream(snapshotFile);
+    /** Rewind to the first unacknowledged request. */
+    public synchronized void rewind() {
+      close();
+      sent.clear();
+      next = acknowledged;
+    }
+
+    @Override
+    public synchronized void close() {
+      IOUtils.cleanup(LOG, in);
+      in = null;
     }
 
     private int getSnapshotChunkLength(long len) {
       return len < snapshotChunkMaxSize? (int)len: snapshotChunkMaxSize;
     }
 
+    private synchronized boolean hasNext() {
+      return next.fileIndex < files.size();
+    }
+
+    private synchronized InstallSnapshotRequestProto next() throws IOException {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      final FileInfo fileInfo = files.get(next.fileIndex);
+      if (in == null) {
+        in = FileChannel.open(fileInfo.getPath(), StandardOpenOption.READ);
+      }
+      final long fileSize = fileInfo.getFileSize();
+      final int length = getSnapshotChunkLength(fileSize - next.offset);
+      final FileChunkProto chunk = readFileChunk(fileInfo, in, length, next.offset, next.chunkIndex);
+      final boolean done = next.fileIndex == files.size() - 1 && chunk.getDone();
+      final InstallSnapshotRequestProto request = server.createInstallSnapshotRequest(
+          follower.getPeer().getId(), requestId, next.requestIndex, snapshot,
+          Collections.singletonList(chunk), done);
+
+      sent.add(next);
+      final long offset = next.offset + length;
+      if (offset >= fileSize) {
+        close();
+        next = new Position(next.requestIndex + 1, next.fileIndex + 1, 0, 0);
+      } else {
+        next = new Position(next.requestIndex + 1, next.fileIndex, offset, next.chunkIndex + 1);
+      }
+      return request;
+    }
+
     @Override
     public Iterator<InstallSnapshotRequestProto> iterator() {
       return new Iterator<InstallSnapshotRequestProto>() {
         @Override
         public boolean hasNext() {
-          return fileIndex < files.size();
+          return SnapshotRequestIter.this.hasNext();
         }
 
         @Override
         public InstallSnapshotRequestProto next() {
-          if (fileIndex >= files.size()) {
-            throw new NoSuchElementException();
-          }
-          final int targetLength = getSnapshotChunkLength(
-              currentFileSize - currentOffset);
-          FileChunkProto chunk;
           try {
-            chunk = readFileChunk(currentFileInfo, in, currentBuf,
-                targetLength, currentOffset, chunkIndex);
-            boolean done = (fileIndex == files.size() - 1) &&
-                chunk.getDone();
-            InstallSnapshotRequestProto request =
-                server.createInstallSnapshotRequest(follower.getPeer().getId(),
-                    requestId, requestIndex++, snapshot,
-                    Collections.singletonList(chunk), done);
-            currentOffset += targetLength;
-            chunkIndex++;
-
-            if (currentOffset >= currentFileSize) {
-              in.close();
-              fileIndex++;
-              if (fileIndex < files.size()) {
-                startReadFile();
-              }
-            }
-
-            return request;
+            return SnapshotRequestIter.this.next();
           } catch (IOException e) {
-            if (in != null) {
-              try {
-                in.close();
-              } catch (IOException ignored) {
-              }
-            }
+            close();
             LOG.warn("Got exception when preparing InstallSnapshot request", e);
             throw new RuntimeException(e);
           }
@@ -317,34 +411,62 @@ public class LogAppender {
   }
 
   private FileChunkProto readFileChunk(FileInfo fileInfo,
-      FileInputStream in, byte[] buf, int length, long offset, int chunkIndex)
+      FileChannel in, int length, long offset, int chunkIndex)
       throws IOException {
     FileChunkProto.Builder builder = FileChunkProto.newBuilder()
         .setOffset(offset).setChunkIndex(chunkIndex);
-    IOUtils.readFully(in, buf, 0, length);
+    final ByteBuffer buf = ByteBuffer.allocate(length);
+    IOUtils.readFully(in, buf, offset);
+    buf.flip();
     Path relativePath = server.getState().getStorage().getStorageDir()
         .relativizeToRoot(fileInfo.getPath());
     builder.setFilename(relativePath.toString());
     builder.setDone(offset + length == fileInfo.getFileSize());
     builder.setFileDigest(
         ByteString.copyFrom(fileInfo.getFileDigest().getDigest()));
-    builder.setData(ByteString.copyFrom(buf, 0, length));
+    // the buffer is not reused, so that it can be wrapped without copying
+    builder.setData(UnsafeByteOperations.unsafeWrap(buf));
     return builder.build();
   }
 
+  /**
+   * @return the requests for installing the given snapshot,
+   *         which resume the previous installation of the same snapshot if there is one.
+   */
+  protected synchronized SnapshotRequestIter getSnapshotRequests(SnapshotInfo snapshot) {
+    if (snapshotRequests != null && snapshotRequests.isFor(snapshot)) {
+      snapshotRequests.rewind();
+    } else {
+      resetSnapshotRequests();
+      snapshotRequests = new SnapshotRequestIter(snapshot, UUID.randomUUID().toString());
+    }
+    return snapshotRequests;
+  }
+
+  /** The next installation will start over. */
+  protected synchronized void resetSnapshotRequests() {
+    if (snapshotRequests != null) {
+      snapshotRequests.close();
+      snapshotRequests = null;
+    }
+  }
+
   private InstallSnapshotReplyProto installSnapshot(SnapshotInfo snapshot) throws InterruptedIOException {
-    String requestId = UUID.randomUUID().toString();
+    final SnapshotRequestIter requests = getSnapshotRequests(snapshot);
     InstallSnapshotReplyProto reply = null;
     try {
-      for (InstallSnapshotRequestProto request :
-          new SnapshotRequestIter(snapshot, requestId)) {
+      for (InstallSnapshotRequestProto request : requests) {
         follower.updateLastRpcSendTime();
         reply = server.getServerRpc().installSnapshot(request);
         follower.updateLastRpcResponseTime();
 
         if (!reply.getServerReply().getSuccess()) {
+          if (reply.getResult() == InstallSnapshotResult.OUT_OF_ORDER) {
+            resetSnapshotRequests();
+          }
           return reply;
         }
+        requests.acknowledge(reply.getRequestIndex());
       }
     } catch (InterruptedIOException iioe) {
       throw iioe;
@@ -355,6 +477,7 @@ public class LogAppender {
     }
 
     if (reply != null) {
+      resetSnapshotRequests();
       follower.setSnapshotIndex(snapshot.getTermIndex().getIndex());
       LOG.info("{}: install snapshot-{} successfully on follower {}",
           server.getId(), snapshot.getTermIndex().getIndex(), follower.getPeer());
@@ -434,7 +557,7 @@ public class LogAppender {
           checkResponseTerm(reply.getTerm());
           break;
         case INCONSISTENCY:
-          follower.decreaseNextIndex(reply.getNextIndex());
+          follower.decreaseNextIndex(getNextIndexForInconsistency(reply));
           break;
         case UNRECOGNIZED:
           LOG.warn("{} received UNRECOGNIZED AppendResult from {}",
@@ -451,6 +574,7 @@ public class LogAppender {
 
   protected void submitEventOnSuccessAppend() {
     if (follower.isAttendingVote()) {
+      server.getTracer().stampUpTo(follower.getMatchIndex(), RequestTracer.Stage.FOLLOWER_ACK);
       leaderState.submitUpdateCommitEvent();
     } else {
       leaderState.submitCheckStagingEvent();
@@ -467,6 +591,12 @@ public class LogAppender {
     this.notify();
   }
 
+  /** Send a heartbeat as soon as possible. */
+  void triggerHeartbeat() {
+    heartbeatTriggered = true;
+    notifyAppend();
+  }
+
   /** Should the leader send appendEntries RPC to this follower? */
   protected boolean shouldSendRequest() {
     return shouldAppendEntries(follower.getNextIndex()) || shouldHeartbeat();
@@ -484,6 +614,9 @@ public class LogAppender {
    * @return the time in milliseconds that the leader should send a heartbeat.
    */
   protected long getHeartbeatRemainingTime() {
+    if (heartbeatTriggered) {
+      return 0L;
+    }
     return halfMinTimeoutMs - follower.getLastRpcTime().elapsedTimeMs();
   }
 
@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.impl;
+
+import com.codahale.metrics.CsvReporter;
+import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.metrics.PrometheusHttpServer;
+import org.apache.ratis.metrics.RatisMetricsRegistry;
+import org.apache.ratis.server.RaftServerConfigKeys;
+import org.apache.ratis.util.TimeDuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The metrics reporters of a {@link RaftServerProxy} enabled in {@link RaftServerConfigKeys.Metrics}.
+ */
+class MetricsReporters implements Closeable {
+  static final Logger LOG = LoggerFactory.getLogger(MetricsReporters.class);
+
+  private CsvReporter csvReporter;
+  private PrometheusHttpServer prometheusServer;
+
+  synchronized void start(Object name, RaftProperties properties) throws IOException {
+    if (RaftServerConfigKeys.Metrics.Csv.enabled(properties)) {
+      final File dir = RaftServerConfigKeys.Metrics.Csv.dir(properties);
+      if (!dir.isDirectory() && !dir.mkdirs()) {
+        throw new IOException(name + ": Failed to create directory " + dir + " for the csv metrics");
+      }
+      final TimeDuration period = RaftServerConfigKeys.Metrics.Csv.period(properties);
+      csvReporter = CsvReporter.forRegistry(RatisMetricsRegistry.getRegistry())
+          .convertRatesTo(TimeUnit.SECONDS)
+          .convertDurationsTo(TimeUnit.MILLISECONDS)
+          .build(dir);
+      csvReporter.start(period.getDuration(), period.getUnit());
+      LOG.info("{}: started the csv metrics reporter at {}", name, dir);
+    }
+    if (RaftServerConfigKeys.Metrics.Prometheus.enabled(properties)) {
+      final int port = RaftServerConfigKeys.Metrics.Prometheus.port(properties);
+      prometheusServer = new PrometheusHttpServer(RatisMetricsRegistry.getRegistry(), new InetSocketAddress(port));
+    }
+  }
+
+  synchronized Optional<InetSocketAddress> getPrometheusAddress() {
+    return Optional.ofNullable(prometheusServer).map(PrometheusHttpServer::getAddress);
+  }
+
+  @Override
+  public synchronized void close() {
+    if (csvReporter != null) {
+      // report once more so that the files have the final values
+      csvReporter.report();
+      csvReporter.stop();
+      csvReporter = null;
+    }
+    if (prometheusServer != null) {
+      prometheusServer.close();
+      prometheusServer = null;
+    }
+  }
+}
@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.impl;
+
+import org.apache.ratis.protocol.AlreadyClosedException;
+import org.apache.ratis.protocol.Message;
+import org.apache.ratis.server.protocol.TermIndex;
+import org.apache.ratis.statemachine.StateMachine;
+import org.apache.ratis.statemachine.TransactionContext;
+import org.apache.ratis.util.ExitUtils;
+import org.apache.ratis.util.JavaUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * Apply the committed transactions in parallel.
+ *
+ * A transaction is dispatched to one of the lanes according to its partition key,
+ * see {@link StateMachine#getPartitionKey(TransactionContext)}.
+ * Each lane is a serial executor so that the transactions with the same key
+ * are applied in the log order.
+ * The lanes of all the groups in a server may share a thread pool; see {@link ServerExecutors#newApplyLane()}.
+ * A transaction without a key is applied by the caller
+ * once all the previously dispatched transactions have completed.
+ *
+ * Since the transactions may complete out of order,
+ * the last applied index is the largest index such that
+ * all the transactions up to the index have completed.
+ * The applier owns that index: when it advances, the state machine is notified with
+ * {@link StateMachine#notifyTransactionsApplied(TermIndex)}.
+ *
+ * The methods other than {@link #getLastAppliedIndex()} must be called by a single thread.
+ */
+class ParallelApplier {
+  static final Logger LOG = LoggerFactory.getLogger(ParallelApplier.class);
+
+  private final Object name;
+  private final StateMachine stateMachine;
+  private final Executor[] lanes;
+  /** Called when the last applied index is advanced by a lane. */
+  private final Runnable onAdvance;
+
+  /** The indices of the transactions dispatched but not yet completed. */
+  private final NavigableSet<Long> pending = new TreeSet<>();
+  /** Map: index -> term, the transactions completed but not yet notified to the state machine. */
+  private final NavigableMap<Long, Long> completed = new TreeMap<>();
+  private long lastDispatchedIndex;
+  private volatile boolean closed = false;
+
+  ParallelApplier(Object name, StateMachine stateMachine, int numLanes, Supplier<? extends Executor> newLane,
+      long lastAppliedIndex, Runnable onAdvance) {
+    this.name = name;
+    this.stateMachine = stateMachine;
+    this.lanes = new Executor[numLanes];
+    for(int i = 0; i < lanes.length; i++) {
+      lanes[i] = newLane.get();
+    }
+    this.onAdvance = onAdvance;
+    this.lastDispatchedIndex = lastAppliedIndex;
+  }
+
+  synchronized long getLastAppliedIndex() {
+    return pending.isEmpty()? lastDispatchedIndex: pending.first() - 1;
+  }
+
+  /** The entries up to the given index have been dispatched. */
+  synchronized void setLastDispatchedIndex(long index) {
+    lastDispatchedIndex = index;
+  }
+
+  /** Reset the indices, e.g. after a snapshot is loaded. All the transactions must have completed. */
+  synchronized void reset(long lastAppliedIndex) {
+    pending.clear();
+    completed.clear();
+    lastDispatchedIndex = lastAppliedIndex;
+  }
+
+  /** Wait until all the dispatched transactions have completed. */
+  synchronized void waitForAll() throws InterruptedException {
+    while (!pending.isEmpty()) {
+      wait();
+    }
+  }
+
+  /** Dispatch the given transaction. */
+  CompletableFuture<Message> applyTransaction(TransactionContext trx) throws InterruptedException {
+    final long term = trx.getLogEntry().getTerm();
+    final long index = trx.getLogEntry().getIndex();
+    // a batch may contain transactions with different keys
+    final Object key = trx.getStateMachineLogEntry().getBatch()? null: stateMachine.getPartitionKey(trx);
+    final CompletableFuture<Message> future;
+    if (key == null) {
+      waitForAll();
+      addPending(index);
+      future = StateMachineUpdater.applyTransaction(stateMachine, trx);
+    } else {
+      addPending(index);
+      final Executor lane = lanes[Math.floorMod(key.hashCode(), lanes.length)];
+      future = CompletableFuture.supplyAsync(() -> applyTransaction(trx, index), lane)
+          .thenCompose(f -> f);
+    }
+    future.whenComplete((reply, e) -> removePending(term, index));
+    return future;
+  }
+
+  private CompletableFuture<Message> applyTransaction(TransactionContext trx, long index) {
+    if (closed) {
+      return JavaUtils.completeExceptionally(new AlreadyClosedException(
+          name + " is closed: skip applyTransaction for index " + index));
+    }
+    try {
+      return StateMachineUpdater.applyTransaction(stateMachine, trx);
+    } catch (Throwable t) {
+      // the same as a failure in the StateMachineUpdater thread
+      final String s = name + ": applyTransaction failed for index " + index;
+      ExitUtils.terminate(2, s, t, LOG);
+      return JavaUtils.completeExceptionally(t);
+    }
+  }
+
+  private synchronized void addPending(long index) {
+    pending.add(index);
+    lastDispatchedIndex = index;
+  }
+
+  private void removePending(long term, long index) {
+    final boolean advanced;
+    synchronized (this) {
+      advanced = index == pending.first();
+      pending.remove(index);
+      completed.put(index, term);
+      if (advanced) {
+        notifyApplied();
+      }
+      notifyAll();
+    }
+    if (advanced) {
+      onAdvance.run();
+    }
+  }
+
+  /**
+   * Notify the state machine with the last completed transaction before the first pending transaction.
+   * It is called with the lock so that the notifications are in order.
+   */
+  private void notifyApplied() {
+    final NavigableMap<Long, Long> applied = pending.isEmpty()? completed: completed.headMap(pending.first(), false);
+    final Map.Entry<Long, Long> last = applied.lastEntry();
+    if (last == null) {
+      return;
+    }
+    applied.clear();
+    try {
+      stateMachine.notifyTransactionsApplied(TermIndex.newTermIndex(last.getValue(), last.getKey()));
+    } catch (Throwable t) {
+      ExitUtils.terminate(2, name + ": notifyTransactionsApplied failed for index " + last.getKey(), t, LOG);
+    }
+  }
+
+  /** The lanes may be shared, so they are not shut down; the transactions not yet started are skipped. */
+  void close() {
+    closed = true;
+  }
+}
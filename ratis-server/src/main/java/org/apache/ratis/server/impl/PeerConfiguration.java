@@ -85,7 +85,8 @@ class PeerConfiguration {
         return true;
       }
     }
-    return false;
+    // self alone may be the majority, e.g. a single-member group
+    return num > size() / 2;
   }
 
   @Override
@@ -21,6 +21,7 @@ import org.apache.ratis.proto.RaftProtos.CommitInfoProto;
 import org.apache.ratis.protocol.*;
 import org.apache.ratis.statemachine.TransactionContext;
 import org.apache.ratis.util.Preconditions;
+import org.apache.ratis.util.Timestamp;
 
 import java.util.Collection;
 import java.util.concurrent.CompletableFuture;
@@ -30,6 +31,7 @@ public class PendingRequest implements Comparable<PendingRequest> {
   private final RaftClientRequest request;
   private final TransactionContext entry;
   private final CompletableFuture<RaftClientReply> future;
+  private final Timestamp creationTime = Timestamp.currentTime();
 
   PendingRequest(long index, RaftClientRequest request, TransactionContext entry) {
     this.index = index;
@@ -46,6 +48,10 @@ public class PendingRequest implements Comparable<PendingRequest> {
     return index;
   }
 
+  Timestamp getCreationTime() {
+    return creationTime;
+  }
+
   RaftClientRequest getRequest() {
     return request;
   }
@@ -17,6 +17,7 @@
  */
 package org.apache.ratis.server.impl;
 
+import com.codahale.metrics.Timer;
 import org.apache.ratis.proto.RaftProtos.CommitInfoProto;
 import org.apache.ratis.protocol.*;
 import org.apache.ratis.proto.RaftProtos.RaftClientRequestProto;
@@ -54,6 +55,10 @@ class PendingRequests {
       return r;
     }
 
+    int size() {
+      return map.size();
+    }
+
     PendingRequest remove(long index) {
       final PendingRequest r = map.remove(index);
       LOG.debug("{}: PendingRequests.remove {} returns {}", name, index, r);
@@ -75,10 +80,16 @@ class PendingRequests {
   private PendingRequest pendingSetConf;
   private final String name;
   private final RequestMap pendingRequests;
+  private final Timer commitLatency;
 
-  PendingRequests(RaftPeerId id) {
+  PendingRequests(RaftPeerId id, Timer commitLatency) {
     this.name = id + "-" + getClass().getSimpleName();
     this.pendingRequests = new RequestMap(id);
+    this.commitLatency = commitLatency;
+  }
+
+  int size() {
+    return pendingRequests.size();
   }
 
   PendingRequest add(RaftClientRequest request, TransactionContext entry) {
@@ -124,6 +135,16 @@ class PendingRequests {
     return pendingRequest != null ? pendingRequest.getEntry() : null;
   }
 
+  /** Update the commit latency of the requests in the given range [startIndex, endIndex]. */
+  void committed(long startIndex, long endIndex) {
+    for(long i = startIndex; i <= endIndex; i++) {
+      final PendingRequest pending = pendingRequests.map.get(i);
+      if (pending != null) {
+        RaftServerMetrics.updateElapsedTime(commitLatency, pending.getCreationTime());
+      }
+    }
+  }
+
   void replyPendingRequest(long index, RaftClientReply reply) {
     final PendingRequest pending = pendingRequests.remove(index);
     if (pending != null) {
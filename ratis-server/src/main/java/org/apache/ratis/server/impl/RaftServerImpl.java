@@ -34,6 +34,7 @@ import org.apache.ratis.statemachine.StateMachine;
 import org.apache.ratis.statemachine.TransactionContext;
 import org.apache.ratis.thirdparty.com.google.common.annotations.VisibleForTesting;
 import org.apache.ratis.util.*;
+import org.apache.ratis.util.function.CheckedFunction;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -72,6 +73,11 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
   private final int minTimeoutMs;
   private final int maxTimeoutMs;
   private final int rpcSlownessTimeoutMs;
+  private final RaftServerConfigKeys.Read.Option readOption;
+  private final TimeDuration readTimeout;
+  private final boolean leaderLeaseEnabled;
+  /** For serving reads in a follower; null if the follower read is disabled. */
+  private final FollowerReadIndex followerReadIndex;
 
   private final LifeCycle lifeCycle;
   private final ServerState state;
@@ -83,6 +89,8 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
   private final CommitInfoCache commitInfoCache = new CommitInfoCache();
 
   private final RaftServerJmxAdapter jmxAdapter;
+  private final RaftServerMetrics metrics;
+  private final RequestTracer tracer;
 
   RaftServerImpl(RaftGroup group, StateMachine stateMachine, RaftServerProxy proxy) throws IOException {
     final RaftPeerId id = proxy.getId();
@@ -96,14 +104,26 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
     minTimeoutMs = RaftServerConfigKeys.Rpc.timeoutMin(properties).toIntExact(TimeUnit.MILLISECONDS);
     maxTimeoutMs = RaftServerConfigKeys.Rpc.timeoutMax(properties).toIntExact(TimeUnit.MILLISECONDS);
     rpcSlownessTimeoutMs = RaftServerConfigKeys.Rpc.slownessTimeout(properties).toIntExact(TimeUnit.MILLISECONDS);
+    readOption = RaftServerConfigKeys.Read.option(properties);
+    readTimeout = RaftServerConfigKeys.Read.timeout(properties);
+    leaderLeaseEnabled = RaftServerConfigKeys.Read.LeaderLease.enabled(properties);
+    followerReadIndex = RaftServerConfigKeys.Read.followerEnabled(properties)? new FollowerReadIndex(this): null;
     Preconditions.assertTrue(maxTimeoutMs > minTimeoutMs,
         "max timeout: %s, min timeout: %s", maxTimeoutMs, minTimeoutMs);
+    if (leaderLeaseEnabled) {
+      final long clockDriftBoundMs = RaftServerConfigKeys.Read.LeaderLease.clockDriftBound(properties)
+          .toLong(TimeUnit.MILLISECONDS);
+      Preconditions.assertTrue(clockDriftBoundMs < minTimeoutMs,
+          "leader lease clock drift bound: %s, min timeout: %s", clockDriftBoundMs, minTimeoutMs);
+    }
     this.proxy = proxy;
+    this.tracer = new RequestTracer(id, groupId, properties);
 
     this.state = new ServerState(id, group, properties, this, stateMachine);
     this.retryCache = initRetryCache(properties);
 
     this.jmxAdapter = new RaftServerJmxAdapter();
+    this.metrics = new RaftServerMetrics(this);
   }
 
   private RetryCache initRetryCache(RaftProperties prop) {
@@ -160,7 +180,12 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
   private void setRole(RaftPeerRole newRole, Object reason) {
     LOG.info("{} changes role from {} to {} at term {} for {}",
         getId(), this.role, newRole, state.getCurrentTerm(), reason);
+    final RaftPeerRole old = role.getCurrentRole();
     this.role.transitionRole(newRole);
+    if (old != newRole) {
+      // the reads waiting for the applied index were accepted in the old role
+      state.failAppliedIndexFutures(generateNotLeaderException());
+    }
   }
 
   boolean start() {
@@ -192,9 +217,10 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
   }
 
   /**
-   * The peer belongs to the current configuration, should start as a follower
+   * The peer belongs to the current configuration, should start as a follower.
+   * It is synchronized since an appendEntries request may arrive once the role is set.
    */
-  private void startAsFollower() {
+  private synchronized void startAsFollower() {
     setRole(RaftPeerRole.FOLLOWER, "startAsFollower");
     role.startFollowerState(this);
     lifeCycle.transition(RUNNING);
@@ -222,6 +248,14 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
     return role;
   }
 
+  RaftServerMetrics getMetrics() {
+    return metrics;
+  }
+
+  public RequestTracer getTracer() {
+    return tracer;
+  }
+
   RaftConfiguration getRaftConf() {
     return getState().getRaftConf();
   }
@@ -253,6 +287,9 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
       } catch (Exception ignored) {
         LOG.warn("Failed to shutdown LeaderState monitor for " + getId(), ignored);
       }
+      if (followerReadIndex != null) {
+        followerReadIndex.close();
+      }
       try{
         state.close();
       } catch (Exception ignored) {
@@ -262,10 +299,12 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
         final RaftStorageDirectory dir = state.getStorage().getStorageDir();
         try {
           FileUtils.deleteFully(dir.getRoot());
+          FileUtils.deleteFully(dir.getLogRoot());
         } catch(Exception ignored) {
           LOG.warn(getId() + ": Failed to remove RaftStorageDirectory " + dir, ignored);
         }
       }
+      metrics.unregister();
     });
   }
 
@@ -470,7 +509,7 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
    */
   private CompletableFuture<RaftClientReply> appendTransaction(
       RaftClientRequest request, TransactionContext context,
-      RetryCache.CacheEntry cacheEntry) throws IOException {
+      RetryCache.CacheEntry cacheEntry, RequestTracer.Trace trace) throws IOException {
     assertLifeCycleState(RUNNING);
     CompletableFuture<RaftClientReply> reply;
 
@@ -483,9 +522,13 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
 
       // append the message to its local log
       final LeaderState leaderState = role.getLeaderStateNonNull();
+      // register the trace before appending so that the log worker can record the stages
+      final long index = state.getLog().getNextIndex();
+      tracer.register(index, trace);
       try {
         state.appendLog(context);
       } catch (StateMachineException e) {
+        tracer.remove(index);
         // the StateMachineException is thrown by the SM in the preAppend stage.
         // Return the exception in a RaftClientReply.
         RaftClientReply exceptionReply = new RaftClientReply(request, e, getCommitInfos());
@@ -496,6 +539,7 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
         }
         return CompletableFuture.completedFuture(exceptionReply);
       }
+      RequestTracer.stamp(trace, RequestTracer.Stage.LOG_APPEND);
 
       // put the request into the pending queue
       pending = leaderState.addPendingRequest(request, context);
@@ -512,6 +556,10 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
     if (request.is(RaftClientRequestProto.TypeCase.STALEREAD)) {
       return staleReadAsync(request);
     }
+    if (request.is(RaftClientRequestProto.TypeCase.READ) && request.getType().getRead().getFollowerRead()
+        && followerReadIndex != null && !isLeader()) {
+      return followerReadAsync(request);
+    }
 
     // first check the server's leader state
     CompletableFuture<RaftClientReply> reply = checkLeaderState(request, null);
@@ -522,7 +570,10 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
     // let the state machine handle read-only request from client
     final StateMachine stateMachine = getStateMachine();
     if (request.is(RaftClientRequestProto.TypeCase.READ)) {
-      // TODO: We might not be the leader anymore by the time this completes.
+      if (readOption == RaftServerConfigKeys.Read.Option.LINEARIZABLE) {
+        return linearizableReadAsync(request);
+      }
+      // We might not be the leader anymore by the time this completes.
       // See the RAFT paper section 8 (last part)
       return processQueryFuture(stateMachine.query(request.getMessage()), request);
     }
@@ -534,24 +585,27 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
     // query the retry cache
     RetryCache.CacheQueryResult previousResult = retryCache.queryCache(
         request.getClientId(), request.getCallId());
+    metrics.onRetryCacheQuery(previousResult.isRetry());
     if (previousResult.isRetry()) {
       // if the previous attempt is still pending or it succeeded, return its
       // future
       return previousResult.getEntry().getReplyFuture();
     }
     final RetryCache.CacheEntry cacheEntry = previousResult.getEntry();
+    final RequestTracer.Trace trace = tracer.sample(request);
 
     // TODO: this client request will not be added to pending requests until
     // later which means that any failure in between will leave partial state in
     // the state machine. We should call cancelTransaction() for failed requests
     TransactionContext context = stateMachine.startTransaction(request);
+    RequestTracer.stamp(trace, RequestTracer.Stage.START_TRANSACTION);
     if (context.getException() != null) {
       RaftClientReply exceptionReply = new RaftClientReply(request,
           new StateMachineException(getId(), context.getException()), getCommitInfos());
       cacheEntry.failWithReply(exceptionReply);
       return CompletableFuture.completedFuture(exceptionReply);
     }
-    return appendTransaction(request, context, cacheEntry);
+    return appendTransaction(request, context, cacheEntry, trace);
   }
 
   private CompletableFuture<RaftClientReply> watchAsync(RaftClientRequest request) {
@@ -561,6 +615,50 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
             new RaftClientReply(request, generateNotLeaderException(), getCommitInfos())));
   }
 
+  /**
+   * The ReadIndex protocol: get the read index from the leader state,
+   * wait for the state machine to apply up to the read index and then query it.
+   */
+  private CompletableFuture<RaftClientReply> linearizableReadAsync(RaftClientRequest request) {
+    final LeaderState leaderState = role.getLeaderState().orElse(null);
+    if (leaderState == null) {
+      return CompletableFuture.completedFuture(
+          new RaftClientReply(request, generateNotLeaderException(), getCommitInfos()));
+    }
+    return readAsync(leaderState.getReadIndex(), request);
+  }
+
+  /**
+   * Serve a read in a follower: get the read index from the leader,
+   * wait for the state machine to apply up to the read index and then query it.
+   */
+  private CompletableFuture<RaftClientReply> followerReadAsync(RaftClientRequest request) {
+    return readAsync(followerReadIndex.getReadIndex(), request);
+  }
+
+  /**
+   * Wait for the read index and then for the state machine to apply up to it.
+   * The wait is bounded by the read timeout;
+   * the read fails with {@link TimeoutIOException} if the state machine is not ready to query in time.
+   */
+  private CompletableFuture<RaftClientReply> readAsync(
+      CompletableFuture<Long> readIndex, RaftClientRequest request) {
+    final CompletableFuture<Void> applied = readIndex.thenCompose(state::waitForApplied);
+    getProxy().getExecutors().getScheduler().onTimeout(readTimeout,
+        () -> applied.completeExceptionally(new TimeoutIOException(
+            getId() + ": Failed to serve the read in " + readTimeout + ", request=" + request, null)),
+        LOG, () -> getId() + ": Failed to time out the read " + request);
+    return applied
+        .thenCompose(a -> processQueryFuture(getStateMachine().query(request.getMessage()), request))
+        .exceptionally(e -> {
+          e = JavaUtils.unwrapCompletionException(e);
+          if (e instanceof NotLeaderException) {
+            return new RaftClientReply(request, (NotLeaderException)e, getCommitInfos());
+          }
+          throw new CompletionException(e);
+        });
+  }
+
   private CompletableFuture<RaftClientReply> staleReadAsync(RaftClientRequest request) {
     final long minIndex = request.getType().getStaleRead().getMinIndex();
     final long commitIndex = state.getLog().getLastCommittedIndex();
@@ -678,7 +776,9 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
 
   private boolean shouldWithholdVotes(long candidateTerm) {
     if (state.getCurrentTerm() < candidateTerm) {
-      return false;
+      // the leader lease may still be valid
+      return leaderLeaseEnabled && isFollower() && state.hasLeader()
+          && role.getFollowerState().map(FollowerState::shouldWithholdVotes).orElse(false);
     } else if (isLeader()) {
       return true;
     } else {
@@ -813,14 +913,46 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
     preAppendEntriesAsync(requestorId, ProtoUtils.toRaftGroupId(request.getRaftGroupId()), r.getLeaderTerm(),
         previous, r.getLeaderCommit(), r.getInitializing(), entries);
     try {
-      return appendEntriesAsync(requestorId, r.getLeaderTerm(), previous, r.getLeaderCommit(),
-          request.getCallId(), r.getInitializing(), r.getCommitInfosList(), entries);
+      final Timestamp startTime = Timestamp.currentTime();
+      final CompletableFuture<AppendEntriesReplyProto> reply = appendEntriesAsync(requestorId, r.getLeaderTerm(),
+          previous, r.getLeaderCommit(), request.getCallId(), r.getInitializing(), r.getCommitInfosList(), entries);
+      if (entries.length > 0) {
+        reply.thenRun(() -> RaftServerMetrics.updateElapsedTime(metrics.getAppendEntriesLatency(), startTime));
+      }
+      return reply;
     } catch(Throwable t) {
       LOG.error(getId() + ": Failed appendEntriesAsync " + r, t);
       throw t;
     }
   }
 
+  @Override
+  public ReadIndexReplyProto readIndex(ReadIndexRequestProto r) throws IOException {
+    return IOUtils.getFromFuture(readIndexAsync(r), () -> getId() + ": readIndex", readTimeout);
+  }
+
+  /** Handle a readIndex request from a follower; see {@link FollowerReadIndex}. */
+  @Override
+  public CompletableFuture<ReadIndexReplyProto> readIndexAsync(ReadIndexRequestProto r) throws IOException {
+    final RaftRpcRequestProto request = r.getServerRequest();
+    final RaftPeerId requestorId = RaftPeerId.valueOf(request.getRequestorId());
+    LOG.debug("{}: receive readIndex from {}", getId(), requestorId);
+    assertLifeCycleState(RUNNING);
+    assertGroup(requestorId, ProtoUtils.toRaftGroupId(request.getRaftGroupId()));
+
+    final LeaderState leaderState = role.getLeaderState().orElse(null);
+    if (leaderState == null) {
+      return CompletableFuture.completedFuture(
+          ServerProtoUtils.toReadIndexReplyProto(requestorId, getId(), groupId, false, RaftServerConstants.INVALID_LOG_INDEX));
+    }
+    return leaderState.getReadIndex()
+        .thenApply(index -> ServerProtoUtils.toReadIndexReplyProto(requestorId, getId(), groupId, true, index))
+        .exceptionally(e -> {
+          LOG.debug("{}: Failed readIndex from {}", getId(), requestorId, e);
+          return ServerProtoUtils.toReadIndexReplyProto(requestorId, getId(), groupId, false, RaftServerConstants.INVALID_LOG_INDEX);
+        });
+  }
+
   static void logAppendEntries(boolean isHeartbeat, Supplier<String> message) {
     if (isHeartbeat) {
       if (LOG.isTraceEnabled()) {
@@ -911,7 +1043,7 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
       if (previous != null && !containPrevious(previous)) {
         final AppendEntriesReplyProto reply = ServerProtoUtils.toAppendEntriesReplyProto(
             leaderId, getId(), groupId, currentTerm, followerCommit, Math.min(nextIndex, previous.getIndex()),
-            INCONSISTENCY, callId);
+            INCONSISTENCY, callId, getConflictTermIndex(state.getLog(), previous));
         if (LOG.isDebugEnabled()) {
           LOG.debug("{}: inconsistency entries. Leader previous:{}, Reply:{}",
               getId(), previous, ServerProtoUtils.toString(reply));
@@ -921,9 +1053,11 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
       }
 
       state.updateConfiguration(entries);
+      // append in the synchronized block, otherwise the entries from an old leader
+      // may overwrite the entries from a newer leader received concurrently.
+      futures = state.getLog().append(entries);
     }
 
-    futures = state.getLog().append(entries);
     commitInfos.forEach(commitInfoCache::update);
 
     if (!isHeartbeat) {
@@ -934,8 +1068,11 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
     ).thenApply(v -> {
       final AppendEntriesReplyProto reply;
       synchronized(this) {
-        state.updateStatemachine(leaderCommit, currentTerm);
-        final long n = isHeartbeat? state.getLog().getNextIndex(): entries[entries.length - 1].getIndex() + 1;
+        state.updateStatemachine(leaderCommit, currentTerm, false);
+        // a heartbeat only confirms the entries up to previous;
+        // the follower may have uncommitted entries after it from an old leader.
+        final long n = !isHeartbeat? entries[entries.length - 1].getIndex() + 1
+            : previous != null? previous.getIndex() + 1: state.getLog().getNextIndex();
         reply = ServerProtoUtils.toAppendEntriesReplyProto(leaderId, getId(), groupId, currentTerm,
             state.getLog().getLastCommittedIndex(), n, SUCCESS, callId);
       }
@@ -945,6 +1082,20 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
     });
   }
 
+  /**
+   * @return the term of the local entry at the index of the given previous
+   *         along with the first index of that term in the local log;
+   *         or null if there is no local entry at the index.
+   */
+  static TermIndex getConflictTermIndex(RaftLog log, TermIndex previous) {
+    final TermIndex local = log.getTermIndex(previous.getIndex());
+    if (local == null) {
+      return null;
+    }
+    final long first = log.findFirstIndex(local.getTerm(), local.getIndex());
+    return first < 0? null: TermIndex.newTermIndex(local.getTerm(), first);
+  }
+
   private boolean containPrevious(TermIndex previous) {
     if (LOG.isTraceEnabled()) {
       LOG.trace("{}: prev:{}, latestSnapshot:{}, latestInstalledSnapshot:{}",
@@ -976,6 +1127,7 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
         request.getTermIndex());
     final long lastIncludedIndex = lastTermIndex.getIndex();
     final Optional<FollowerState> followerState;
+    final boolean accepted;
     synchronized (this) {
       final boolean recognized = state.recognizeLeader(leaderId, leaderTerm);
       currentTerm = state.getCurrentTerm();
@@ -1001,17 +1153,21 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
             getId(), state.getLog().getNextIndex(), lastIncludedIndex);
 
         //TODO: We should only update State with installed snapshot once the request is done.
-        state.installSnapshot(request);
+        accepted = state.installSnapshot(request);
 
         // update the committed index
         // re-load the state machine if this is the last chunk
-        if (request.getDone()) {
+        if (accepted && request.getDone()) {
           state.reloadStateMachine(lastIncludedIndex, leaderTerm);
         }
       } finally {
         updateLastRpcTime(FollowerState.UpdateType.INSTALL_SNAPSHOT_COMPLETE);
       }
     }
+    if (!accepted) {
+      return ServerProtoUtils.toInstallSnapshotReplyProto(leaderId, getId(), groupId,
+          currentTerm, request.getRequestIndex(), InstallSnapshotResult.OUT_OF_ORDER);
+    }
     if (request.getDone()) {
       LOG.info("{}: successfully install the whole snapshot-{}", getId(),
           lastIncludedIndex);
@@ -1063,6 +1219,7 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
 
     final long logIndex = logEntry.getIndex();
     return stateMachineFuture.whenComplete((reply, exception) -> {
+      tracer.stamp(logIndex, RequestTracer.Stage.APPLY);
       final RaftClientReply r;
       if (exception == null) {
         r = new RaftClientReply(clientId, serverId, groupId, callId, true, reply, null, logIndex, getCommitInfos());
@@ -1080,6 +1237,7 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
           leaderState.replyPendingRequest(logIndex, r);
         }
       }
+      tracer.complete(logIndex);
       cacheEntry.updateResult(r);
     });
   }
@@ -1091,7 +1249,15 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
     return role.getLeaderState().map(LeaderState::getFollowerNextIndices).orElse(null);
   }
 
-  CompletableFuture<Message> applyLogToStateMachine(LogEntryProto next) {
+  /**
+   * Apply the given committed entry.
+   * For a state machine entry, the transaction is passed to the given applyTransaction function,
+   * which either calls {@link StateMachine#applyTransaction(TransactionContext)} directly
+   * or dispatches it to the {@link ParallelApplier}.
+   */
+  CompletableFuture<Message> applyLogToStateMachine(LogEntryProto next,
+      CheckedFunction<TransactionContext, CompletableFuture<Message>, InterruptedException> applyTransaction)
+      throws InterruptedException {
     final StateMachine stateMachine = getStateMachine();
     if (next.hasConfigurationEntry()) {
       // the reply should have already been set. only need to record
@@ -1111,9 +1277,10 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
       trx = stateMachine.applyTransactionSerial(trx);
 
       try {
-        // TODO: This step can be parallelized
-        CompletableFuture<Message> stateMachineFuture =
-            stateMachine.applyTransaction(trx);
+        tracer.stamp(next.getIndex(), RequestTracer.Stage.APPLY_START);
+        final Timestamp startTime = Timestamp.currentTime();
+        CompletableFuture<Message> stateMachineFuture = applyTransaction.apply(trx);
+        stateMachineFuture.thenRun(() -> RaftServerMetrics.updateElapsedTime(metrics.getApplyLatency(), startTime));
         return replyPendingRequest(next, stateMachineFuture);
       } catch (Throwable e) {
         LOG.error("{}: applyTransaction failed for index:{} proto:{}", getId(),
@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.impl;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
+import com.codahale.metrics.Timer;
+import org.apache.ratis.metrics.RatisMetricsRegistry;
+import org.apache.ratis.protocol.RaftGroupId;
+import org.apache.ratis.protocol.RaftPeerId;
+import org.apache.ratis.server.storage.RaftLog;
+import org.apache.ratis.util.Timestamp;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * The metrics of a {@link RaftServerImpl}, i.e. a server in a group.
+ *
+ * The names of the metrics have the server id and the group id as components
+ * so that all the metrics of a group can be removed by {@link #unregister()} when the group is removed.
+ */
+public class RaftServerMetrics {
+  /** @return the name of a metric of the given server in the given group, which may be null in unit tests. */
+  public static String getMetricName(Class<?> clazz, RaftPeerId serverId, RaftGroupId groupId, String... names) {
+    final String[] components = new String[names.length + 2];
+    components[0] = serverId.toString();
+    components[1] = groupId != null? groupId.toString(): null;
+    System.arraycopy(names, 0, components, 2, names.length);
+    return MetricRegistry.name(clazz, components);
+  }
+
+  static String getKey(RaftPeerId serverId, RaftGroupId groupId) {
+    return serverId + "." + groupId;
+  }
+
+  private final RaftPeerId serverId;
+  private final RaftGroupId groupId;
+
+  private final Timer appendEntriesLatency;
+  private final Timer commitLatency;
+  private final Timer applyLatency;
+  private final Timer electionTime;
+  private final Counter retryCacheHit;
+  private final Counter retryCacheMiss;
+
+  RaftServerMetrics(RaftServerImpl server) {
+    this.serverId = server.getId();
+    this.groupId = server.getGroupId();
+
+    final MetricRegistry registry = RatisMetricsRegistry.getRegistry();
+    this.appendEntriesLatency = registry.timer(getMetricName("append-entries-latency"));
+    this.commitLatency = registry.timer(getMetricName("commit-latency"));
+    this.applyLatency = registry.timer(getMetricName("apply-latency"));
+    this.electionTime = registry.timer(getMetricName("election-time"));
+    this.retryCacheHit = registry.counter(getMetricName("retry-cache-hit"));
+    this.retryCacheMiss = registry.counter(getMetricName("retry-cache-miss"));
+
+    register(getMetricName("retry-cache-hit-rate"), new RatioGauge() {
+      @Override
+      protected Ratio getRatio() {
+        return Ratio.of(retryCacheHit.getCount(), retryCacheHit.getCount() + retryCacheMiss.getCount());
+      }
+    });
+    register(getMetricName("pending-requests"),
+        (Gauge<Integer>) () -> server.getRole().getLeaderState().map(LeaderState::getNumPendingRequests).orElse(0));
+    register(getMetricName("state-machine-updater-backlog"), (Gauge<Long>) () -> {
+      final ServerState state = server.getState();
+      return Math.max(0, state.getLog().getLastCommittedIndex() - state.getLastAppliedIndex());
+    });
+  }
+
+  private String getMetricName(String... names) {
+    return getMetricName(RaftServerImpl.class, serverId, groupId, names);
+  }
+
+  private static void register(String name, Gauge<?> gauge) {
+    final MetricRegistry registry = RatisMetricsRegistry.getRegistry();
+    registry.remove(name);
+    registry.register(name, gauge);
+  }
+
+  /** @return the latency of handling an appendEntries request with entries in a follower. */
+  Timer getAppendEntriesLatency() {
+    return appendEntriesLatency;
+  }
+
+  /** @return the latency from appending a client request to the leader log to committing it. */
+  Timer getCommitLatency() {
+    return commitLatency;
+  }
+
+  /** @return the latency of applying a committed transaction to the state machine. */
+  Timer getApplyLatency() {
+    return applyLatency;
+  }
+
+  /** @return the duration of each election round; the count is the number of elections. */
+  Timer getElectionTime() {
+    return electionTime;
+  }
+
+  void onRetryCacheQuery(boolean hit) {
+    (hit? retryCacheHit: retryCacheMiss).inc();
+  }
+
+  static void updateElapsedTime(Timer timer, Timestamp startTime) {
+    timer.update(startTime.elapsedTime().toLong(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+  }
+
+  private String getFollowerMetricName(RaftPeerId followerId, String name) {
+    return getMetricName("follower", followerId.toString(), name);
+  }
+
+  /** @return the round-trip time of the appendEntries RPCs to the given follower. */
+  Timer getAppendEntriesRoundTripTime(RaftPeerId followerId) {
+    return RatisMetricsRegistry.getRegistry().timer(getFollowerMetricName(followerId, "append-entries-rtt"));
+  }
+
+  /** Add the lag gauges of the given follower, which are removed by {@link #removeFollower(RaftPeerId)}. */
+  void addFollower(FollowerInfo follower, RaftLog log) {
+    final RaftPeerId followerId = follower.getPeer().getId();
+    final LongSupplier lastIndex = () -> log.getNextIndex() - 1;
+    register(getFollowerMetricName(followerId, "lag-entries"),
+        (Gauge<Long>) () -> Math.max(0, lastIndex.getAsLong() - follower.getMatchIndex()));
+    register(getFollowerMetricName(followerId, "lag-bytes"),
+        (Gauge<Long>) () -> log.getSizeFrom(follower.getMatchIndex() + 1));
+  }
+
+  void removeFollower(RaftPeerId followerId) {
+    final MetricRegistry registry = RatisMetricsRegistry.getRegistry();
+    registry.remove(getFollowerMetricName(followerId, "lag-entries"));
+    registry.remove(getFollowerMetricName(followerId, "lag-bytes"));
+  }
+
+  /** Remove all the metrics of this server in this group, including the raft log metrics. */
+  void unregister() {
+    RatisMetricsRegistry.removeMetrics(getKey(serverId, groupId));
+  }
+}
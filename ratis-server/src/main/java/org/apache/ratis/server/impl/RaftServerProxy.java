@@ -26,6 +26,8 @@ import org.apache.ratis.proto.RaftProtos.CommitInfoProto;
 import org.apache.ratis.proto.RaftProtos.InstallSnapshotReplyProto;
 import org.apache.ratis.proto.RaftProtos.InstallSnapshotRequestProto;
 import org.apache.ratis.proto.RaftProtos.RaftRpcRequestProto;
+import org.apache.ratis.proto.RaftProtos.ReadIndexReplyProto;
+import org.apache.ratis.proto.RaftProtos.ReadIndexRequestProto;
 import org.apache.ratis.proto.RaftProtos.RequestVoteReplyProto;
 import org.apache.ratis.proto.RaftProtos.RequestVoteRequestProto;
 import org.apache.ratis.protocol.*;
@@ -33,6 +35,9 @@ import org.apache.ratis.rpc.RpcType;
 import org.apache.ratis.server.RaftServer;
 import org.apache.ratis.server.RaftServerConfigKeys;
 import org.apache.ratis.server.RaftServerRpc;
+import org.apache.ratis.server.storage.SharedWriteAheadLog;
+import org.apache.ratis.server.storage.StorageDirectoryMigration;
+import org.apache.ratis.server.storage.StorageVolume;
 import org.apache.ratis.statemachine.StateMachine;
 import org.apache.ratis.util.IOUtils;
 import org.apache.ratis.util.JavaUtils;
@@ -50,15 +55,18 @@ import java.net.InetSocketAddress;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -77,6 +85,10 @@ public class RaftServerProxy implements RaftServer {
     private boolean isClosed = false;
 
     synchronized CompletableFuture<RaftServerImpl> addNew(RaftGroup group) {
+      return addNew(group, () -> stateMachineRegistry.apply(group.getGroupId()));
+    }
+
+    synchronized CompletableFuture<RaftServerImpl> addNew(RaftGroup group, Supplier<StateMachine> stateMachine) {
       if (isClosed) {
         return JavaUtils.completeExceptionally(new AlreadyClosedException(
             getId() + ": Failed to add " + group + " since the server is already closed"));
@@ -86,7 +98,7 @@ public class RaftServerProxy implements RaftServer {
             getId() + ": Failed to add " + group + " since the group already exists in the map."));
       }
       final RaftGroupId groupId = group.getGroupId();
-      final CompletableFuture<RaftServerImpl> newImpl = newRaftServerImpl(group);
+      final CompletableFuture<RaftServerImpl> newImpl = newRaftServerImpl(group, stateMachine);
       final CompletableFuture<RaftServerImpl> previous = map.put(groupId, newImpl);
       Preconditions.assertNull(previous, "previous");
       LOG.info("{}: addNew {} returns {}", getId(), group, toString(groupId, newImpl));
@@ -159,13 +171,22 @@ public class RaftServerProxy implements RaftServer {
 
   private final RaftServerRpc serverRpc;
   private final ServerFactory factory;
+  private final ServerExecutors executors;
+  private final MetricsReporters metricsReporters = new MetricsReporters();
+  /** Storage directory -> the shared log in the directory. */
+  private final Map<File, SharedWriteAheadLog> sharedLogs = new HashMap<>();
+  /** Storage directory -> the volume measuring the load of the groups in the directory. */
+  private final Map<File, StorageVolume> volumes = new HashMap<>();
 
   private final ImplMap impls = new ImplMap();
+  /** The groups being migrated to another volume. */
+  private final Set<RaftGroupId> migrating = ConcurrentHashMap.newKeySet();
 
   RaftServerProxy(RaftPeerId id, StateMachine.Registry stateMachineRegistry,
       RaftProperties properties, Parameters parameters) {
     this.properties = properties;
     this.stateMachineRegistry = stateMachineRegistry;
+    this.executors = new ServerExecutors(properties);
 
     final RpcType rpcType = RaftConfigKeys.Rpc.type(properties, LOG::info);
     this.factory = ServerFactory.cast(rpcType.newFactory(parameters));
@@ -181,30 +202,41 @@ public class RaftServerProxy implements RaftServer {
     final Optional<RaftGroup> raftGroup = Optional.ofNullable(group);
     final Optional<RaftGroupId> raftGroupId = raftGroup.map(RaftGroup::getGroupId);
 
-    RaftServerConfigKeys.storageDirs(properties).parallelStream()
-        .forEach((dir) -> Optional.ofNullable(dir.listFiles())
-            .map(Arrays::stream).orElse(Stream.empty())
-            .filter(File::isDirectory)
-            .forEach(sub -> {
-              try {
-                LOG.info("{}: found a subdirectory {}", getId(), sub);
-                final RaftGroupId groupId = RaftGroupId.valueOf(UUID.fromString(sub.getName()));
-                if (!raftGroupId.filter(groupId::equals).isPresent()) {
-                  addGroup(RaftGroup.valueOf(groupId));
-                }
-              } catch (Throwable t) {
-                LOG.warn(getId() + ": Failed to initialize the group directory "
-                    + sub.getAbsolutePath() + ".  Ignoring it", t);
-              }
-            }));
+    final List<File> storageDirs = RaftServerConfigKeys.storageDirs(properties);
+    try {
+      StorageDirectoryMigration.recover(storageDirs);
+    } catch (IOException e) {
+      LOG.warn(getId() + ": Failed to recover the interrupted migrations in " + storageDirs, e);
+    }
+    // a group has a subdirectory in a storage directory and, if the log is separated, in a log directory
+    final Map<String, File> subs = Stream.concat(storageDirs.stream(),
+            RaftServerConfigKeys.Log.dirs(properties).stream())
+        .flatMap(dir -> Optional.ofNullable(dir.listFiles()).map(Arrays::stream).orElse(Stream.empty()))
+        .filter(File::isDirectory)
+        .filter(sub -> !SharedWriteAheadLog.DIR_NAME.equals(sub.getName()))
+        .filter(sub -> !StorageVolume.MIGRATION_DIR_NAME.equals(sub.getName()))
+        .collect(Collectors.toMap(File::getName, sub -> sub, (a, b) -> a));
+    subs.values().parallelStream()
+        .forEach(sub -> {
+          try {
+            LOG.info("{}: found a subdirectory {}", getId(), sub);
+            final RaftGroupId groupId = RaftGroupId.valueOf(UUID.fromString(sub.getName()));
+            if (!raftGroupId.filter(groupId::equals).isPresent()) {
+              addGroup(RaftGroup.valueOf(groupId));
+            }
+          } catch (Throwable t) {
+            LOG.warn(getId() + ": Failed to initialize the group directory "
+                + sub.getAbsolutePath() + ".  Ignoring it", t);
+          }
+        });
     raftGroup.ifPresent(this::addGroup);
   }
 
-  private CompletableFuture<RaftServerImpl> newRaftServerImpl(RaftGroup group) {
+  private CompletableFuture<RaftServerImpl> newRaftServerImpl(RaftGroup group, Supplier<StateMachine> stateMachine) {
     return CompletableFuture.supplyAsync(() -> {
       try {
         serverRpc.addPeers(group.getPeers());
-        return new RaftServerImpl(group, stateMachineRegistry.apply(group.getGroupId()), this);
+        return new RaftServerImpl(group, stateMachine.get(), this);
       } catch(IOException e) {
         throw new CompletionException(getId() + ": Failed to initialize server for " + group, e);
       }
@@ -252,6 +284,147 @@ public class RaftServerProxy implements RaftServer {
     return properties;
   }
 
+  /** @return the shared log in the given storage directory; create it if it does not exist. */
+  public SharedWriteAheadLog getSharedWriteAheadLog(File volume) throws IOException {
+    final File key = volume.getAbsoluteFile();
+    synchronized (sharedLogs) {
+      final SharedWriteAheadLog previous = sharedLogs.get(key);
+      if (previous != null) {
+        return previous;
+      }
+      final SharedWriteAheadLog created = new SharedWriteAheadLog(key, properties);
+      sharedLogs.put(key, created);
+      return created;
+    }
+  }
+
+  /** @return the volume of the given storage directory; create it if it does not exist. */
+  public StorageVolume getStorageVolume(File dir) {
+    final File key = dir.getAbsoluteFile();
+    synchronized (volumes) {
+      return volumes.computeIfAbsent(key, k -> new StorageVolume(getId(), k));
+    }
+  }
+
+  /** @return the volumes of the configured storage directories. */
+  public List<StorageVolume> getStorageVolumes() {
+    return RaftServerConfigKeys.storageDirs(properties).stream()
+        .map(this::getStorageVolume)
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * @return the volumes of the configured log directories;
+   *         it is empty if the log is not separated from the storage directories.
+   */
+  public List<StorageVolume> getLogVolumes() {
+    return RaftServerConfigKeys.Log.dirs(properties).stream()
+        .map(this::getStorageVolume)
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Migrate the storage directory of the given group to the given volume,
+   * which should be one of the configured storage directories.
+   * When the log is separated, only the state machine and the snapshot files are migrated.
+   * The files are first copied while the group is running.
+   * Then, the group is paused, i.e. shut down, for copying the changed files and switching the directory,
+   * and then it is restarted from the new directory.
+   * If the migration fails after the group is shut down, the group is restarted from the source directory.
+   *
+   * Since the group is restarted, the {@link StateMachine.Registry} must return a new state machine instance;
+   * otherwise, the migration fails without shutting down the group.
+   * The files are copied using the {@link ServerExecutors#getRpcExecutor()}.
+   *
+   * @return a future of the new storage directory of the group.
+   */
+  public CompletableFuture<File> migrateGroupStorageAsync(RaftGroupId groupId, File targetVolume) {
+    final RaftServerImpl impl;
+    try {
+      impl = getImpl(groupId);
+    } catch (IOException e) {
+      return JavaUtils.completeExceptionally(e);
+    }
+    final File source = impl.getState().getStorage().getStorageDir().getRoot();
+    final StorageVolume target = getStorageVolume(targetVolume);
+    if (!getStorageVolumes().contains(target)) {
+      return JavaUtils.completeExceptionally(new IllegalArgumentException(
+          getId() + ": Failed to migrate " + groupId + " since " + targetVolume + " is not a storage directory"));
+    }
+    if (source.getAbsoluteFile().getParentFile().equals(target.getDir())) {
+      return CompletableFuture.completedFuture(source);
+    }
+    // the restarted group must not replay the log to the closed state machine holding its state
+    final StateMachine newStateMachine = stateMachineRegistry.apply(groupId);
+    if (newStateMachine == impl.getStateMachine()) {
+      return JavaUtils.completeExceptionally(new IOException(getId() + ": Failed to migrate " + groupId
+          + " since the state machine registry returns the same instance for restarting the group"));
+    }
+    if (!migrating.add(groupId)) {
+      return JavaUtils.completeExceptionally(new IOException(
+          getId() + ": Failed to migrate " + groupId + " since it is already being migrated"));
+    }
+
+    final StorageDirectoryMigration migration = new StorageDirectoryMigration(source, target);
+    LOG.info("{}: migrate {} from {} to {}", getId(), groupId, source, migration.getTarget());
+    return CompletableFuture.supplyAsync(() -> {
+      try {
+        migration.copy();
+      } catch (IOException e) {
+        abort(migration);
+        throw new CompletionException(getId() + ": Failed to copy " + source, e);
+      }
+      final RaftGroup group = impl.getGroup();
+      impls.remove(groupId);
+      Throwable failure = null;
+      try {
+        impl.shutdown(false);
+        migration.finish();
+      } catch (Throwable t) {
+        LOG.error(getId() + ": Failed to migrate " + source + " to " + migration.getTarget(), t);
+        failure = t;
+        // restore the source directory before restarting the group;
+        // if it cannot be restored, the group is not restarted and the migration is recovered in the next startup.
+        try {
+          migration.abort();
+        } catch (IOException ioe) {
+          t.addSuppressed(ioe);
+          throw new CompletionException(getId() + ": Failed to restore " + source, t);
+        }
+      }
+      final RaftServerImpl restarted = impls.addNew(group, () -> newStateMachine).join();
+      final boolean started = restarted.start();
+      Preconditions.assertTrue(started, () -> getId() + ": failed to restart " + restarted);
+      if (failure != null) {
+        throw new CompletionException(getId() + ": Failed to migrate " + source + ", restarted the group", failure);
+      }
+      return restarted.getState().getStorage().getStorageDir().getRoot();
+    }, executors.getRpcExecutor()).whenComplete((dir, e) -> {
+      migrating.remove(groupId);
+      if (e != null) {
+        LOG.warn(getId() + ": Failed to migrate " + groupId, e);
+      }
+    });
+  }
+
+  private void abort(StorageDirectoryMigration migration) {
+    try {
+      migration.abort();
+    } catch (IOException e) {
+      LOG.warn(getId() + ": Failed to abort " + migration, e);
+    }
+  }
+
+  /** @return the address of the Prometheus metrics endpoint, if it is enabled. */
+  public Optional<InetSocketAddress> getPrometheusAddress() {
+    return metricsReporters.getPrometheusAddress();
+  }
+
+  /** @return the executors shared by all the groups in this server. */
+  public ServerExecutors getExecutors() {
+    return executors;
+  }
+
   public RaftServerRpc getServerRpc() {
     return serverRpc;
   }
@@ -297,6 +470,7 @@ public class RaftServerProxy implements RaftServer {
     lifeCycle.startAndTransition(() -> {
       LOG.info("{}: start RPC server", getId());
       getServerRpc().start();
+      metricsReporters.start(getId(), properties);
     }, IOException.class);
   }
 
@@ -311,6 +485,14 @@ public class RaftServerProxy implements RaftServer {
       } catch(IOException ignored) {
         LOG.warn(getId() + ": Failed to close " + getRpcType() + " server", ignored);
       }
+      synchronized (sharedLogs) {
+        sharedLogs.values().forEach(SharedWriteAheadLog::close);
+      }
+      synchronized (volumes) {
+        volumes.values().forEach(StorageVolume::unregister);
+      }
+      executors.close();
+      metricsReporters.close();
     });
   }
 
@@ -450,6 +632,17 @@ public class RaftServerProxy implements RaftServer {
     return getImpl(request.getServerRequest()).installSnapshot(request);
   }
 
+  @Override
+  public CompletableFuture<ReadIndexReplyProto> readIndexAsync(ReadIndexRequestProto request) {
+    final RaftGroupId groupId = ProtoUtils.toRaftGroupId(request.getServerRequest().getRaftGroupId());
+    return submitRequest(groupId, impl -> impl.readIndexAsync(request));
+  }
+
+  @Override
+  public ReadIndexReplyProto readIndex(ReadIndexRequestProto request) throws IOException {
+    return getImpl(request.getServerRequest()).readIndex(request);
+  }
+
   @Override
   public String toString() {
     return getId() + String.format(":%9s ", lifeCycle.getCurrentState()) + impls;
@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.impl;
+
+import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.protocol.TimeoutIOException;
+import org.apache.ratis.server.RaftServerConfigKeys;
+import org.apache.ratis.util.TimeDuration;
+import org.apache.ratis.util.TimeoutScheduler;
+import org.apache.ratis.util.Timestamp;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedList;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Predicate;
+
+/**
+ * The pending reads of the ReadIndex protocol,
+ * each of which is waiting for the leadership to be confirmed.
+ *
+ * A read is confirmed once a majority of the followers have replied
+ * an appendEntries request sent after the read was added.
+ * Since the reads are added in time order,
+ * a heartbeat round confirms all the reads added before it.
+ */
+class ReadIndexHeartbeats {
+  public static final Logger LOG = LoggerFactory.getLogger(ReadIndexHeartbeats.class);
+
+  static class PendingRead {
+    private final long readIndex;
+    private final Timestamp creationTime;
+    private final CompletableFuture<Long> future = new CompletableFuture<>();
+
+    PendingRead(long readIndex, Timestamp creationTime) {
+      this.readIndex = readIndex;
+      this.creationTime = creationTime;
+    }
+
+    Timestamp getCreationTime() {
+      return creationTime;
+    }
+
+    CompletableFuture<Long> getFuture() {
+      return future;
+    }
+
+    @Override
+    public String toString() {
+      return "read@" + readIndex + "(" + creationTime + ")";
+    }
+  }
+
+  private final String name;
+  private final TimeDuration timeout;
+  private final TimeoutScheduler scheduler;
+  /** The pending reads in creation time order. */
+  private final LinkedList<PendingRead> pendings = new LinkedList<>();
+
+  ReadIndexHeartbeats(Object name, RaftProperties properties, TimeoutScheduler scheduler) {
+    this.name = name + "-" + getClass().getSimpleName();
+    this.scheduler = scheduler;
+    this.timeout = RaftServerConfigKeys.Read.timeout(properties);
+  }
+
+  /** @return a future of the given read index, which is completed once the leadership is confirmed. */
+  CompletableFuture<Long> add(long readIndex) {
+    final PendingRead pending;
+    synchronized (this) {
+      pending = new PendingRead(readIndex, Timestamp.currentTime());
+      pendings.add(pending);
+    }
+    scheduler.onTimeout(timeout, () -> handleTimeout(pending),
+        LOG, () -> name + ": Failed to timeout " + pending);
+    return pending.getFuture();
+  }
+
+  private void handleTimeout(PendingRead pending) {
+    final boolean removed;
+    synchronized (this) {
+      removed = pendings.remove(pending);
+    }
+    if (removed) {
+      LOG.debug("{}: timeout {}", name, pending);
+      pending.getFuture().completeExceptionally(new TimeoutIOException(
+          name + ": Timeout " + timeout + " to confirm the leadership for " + pending, null));
+    }
+  }
+
+  /**
+   * Complete the pending reads confirmed by the heartbeats.
+   *
+   * @param isConfirmed test if the leadership has been confirmed after the given time.
+   */
+  void onHeartbeatAck(Predicate<Timestamp> isConfirmed) {
+    for(;;) {
+      final PendingRead first;
+      synchronized (this) {
+        if (pendings.isEmpty() || !isConfirmed.test(pendings.getFirst().getCreationTime())) {
+          return;
+        }
+        first = pendings.removeFirst();
+      }
+      first.getFuture().complete(first.readIndex);
+    }
+  }
+
+  synchronized boolean isEmpty() {
+    return pendings.isEmpty();
+  }
+
+  void failAll(Exception e) {
+    final LinkedList<PendingRead> failed;
+    synchronized (this) {
+      failed = new LinkedList<>(pendings);
+      pendings.clear();
+    }
+    failed.forEach(pending -> pending.getFuture().completeExceptionally(e));
+  }
+}
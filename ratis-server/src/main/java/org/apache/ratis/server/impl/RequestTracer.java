@@ -0,0 +1,258 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.impl;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.metrics.RatisMetricsRegistry;
+import org.apache.ratis.protocol.RaftGroupId;
+import org.apache.ratis.protocol.RaftPeerId;
+import org.apache.ratis.server.RaftServerConfigKeys;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Trace the {@link Stage}s of the sampled write requests in the leader.
+ *
+ * A sampled request has a {@link Trace} recording the time of each stage.
+ * Once the trace is registered with the log index of the request,
+ * the stages in the other threads, such as the log worker and the log appenders, are recorded by the index.
+ * When the request is replied, the duration of each stage is added to the stage timer
+ * and the request is logged if it is slower than the threshold.
+ *
+ * When tracing is disabled, {@link #sample(Object)} returns null
+ * and the other methods return immediately since there are no traces.
+ */
+public class RequestTracer {
+  public static final Logger LOG = LoggerFactory.getLogger(RequestTracer.class);
+
+  /** The stages of a write request in the leader, in the usual order. */
+  public enum Stage {
+    /** The request is received by the server. */
+    RECEIVED,
+    /** {@link org.apache.ratis.statemachine.StateMachine#startTransaction} has returned. */
+    START_TRANSACTION,
+    /** The entry is appended to the raft log. */
+    LOG_APPEND,
+    /** The log worker has taken the entry from its queue. */
+    LOG_DEQUEUE,
+    /** The log worker has written the entry. */
+    LOG_WRITE,
+    /** The entry is sent to a follower for the first time. */
+    APPENDER_SEND,
+    /** The entry is flushed to the local disk. */
+    LOG_FLUSH,
+    /** The first follower has acknowledged the entry. */
+    FOLLOWER_ACK,
+    /** The entry is committed. */
+    COMMIT,
+    /** The entry is submitted to the state machine. */
+    APPLY_START,
+    /** The state machine has applied the entry. */
+    APPLY,
+    /** The request is replied. */
+    REPLY;
+
+    private static final Stage[] VALUES = values();
+  }
+
+  /** The time, in nanoseconds, of each stage of a request; a zero time means that the stage is not recorded. */
+  static final class Trace {
+    private final Object request;
+    private final AtomicLongArray nanos = new AtomicLongArray(Stage.VALUES.length);
+
+    private Trace(Object request) {
+      this.request = request;
+      stamp(Stage.RECEIVED);
+    }
+
+    /** Record the given stage unless it has already been recorded. */
+    void stamp(Stage stage) {
+      nanos.compareAndSet(stage.ordinal(), 0L, System.nanoTime());
+    }
+
+    long get(Stage stage) {
+      return nanos.get(stage.ordinal());
+    }
+
+    /**
+     * @return the duration of the given stage, i.e. the elapsed time since the latest earlier stage,
+     *         or -1 if the stage is not recorded.
+     */
+    long getDuration(Stage stage) {
+      final long t = get(stage);
+      if (t == 0L) {
+        return -1L;
+      }
+      long previous = get(Stage.RECEIVED);
+      for(int i = 1; i < stage.ordinal(); i++) {
+        final long p = nanos.get(i);
+        if (p != 0L && p <= t && p > previous) {
+          previous = p;
+        }
+      }
+      return t - previous;
+    }
+
+    long getTotal() {
+      return get(Stage.REPLY) - get(Stage.RECEIVED);
+    }
+
+    @Override
+    public String toString() {
+      final StringBuilder b = new StringBuilder().append(request).append(": total ")
+          .append(TimeUnit.NANOSECONDS.toMicros(getTotal())).append("us");
+      for(int i = 1; i < Stage.VALUES.length; i++) {
+        final long d = getDuration(Stage.VALUES[i]);
+        if (d >= 0) {
+          b.append(", ").append(Stage.VALUES[i]).append(" +").append(TimeUnit.NANOSECONDS.toMicros(d)).append("us");
+        }
+      }
+      return b.toString();
+    }
+  }
+
+  static void stamp(Trace trace, Stage stage) {
+    if (trace != null) {
+      trace.stamp(stage);
+    }
+  }
+
+  /** A tracer which never samples. */
+  public static final RequestTracer DISABLED = new RequestTracer();
+
+  private final String name;
+  private final int samplingInterval;
+  private final long slowRequestThresholdNanos;
+  private final AtomicLong numRequests = new AtomicLong();
+  /** The traces of the pending sampled requests, keyed by log index. */
+  private final ConcurrentNavigableMap<Long, Trace> traces = new ConcurrentSkipListMap<>();
+  private final Timer[] stageTimers;
+
+  private RequestTracer() {
+    this.name = "disabled-" + getClass().getSimpleName();
+    this.samplingInterval = 0;
+    this.slowRequestThresholdNanos = Long.MAX_VALUE;
+    this.stageTimers = null;
+  }
+
+  RequestTracer(RaftPeerId serverId, RaftGroupId groupId, RaftProperties properties) {
+    this.name = serverId + "-" + getClass().getSimpleName();
+    this.samplingInterval = RaftServerConfigKeys.Metrics.Tracing.samplingInterval(properties);
+    this.slowRequestThresholdNanos = RaftServerConfigKeys.Metrics.Tracing.slowRequestThreshold(properties)
+        .toLong(TimeUnit.NANOSECONDS);
+    if (samplingInterval > 0) {
+      final MetricRegistry registry = RatisMetricsRegistry.getRegistry();
+      stageTimers = new Timer[Stage.VALUES.length];
+      for(int i = 1; i < stageTimers.length; i++) {
+        stageTimers[i] = registry.timer(getStageMetricName(serverId, groupId, Stage.VALUES[i]));
+      }
+      LOG.info("{}: trace one of every {} write requests", name, samplingInterval);
+    } else {
+      stageTimers = null;
+    }
+  }
+
+  public static String getStageMetricName(RaftPeerId serverId, RaftGroupId groupId, Stage stage) {
+    return RaftServerMetrics.getMetricName(RequestTracer.class, serverId, groupId,
+        "stage", stage.name().toLowerCase());
+  }
+
+  /** @return a new trace if the given request is sampled; otherwise, return null. */
+  Trace sample(Object request) {
+    if (samplingInterval == 0 || numRequests.getAndIncrement() % samplingInterval != 0) {
+      return null;
+    }
+    return new Trace(request);
+  }
+
+  /** Register the given trace, if there is any, with the given log index. */
+  void register(long index, Trace trace) {
+    if (trace != null) {
+      traces.put(index, trace);
+    }
+  }
+
+  /** Record the given stage for the request at the given index. */
+  public void stamp(long index, Stage stage) {
+    if (traces.isEmpty()) {
+      return;
+    }
+    final Trace trace = traces.get(index);
+    if (trace != null) {
+      trace.stamp(stage);
+    }
+  }
+
+  /** Record the given stage for all the requests with indices less than or equal to the given index. */
+  public void stampUpTo(long index, Stage stage) {
+    if (traces.isEmpty()) {
+      return;
+    }
+    for(Trace trace : traces.headMap(index, true).values()) {
+      trace.stamp(stage);
+    }
+  }
+
+  /** Remove the trace of a failed request. */
+  void remove(long index) {
+    if (!traces.isEmpty()) {
+      traces.remove(index);
+    }
+  }
+
+  /** Remove all the traces, e.g. when the leader steps down. */
+  void clear() {
+    traces.clear();
+  }
+
+  /** The request at the given index is replied; update the stage timers and log it if it is slow. */
+  void complete(long index) {
+    if (traces.isEmpty()) {
+      return;
+    }
+    final Trace trace = traces.remove(index);
+    if (trace == null) {
+      return;
+    }
+    trace.stamp(Stage.REPLY);
+    for(int i = 1; i < stageTimers.length; i++) {
+      final long d = trace.getDuration(Stage.VALUES[i]);
+      if (d >= 0) {
+        stageTimers[i].update(d, TimeUnit.NANOSECONDS);
+      }
+    }
+    if (trace.getTotal() >= slowRequestThresholdNanos) {
+      LOG.warn("{}: slow request at index {}, {}", name, index, trace);
+    } else if (LOG.isDebugEnabled()) {
+      LOG.debug("{}: request at index {}, {}", name, index, trace);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return name;
+  }
+}
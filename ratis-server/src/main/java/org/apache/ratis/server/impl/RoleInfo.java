@@ -116,7 +116,6 @@ class RoleInfo {
     if (follower != null) {
       LOG.info("{}: shutdown {}", id, follower.getClass().getSimpleName());
       follower.stopRunning();
-      follower.interrupt();
     }
   }
 
@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.impl;
+
+import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.server.RaftServerConfigKeys;
+import org.apache.ratis.util.Daemon;
+import org.apache.ratis.util.SerialExecutor;
+import org.apache.ratis.util.TimeoutScheduler;
+
+import java.io.Closeable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The executors shared by all the {@link RaftServerImpl}s in a {@link RaftServerProxy}
+ * for the timers, the blocking rpc tasks and the parallel apply lanes,
+ * so that the threads for them are bounded by the configuration instead of growing with the number of groups.
+ * The long-running loops, i.e. the log appenders, the log worker, the state machine updater
+ * and the leader event processor, still have a thread per group.
+ *
+ * @see RaftServerConfigKeys.ThreadPool
+ */
+public class ServerExecutors implements Closeable {
+  private final TimeoutScheduler scheduler;
+  private final ExecutorService rpcExecutor;
+  private final ExecutorService applyExecutor;
+
+  ServerExecutors(RaftProperties properties) {
+    this.scheduler = TimeoutScheduler.newInstance(RaftServerConfigKeys.ThreadPool.schedulerSize(properties));
+    this.rpcExecutor = newThreadPool(RaftServerConfigKeys.ThreadPool.rpcSize(properties));
+    this.applyExecutor = newThreadPool(RaftServerConfigKeys.ThreadPool.applySize(properties));
+  }
+
+  private static ExecutorService newThreadPool(int size) {
+    final ThreadPoolExecutor executor = new ThreadPoolExecutor(size, size,
+        60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), Daemon::new);
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  /** @return the scheduler for the timers such as the election timeouts; the timer tasks must not block. */
+  public TimeoutScheduler getScheduler() {
+    return scheduler;
+  }
+
+  /** @return the executor for the blocking tasks such as the calls to the other servers. */
+  public ExecutorService getRpcExecutor() {
+    return rpcExecutor;
+  }
+
+  /** @return a new executor running the tasks in order using the shared apply thread pool. */
+  public SerialExecutor newApplyLane() {
+    return new SerialExecutor(applyExecutor);
+  }
+
+  @Override
+  public void close() {
+    rpcExecutor.shutdownNow();
+    applyExecutor.shutdownNow();
+  }
+}
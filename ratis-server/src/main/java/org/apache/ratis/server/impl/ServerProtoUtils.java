@@ -90,7 +90,8 @@ public interface ServerProtoUtils {
   public static String toString(AppendEntriesReplyProto reply) {
     return toString(reply.getServerReply()) + "," + reply.getResult()
         + ",nextIndex:" + reply.getNextIndex() + ",term:" + reply.getTerm()
-        + ",followerCommit:" + reply.getFollowerCommit();
+        + ",followerCommit:" + reply.getFollowerCommit()
+        + (reply.hasConflictTermIndex()? ",conflict:" + toTermIndex(reply.getConflictTermIndex()): "");
   }
 
   static String toString(RaftRpcReplyProto reply) {
@@ -157,7 +158,13 @@ public interface ServerProtoUtils {
     if (logData == null) {
       logData = request.getMessage().getContent();
     }
-    return toStateMachineLogEntryProto(request.getClientId(), request.getCallId(), logData, stateMachineData);
+    final StateMachineLogEntryProto proto = toStateMachineLogEntryProto(
+        request.getClientId(), request.getCallId(), logData, stateMachineData);
+    return isBatch(request)? proto.toBuilder().setBatch(true).build(): proto;
+  }
+
+  static boolean isBatch(RaftClientRequest request) {
+    return request.is(RaftClientRequestProto.TypeCase.WRITE) && request.getType().getWrite().getBatch();
   }
 
   static StateMachineLogEntryProto toStateMachineLogEntryProto(
@@ -261,6 +268,21 @@ public interface ServerProtoUtils {
     return b.build();
   }
 
+  public static ReadIndexRequestProto toReadIndexRequestProto(
+      RaftPeerId requestorId, RaftPeerId replyId, RaftGroupId groupId) {
+    return ReadIndexRequestProto.newBuilder()
+        .setServerRequest(toRaftRpcRequestProtoBuilder(requestorId, replyId, groupId))
+        .build();
+  }
+
+  public static ReadIndexReplyProto toReadIndexReplyProto(
+      RaftPeerId requestorId, RaftPeerId replyId, RaftGroupId groupId, boolean success, long readIndex) {
+    return ReadIndexReplyProto.newBuilder()
+        .setServerReply(toRaftRpcReplyProtoBuilder(requestorId, replyId, groupId, success))
+        .setReadIndex(readIndex)
+        .build();
+  }
+
   public static InstallSnapshotReplyProto toInstallSnapshotReplyProto(
       RaftPeerId requestorId, RaftPeerId replyId, RaftGroupId groupId,
       long term, int requestIndex, InstallSnapshotResult result) {
@@ -291,15 +313,27 @@ public interface ServerProtoUtils {
   public static AppendEntriesReplyProto toAppendEntriesReplyProto(
       RaftPeerId requestorId, RaftPeerId replyId, RaftGroupId groupId, long term,
       long followerCommit, long nextIndex, AppendResult result, long callId) {
+    return toAppendEntriesReplyProto(requestorId, replyId, groupId, term,
+        followerCommit, nextIndex, result, callId, null);
+  }
+
+  public static AppendEntriesReplyProto toAppendEntriesReplyProto(
+      RaftPeerId requestorId, RaftPeerId replyId, RaftGroupId groupId, long term,
+      long followerCommit, long nextIndex, AppendResult result, long callId,
+      TermIndex conflict) {
     RaftRpcReplyProto.Builder rpcReply = toRaftRpcReplyProtoBuilder(
         requestorId, replyId, groupId, result == AppendResult.SUCCESS)
         .setCallId(callId);
-    return AppendEntriesReplyProto.newBuilder()
+    final AppendEntriesReplyProto.Builder b = AppendEntriesReplyProto.newBuilder()
         .setServerReply(rpcReply)
         .setTerm(term)
         .setNextIndex(nextIndex)
         .setFollowerCommit(followerCommit)
-        .setResult(result).build();
+        .setResult(result);
+    if (conflict != null) {
+      b.setConflictTermIndex(toTermIndexProto(conflict));
+    }
+    return b.build();
   }
 
   public static AppendEntriesRequestProto toAppendEntriesRequestProto(
@@ -27,21 +27,20 @@ import org.apache.ratis.proto.RaftProtos.LogEntryProto;
 import org.apache.ratis.statemachine.SnapshotInfo;
 import org.apache.ratis.statemachine.StateMachine;
 import org.apache.ratis.statemachine.TransactionContext;
+import org.apache.ratis.util.LifeCycle;
 import org.apache.ratis.util.Timestamp;
 
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 import static org.apache.ratis.server.impl.RaftServerImpl.LOG;
 
@@ -96,9 +95,12 @@ public class ServerState implements Closeable {
     LOG.info("{}: {}", id, configurationManager);
 
     // use full uuid string to create a subdirectory
-    final File dir = chooseStorageDir(RaftServerConfigKeys.storageDirs(prop),
-        group.getGroupId().getUuid().toString());
-    storage = new RaftStorage(dir, RaftServerConstants.StartupOption.REGULAR);
+    final String groupDirName = group.getGroupId().getUuid().toString();
+    final long minFreeSpace = RaftServerConfigKeys.storageFreeSpaceMin(prop).getSize();
+    final File dir = chooseStorageDir(server.getProxy().getStorageVolumes(), groupDirName, minFreeSpace);
+    final List<StorageVolume> logVolumes = server.getProxy().getLogVolumes();
+    final File logDir = logVolumes.isEmpty()? dir: chooseStorageDir(logVolumes, groupDirName, minFreeSpace);
+    storage = new RaftStorage(dir, logDir, RaftServerConstants.StartupOption.REGULAR);
     snapshotManager = new SnapshotManager(storage, id);
 
     long lastApplied = initStatemachine(stateMachine, group.getGroupId());
@@ -123,27 +125,30 @@ public class ServerState implements Closeable {
 
 
   static File chooseStorageDir(List<File> volumes, String targetSubDir) throws IOException {
-    final Map<File, Integer> numberOfStorageDirPerVolume = new HashMap<>();
-    final File[] empty = {};
-    final List<File> resultList = new ArrayList<>();
-    volumes.stream().flatMap(volume -> {
-      final File[] dirs = Optional.ofNullable(volume.listFiles()).orElse(empty);
-      numberOfStorageDirPerVolume.put(volume, dirs.length);
-      return Arrays.stream(dirs);
-    }).filter(dir -> targetSubDir.equals(dir.getName()))
-        .forEach(resultList::add);
+    return chooseStorageDir(volumes.stream().map(StorageVolume::new).collect(Collectors.toList()), targetSubDir, 0);
+  }
 
+  /**
+   * @return the existing directory of the group if there is one;
+   *         otherwise, a new directory in the least loaded volume.
+   * @see StorageVolume#chooseLeastLoaded(java.util.Collection, long)
+   */
+  static File chooseStorageDir(List<StorageVolume> volumes, String targetSubDir, long minFreeSpace)
+      throws IOException {
+    final List<File> resultList = volumes.stream()
+        .map(v -> v.getGroupDir(targetSubDir))
+        .filter(File::exists)
+        .collect(Collectors.toList());
     if (resultList.size() > 1) {
       throw new IOException("More than one directories found for " + targetSubDir + ": " + resultList);
     }
     if (resultList.size() == 1) {
       return resultList.get(0);
     }
-    return numberOfStorageDirPerVolume.entrySet().stream()
-        .min(Comparator.comparing(Map.Entry::getValue))
-        .map(Map.Entry::getKey)
-        .map(v -> new File(v, targetSubDir))
+    final StorageVolume chosen = StorageVolume.chooseLeastLoaded(volumes, minFreeSpace)
         .orElseThrow(() -> new IOException("No storage directory found."));
+    LOG.info("Choose {} for {}", chosen, targetSubDir);
+    return chosen.getGroupDir(targetSubDir);
   }
 
   private long initStatemachine(StateMachine sm, RaftGroupId groupId)
@@ -185,7 +190,10 @@ public class ServerState implements Closeable {
           RaftServerConfigKeys.Log.Appender.bufferByteLimit(prop).getSizeInt();
       log = new MemoryRaftLog(id, lastIndexInSnapshot, maxBufferSize);
     } else {
-      log = new SegmentedRaftLog(id, server, this.storage,
+      final SharedWriteAheadLog.Member sharedLog = !RaftServerConfigKeys.Log.SharedWal.enabled(prop)? null
+          : server.getProxy().getSharedWriteAheadLog(storage.getStorageDir().getLogRoot().getParentFile())
+              .register(server.getGroupId());
+      log = new SegmentedRaftLog(id, server, sharedLog, this.storage,
           lastIndexInSnapshot, prop);
     }
     log.open(lastIndexInSnapshot, logConsumer);
@@ -362,8 +370,8 @@ public class ServerState implements Closeable {
     }
   }
 
-  boolean updateStatemachine(long majorityIndex, long currentTerm) {
-    if (log.updateLastCommitted(majorityIndex, currentTerm)) {
+  boolean updateStatemachine(long majorityIndex, long currentTerm, boolean isLeader) {
+    if (log.updateLastCommitted(majorityIndex, currentTerm, isLeader)) {
       stateMachineUpdater.notifyUpdater();
       return true;
     }
@@ -371,7 +379,7 @@ public class ServerState implements Closeable {
   }
 
   void reloadStateMachine(long lastIndexInSnapshot, long currentTerm) {
-    log.updateLastCommitted(lastIndexInSnapshot, currentTerm);
+    log.updateLastCommitted(lastIndexInSnapshot, currentTerm, false);
     stateMachineUpdater.reloadStateMachine();
   }
 
@@ -394,14 +402,20 @@ public class ServerState implements Closeable {
     return storage;
   }
 
-  void installSnapshot(InstallSnapshotRequestProto request) throws IOException {
+  /** @return true if the request is accepted; see {@link SnapshotManager#installSnapshot}. */
+  boolean installSnapshot(InstallSnapshotRequestProto request) throws IOException {
     // TODO: verify that we need to install the snapshot
     StateMachine sm = server.getStateMachine();
-    sm.pause(); // pause the SM to prepare for install snapshot
-    snapshotManager.installSnapshot(sm, request);
+    if (sm.getLifeCycleState() != LifeCycle.State.PAUSED) {
+      sm.pause(); // pause the SM to prepare for install snapshot
+    }
+    if (!snapshotManager.installSnapshot(sm, request)) {
+      return false;
+    }
     log.syncWithSnapshot(request.getTermIndex().getIndex());
     this.latestInstalledSnapshot = ServerProtoUtils.toTermIndex(
         request.getTermIndex());
+    return true;
   }
 
   SnapshotInfo getLatestSnapshot() {
@@ -415,4 +429,14 @@ public class ServerState implements Closeable {
   public long getLastAppliedIndex() {
     return stateMachineUpdater.getLastAppliedIndex();
   }
+
+  /** @return a future which is completed once the entries up to the given index have been applied. */
+  CompletableFuture<Void> waitForApplied(long index) {
+    return stateMachineUpdater.waitForApplied(index);
+  }
+
+  /** Fail the futures returned by {@link #waitForApplied(long)} which are not yet completed. */
+  void failAppliedIndexFutures(Exception e) {
+    stateMachineUpdater.failAppliedIndexFutures(e);
+  }
 }
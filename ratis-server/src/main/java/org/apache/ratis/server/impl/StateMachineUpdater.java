@@ -17,13 +17,17 @@
  */
 package org.apache.ratis.server.impl;
 
+import org.apache.ratis.client.impl.ClientProtoUtils;
 import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.protocol.AlreadyClosedException;
 import org.apache.ratis.protocol.Message;
 import org.apache.ratis.server.RaftServerConfigKeys;
 import org.apache.ratis.server.storage.RaftLog;
 import org.apache.ratis.proto.RaftProtos.LogEntryProto;
+import org.apache.ratis.proto.RaftProtos.StateMachineLogEntryProto;
 import org.apache.ratis.statemachine.SnapshotInfo;
 import org.apache.ratis.statemachine.StateMachine;
+import org.apache.ratis.statemachine.TransactionContext;
 import org.apache.ratis.util.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -31,7 +35,11 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.LongStream;
 
 /**
  * This class tracks the log entries that have been committed in a quorum and
@@ -41,6 +49,11 @@ import java.util.concurrent.CompletableFuture;
  * If the auto log compaction is enabled, the state machine updater thread will
  * trigger a snapshot of the state machine by calling
  * {@link StateMachine#takeSnapshot} when the log size exceeds a limit.
+ *
+ * If the parallel apply mode is enabled, the transactions are applied by a {@link ParallelApplier}.
+ *
+ * If the log purge is enabled, the log entries included in a snapshot are purged
+ * once the snapshot is taken or loaded.
  */
 class StateMachineUpdater implements Runnable {
   static final Logger LOG = LoggerFactory.getLogger(StateMachineUpdater.class);
@@ -55,12 +68,27 @@ class StateMachineUpdater implements Runnable {
   private final RaftServerImpl server;
   private final RaftLog raftLog;
 
+  /**
+   * The index of the last entry passed to the state machine.
+   * The transactions up to the index may not yet be completed; see {@link #getLastAppliedIndex()}.
+   */
   private volatile long lastAppliedIndex;
+  /** The transactions passed to the state machine but not yet completed in the serial apply mode. */
+  private final ConcurrentNavigableMap<Long, CompletableFuture<Message>> applyingFutures
+      = new ConcurrentSkipListMap<>();
+  /** Non-null iff the parallel apply mode is enabled. */
+  private final ParallelApplier parallelApplier;
+  /** The futures waiting for the applied index to reach the key; see {@link #waitForApplied(long)}. */
+  private final ConcurrentNavigableMap<Long, CompletableFuture<Void>> appliedIndexFutures
+      = new ConcurrentSkipListMap<>();
 
   private final boolean autoSnapshotEnabled;
   private final long autoSnapshotThreshold;
   private long lastSnapshotIndex;
 
+  private final boolean purgeEnabled;
+  private final long purgeGap;
+
   private final Thread updater;
   private volatile State state = State.RUNNING;
 
@@ -76,6 +104,11 @@ class StateMachineUpdater implements Runnable {
 
     autoSnapshotEnabled = RaftServerConfigKeys.Snapshot.autoTriggerEnabled(properties);
     autoSnapshotThreshold = RaftServerConfigKeys.Snapshot.autoTriggerThreshold(properties);
+    purgeEnabled = RaftServerConfigKeys.Log.Purge.enabled(properties);
+    purgeGap = RaftServerConfigKeys.Log.Purge.gap(properties);
+    parallelApplier = !RaftServerConfigKeys.ApplyTransaction.parallelEnabled(properties)? null
+        : new ParallelApplier(this, stateMachine, RaftServerConfigKeys.ApplyTransaction.parallelLanes(properties),
+            server.getProxy().getExecutors()::newApplyLane, lastAppliedIndex, this::onAppliedIndexAdvance);
     updater = new Daemon(this);
   }
 
@@ -85,6 +118,10 @@ class StateMachineUpdater implements Runnable {
 
   private void stop() {
     state = State.STOP;
+    failAppliedIndexFutures(new AlreadyClosedException(this + " is stopped"));
+    if (parallelApplier != null) {
+      parallelApplier.close();
+    }
     try {
       stateMachine.close();
     } catch (IOException ignored) {
@@ -120,6 +157,51 @@ class StateMachineUpdater implements Runnable {
     notifyAll();
   }
 
+  private void onAppliedIndexAdvance() {
+    completeAppliedIndexFutures();
+    // the updater may be waiting for the transactions to complete before stopping.
+    if (stopIndex != null) {
+      notifyUpdater();
+    }
+  }
+
+  /** @return a future which is completed once the entries up to the given index have been applied. */
+  CompletableFuture<Void> waitForApplied(long index) {
+    if (getLastAppliedIndex() >= index) {
+      return CompletableFuture.completedFuture(null);
+    }
+    final CompletableFuture<Void> future = appliedIndexFutures.computeIfAbsent(index, k -> new CompletableFuture<>());
+    if (!isRunning()) {
+      failAppliedIndexFutures(new AlreadyClosedException(this + " is stopped"));
+    }
+    // check again in case the applied index is updated concurrently
+    completeAppliedIndexFutures();
+    return future;
+  }
+
+  /** Fail all the futures waiting for the applied index, e.g. when the updater stops or the role changes. */
+  void failAppliedIndexFutures(Exception e) {
+    for(Map.Entry<Long, CompletableFuture<Void>> first; (first = appliedIndexFutures.pollFirstEntry()) != null; ) {
+      first.getValue().completeExceptionally(e);
+    }
+  }
+
+  private void completeAppliedIndexFutures() {
+    final long applied = getLastAppliedIndex();
+    for(Map.Entry<Long, CompletableFuture<Void>> first;
+        (first = appliedIndexFutures.firstEntry()) != null && first.getKey() <= applied; ) {
+      if (appliedIndexFutures.remove(first.getKey(), first.getValue())) {
+        first.getValue().complete(null);
+      }
+    }
+  }
+
+  private void waitForParallelTransactions() throws InterruptedException {
+    if (parallelApplier != null) {
+      parallelApplier.waitForAll();
+    }
+  }
+
   @Override
   public String toString() {
     return this.getClass().getSimpleName() + "-" + raftLog.getSelfId();
@@ -145,6 +227,7 @@ class StateMachineUpdater implements Runnable {
         if (state == State.RELOAD) {
           Preconditions.assertTrue(stateMachine.getLifeCycleState() == LifeCycle.State.PAUSED);
 
+          waitForParallelTransactions();
           stateMachine.reinitialize();
 
           SnapshotInfo snapshot = stateMachine.getLatestSnapshot();
@@ -153,7 +236,12 @@ class StateMachineUpdater implements Runnable {
 
           lastAppliedIndex = snapshot.getIndex();
           lastSnapshotIndex = snapshot.getIndex();
+          if (parallelApplier != null) {
+            parallelApplier.reset(lastAppliedIndex);
+          }
+          completeAppliedIndexFutures();
           state = State.RUNNING;
+          purgeLog(lastSnapshotIndex);
         }
 
         final MemoizedSupplier<List<CompletableFuture<Message>>> futures
@@ -166,11 +254,25 @@ class StateMachineUpdater implements Runnable {
               LOG.debug("{}: applying nextIndex={}, nextLog={}",
                   this, nextIndex, ServerProtoUtils.toString(next));
             }
-            final CompletableFuture<Message> f = server.applyLogToStateMachine(next);
+            final CompletableFuture<Message> f = server.applyLogToStateMachine(next,
+                parallelApplier != null? parallelApplier::applyTransaction: trx -> applyTransaction(stateMachine, trx));
             if (f != null) {
               futures.get().add(f);
+              if (parallelApplier == null && !f.isDone()) {
+                applyingFutures.put(nextIndex, f);
+                f.whenComplete((r, e) -> {
+                  applyingFutures.remove(nextIndex);
+                  onAppliedIndexAdvance();
+                });
+              }
             }
             lastAppliedIndex = nextIndex;
+            if (parallelApplier != null) {
+              parallelApplier.setLastDispatchedIndex(nextIndex);
+            }
+            if (!appliedIndexFutures.isEmpty()) {
+              completeAppliedIndexFutures();
+            }
           } else {
             LOG.debug("{}: logEntry {} is null. There may be snapshot to load. state:{}",
                 this, nextIndex, state);
@@ -183,9 +285,10 @@ class StateMachineUpdater implements Runnable {
           if (futures.isInitialized()) {
             JavaUtils.allOf(futures.get()).get();
           }
-          stateMachine.takeSnapshot();
-          // TODO purge logs, including log cache. but should keep log for leader's RPCSenders
+          waitForParallelTransactions();
+          final long snapshotIndex = stateMachine.takeSnapshot();
           lastSnapshotIndex = lastAppliedIndex;
+          purgeLog(snapshotIndex >= 0? Math.min(snapshotIndex, lastAppliedIndex): lastAppliedIndex);
         }
 
         if (shouldStop()) {
@@ -205,6 +308,34 @@ class StateMachineUpdater implements Runnable {
     }
   }
 
+  /**
+   * Purge the log entries included in the snapshot except for the last purgeGap entries.
+   * When this server is the leader, the entries not yet sent to the followers are also kept,
+   * including the previous entry of each follower's next index,
+   * so that the followers catching up do not require installing the snapshot.
+   *
+   * The purge is asynchronous; the files are deleted by the log worker.
+   */
+  private void purgeLog(long snapshotIndex) {
+    if (!purgeEnabled) {
+      return;
+    }
+    final long[] followerNextIndices = server.getFollowerNextIndices();
+    final long purgeIndex = followerNextIndices == null? snapshotIndex - purgeGap
+        : Math.min(snapshotIndex - purgeGap, LongStream.of(followerNextIndices).min().orElse(Long.MAX_VALUE) - 2);
+    if (purgeIndex < 0) {
+      return;
+    }
+    LOG.debug("{}: purge log up to index {}, snapshotIndex={}", this, purgeIndex, snapshotIndex);
+    raftLog.purge(purgeIndex).whenComplete((startIndex, e) -> {
+      if (e != null) {
+        LOG.warn(this + ": Failed to purge log up to index " + purgeIndex, e);
+      } else {
+        LOG.info("{}: purged log up to index {}, the log start index is {}", this, purgeIndex, startIndex);
+      }
+    });
+  }
+
   private boolean isRunning() {
     return state != State.STOP;
   }
@@ -222,7 +353,36 @@ class StateMachineUpdater implements Runnable {
         );
   }
 
+  /**
+   * @return the index such that the transactions up to it have been completed,
+   *         i.e. the futures returned by the state machine are completed.
+   */
   long getLastAppliedIndex() {
-    return lastAppliedIndex;
+    if (parallelApplier != null) {
+      return parallelApplier.getLastAppliedIndex();
+    }
+    // read the passed index first since an index is added to applyingFutures before it is passed
+    final long passed = lastAppliedIndex;
+    final Map.Entry<Long, CompletableFuture<Message>> first = applyingFutures.firstEntry();
+    return first == null? passed: Math.min(first.getKey() - 1, passed);
+  }
+
+  /**
+   * Apply the given transaction to the state machine.
+   * The transaction of a batched write request is applied with {@link StateMachine#applyTransactionBatch}
+   * and the replies are combined into a single message.
+   */
+  static CompletableFuture<Message> applyTransaction(StateMachine stateMachine, TransactionContext trx) {
+    final StateMachineLogEntryProto smLog = trx.getStateMachineLogEntry();
+    if (smLog == null || !smLog.getBatch()) {
+      return stateMachine.applyTransaction(trx);
+    }
+    final List<Message> messages;
+    try {
+      messages = ClientProtoUtils.toMessages(smLog.getLogData());
+    } catch (IOException e) {
+      return JavaUtils.completeExceptionally(e);
+    }
+    return stateMachine.applyTransactionBatch(trx, messages).thenApply(ClientProtoUtils::toBatchMessage);
   }
 }
@@ -154,10 +154,11 @@ class WatchRequests {
 
   private final TimeDuration watchTimeoutNanos;
   private final TimeDuration watchTimeoutDenominationNanos;
-  private final TimeoutScheduler scheduler = TimeoutScheduler.newInstance(2);
+  private final TimeoutScheduler scheduler;
 
-  WatchRequests(Object name, RaftProperties properties) {
+  WatchRequests(Object name, RaftProperties properties, TimeoutScheduler scheduler) {
     this.name = name + "-" + getClass().getSimpleName();
+    this.scheduler = scheduler;
 
     final TimeDuration watchTimeout = RaftServerConfigKeys.watchTimeout(properties);
     this.watchTimeoutNanos = watchTimeout.to(TimeUnit.NANOSECONDS);
@@ -84,16 +84,51 @@ public class BufferedWriteChannel extends BufferedChannelBase {
   }
 
   public void write(byte[] b) throws IOException {
-    int offset = 0;
-    while (offset < b.length) {
-      int toPut = Math.min(b.length - offset, writeBuffer.remaining());
+    write(b, 0, b.length);
+  }
+
+  public void write(byte[] b, int off, int len) throws IOException {
+    int offset = off;
+    final int end = off + len;
+    while (offset < end) {
+      int toPut = Math.min(end - offset, writeBuffer.remaining());
       writeBuffer.put(b, offset, toPut);
       offset += toPut;
       if (writeBuffer.remaining() == 0) {
         flushInternal();
       }
     }
-    position += b.length;
+    position += len;
+  }
+
+  /**
+   * Prepare the write buffer so that the caller can write the given number of bytes
+   * directly to it, i.e. without copying.
+   * The buffer is flushed to the file if it does not have enough space remaining.
+   * After writing, the caller must invoke {@link #advancePosition(int)}.
+   *
+   * @return the write buffer with at least the given number of bytes remaining;
+   *         or null if the given size is larger than the buffer capacity.
+   */
+  ByteBuffer prepareWriteBuffer(int size) throws IOException {
+    if (size > writeCapacity) {
+      return null;
+    }
+    if (writeBuffer.remaining() < size) {
+      flushInternal();
+    }
+    return writeBuffer;
+  }
+
+  /**
+   * Advance the position after the given number of bytes have been written directly
+   * to the buffer returned by {@link #prepareWriteBuffer(int)}.
+   */
+  void advancePosition(int size) throws IOException {
+    position += size;
+    if (writeBuffer.remaining() == 0) {
+      flushInternal();
+    }
   }
 
   /**
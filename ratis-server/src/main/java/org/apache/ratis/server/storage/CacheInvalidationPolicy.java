@@ -19,12 +19,159 @@ package org.apache.ratis.server.storage;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import org.apache.ratis.server.storage.RaftLogCache.LogSegmentList;
-import org.apache.ratis.util.AutoCloseableLock;
+import org.apache.ratis.util.TimeDuration;
+import org.apache.ratis.util.Timestamp;
 
+/**
+ * The policy to determine which log segments should evict their log entry cache.
+ * A policy must have a public no-arg constructor.
+ */
 public interface CacheInvalidationPolicy {
+  /** A log segment as seen by a policy. */
+  interface Segment {
+    long getStartIndex();
+
+    long getEndIndex();
+
+    boolean isOpen();
+
+    boolean hasCache();
+
+    /** @return the serialized size of the cached entries. */
+    long getCachedSize();
+
+    /** @return the time, in {@link Timestamp#currentTimeNanos()}, when the cache was read last time. */
+    long getLastAccessTime();
+
+    default boolean containsIndex(long index) {
+      return getStartIndex() <= index && getEndIndex() >= index;
+    }
+  }
+
+  /** The reason to evict the cache. */
+  enum Reason {
+    /** The number of the cached segments exceeds the limit. */
+    SEGMENT_NUM,
+    /** The size of the cached entries exceeds the byte limit. */
+    BYTE_LIMIT,
+    /** The heap usage after a garbage collection exceeds the threshold. */
+    HEAP_PRESSURE
+  }
+
+  /** The state of the log and the cache when the eviction is triggered. */
+  final class Context<S extends Segment> {
+    private final Reason reason;
+    private final List<S> segments;
+    private final long[] followerNextIndices;
+    private final long localFlushedIndex;
+    private final long lastAppliedIndex;
+    private final int maxCachedSegments;
+    private final long byteLimit;
+    private final long hotDurationNanos;
+    private final long cachedBytes;
+    private final long now = Timestamp.currentTimeNanos();
+
+    Context(Reason reason, List<S> segments, long[] followerNextIndices, long localFlushedIndex,
+        long lastAppliedIndex, int maxCachedSegments, long byteLimit, TimeDuration hotDuration) {
+      this.reason = reason;
+      this.segments = Collections.unmodifiableList(segments);
+      this.followerNextIndices = followerNextIndices == null? new long[0]: followerNextIndices.clone();
+      Arrays.sort(this.followerNextIndices);
+      this.localFlushedIndex = localFlushedIndex;
+      this.lastAppliedIndex = lastAppliedIndex;
+      this.maxCachedSegments = maxCachedSegments;
+      this.byteLimit = byteLimit;
+      this.hotDurationNanos = hotDuration.toLong(TimeUnit.NANOSECONDS);
+      this.cachedBytes = segments.stream().mapToLong(Segment::getCachedSize).sum();
+    }
+
+    public Reason getReason() {
+      return reason;
+    }
+
+    /** @return the closed segments sorted in ascending order according to log index. */
+    public List<S> getSegments() {
+      return segments;
+    }
+
+    /** @return the sorted next indices of all the followers, or an empty array if the local peer is not a leader. */
+    public long[] getFollowerNextIndices() {
+      return followerNextIndices.clone();
+    }
+
+    /** @return the index that has been flushed to the local disk. */
+    public long getLocalFlushedIndex() {
+      return localFlushedIndex;
+    }
+
+    /** @return the last index that has been applied to the state machine. */
+    public long getLastAppliedIndex() {
+      return lastAppliedIndex;
+    }
+
+    /** @return the max number of segments with cached log entries. */
+    public int getMaxCachedSegments() {
+      return maxCachedSegments;
+    }
+
+    /** @return the max size of the cached entries, or {@link Long#MAX_VALUE} if it is unlimited. */
+    public long getByteLimit() {
+      return byteLimit > 0? byteLimit: Long.MAX_VALUE;
+    }
+
+    /** @return the size of the cached entries in the segments. */
+    public long getCachedBytes() {
+      return cachedBytes;
+    }
+
+    /**
+     * @return the size of the cached entries to keep after the eviction:
+     *         half of the current size under heap pressure; otherwise, the byte limit.
+     */
+    public long getTargetBytes() {
+      return reason == Reason.HEAP_PRESSURE? Math.min(cachedBytes / 2, getByteLimit()): getByteLimit();
+    }
+
+    /** @return the smallest index to be read by a follower or by the state machine. */
+    public long getMinIndexToRead() {
+      final long nextToApply = lastAppliedIndex + 1;
+      return followerNextIndices.length == 0? nextToApply: Math.min(followerNextIndices[0], nextToApply);
+    }
+
+    /** @return is the segment going to be read next by a follower or by the state machine? */
+    public boolean isReadFrontier(Segment s) {
+      return s.containsIndex(lastAppliedIndex + 1) || Arrays.stream(followerNextIndices).anyMatch(s::containsIndex);
+    }
+
+    /**
+     * A segment's cache can be invalidated only if it's closed and all its entries have been flushed to the local disk.
+     *
+     * @return can the segment's cache be evicted?
+     */
+    public boolean isEvictable(Segment s) {
+      return !s.isOpen() && s.getEndIndex() <= localFlushedIndex && s.hasCache();
+    }
+
+    /** @return was the segment read recently, e.g. by a lagging follower? */
+    public boolean isHot(Segment s) {
+      return now - s.getLastAccessTime() < hotDurationNanos;
+    }
+  }
+
+  /**
+   * Determine which log segments should evict their log entry cache.
+   *
+   * @return the log segments that should evict cache
+   */
+  <S extends Segment> List<S> evict(Context<S> context);
+
   /**
    * Determine which log segments should evict their log entry cache
    * @param followerNextIndices the next indices of all the follower peers. Null
@@ -36,39 +183,41 @@ public interface CacheInvalidationPolicy {
    * @param maxCachedSegments the max number of segments with cached log entries
    * @return the log segments that should evict cache
    */
-  List<LogSegment> evict(long[] followerNextIndices, long localFlushedIndex,
-      long lastAppliedIndex, LogSegmentList segments, int maxCachedSegments);
+  default List<LogSegment> evict(long[] followerNextIndices, long localFlushedIndex,
+      long lastAppliedIndex, LogSegmentList segments, int maxCachedSegments) {
+    return evict(new Context<>(Reason.SEGMENT_NUM, segments.getSegments(), followerNextIndices,
+        localFlushedIndex, lastAppliedIndex, maxCachedSegments, 0, TimeDuration.valueOf(0, TimeUnit.SECONDS)));
+  }
 
+  /**
+   * Evict the segments behind the slowest reader; if there is none, evict a segment not being read.
+   * The eviction does not depend on the reason.
+   */
   class CacheInvalidationPolicyDefault implements CacheInvalidationPolicy {
     @Override
-    public List<LogSegment> evict(long[] followerNextIndices,
-        long localFlushedIndex, long lastAppliedIndex,
-        LogSegmentList segments, final int maxCachedSegments) {
-      try(AutoCloseableLock readLock = segments.readLock()) {
-        return evictImpl(followerNextIndices, localFlushedIndex, lastAppliedIndex, segments, maxCachedSegments);
-      }
-    }
+    public <S extends Segment> List<S> evict(Context<S> context) {
+      final List<S> segments = context.getSegments();
+      final long localFlushedIndex = context.getLocalFlushedIndex();
+      final long lastAppliedIndex = context.getLastAppliedIndex();
+      final long[] followerNextIndices = context.getFollowerNextIndices();
 
-    private List<LogSegment> evictImpl(long[] followerNextIndices,
-        long localFlushedIndex, long lastAppliedIndex,
-        LogSegmentList segments, final int maxCachedSegments) {
-      List<LogSegment> result = new ArrayList<>();
+      List<S> result = new ArrayList<>();
       int safeIndex = segments.size() - 1;
       for (; safeIndex >= 0; safeIndex--) {
-        LogSegment segment = segments.get(safeIndex);
+        S segment = segments.get(safeIndex);
         // a segment's cache can be invalidated only if it's close and all its
         // entries have been flushed to the local disk
         if (!segment.isOpen() && segment.getEndIndex() <= localFlushedIndex) {
           break;
         }
       }
-      if (followerNextIndices == null || followerNextIndices.length == 0) {
+      if (followerNextIndices.length == 0) {
         // no followers, determine the eviction based on lastAppliedIndex
         // first scan from the oldest segment to the one that is right before
         // lastAppliedIndex. All these segment's cache can be invalidated.
         int j = 0;
         for (; j <= safeIndex; j++) {
-          LogSegment segment = segments.get(j);
+          S segment = segments.get(j);
           if (segment.getEndIndex() > lastAppliedIndex) {
             break;
           }
@@ -80,7 +229,7 @@ public interface CacheInvalidationPolicy {
         // later (but not now) the state machine will consume
         if (result.isEmpty()) {
           for (int i = safeIndex; i >= j; i--) {
-            LogSegment s = segments.get(i);
+            S s = segments.get(i);
             if (s.getStartIndex() > lastAppliedIndex && s.hasCache()) {
               result.add(s);
               break;
@@ -90,13 +239,12 @@ public interface CacheInvalidationPolicy {
       } else {
         // this peer is the leader with followers. determine the eviction based
         // on followers' next indices and the local lastAppliedIndex.
-        Arrays.sort(followerNextIndices);
         // segments covering index minToRead will still be loaded. Thus we first
         // try to evict cache for segments before minToRead.
         final long minToRead = Math.min(followerNextIndices[0], lastAppliedIndex);
         int j = 0;
         for (; j <= safeIndex; j++) {
-          LogSegment s = segments.get(j);
+          S s = segments.get(j);
           if (s.getEndIndex() >= minToRead) {
             break;
           }
@@ -108,7 +256,7 @@ public interface CacheInvalidationPolicy {
         // the one that is not being read currently.
         if (result.isEmpty()) {
           for (; j <= safeIndex; j++) {
-            LogSegment s = segments.get(j);
+            S s = segments.get(j);
             if (Arrays.stream(followerNextIndices).noneMatch(s::containsIndex)
                 && !s.containsIndex(lastAppliedIndex) && s.hasCache()) {
               result.add(s);
@@ -120,4 +268,40 @@ public interface CacheInvalidationPolicy {
       return result;
     }
   }
+
+  /**
+   * Evict the segments until both the size of the cached entries and the number of the cached segments
+   * are within their limits.  The segments being read next by a follower or by the state machine are kept.
+   * The segments are evicted in the following order:
+   * (1) the segments already read by all the followers and the state machine,
+   * (2) the segments not read recently, and then
+   * (3) the hot segments, i.e. the segments being re-read by lagging followers.
+   * Within each group, the least recently used segment is evicted first.
+   */
+  class CacheInvalidationPolicyByteBudget implements CacheInvalidationPolicy {
+    @Override
+    public <S extends Segment> List<S> evict(Context<S> context) {
+      final long minToRead = context.getMinIndexToRead();
+      final List<S> candidates = context.getSegments().stream()
+          .filter(context::isEvictable)
+          .filter(s -> !context.isReadFrontier(s))
+          .sorted(Comparator.<S>comparingInt(s -> s.getEndIndex() < minToRead? 0: context.isHot(s)? 2: 1)
+              .thenComparingLong(Segment::getLastAccessTime))
+          .collect(Collectors.toList());
+
+      final long targetBytes = context.getTargetBytes();
+      long remainingBytes = context.getCachedBytes();
+      long remainingNum = context.getSegments().stream().filter(Segment::hasCache).count();
+      final List<S> result = new ArrayList<>();
+      for(S s : candidates) {
+        if (remainingBytes <= targetBytes && remainingNum <= context.getMaxCachedSegments()) {
+          break;
+        }
+        result.add(s);
+        remainingBytes -= s.getCachedSize();
+        remainingNum--;
+      }
+      return result;
+    }
+  }
 }
@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.storage;
+
+import org.apache.ratis.util.Preconditions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.NotificationEmitter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+
+/**
+ * Detect heap pressure by the collection usage thresholds of the heap memory pools,
+ * i.e. the heap usage right after a garbage collection.
+ * When a threshold is exceeded, the {@link java.lang.management.MemoryMXBean} emits a notification
+ * and then the registered listeners are invoked.
+ *
+ * The thresholds are JVM-wide: they are set by the first log enabling the detection
+ * and a threshold already set by the application is left unchanged.
+ */
+final class HeapPressureMonitor {
+  static final Logger LOG = LoggerFactory.getLogger(HeapPressureMonitor.class);
+
+  private static HeapPressureMonitor instance;
+
+  static synchronized HeapPressureMonitor get(double threshold) {
+    if (instance == null) {
+      instance = new HeapPressureMonitor(threshold);
+    }
+    return instance;
+  }
+
+  private final List<MemoryPoolMXBean> pools;
+  private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+
+  private HeapPressureMonitor(double threshold) {
+    Preconditions.assertTrue(threshold > 0 && threshold < 1,
+        () -> "The heap pressure threshold " + threshold + " must be in (0, 1).");
+    this.pools = ManagementFactory.getMemoryPoolMXBeans().stream()
+        .filter(p -> p.getType() == MemoryType.HEAP)
+        .filter(MemoryPoolMXBean::isCollectionUsageThresholdSupported)
+        .collect(Collectors.toList());
+    for(MemoryPoolMXBean p : pools) {
+      final long max = p.getUsage().getMax();
+      if (max > 0 && p.getCollectionUsageThreshold() == 0) {
+        p.setCollectionUsageThreshold((long) (max * threshold));
+        LOG.info("Set the collection usage threshold of {} to {} bytes", p.getName(), p.getCollectionUsageThreshold());
+      }
+    }
+
+    ((NotificationEmitter) ManagementFactory.getMemoryMXBean()).addNotificationListener(
+        (notification, handback) -> listeners.forEach(Runnable::run),
+        n -> MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(n.getType()), null);
+  }
+
+  /**
+   * @return the number of the garbage collections after which the heap usage exceeds the threshold.
+   *         It increases when there is new heap pressure.
+   */
+  long getExceededCount() {
+    return pools.stream()
+        .filter(p -> p.getCollectionUsageThreshold() > 0)
+        .mapToLong(MemoryPoolMXBean::getCollectionUsageThresholdCount)
+        .sum();
+  }
+
+  void addListener(Runnable listener) {
+    listeners.add(listener);
+  }
+
+  void removeListener(Runnable listener) {
+    listeners.remove(listener);
+  }
+}
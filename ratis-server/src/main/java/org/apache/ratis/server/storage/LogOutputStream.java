@@ -32,7 +32,6 @@ import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
-import java.util.zip.Checksum;
 
 public class LogOutputStream implements Closeable {
   private static final Logger LOG = LoggerFactory.getLogger(LogOutputStream.class);
@@ -50,7 +49,15 @@ public class LogOutputStream implements Closeable {
   private File file;
   private FileChannel fc; // channel of the file stream for sync
   private BufferedWriteChannel out; // buffered FileChannel for writing
-  private final Checksum checksum;
+  private final PureJavaCrc32C checksum;
+  /**
+   * The encoder writing directly to the write buffer of {@link #out}.
+   * It is valid only if the buffer position is still equal to {@link #encoderPosition}.
+   */
+  private CodedOutputStream encoder;
+  private int encoderPosition = -1;
+  /** A reusable buffer for the entries larger than the write buffer. */
+  private byte[] scratch;
 
   private final long segmentMaxSize;
   private final long preallocatedSize;
@@ -64,10 +71,6 @@ public class LogOutputStream implements Closeable {
     this.segmentMaxSize = segmentMaxSize;
     this.preallocatedSize = preallocatedSize;
     RandomAccessFile rp = new RandomAccessFile(file, "rw");
-    fc = rp.getChannel();
-    fc.position(fc.size());
-    preallocatedPos = fc.size();
-    out = new BufferedWriteChannel(fc, bufferSize);
 
     try {
       fc = rp.getChannel();
@@ -102,6 +105,9 @@ public class LogOutputStream implements Closeable {
    * Size in bytes to be written:
    *   (size to encode n) + n + (checksum size),
    *   where n is the entry serialized size and the checksum size is 4.
+   *
+   * The entry is encoded directly into the write buffer
+   * unless it is larger than the buffer.
    */
   public void write(LogEntryProto entry) throws IOException {
     final int serialized = entry.getSerializedSize();
@@ -110,16 +116,47 @@ public class LogOutputStream implements Closeable {
 
     preallocateIfNecessary(bufferSize + 4);
 
-    byte[] buf = new byte[bufferSize];
-    CodedOutputStream cout = CodedOutputStream.newInstance(buf);
+    final ByteBuffer writeBuffer = out.prepareWriteBuffer(bufferSize + 4);
+    if (writeBuffer != null) {
+      writeToBuffer(entry, serialized, bufferSize, writeBuffer);
+    } else {
+      writeWithScratch(entry, serialized, bufferSize);
+    }
+  }
+
+  private void writeToBuffer(LogEntryProto entry, int serialized, int bufferSize, ByteBuffer writeBuffer)
+      throws IOException {
+    final int start = writeBuffer.position();
+    if (encoder == null || encoderPosition != start) {
+      encoder = CodedOutputStream.newInstance(writeBuffer);
+    }
+    encoder.writeUInt32NoTag(serialized);
+    entry.writeTo(encoder);
+    encoder.flush();
+
+    checksum.reset();
+    checksum.update(writeBuffer, start, bufferSize);
+    // the checksum is written in big-endian
+    encoder.writeFixed32NoTag(Integer.reverseBytes((int) checksum.getValue()));
+    encoder.flush();
+
+    encoderPosition = writeBuffer.position();
+    out.advancePosition(bufferSize + 4);
+  }
+
+  private void writeWithScratch(LogEntryProto entry, int serialized, int bufferSize) throws IOException {
+    if (scratch == null || scratch.length < bufferSize) {
+      scratch = new byte[bufferSize];
+    }
+    final CodedOutputStream cout = CodedOutputStream.newInstance(scratch, 0, bufferSize);
     cout.writeUInt32NoTag(serialized);
     entry.writeTo(cout);
 
     checksum.reset();
-    checksum.update(buf, 0, buf.length);
+    checksum.update(scratch, 0, bufferSize);
     final int sum = (int) checksum.getValue();
 
-    out.write(buf);
+    out.write(scratch, 0, bufferSize);
     writeInt(sum);
   }
 
@@ -165,6 +202,17 @@ public class LogOutputStream implements Closeable {
     out.flush(true);
   }
 
+  /**
+   * Write the buffered data to the file without syncing it.
+   * It is used when the durability is provided by a {@link SharedWriteAheadLog}.
+   */
+  void flushWithoutSync() throws IOException {
+    if (out == null) {
+      throw new IOException("Trying to use aborted output stream");
+    }
+    out.flush(false);
+  }
+
   private void preallocate() throws IOException {
     fill.position(0);
     long targetSize = Math.min(segmentMaxSize - fc.size(), preallocatedSize);
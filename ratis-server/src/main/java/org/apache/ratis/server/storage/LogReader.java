@@ -31,6 +31,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.zip.Checksum;
 
 public class LogReader implements Closeable {
@@ -304,6 +305,36 @@ public class LogReader implements Closeable {
         CodedInputStream.newInstance(temp, varintLength, entryLength));
   }
 
+  /**
+   * Decode the log entry "frame" at the given offset (absolute index) of the buffer,
+   * and validate the checksum.
+   * The position and the limit of the buffer may be changed.
+   */
+  static LogEntryProto decodeEntry(ByteBuffer buffer, int offset, PureJavaCrc32C checksum, File file)
+      throws IOException {
+    buffer.clear().position(offset);
+    final int entryLength = CodedInputStream.newInstance(buffer.slice()).readRawVarint32();
+    final int varintLength = CodedOutputStream.computeUInt32SizeNoTag(entryLength);
+    final int totalLength = varintLength + entryLength;
+    if (entryLength <= 0 || entryLength > maxOpSize || offset + totalLength + 4 > buffer.limit()) {
+      throw new IOException("Invalid entry length " + entryLength + " at offset " + offset
+          + " of " + file + " (buffer limit=" + buffer.limit() + ")");
+    }
+
+    checksum.reset();
+    checksum.update(buffer, offset, totalLength);
+    final int expectedChecksum = buffer.getInt(offset + totalLength);
+    final int calculatedChecksum = (int) checksum.getValue();
+    if (expectedChecksum != calculatedChecksum) {
+      throw new ChecksumException("LogEntry at offset " + offset + " of " + file
+          + " is corrupt. Calculated checksum is " + calculatedChecksum
+          + " but read checksum " + expectedChecksum, offset);
+    }
+
+    buffer.position(offset + varintLength).limit(offset + totalLength);
+    return LogEntryProto.parseFrom(buffer);
+  }
+
   private void checkBufferSize(int entryLength) {
     Preconditions.assertTrue(entryLength <= maxOpSize);
     int length = temp.length;
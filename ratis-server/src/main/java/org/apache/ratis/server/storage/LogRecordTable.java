@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.storage;
+
+import java.util.Arrays;
+
+/**
+ * The records of a log segment, i.e. the offset, the term and the body case of each entry,
+ * kept in primitive arrays instead of an object for each entry.
+ * The terms are kept as run-length ranges since consecutive entries usually have the same term.
+ *
+ * This class is not thread-safe; it is protected by the lock of the log.
+ */
+class LogRecordTable {
+  private long[] offsets;
+  private byte[] bodyCases;
+  private int size = 0;
+
+  /** The i-th run starts at the array index runStarts[i] with the term runTerms[i]. */
+  private int[] runStarts = new int[1];
+  private long[] runTerms = new long[1];
+  private int numRuns = 0;
+
+  LogRecordTable() {
+    this(16);
+  }
+
+  LogRecordTable(int capacity) {
+    this.offsets = new long[capacity];
+    this.bodyCases = new byte[capacity];
+  }
+
+  int size() {
+    return size;
+  }
+
+  boolean isEmpty() {
+    return size == 0;
+  }
+
+  void add(long offset, long term, int bodyCase) {
+    if (size == offsets.length) {
+      final int capacity = Math.max(16, size << 1);
+      offsets = Arrays.copyOf(offsets, capacity);
+      bodyCases = Arrays.copyOf(bodyCases, capacity);
+    }
+    offsets[size] = offset;
+    bodyCases[size] = (byte) bodyCase;
+
+    if (numRuns == 0 || runTerms[numRuns - 1] != term) {
+      if (numRuns == runStarts.length) {
+        runStarts = Arrays.copyOf(runStarts, numRuns << 1);
+        runTerms = Arrays.copyOf(runTerms, numRuns << 1);
+      }
+      runStarts[numRuns] = size;
+      runTerms[numRuns] = term;
+      numRuns++;
+    }
+    size++;
+  }
+
+  private void checkIndex(int i) {
+    if (i < 0 || i >= size) {
+      throw new IndexOutOfBoundsException("Index: " + i + ", size: " + size);
+    }
+  }
+
+  long getOffset(int i) {
+    checkIndex(i);
+    return offsets[i];
+  }
+
+  int getBodyCase(int i) {
+    checkIndex(i);
+    return bodyCases[i];
+  }
+
+  long getTerm(int i) {
+    checkIndex(i);
+    // usually, the entry is in the last run
+    if (i >= runStarts[numRuns - 1]) {
+      return runTerms[numRuns - 1];
+    }
+    // find the last run starting at or before i
+    int low = 0;
+    int high = numRuns - 2;
+    while (low < high) {
+      final int mid = (low + high + 1) >>> 1;
+      if (runStarts[mid] <= i) {
+        low = mid;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return runTerms[low];
+  }
+
+  /** Remove the records from the given array index (inclusive) to the end. */
+  void truncate(int fromIndex) {
+    if (fromIndex < 0 || fromIndex > size) {
+      throw new IndexOutOfBoundsException("fromIndex: " + fromIndex + ", size: " + size);
+    }
+    size = fromIndex;
+    for(; numRuns > 0 && runStarts[numRuns - 1] >= size; numRuns--);
+  }
+
+  void clear() {
+    truncate(0);
+  }
+
+  /** Release the unused capacity, e.g. once the segment is closed. */
+  void trimToSize() {
+    if (offsets.length > size) {
+      offsets = Arrays.copyOf(offsets, size);
+      bodyCases = Arrays.copyOf(bodyCases, size);
+    }
+    if (runStarts.length > numRuns && numRuns > 0) {
+      runStarts = Arrays.copyOf(runStarts, numRuns);
+      runTerms = Arrays.copyOf(runTerms, numRuns);
+    }
+  }
+}
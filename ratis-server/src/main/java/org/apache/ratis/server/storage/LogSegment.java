@@ -17,27 +17,35 @@
  */
 package org.apache.ratis.server.storage;
 
+import org.apache.ratis.io.CorruptedFileException;
 import org.apache.ratis.proto.RaftProtos.LogEntryProto;
+import org.apache.ratis.proto.RaftProtos.LogEntryProto.LogEntryBodyCase;
 import org.apache.ratis.server.impl.ServerProtoUtils;
 import org.apache.ratis.server.protocol.TermIndex;
 import org.apache.ratis.thirdparty.com.google.common.annotations.VisibleForTesting;
 import org.apache.ratis.thirdparty.com.google.common.cache.CacheLoader;
 import org.apache.ratis.thirdparty.com.google.protobuf.CodedOutputStream;
 import org.apache.ratis.util.FileUtils;
+import org.apache.ratis.util.IOUtils;
 import org.apache.ratis.util.Preconditions;
+import org.apache.ratis.util.PureJavaCrc32C;
+import org.apache.ratis.util.Timestamp;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 
 /**
@@ -46,7 +54,7 @@ import java.util.function.Consumer;
  *
  * This class will be protected by the RaftServer's lock.
  */
-class LogSegment implements Comparable<Long> {
+class LogSegment implements Comparable<Long>, CacheInvalidationPolicy.Segment {
   static final Logger LOG = LoggerFactory.getLogger(LogSegment.class);
 
   static long getEntrySize(LogEntryProto entry) {
@@ -60,8 +68,12 @@ class LogSegment implements Comparable<Long> {
     private final TermIndex termIndex;
 
     LogRecord(long offset, LogEntryProto entry) {
+      this(offset, TermIndex.newTermIndex(entry.getTerm(), entry.getIndex()));
+    }
+
+    LogRecord(long offset, TermIndex termIndex) {
       this.offset = offset;
-      termIndex = TermIndex.newTermIndex(entry.getTerm(), entry.getIndex());
+      this.termIndex = termIndex;
     }
 
     TermIndex getTermIndex() {
@@ -95,23 +107,84 @@ class LogSegment implements Comparable<Long> {
     }
   }
 
+  /** The cache of the log entries in a segment. */
+  interface EntryCache {
+    /** @return the cached entry with the given term and index, or null if it is not cached. */
+    LogEntryProto get(TermIndex ti);
+
+    void put(TermIndex ti, LogEntryProto entry);
+
+    void remove(TermIndex ti);
+
+    void clear();
+
+    /** @return the memory used by the cached entries. */
+    long getCachedSize();
+  }
+
+  /** Cache the entries in the heap. */
+  static class HeapEntryCache implements EntryCache {
+    private final Map<TermIndex, LogEntryProto> map = new ConcurrentHashMap<>();
+    /** The serialized size of the cached entries. */
+    private final AtomicLong size = new AtomicLong();
+
+    @Override
+    public LogEntryProto get(TermIndex ti) {
+      return map.get(ti);
+    }
+
+    @Override
+    public void put(TermIndex ti, LogEntryProto entry) {
+      final LogEntryProto previous = map.put(ti, entry);
+      size.addAndGet(entry.getSerializedSize() - (previous == null? 0: previous.getSerializedSize()));
+    }
+
+    @Override
+    public void remove(TermIndex ti) {
+      final LogEntryProto removed = map.remove(ti);
+      if (removed != null) {
+        size.addAndGet(-removed.getSerializedSize());
+      }
+    }
+
+    @Override
+    public void clear() {
+      map.keySet().forEach(this::remove);
+    }
+
+    @Override
+    public long getCachedSize() {
+      return size.get();
+    }
+  }
+
   static LogSegment newOpenSegment(RaftStorage storage, long start) {
+    return newOpenSegment(storage, null, null, start);
+  }
+
+  static LogSegment newOpenSegment(RaftStorage storage, MappedSegmentReader mappedReader,
+      OffHeapEntryCache offHeapCache, long start) {
     Preconditions.assertTrue(start >= 0);
-    return new LogSegment(storage, true, start, start - 1);
+    return new LogSegment(storage, mappedReader, offHeapCache, true, start, start - 1);
   }
 
   @VisibleForTesting
   static LogSegment newCloseSegment(RaftStorage storage,
       long start, long end) {
+    return newCloseSegment(storage, null, null, start, end);
+  }
+
+  static LogSegment newCloseSegment(RaftStorage storage, MappedSegmentReader mappedReader,
+      OffHeapEntryCache offHeapCache, long start, long end) {
     Preconditions.assertTrue(start >= 0 && end >= start);
-    return new LogSegment(storage, false, start, end);
+    return new LogSegment(storage, mappedReader, offHeapCache, false, start, end);
   }
 
   private static int readSegmentFile(File file, long start, long end,
       boolean isOpen, Consumer<LogEntryProto> entryConsumer) throws IOException {
     int count = 0;
     try (LogInputStream in = new LogInputStream(file, start, end, isOpen)) {
-      for(LogEntryProto prev = null, next; (next = in.nextEntry()) != null; prev = next) {
+      for(LogEntryProto prev = null, next; (next = readNextEntry(in, isOpen)) != null; prev = next) {
         if (prev != null) {
           Preconditions.assertTrue(next.getIndex() == prev.getIndex() + 1,
               "gap between entry %s and entry %s", prev, next);
@@ -126,13 +199,63 @@ class LogSegment implements Comparable<Long> {
     return count;
   }
 
+  /**
+   * Read the next entry from the given stream.
+   *
+   * The tail of an open segment may be torn or corrupt since it might not have been synced
+   * when the server stopped.  In such case, return null so that the segment is truncated
+   * back to the last valid entry.  A corrupt closed segment is still an error.
+   */
+  private static LogEntryProto readNextEntry(LogInputStream in, boolean isOpen) throws IOException {
+    try {
+      return in.nextEntry();
+    } catch (IOException e) {
+      // a zero position means that the file cannot even be opened; it is not a corrupt tail.
+      if (!isOpen || in.getPosition() == 0) {
+        throw e;
+      }
+      LOG.warn("Truncating the corrupt tail of the open segment {} at position {}", in, in.getPosition(), e);
+      return null;
+    }
+  }
+
   static LogSegment loadSegment(RaftStorage storage, File file,
       long start, long end, boolean isOpen,
       boolean keepEntryInCache, Consumer<LogEntryProto> logConsumer)
       throws IOException {
+    return loadSegment(storage, null, file, start, end, isOpen, keepEntryInCache, logConsumer);
+  }
+
+  static LogSegment loadSegment(RaftStorage storage, MappedSegmentReader mappedReader, File file,
+      long start, long end, boolean isOpen,
+      boolean keepEntryInCache, Consumer<LogEntryProto> logConsumer)
+      throws IOException {
+    return loadSegment(storage, mappedReader, null, file, start, end, isOpen, keepEntryInCache, logConsumer);
+  }
+
+  /**
+   * Load the segment from the given file.
+   *
+   * A closed segment not kept in cache is loaded from its index file, if there is a valid one.
+   * In such case, only the entries other than the state machine entries
+   * are passed to the given consumer.
+   * Otherwise, the entire segment file is read.
+   */
+  static LogSegment loadSegment(RaftStorage storage, MappedSegmentReader mappedReader,
+      OffHeapEntryCache offHeapCache, File file, long start, long end, boolean isOpen,
+      boolean keepEntryInCache, Consumer<LogEntryProto> logConsumer)
+      throws IOException {
+    if (!isOpen && !keepEntryInCache) {
+      final LogSegment indexed = loadSegmentWithIndex(storage, mappedReader, offHeapCache,
+          file, start, end, logConsumer);
+      if (indexed != null) {
+        return indexed;
+      }
+    }
+
     final LogSegment segment = isOpen ?
-        LogSegment.newOpenSegment(storage, start) :
-        LogSegment.newCloseSegment(storage, start, end);
+        LogSegment.newOpenSegment(storage, mappedReader, offHeapCache, start) :
+        LogSegment.newCloseSegment(storage, mappedReader, offHeapCache, start, end);
 
     final int entryCount = readSegmentFile(file, start, end, isOpen, entry -> {
       segment.append(keepEntryInCache || isOpen, entry);
@@ -147,20 +270,102 @@ class LogSegment implements Comparable<Long> {
       FileUtils.deleteFile(file);
       return null;
     } else if (file.length() > segment.getTotalSize()) {
-      // The segment has extra padding, truncate it.
+      // The segment has extra padding or a corrupt tail, truncate it.
       FileUtils.truncateFile(file, segment.getTotalSize());
     }
 
     Preconditions.assertTrue(start == segment.getStartIndex());
-    if (!segment.records.isEmpty()) {
-      Preconditions.assertTrue(start == segment.records.get(0).getTermIndex().getIndex());
-    }
+    Preconditions.assertTrue(segment.records.size() == segment.numOfEntries());
     if (!isOpen) {
       Preconditions.assertTrue(segment.getEndIndex() == end);
     }
     return segment;
   }
 
+  /** @return the segment loaded with the index file, or null if the index is unavailable. */
+  private static LogSegment loadSegmentWithIndex(RaftStorage storage, MappedSegmentReader mappedReader,
+      OffHeapEntryCache offHeapCache, File file, long start, long end, Consumer<LogEntryProto> logConsumer)
+      throws IOException {
+    final File indexFile = RaftStorageDirectory.getLogIndexFile(file);
+    if (!indexFile.exists()) {
+      return null;
+    }
+
+    final LogSegment segment = LogSegment.newCloseSegment(storage, mappedReader, offHeapCache, start, end);
+    final List<LogEntryProto> entries;
+    try {
+      final LogSegmentIndex index = LogSegmentIndex.read(indexFile, start, end);
+      entries = segment.appendRecords(index, file);
+    } catch (IOException e) {
+      LOG.warn("Failed to load segment file " + file + " with index file " + indexFile
+          + ", fall back to a full scan", e);
+      FileUtils.deleteFile(indexFile);
+      return null;
+    }
+    LOG.info("Successfully loaded {} records from index file {}", segment.numOfEntries(), indexFile);
+
+    if (logConsumer != null) {
+      entries.forEach(logConsumer);
+    }
+    if (file.length() > segment.getTotalSize()) {
+      // The segment has extra padding, truncate it.
+      FileUtils.truncateFile(file, segment.getTotalSize());
+    }
+    return segment;
+  }
+
+  /**
+   * Append the records from the given index.
+   * The entries other than the state machine entries are read from the given file,
+   * and so is the last entry in order to validate the index against the file.
+   *
+   * @return the entries other than the state machine entries.
+   */
+  private List<LogEntryProto> appendRecords(LogSegmentIndex index, File file) throws IOException {
+    Preconditions.assertTrue(!isOpen && records.isEmpty() && index.getStartIndex() == startIndex);
+    if (file.length() < index.getTotalSize()) {
+      throw new CorruptedFileException(file, "The file is shorter than the size " + index.getTotalSize()
+          + " in the index");
+    }
+
+    final List<LogEntryProto> entries = new ArrayList<>();
+    final PureJavaCrc32C checksum = new PureJavaCrc32C();
+    try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      final int n = index.numOfEntries();
+      for (int i = 0; i < n; i++) {
+        records.add(index.getOffset(i), index.getTerm(i), index.getBodyCase(i));
+        final boolean isStateMachineEntry = index.isStateMachineEntry(i);
+        if (!isStateMachineEntry || i == n - 1) {
+          final LogRecord record = getRecord(i);
+          final LogEntryProto entry = readEntry(in, record, index.getSize(i), checksum, file);
+          if (entry.getLogEntryBodyCase().getNumber() != index.getBodyCase(i)) {
+            throw new CorruptedFileException(file, "Entry type mismatched with the index: "
+                + ServerProtoUtils.toLogEntryString(entry));
+          }
+          if (!isStateMachineEntry) {
+            entries.add(entry);
+          }
+        }
+      }
+    }
+    totalSize = index.getTotalSize();
+    endIndex = index.getEndIndex();
+    return entries;
+  }
+
+  private static LogEntryProto readEntry(FileChannel in, LogRecord record, int size,
+      PureJavaCrc32C checksum, File file) throws IOException {
+    final ByteBuffer buffer = ByteBuffer.allocate(size);
+    IOUtils.readFully(in, buffer, record.getOffset());
+    final LogEntryProto entry = LogReader.decodeEntry(buffer, 0, checksum, file);
+    final TermIndex ti = ServerProtoUtils.toTermIndex(entry);
+    if (!ti.equals(record.getTermIndex())) {
+      throw new CorruptedFileException(file, "Unexpected entry " + ti + " at offset "
+          + record.getOffset() + ", expected " + record.getTermIndex());
+    }
+    return entry;
+  }
+
   /**
    * The current log entry loader simply loads the whole segment into the memory.
    * In most of the cases this may be good enough considering the main use case
@@ -174,10 +379,16 @@ class LogSegment implements Comparable<Long> {
       final File file = getSegmentFile();
       // note the loading should not exceed the endIndex: it is possible that
       // the on-disk log file should be truncated but has not been done yet.
-      readSegmentFile(file, startIndex, endIndex, isOpen,
-          entry -> entryCache.put(ServerProtoUtils.toTermIndex(entry), entry));
+      final AtomicReference<LogEntryProto> toReturn = new AtomicReference<>();
+      readSegmentFile(file, startIndex, endIndex, isOpen, entry -> {
+        final TermIndex ti = ServerProtoUtils.toTermIndex(entry);
+        entryCache.put(ti, entry);
+        if (ti.equals(key.getTermIndex())) {
+          toReturn.set(entry);
+        }
+      });
       loadingTimes.incrementAndGet();
-      return Objects.requireNonNull(entryCache.get(key.getTermIndex()));
+      return Objects.requireNonNull(toReturn.get());
     }
   }
 
@@ -194,10 +405,11 @@ class LogSegment implements Comparable<Long> {
         .append(", numOfEntries=").append(numOfEntries())
         .append(", isOpen? ").append(isOpen)
         .append(", file=").append(getSegmentFile());
-    records.stream().map(LogRecord::getTermIndex).forEach(
-        ti -> b.append("  ").append(ti).append(", cache=")
-            .append(ServerProtoUtils.toLogEntryString(entryCache.get(ti)))
-    );
+    for (int i = 0; i < records.size(); i++) {
+      final TermIndex ti = getRecord(i).getTermIndex();
+      b.append("  ").append(ti).append(", cache=")
+          .append(ServerProtoUtils.toLogEntryString(entryCache.get(ti)));
+    }
     return b.toString();
   }
 
@@ -206,23 +418,29 @@ class LogSegment implements Comparable<Long> {
   private final long startIndex;
   private volatile long endIndex;
   private final RaftStorage storage;
+  /** For reading the evicted entries of a closed segment; null means disabled. */
+  private final MappedSegmentReader mappedReader;
   private final CacheLoader<LogRecord, LogEntryProto> cacheLoader = new LogEntryLoader();
   /** later replace it with a metric */
   private final AtomicInteger loadingTimes = new AtomicInteger();
   private volatile boolean hasEntryCache;
+  /** The time when the cache was read last time; see {@link Timestamp#currentTimeNanos()}. */
+  private volatile long lastAccessTime = Timestamp.currentTimeNanos();
 
   /**
-   * the list of records is more like the index of a segment
+   * the records are more like the index of a segment
    */
-  private final List<LogRecord> records = new ArrayList<>();
+  private final LogRecordTable records = new LogRecordTable();
   /**
    * the entryCache caches the content of log entries.
    */
-  private final Map<TermIndex, LogEntryProto> entryCache = new ConcurrentHashMap<>();
-  private final Set<TermIndex> configEntries = new HashSet<>();
+  private final EntryCache entryCache;
 
-  private LogSegment(RaftStorage storage, boolean isOpen, long start, long end) {
+  private LogSegment(RaftStorage storage, MappedSegmentReader mappedReader, OffHeapEntryCache offHeapCache,
+      boolean isOpen, long start, long end) {
     this.storage = storage;
+    this.mappedReader = mappedReader;
+    this.entryCache = offHeapCache != null? offHeapCache.newSegmentEntries(this): new HeapEntryCache();
     this.isOpen = isOpen;
     this.startIndex = start;
     this.endIndex = end;
@@ -230,15 +448,18 @@ class LogSegment implements Comparable<Long> {
     hasEntryCache = isOpen;
   }
 
-  long getStartIndex() {
+  @Override
+  public long getStartIndex() {
     return startIndex;
   }
 
-  long getEndIndex() {
+  @Override
+  public long getEndIndex() {
     return endIndex;
   }
 
-  boolean isOpen() {
+  @Override
+  public boolean isOpen() {
     return isOpen;
   }
 
@@ -264,21 +485,15 @@ class LogSegment implements Comparable<Long> {
       // all these entries should be of the same term
       Preconditions.assertTrue(entry.getTerm() == term,
           "expected term:%s, term of the entry:%s", term, entry.getTerm());
-      final LogRecord currentLast = getLastRecord();
-      if (currentLast != null) {
-        Preconditions.assertTrue(
-            entry.getIndex() == currentLast.getTermIndex().getIndex() + 1,
-            "gap between entries %s and %s", entry.getIndex(),
-            currentLast.getTermIndex().getIndex());
+      if (!records.isEmpty()) {
+        final long lastIndex = startIndex + records.size() - 1;
+        Preconditions.assertTrue(entry.getIndex() == lastIndex + 1,
+            "gap between entries %s and %s", entry.getIndex(), lastIndex);
       }
 
-      final LogRecord record = new LogRecord(totalSize, entry);
-      records.add(record);
+      records.add(totalSize, entry.getTerm(), entry.getLogEntryBodyCase().getNumber());
       if (keepEntryInCache) {
-        entryCache.put(record.getTermIndex(), entry);
-      }
-      if (entry.hasConfigurationEntry()) {
-        configEntries.add(record.getTermIndex());
+        entryCache.put(ServerProtoUtils.toTermIndex(entry), entry);
       }
       totalSize += getEntrySize(entry);
       endIndex = entry.getIndex();
@@ -290,13 +505,71 @@ class LogSegment implements Comparable<Long> {
     if (record == null) {
       return null;
     }
-    return new LogRecordWithEntry(record, entryCache.get(record.getTermIndex()));
+    final LogEntryProto entry = entryCache.get(record.getTermIndex());
+    if (entry != null) {
+      lastAccessTime = Timestamp.currentTimeNanos();
+    }
+    return new LogRecordWithEntry(record, entry);
+  }
+
+  LogEntryProto loadCache(LogRecord record) throws RaftLogIOException {
+    lastAccessTime = Timestamp.currentTimeNanos();
+    final LogEntryProto cached = entryCache.get(record.getTermIndex());
+    if (cached != null) {
+      return cached;
+    }
+    final LogEntryProto mapped = readMapped(record);
+    return mapped != null? mapped: loadCacheFromFile(record);
+  }
+
+  /**
+   * Read the entry from the mapped file of a closed segment.
+   * The entry is not put in the cache since it can be read from the mapped file again.
+   *
+   * @return the entry, or null if it cannot be read from the mapped file.
+   */
+  private LogEntryProto readMapped(LogRecord record) throws RaftLogIOException {
+    if (mappedReader == null || isOpen) {
+      return null;
+    }
+    try {
+      return mappedReader.readEntry(this, getSegmentFile(), record);
+    } catch (IOException e) {
+      throw new RaftLogIOException(e);
+    }
+  }
+
+  /**
+   * Read the entries in [startIndex, endIndex) from the mapped file of a closed segment,
+   * without putting them in the cache.
+   *
+   * @return the entries, or null if they cannot be read from the mapped file.
+   */
+  List<LogEntryProto> readMapped(long startIndex, long endIndex) throws RaftLogIOException {
+    if (mappedReader == null || isOpen) {
+      return null;
+    }
+    final List<LogRecord> records = new ArrayList<>(Math.toIntExact(endIndex - startIndex));
+    for(long i = startIndex; i < endIndex; i++) {
+      final LogRecord r = getLogRecord(i);
+      if (r == null) {
+        // the segment is truncated concurrently
+        return null;
+      }
+      records.add(r);
+    }
+    lastAccessTime = Timestamp.currentTimeNanos();
+    try {
+      return mappedReader.readEntries(this, getSegmentFile(), records);
+    } catch (IOException e) {
+      throw new RaftLogIOException(e);
+    }
   }
 
   /**
    * Acquire LogSegment's monitor so that there is no concurrent loading.
    */
-  synchronized LogEntryProto loadCache(LogRecord record) throws RaftLogIOException {
+  private synchronized LogEntryProto loadCacheFromFile(LogRecord record) throws RaftLogIOException {
     LogEntryProto entry = entryCache.get(record.getTermIndex());
     if (entry != null) {
       return entry;
@@ -312,22 +585,25 @@ class LogSegment implements Comparable<Long> {
 
   LogRecord getLogRecord(long index) {
     if (index >= startIndex && index <= endIndex) {
-      return records.get(Math.toIntExact(index - startIndex));
+      return getRecord(Math.toIntExact(index - startIndex));
     }
     return null;
   }
 
-  private LogRecord getLastRecord() {
-    return records.isEmpty() ? null : records.get(records.size() - 1);
+  private LogRecord getRecord(int i) {
+    return new LogRecord(records.getOffset(i), TermIndex.newTermIndex(records.getTerm(i), startIndex + i));
   }
 
   TermIndex getLastTermIndex() {
-    LogRecord last = getLastRecord();
-    return last == null ? null : last.getTermIndex();
+    final int n = records.size();
+    return n == 0? null: TermIndex.newTermIndex(records.getTerm(n - 1), startIndex + n - 1);
   }
 
   boolean isConfigEntry(TermIndex ti) {
-    return configEntries.contains(ti);
+    final long i = ti.getIndex() - startIndex;
+    return i >= 0 && i < records.size()
+        && records.getBodyCase((int) i) == LogEntryBodyCase.CONFIGURATIONENTRY.getNumber()
+        && records.getTerm((int) i) == ti.getTerm();
   }
 
   long getTotalSize() {
@@ -339,20 +615,49 @@ class LogSegment implements Comparable<Long> {
    */
   void truncate(long fromIndex) {
     Preconditions.assertTrue(fromIndex >= startIndex && fromIndex <= endIndex);
-    LogRecord record = records.get(Math.toIntExact(fromIndex - startIndex));
-    for (long index = endIndex; index >= fromIndex; index--) {
-      LogRecord removed = records.remove(Math.toIntExact(index - startIndex));
-      entryCache.remove(removed.getTermIndex());
-      configEntries.remove(removed.getTermIndex());
+    final int from = Math.toIntExact(fromIndex - startIndex);
+    for (int i = records.size() - 1; i >= from; i--) {
+      entryCache.remove(getRecord(i).getTermIndex());
     }
-    totalSize = record.offset;
+    totalSize = records.getOffset(from);
+    records.truncate(from);
+    records.trimToSize();
     isOpen = false;
     this.endIndex = fromIndex - 1;
+    unmap();
+  }
+
+  /**
+   * Build the index of this segment from the records.
+   *
+   * @return the index, or null if the segment is empty.
+   */
+  LogSegmentIndex newIndex() {
+    final int n = records.size();
+    if (n == 0) {
+      return null;
+    }
+    final long[] terms = new long[n];
+    final long[] offsets = new long[n];
+    final int[] bodyCases = new int[n];
+    for (int i = 0; i < n; i++) {
+      terms[i] = records.getTerm(i);
+      offsets[i] = records.getOffset(i);
+      bodyCases[i] = records.getBodyCase(i);
+    }
+    return new LogSegmentIndex(startIndex, terms, offsets, bodyCases, totalSize);
+  }
+
+  private void unmap() {
+    if (mappedReader != null) {
+      mappedReader.unmap(this);
+    }
   }
 
   void close() {
     Preconditions.assertTrue(isOpen());
     isOpen = false;
+    records.trimToSize();
   }
 
   @Override
@@ -371,8 +676,8 @@ class LogSegment implements Comparable<Long> {
     records.clear();
     entryCache.clear();
     hasEntryCache = false;
-    configEntries.clear();
     endIndex = startIndex - 1;
+    unmap();
   }
 
   public int getLoadingTimes() {
@@ -384,11 +689,23 @@ class LogSegment implements Comparable<Long> {
     entryCache.clear();
   }
 
-  boolean hasCache() {
+  @Override
+  public boolean hasCache() {
     return hasEntryCache;
   }
 
-  boolean containsIndex(long index) {
+  @Override
+  public long getCachedSize() {
+    return entryCache.getCachedSize();
+  }
+
+  @Override
+  public long getLastAccessTime() {
+    return lastAccessTime;
+  }
+
+  @Override
+  public boolean containsIndex(long index) {
     return startIndex <= index && endIndex >= index;
   }
 }
@@ -0,0 +1,184 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.storage;
+
+import org.apache.ratis.io.CorruptedFileException;
+import org.apache.ratis.proto.RaftProtos.LogEntryProto.LogEntryBodyCase;
+import org.apache.ratis.thirdparty.com.google.protobuf.CodedInputStream;
+import org.apache.ratis.thirdparty.com.google.protobuf.CodedOutputStream;
+import org.apache.ratis.util.AtomicFileOutputStream;
+import org.apache.ratis.util.Preconditions;
+import org.apache.ratis.util.PureJavaCrc32C;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+/**
+ * The index of a closed log segment,
+ * i.e. the term, the offset and the body type of each entry.
+ * It is persisted in a file next to the segment file
+ * so that the segment can be loaded without reading all the entries.
+ *
+ * The file format is
+ * (1) the magic number (4 bytes),
+ * (2) the start index and the number of entries (varints),
+ * (3) for each entry, the term delta, the entry size and the body case (varints), and
+ * (4) the checksum of all the bytes above (4 bytes).
+ */
+class LogSegmentIndex {
+  /** "RLIX" */
+  private static final int MAGIC = 0x524c4958;
+  private static final int STATE_MACHINE_ENTRY = LogEntryBodyCase.STATEMACHINELOGENTRY.getNumber();
+
+  private final long startIndex;
+  private final long[] terms;
+  private final long[] offsets;
+  private final int[] bodyCases;
+  private final long totalSize;
+
+  LogSegmentIndex(long startIndex, long[] terms, long[] offsets, int[] bodyCases, long totalSize) {
+    Preconditions.assertTrue(terms.length > 0);
+    Preconditions.assertTrue(terms.length == offsets.length && terms.length == bodyCases.length);
+    this.startIndex = startIndex;
+    this.terms = terms;
+    this.offsets = offsets;
+    this.bodyCases = bodyCases;
+    this.totalSize = totalSize;
+  }
+
+  long getStartIndex() {
+    return startIndex;
+  }
+
+  long getEndIndex() {
+    return startIndex + terms.length - 1;
+  }
+
+  int numOfEntries() {
+    return terms.length;
+  }
+
+  long getTerm(int i) {
+    return terms[i];
+  }
+
+  long getOffset(int i) {
+    return offsets[i];
+  }
+
+  int getSize(int i) {
+    final long next = i + 1 < offsets.length? offsets[i + 1]: totalSize;
+    return Math.toIntExact(next - offsets[i]);
+  }
+
+  int getBodyCase(int i) {
+    return bodyCases[i];
+  }
+
+  boolean isStateMachineEntry(int i) {
+    return bodyCases[i] == STATE_MACHINE_ENTRY;
+  }
+
+  long getTotalSize() {
+    return totalSize;
+  }
+
+  /** Atomically write this index to the given file. */
+  void write(File file) throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 + 4 * terms.length);
+    final CodedOutputStream out = CodedOutputStream.newInstance(bytes);
+    out.writeFixed32NoTag(MAGIC);
+    out.writeUInt64NoTag(startIndex);
+    out.writeUInt32NoTag(terms.length);
+    for(int i = 0; i < terms.length; i++) {
+      out.writeUInt64NoTag(terms[i] - (i == 0? 0: terms[i - 1]));
+      out.writeUInt32NoTag(getSize(i));
+      out.writeUInt32NoTag(bodyCases[i]);
+    }
+    out.flush();
+    final byte[] array = bytes.toByteArray();
+
+    final PureJavaCrc32C checksum = new PureJavaCrc32C();
+    checksum.update(array, 0, array.length);
+
+    AtomicFileOutputStream fos = new AtomicFileOutputStream(file);
+    try {
+      final DataOutputStream dos = new DataOutputStream(fos);
+      dos.write(array);
+      dos.writeInt((int) checksum.getValue());
+      dos.flush();
+      fos.close();
+      fos = null;
+    } finally {
+      if (fos != null) {
+        fos.abort();
+      }
+    }
+  }
+
+  /**
+   * Read the index of the segment with the given start and end indices from the given file.
+   *
+   * @throws CorruptedFileException if the file is corrupted or it does not match the segment.
+   */
+  static LogSegmentIndex read(File file, long startIndex, long endIndex) throws IOException {
+    final byte[] array = Files.readAllBytes(file.toPath());
+    final int length = array.length - 4;
+    if (length < 4) {
+      throw new CorruptedFileException(file, "The index file is too short");
+    }
+    final PureJavaCrc32C checksum = new PureJavaCrc32C();
+    checksum.update(array, 0, length);
+    final int expected = ByteBuffer.wrap(array, length, 4).getInt();
+    if (expected != (int) checksum.getValue()) {
+      throw new CorruptedFileException(file, "Checksum mismatched: expected=" + expected
+          + " but computed=" + (int) checksum.getValue());
+    }
+
+    final CodedInputStream in = CodedInputStream.newInstance(array, 0, length);
+    final int magic = in.readFixed32();
+    if (magic != MAGIC) {
+      throw new CorruptedFileException(file, "Magic mismatched: " + Integer.toHexString(magic));
+    }
+    final long start = in.readUInt64();
+    final int n = in.readUInt32();
+    if (start != startIndex || n <= 0 || start + n - 1 != endIndex) {
+      throw new CorruptedFileException(file, "Index mismatched: the index has start=" + start
+          + " and " + n + " entries but the segment is " + startIndex + "-" + endIndex);
+    }
+
+    final long[] terms = new long[n];
+    final long[] offsets = new long[n];
+    final int[] bodyCases = new int[n];
+    long offset = SegmentedRaftLogFormat.getHeaderLength();
+    for(int i = 0; i < n; i++) {
+      terms[i] = in.readUInt64() + (i == 0? 0: terms[i - 1]);
+      offsets[i] = offset;
+      offset += in.readUInt32();
+      bodyCases[i] = in.readUInt32();
+    }
+    if (!in.isAtEnd()) {
+      throw new CorruptedFileException(file, "Found extra bytes at the end of the index");
+    }
+    return new LogSegmentIndex(startIndex, terms, offsets, bodyCases, offset);
+  }
+}
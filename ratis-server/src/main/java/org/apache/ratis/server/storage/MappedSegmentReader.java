@@ -0,0 +1,265 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.storage;
+
+import org.apache.ratis.proto.RaftProtos.LogEntryProto;
+import org.apache.ratis.server.impl.ServerProtoUtils;
+import org.apache.ratis.server.protocol.TermIndex;
+import org.apache.ratis.server.storage.LogSegment.LogRecord;
+import org.apache.ratis.util.Preconditions;
+import org.apache.ratis.util.PureJavaCrc32C;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * Read the log entries of the closed segments from the memory-mapped segment files.
+ *
+ * The offsets of the entries are known from the {@link LogRecord}s,
+ * so that only the requested entries are decoded.
+ * The total size of the mapped files is bounded;
+ * the least recently used mappings are unmapped when the bound is exceeded.
+ *
+ * A segment must be unmapped by {@link #unmap(LogSegment)}
+ * once it is truncated or purged.
+ */
+class MappedSegmentReader implements Closeable {
+  static final Logger LOG = LoggerFactory.getLogger(MappedSegmentReader.class);
+
+  /** Unmap a mapped buffer, or free a direct buffer, immediately. */
+  static final Consumer<ByteBuffer> UNMAPPER = newUnmapper();
+
+  /**
+   * Unmapping a buffer explicitly requires the internal JDK API.
+   * When it is unavailable, the buffers are unmapped once they are garbage collected.
+   */
+  private static Consumer<ByteBuffer> newUnmapper() {
+    try {
+      // Java 9+
+      final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      final Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+      final Field f = unsafeClass.getDeclaredField("theUnsafe");
+      f.setAccessible(true);
+      final Object unsafe = f.get(null);
+      return buffer -> invoke(invokeCleaner, unsafe, buffer);
+    } catch (Throwable ignored) {
+      // fall back to Java 8
+    }
+    try {
+      final Method cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+      final Method clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+      return buffer -> {
+        final Object c = invoke(cleaner, buffer);
+        if (c != null) {
+          invoke(clean, c);
+        }
+      };
+    } catch (Throwable t) {
+      LOG.warn("Failed to find a way to unmap buffers; they will be unmapped by gc.", t);
+      return buffer -> {};
+    }
+  }
+
+  private static Object invoke(Method method, Object obj, Object... args) {
+    try {
+      return method.invoke(obj, args);
+    } catch (Exception e) {
+      throw new IllegalStateException("Failed to invoke " + method, e);
+    }
+  }
+
+  /** A mapped segment file. */
+  private static class Mapping {
+    private final File file;
+    private final MappedByteBuffer buffer;
+    /** Prevent unmapping the buffer when it is being read. */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private boolean unmapped = false;
+
+    Mapping(File file, MappedByteBuffer buffer) {
+      this.file = file;
+      this.buffer = buffer;
+    }
+
+    int size() {
+      return buffer.capacity();
+    }
+
+    /** @return the entries, or null if the buffer is already unmapped. */
+    List<LogEntryProto> read(List<LogRecord> records) throws IOException {
+      lock.readLock().lock();
+      try {
+        if (unmapped) {
+          return null;
+        }
+        final PureJavaCrc32C checksum = new PureJavaCrc32C();
+        final List<LogEntryProto> entries = new ArrayList<>(records.size());
+        for(LogRecord r : records) {
+          entries.add(decode(r, checksum));
+        }
+        return entries;
+      } finally {
+        lock.readLock().unlock();
+      }
+    }
+
+    private LogEntryProto decode(LogRecord record, PureJavaCrc32C checksum) throws IOException {
+      final LogEntryProto entry = LogReader.decodeEntry(
+          buffer.duplicate(), Math.toIntExact(record.getOffset()), checksum, file);
+      final TermIndex ti = ServerProtoUtils.toTermIndex(entry);
+      if (!ti.equals(record.getTermIndex())) {
+        throw new IOException("Unexpected entry " + ti + " at offset " + record.getOffset()
+            + " of " + file + ", expected " + record.getTermIndex());
+      }
+      return entry;
+    }
+
+    void unmap() {
+      lock.writeLock().lock();
+      try {
+        if (!unmapped) {
+          unmapped = true;
+          UNMAPPER.accept(buffer);
+        }
+      } finally {
+        lock.writeLock().unlock();
+      }
+    }
+  }
+
+  private final Object name;
+  private final long maxMappedBytes;
+  /** The mappings in access order. */
+  private final Map<LogSegment, Mapping> mappings = new LinkedHashMap<>(16, 0.75f, true);
+  private long mappedBytes = 0;
+
+  MappedSegmentReader(Object name, long maxMappedBytes) {
+    this.name = name;
+    this.maxMappedBytes = maxMappedBytes;
+  }
+
+  synchronized long getMappedBytes() {
+    return mappedBytes;
+  }
+
+  synchronized int getNumMappings() {
+    return mappings.size();
+  }
+
+  synchronized boolean isMapped(LogSegment segment) {
+    return mappings.containsKey(segment);
+  }
+
+  /**
+   * Read the entries of the given records from the mapped file of the given closed segment.
+   *
+   * @return the entries, or null if the segment cannot be mapped,
+   *         e.g. the file is not yet finalized or it exceeds the max mapped size.
+   */
+  List<LogEntryProto> readEntries(LogSegment segment, File file, List<LogRecord> records)
+      throws IOException {
+    Preconditions.assertTrue(!segment.isOpen(), () -> "Segment " + segment + " is open");
+    if (records.isEmpty()) {
+      return Collections.emptyList();
+    }
+    final Mapping mapping = getMapping(segment, file);
+    return mapping == null? null: mapping.read(records);
+  }
+
+  /** The same as {@link #readEntries(LogSegment, File, List)} for a single entry. */
+  LogEntryProto readEntry(LogSegment segment, File file, LogRecord record) throws IOException {
+    final List<LogEntryProto> entries = readEntries(segment, file, Collections.singletonList(record));
+    return entries == null? null: entries.get(0);
+  }
+
+  private synchronized Mapping getMapping(LogSegment segment, File file) throws IOException {
+    final Mapping existing = mappings.get(segment);
+    if (existing != null) {
+      return existing;
+    }
+
+    final long size = segment.getTotalSize();
+    if (size > maxMappedBytes || size > Integer.MAX_VALUE) {
+      return null;
+    }
+    if (!file.exists() || file.length() < size) {
+      // the file is not yet finalized by the log worker
+      return null;
+    }
+
+    final MappedByteBuffer buffer;
+    try (FileChannel fc = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      buffer = fc.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    } catch (NoSuchFileException e) {
+      // the file is renamed or deleted concurrently
+      return null;
+    }
+
+    for(Iterator<Mapping> i = mappings.values().iterator();
+        mappedBytes + size > maxMappedBytes && i.hasNext(); ) {
+      final Mapping eldest = i.next();
+      i.remove();
+      release(eldest);
+    }
+
+    final Mapping mapping = new Mapping(file, buffer);
+    mappings.put(segment, mapping);
+    mappedBytes += mapping.size();
+    LOG.debug("{}: mapped {} ({} bytes), total mapped bytes {}", name, file, size, mappedBytes);
+    return mapping;
+  }
+
+  private void release(Mapping mapping) {
+    mappedBytes -= mapping.size();
+    mapping.unmap();
+    LOG.debug("{}: unmapped {}, total mapped bytes {}", name, mapping.file, mappedBytes);
+  }
+
+  /** Unmap the file of the given segment, if there is any. */
+  synchronized void unmap(LogSegment segment) {
+    final Mapping mapping = mappings.remove(segment);
+    if (mapping != null) {
+      release(mapping);
+    }
+  }
+
+  @Override
+  public synchronized void close() {
+    mappings.values().forEach(this::release);
+    mappings.clear();
+  }
+}
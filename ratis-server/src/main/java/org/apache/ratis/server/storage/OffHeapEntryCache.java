@@ -0,0 +1,393 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.storage;
+
+import org.apache.ratis.proto.RaftProtos.LogEntryProto;
+import org.apache.ratis.server.protocol.TermIndex;
+import org.apache.ratis.thirdparty.com.google.protobuf.CodedOutputStream;
+import org.apache.ratis.util.Preconditions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Cache the log entries in off-heap memory
+ * so that a large cache neither adds objects to the heap nor lengthens the gc pauses.
+ *
+ * The memory is allocated in fixed-size slabs, i.e. direct buffers.
+ * A slab holds the serialized entries of a single segment, each prefixed with its size.
+ * A segment locates its entries by a primitive array of slab numbers and positions.
+ * The total size of the slabs is bounded;
+ * the least recently used slabs are evicted once the bound is exceeded,
+ * starting from the slabs which the followers and the state machine have already passed.
+ *
+ * Only the slabs of the closed segments with all the entries flushed are evicted
+ * since the evicted entries are reloaded from the segment files.
+ * The buffers of the evicted slabs are reused for the new slabs.
+ */
+class OffHeapEntryCache implements Closeable {
+  static final Logger LOG = LoggerFactory.getLogger(OffHeapEntryCache.class);
+
+  private static final int SIZE_LENGTH = 4;
+  private static final long[] EMPTY_LOCATIONS = {};
+
+  /** A slab holding consecutive entries of a segment. */
+  static class Slab {
+    private final ByteBuffer buffer;
+    /** Prevent releasing the slab when it is being read. */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final long firstIndex;
+    private volatile long lastIndex;
+    /** The position to write the next entry; protected by the owner. */
+    private int position = 0;
+    private boolean released = false;
+
+    Slab(ByteBuffer buffer, long firstIndex) {
+      this.buffer = buffer;
+      this.firstIndex = firstIndex;
+      this.lastIndex = firstIndex;
+    }
+
+    long getLastIndex() {
+      return lastIndex;
+    }
+
+    boolean contains(long index) {
+      return firstIndex <= index && index <= lastIndex;
+    }
+
+    int remaining() {
+      return buffer.capacity() - position;
+    }
+
+    /** @return the position of the written entry. */
+    int write(LogEntryProto entry, int size) throws IOException {
+      final int p = position;
+      final ByteBuffer b = buffer.duplicate();
+      b.position(p + SIZE_LENGTH);
+      final CodedOutputStream out = CodedOutputStream.newInstance(b);
+      entry.writeTo(out);
+      out.flush();
+      buffer.putInt(p, size);
+      position = p + SIZE_LENGTH + size;
+      lastIndex = Math.max(lastIndex, entry.getIndex());
+      return p;
+    }
+
+    /** @return the entry at the given position, or null if the slab is already released. */
+    LogEntryProto read(int p) throws IOException {
+      lock.readLock().lock();
+      try {
+        if (released) {
+          return null;
+        }
+        final ByteBuffer b = buffer.duplicate();
+        b.position(p + SIZE_LENGTH);
+        b.limit(p + SIZE_LENGTH + buffer.getInt(p));
+        return LogEntryProto.parseFrom(b);
+      } finally {
+        lock.readLock().unlock();
+      }
+    }
+
+    /** @return true if the slab is released by this call. */
+    boolean release() {
+      lock.writeLock().lock();
+      try {
+        if (released) {
+          return false;
+        }
+        released = true;
+        return true;
+      } finally {
+        lock.writeLock().unlock();
+      }
+    }
+
+    @Override
+    public String toString() {
+      return "slab[" + firstIndex + ", " + lastIndex + "]";
+    }
+  }
+
+  /** The cached entries of a segment. */
+  class SegmentEntries implements LogSegment.EntryCache {
+    private final LogSegment segment;
+    /** The slabs of this segment; an evicted slab is set to null so that the slab numbers are unchanged. */
+    private final List<Slab> segmentSlabs = new ArrayList<>();
+    /**
+     * For each entry, the slab number (the high 32 bits) and the position (the low 32 bits),
+     * or -1 if the entry is not cached.
+     */
+    private long[] locations = EMPTY_LOCATIONS;
+
+    SegmentEntries(LogSegment segment) {
+      this.segment = segment;
+    }
+
+    private int toArrayIndex(long index) {
+      return Math.toIntExact(index - segment.getStartIndex());
+    }
+
+    private long getLocation(int i) {
+      return i >= 0 && i < locations.length? locations[i]: -1;
+    }
+
+    private void setLocation(int i, long location) {
+      if (i >= locations.length) {
+        final int oldLength = locations.length;
+        locations = Arrays.copyOf(locations, Math.max(i + 1, Math.max(16, oldLength << 1)));
+        Arrays.fill(locations, oldLength, locations.length, -1);
+      }
+      locations[i] = location;
+    }
+
+    @Override
+    public LogEntryProto get(TermIndex ti) {
+      final Slab slab;
+      final int position;
+      synchronized (this) {
+        final long location = getLocation(toArrayIndex(ti.getIndex()));
+        if (location < 0) {
+          return null;
+        }
+        slab = segmentSlabs.get((int) (location >>> 32));
+        position = (int) location;
+      }
+
+      final LogEntryProto entry;
+      try {
+        entry = slab.read(position);
+      } catch (IOException e) {
+        throw new IllegalStateException("Failed to read " + ti + " from " + slab + " of " + segment, e);
+      }
+      if (entry == null || entry.getTerm() != ti.getTerm()) {
+        return null;
+      }
+      touch(slab);
+      return entry;
+    }
+
+    @Override
+    public synchronized void put(TermIndex ti, LogEntryProto entry) {
+      final int i = toArrayIndex(ti.getIndex());
+      if (getLocation(i) >= 0) {
+        // the entry is already cached, e.g. when reloading the segment
+        return;
+      }
+
+      final int size = entry.getSerializedSize();
+      final int required = SIZE_LENGTH + size;
+      final int last = segmentSlabs.size() - 1;
+      Slab slab = last < 0? null: segmentSlabs.get(last);
+      if (slab == null || slab.remaining() < required) {
+        slab = allocate(this, ti.getIndex(), required);
+        segmentSlabs.add(slab);
+      }
+
+      final int position;
+      try {
+        position = slab.write(entry, size);
+      } catch (IOException e) {
+        throw new IllegalStateException("Failed to write " + ti + " to " + slab + " of " + segment, e);
+      }
+      setLocation(i, ((long) (segmentSlabs.size() - 1) << 32) | position);
+    }
+
+    @Override
+    public synchronized void remove(TermIndex ti) {
+      final int i = toArrayIndex(ti.getIndex());
+      if (getLocation(i) >= 0) {
+        locations[i] = -1;
+      }
+    }
+
+    @Override
+    public synchronized void clear() {
+      segmentSlabs.stream().filter(s -> s != null).forEach(OffHeapEntryCache.this::release);
+      segmentSlabs.clear();
+      locations = EMPTY_LOCATIONS;
+    }
+
+    @Override
+    public synchronized long getCachedSize() {
+      return segmentSlabs.stream().filter(s -> s != null).mapToLong(s -> s.buffer.capacity()).sum();
+    }
+
+    /** @return the number of bytes released. */
+    synchronized long evict(Slab slab) {
+      final int n = segmentSlabs.indexOf(slab);
+      if (n < 0) {
+        return 0;
+      }
+      segmentSlabs.set(n, null);
+      for(long index = slab.firstIndex; index <= slab.getLastIndex(); index++) {
+        final int i = toArrayIndex(index);
+        final long location = getLocation(i);
+        if (location >= 0 && (int) (location >>> 32) == n) {
+          locations[i] = -1;
+        }
+      }
+      release(slab);
+      return slab.buffer.capacity();
+    }
+  }
+
+  private final Object name;
+  private final int slabSize;
+  private final long maxBytes;
+  /** The slabs in use and their owners, in access order. */
+  private final Map<Slab, SegmentEntries> slabs = new LinkedHashMap<>(16, 0.75f, true);
+  /** The buffers of the released slabs for reuse. */
+  private final Deque<ByteBuffer> freeBuffers = new ArrayDeque<>();
+  private long cachedBytes = 0;
+
+  OffHeapEntryCache(Object name, int slabSize, long maxBytes) {
+    Preconditions.assertTrue(slabSize > SIZE_LENGTH, () -> "Slab size " + slabSize + " is too small.");
+    this.name = name;
+    this.slabSize = slabSize;
+    this.maxBytes = maxBytes;
+  }
+
+  SegmentEntries newSegmentEntries(LogSegment segment) {
+    return new SegmentEntries(segment);
+  }
+
+  synchronized long getCachedBytes() {
+    return cachedBytes;
+  }
+
+  synchronized int getNumSlabs() {
+    return slabs.size();
+  }
+
+  synchronized boolean shouldEvict() {
+    return cachedBytes > maxBytes;
+  }
+
+  private synchronized Slab allocate(SegmentEntries owner, long firstIndex, int required) {
+    final ByteBuffer buffer = required <= slabSize && !freeBuffers.isEmpty()? freeBuffers.pop()
+        : ByteBuffer.allocateDirect(Math.max(slabSize, required));
+    final Slab slab = new Slab(buffer, firstIndex);
+    cachedBytes += buffer.capacity();
+    slabs.put(slab, owner);
+    return slab;
+  }
+
+  private synchronized void touch(Slab slab) {
+    slabs.get(slab);
+  }
+
+  /** Release the given slab, which must have been removed from its owner. */
+  private void release(Slab slab) {
+    if (!slab.release()) {
+      return;
+    }
+    final ByteBuffer buffer = slab.buffer;
+    synchronized (this) {
+      slabs.remove(slab);
+      cachedBytes -= buffer.capacity();
+      if (buffer.capacity() == slabSize && cachedBytes + (freeBuffers.size() + 1L) * slabSize <= maxBytes) {
+        buffer.clear();
+        freeBuffers.push(buffer);
+        return;
+      }
+    }
+    MappedSegmentReader.UNMAPPER.accept(buffer);
+  }
+
+  /**
+   * Evict the least recently used slabs until the cached bytes are within the max.
+   * The slabs which all the followers and the state machine have passed are evicted first.
+   * Then, the other slabs are evicted except for the slabs containing
+   * the next index of a follower or the state machine, i.e. the slabs being read.
+   *
+   * @param followerNextIndices the next indices of the followers, or null if this peer is not a leader.
+   * @param flushedIndex the index that has been flushed to the local disk.
+   * @param lastAppliedIndex the last index that has been applied to the state machine.
+   * @return the number of the slabs evicted.
+   */
+  int evict(long[] followerNextIndices, long flushedIndex, long lastAppliedIndex) {
+    final List<Map.Entry<Slab, SegmentEntries>> candidates;
+    long excess;
+    synchronized (this) {
+      excess = cachedBytes - maxBytes;
+      if (excess <= 0) {
+        return 0;
+      }
+      candidates = new ArrayList<>(slabs.entrySet());
+    }
+
+    final long[] nextIndices = followerNextIndices == null? new long[1]
+        : Arrays.copyOf(followerNextIndices, followerNextIndices.length + 1);
+    nextIndices[nextIndices.length - 1] = lastAppliedIndex + 1;
+    final long minNextIndex = Arrays.stream(nextIndices).min().getAsLong();
+
+    int evicted = 0;
+    for(int pass = 0; pass < 2 && excess > 0; pass++) {
+      for(Iterator<Map.Entry<Slab, SegmentEntries>> i = candidates.iterator(); i.hasNext() && excess > 0; ) {
+        final Map.Entry<Slab, SegmentEntries> e = i.next();
+        final Slab slab = e.getKey();
+        final SegmentEntries owner = e.getValue();
+        if (owner.segment.isOpen() || owner.segment.getEndIndex() > flushedIndex) {
+          i.remove();
+          continue;
+        }
+        final boolean evictable = pass == 0? slab.getLastIndex() < minNextIndex
+            : Arrays.stream(nextIndices).noneMatch(slab::contains);
+        if (evictable) {
+          i.remove();
+          final long released = owner.evict(slab);
+          if (released > 0) {
+            excess -= released;
+            evicted++;
+          }
+        }
+      }
+    }
+    LOG.debug("{}: evicted {} slabs, cached bytes {}", name, evicted, getCachedBytes());
+    return evicted;
+  }
+
+  @Override
+  public void close() {
+    final List<SegmentEntries> owners;
+    synchronized (this) {
+      owners = new ArrayList<>(new LinkedHashSet<>(slabs.values()));
+    }
+    owners.forEach(SegmentEntries::clear);
+    synchronized (this) {
+      freeBuffers.forEach(MappedSegmentReader.UNMAPPER);
+      freeBuffers.clear();
+    }
+  }
+}
@@ -43,6 +43,7 @@ import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 /**
  * Base class of RaftLog. Currently we provide two types of RaftLog
@@ -88,13 +89,23 @@ public abstract class RaftLog implements RaftLogSequentialOps, Closeable {
     state.assertOpen();
   }
 
+  boolean isOpened() {
+    return state.isOpened();
+  }
+
   /**
    * Update the last committed index.
+   *
+   * In a leader, the majority index has already counted the local log by its flushed index,
+   * so that an entry can be committed by a majority of the followers before the local flush completes.
+   * In a follower, the committed index is bounded by the local flushed index.
+   *
    * @param majorityIndex the index that has achieved majority.
    * @param currentTerm the current term.
+   * @param isLeader is this server the leader?
    * @return true if update is applied; otherwise, return false, i.e. no update required.
    */
-  public boolean updateLastCommitted(long majorityIndex, long currentTerm) {
+  public boolean updateLastCommitted(long majorityIndex, long currentTerm, boolean isLeader) {
     try(AutoCloseableLock writeLock = writeLock()) {
       final long oldCommittedIndex = getLastCommittedIndex();
       if (oldCommittedIndex < majorityIndex) {
@@ -102,7 +113,7 @@ public abstract class RaftLog implements RaftLogSequentialOps, Closeable {
         // paper for details.
         final TermIndex entry = getTermIndex(majorityIndex);
         if (entry != null && entry.getTerm() == currentTerm) {
-          final long newCommitIndex = Math.min(majorityIndex, getLatestFlushedIndex());
+          final long newCommitIndex = isLeader? majorityIndex: Math.min(majorityIndex, getLatestFlushedIndex());
           if (newCommitIndex > oldCommittedIndex) {
             commitIndex.updateIncreasingly(newCommitIndex, traceIndexChange);
           }
@@ -139,6 +150,80 @@ public abstract class RaftLog implements RaftLogSequentialOps, Closeable {
     return last.getIndex() + 1;
   }
 
+  /**
+   * @return the size in bytes of the log entries from the given index to the end of the log,
+   *         or -1 if the size is unknown.
+   */
+  public long getSizeFrom(long index) {
+    return -1;
+  }
+
+  /**
+   * Find the first log entry with the given term in the index range [start index, endIndex].
+   * Since the terms of the log entries are non-decreasing, it is a binary search.
+   *
+   * @return the index of the entry, or -1 if there is no such entry.
+   */
+  public long findFirstIndex(long term, long endIndex) {
+    final long start = getStartIndex();
+    final long end = Math.min(endIndex, getNextIndex() - 1);
+    if (start < 0 || end < start) {
+      return -1;
+    }
+    long low = start;
+    long high = end;
+    // find the smallest index with a term >= the given term
+    while (low <= high) {
+      final long mid = (low + high) >>> 1;
+      final TermIndex ti = getTermIndex(mid);
+      if (ti == null) {
+        return -1;
+      } else if (ti.getTerm() < term) {
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return isTermAt(term, low, end)? low: -1;
+  }
+
+  /**
+   * Find the last log entry with the given term in the index range [start index, endIndex].
+   * Since the terms of the log entries are non-decreasing, it is a binary search.
+   *
+   * @return the index of the entry, or -1 if there is no such entry.
+   */
+  public long findLastIndex(long term, long endIndex) {
+    final long start = getStartIndex();
+    final long end = Math.min(endIndex, getNextIndex() - 1);
+    if (start < 0 || end < start) {
+      return -1;
+    }
+    long low = start;
+    long high = end;
+    // find the largest index with a term <= the given term
+    while (low <= high) {
+      final long mid = (low + high) >>> 1;
+      final TermIndex ti = getTermIndex(mid);
+      if (ti == null) {
+        return -1;
+      } else if (ti.getTerm() > term) {
+        high = mid - 1;
+      } else {
+        low = mid + 1;
+      }
+    }
+    return high >= start && isTermAt(term, high, end)? high: -1;
+  }
+
+  private boolean isTermAt(long term, long index, long end) {
+    if (index > end) {
+      return false;
+    }
+    final TermIndex ti = getTermIndex(index);
+    return ti != null && ti.getTerm() == term;
+  }
+
   @Override
   public final long append(long term, TransactionContext transaction) throws StateMachineException {
     return runner.runSequentially(() -> appendImpl(term, transaction));
@@ -265,6 +350,20 @@ public abstract class RaftLog implements RaftLogSequentialOps, Closeable {
    */
   public abstract EntryWithData getEntryWithData(long index) throws RaftLogIOException;
 
+  /**
+   * Get the log entries in the given range [startIndex, endIndex) along with the state machine data,
+   * and pass them in order to the given consumer until it returns false.
+   * The default implementation gets the entries one by one with {@link #getEntryWithData(long)}.
+   */
+  public void getEntriesWithData(long startIndex, long endIndex, Predicate<EntryWithData> consumer)
+      throws RaftLogIOException {
+    for(long i = startIndex; i < endIndex; i++) {
+      if (!consumer.test(getEntryWithData(i))) {
+        return;
+      }
+    }
+  }
+
   /**
    * Get the TermIndex information of the given index.
    *
@@ -348,6 +447,16 @@ public abstract class RaftLog implements RaftLogSequentialOps, Closeable {
 
   public abstract void syncWithSnapshot(long lastSnapshotIndex);
 
+  /**
+   * Purge the log entries up to the given index (inclusive), if it is supported.
+   * An implementation may purge fewer entries, e.g. it only purges entire segments.
+   *
+   * @return a future of the log start index after the purge.
+   */
+  public CompletableFuture<Long> purge(long suggestedIndex) {
+    return CompletableFuture.completedFuture(getStartIndex());
+  }
+
   public abstract boolean isConfigEntry(TermIndex ti);
 
   @Override
@@ -23,7 +23,8 @@ import org.apache.ratis.server.RaftServerConfigKeys;
 import org.apache.ratis.server.impl.RaftServerConstants;
 import org.apache.ratis.server.impl.ServerProtoUtils;
 import org.apache.ratis.server.protocol.TermIndex;
-import org.apache.ratis.server.storage.CacheInvalidationPolicy.CacheInvalidationPolicyDefault;
+import org.apache.ratis.server.storage.CacheInvalidationPolicy.Context;
+import org.apache.ratis.server.storage.CacheInvalidationPolicy.Reason;
 import org.apache.ratis.server.storage.LogSegment.LogRecord;
 import org.apache.ratis.server.storage.RaftStorageDirectory.LogPathAndIndex;
 import org.apache.ratis.proto.RaftProtos.LogEntryProto;
@@ -31,6 +32,8 @@ import org.apache.ratis.util.AutoCloseableLock;
 import org.apache.ratis.util.AutoCloseableReadWriteLock;
 import org.apache.ratis.util.JavaUtils;
 import org.apache.ratis.util.Preconditions;
+import org.apache.ratis.util.ReflectionUtils;
+import org.apache.ratis.util.TimeDuration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -128,6 +131,19 @@ class RaftLogCache {
       }
     }
 
+    /** @return a copy of the segments. */
+    List<LogSegment> getSegments() {
+      try(AutoCloseableLock readLock = readLock()) {
+        return new ArrayList<>(segments);
+      }
+    }
+
+    long getCachedSize() {
+      try(AutoCloseableLock readLock = readLock()) {
+        return segments.stream().mapToLong(LogSegment::getCachedSize).sum();
+      }
+    }
+
     LogSegment getLast() {
       try(AutoCloseableLock readLock = readLock()) {
         return segments.isEmpty()? null: segments.get(segments.size() - 1);
@@ -238,6 +254,25 @@ class RaftLogCache {
       }
     }
 
+    /**
+     * Remove the segments with end index less than or equal to the given index,
+     * except for the last segment so that the last entry is always known.
+     */
+    List<SegmentFileInfo> purge(long index) {
+      try(AutoCloseableLock writeLock = writeLock()) {
+        int n = 0;
+        for(; n < segments.size() - 1 && segments.get(n).getEndIndex() <= index; n++);
+        final List<LogSegment> purged = segments.subList(0, n);
+        final List<SegmentFileInfo> list = new ArrayList<>(n);
+        for(LogSegment s : purged) {
+          list.add(new SegmentFileInfo(s.getStartIndex(), s.getEndIndex(), false, 0, s.getEndIndex()));
+          s.clear();
+        }
+        purged.clear();
+        return list;
+      }
+    }
+
     static SegmentFileInfo deleteOpenSegment(LogSegment openSegment, Runnable clearOpenSegment) {
       final long oldEnd = openSegment.getEndIndex();
       openSegment.clear();
@@ -254,13 +289,47 @@ class RaftLogCache {
   private final RaftStorage storage;
 
   private final int maxCachedSegments;
-  private final CacheInvalidationPolicy evictionPolicy = new CacheInvalidationPolicyDefault();
+  private final CacheInvalidationPolicy evictionPolicy;
+  /** The max size of the cached entries in the closed segments; zero means unlimited. */
+  private final long evictionByteLimit;
+  private final TimeDuration hotDuration;
+  /** Null if the heap pressure detection is disabled. */
+  private final HeapPressureMonitor heapPressureMonitor;
+  /** The heap pressure already handled; see {@link HeapPressureMonitor#getExceededCount()}. */
+  private volatile long handledHeapPressure;
+  /** Null if memory mapping is disabled. */
+  private final MappedSegmentReader mappedReader;
+  /** Null if the off-heap cache is disabled. */
+  private final OffHeapEntryCache offHeapCache;
 
   RaftLogCache(RaftPeerId selfId, RaftStorage storage, RaftProperties properties) {
     this.name = selfId + "-" + getClass().getSimpleName();
     this.closedSegments = new LogSegmentList(name);
     this.storage = storage;
     maxCachedSegments = RaftServerConfigKeys.Log.maxCachedSegmentNum(properties);
+    evictionPolicy = ReflectionUtils.newInstance(RaftServerConfigKeys.Log.CacheEviction.policy(properties));
+    evictionByteLimit = RaftServerConfigKeys.Log.CacheEviction.byteLimit(properties).getSize();
+    hotDuration = RaftServerConfigKeys.Log.CacheEviction.hotDuration(properties);
+    final double heapPressureThreshold = RaftServerConfigKeys.Log.CacheEviction.heapPressureThreshold(properties);
+    heapPressureMonitor = heapPressureThreshold > 0? HeapPressureMonitor.get(heapPressureThreshold): null;
+    handledHeapPressure = heapPressureMonitor != null? heapPressureMonitor.getExceededCount(): 0;
+    mappedReader = RaftServerConfigKeys.Log.Mapped.enabled(properties)?
+        new MappedSegmentReader(name, RaftServerConfigKeys.Log.Mapped.sizeMax(properties).getSize()): null;
+    offHeapCache = RaftServerConfigKeys.Log.OffHeapCache.enabled(properties)?
+        new OffHeapEntryCache(name, RaftServerConfigKeys.Log.OffHeapCache.slabSize(properties).getSizeInt(),
+            RaftServerConfigKeys.Log.OffHeapCache.sizeMax(properties).getSize()): null;
+  }
+
+  MappedSegmentReader getMappedReader() {
+    return mappedReader;
+  }
+
+  OffHeapEntryCache getOffHeapCache() {
+    return offHeapCache;
+  }
+
+  HeapPressureMonitor getHeapPressureMonitor() {
+    return heapPressureMonitor;
   }
 
   int getMaxCachedSegments() {
@@ -269,7 +338,7 @@ class RaftLogCache {
 
   void loadSegment(LogPathAndIndex pi, boolean keepEntryInCache,
       Consumer<LogEntryProto> logConsumer) throws IOException {
-    LogSegment logSegment = LogSegment.loadSegment(storage, pi.getPath().toFile(),
+    LogSegment logSegment = LogSegment.loadSegment(storage, mappedReader, offHeapCache, pi.getPath().toFile(),
         pi.startIndex, pi.endIndex, pi.isOpen(), keepEntryInCache, logConsumer);
     if (logSegment != null) {
       addSegment(logSegment);
@@ -280,17 +349,55 @@ class RaftLogCache {
     return closedSegments.countCached();
   }
 
+  /** @return the size of the cached entries, including the open segment. */
+  long getCachedSize() {
+    if (offHeapCache != null) {
+      return offHeapCache.getCachedBytes();
+    }
+    final LogSegment open = openSegment;
+    return closedSegments.getCachedSize() + (open != null? open.getCachedSize(): 0);
+  }
+
+  /** @return the reason to evict the cache, or null if the cache should not be evicted. */
+  Reason getEvictionReason() {
+    if (offHeapCache != null) {
+      return offHeapCache.shouldEvict()? Reason.BYTE_LIMIT: null;
+    }
+    if (heapPressureMonitor != null && heapPressureMonitor.getExceededCount() > handledHeapPressure) {
+      return Reason.HEAP_PRESSURE;
+    } else if (evictionByteLimit > 0 && closedSegments.getCachedSize() > evictionByteLimit) {
+      return Reason.BYTE_LIMIT;
+    } else if (closedSegments.countCached() > maxCachedSegments) {
+      return Reason.SEGMENT_NUM;
+    }
+    return null;
+  }
+
   boolean shouldEvict() {
-    return closedSegments.countCached() > maxCachedSegments;
+    return getEvictionReason() != null;
   }
 
-  void evictCache(long[] followerIndices, long flushedIndex,
+  /** @return the number of the segments, or the off-heap slabs, evicted. */
+  int evictCache(long[] followerIndices, long flushedIndex,
       long lastAppliedIndex) {
-    List<LogSegment> toEvict = evictionPolicy.evict(followerIndices,
-        flushedIndex, lastAppliedIndex, closedSegments, maxCachedSegments);
+    return evictCache(Reason.SEGMENT_NUM, followerIndices, flushedIndex, lastAppliedIndex);
+  }
+
+  /** @return the number of the segments, or the off-heap slabs, evicted. */
+  int evictCache(Reason reason, long[] followerIndices, long flushedIndex, long lastAppliedIndex) {
+    if (offHeapCache != null) {
+      return offHeapCache.evict(followerIndices, flushedIndex, lastAppliedIndex);
+    }
+    if (reason == Reason.HEAP_PRESSURE) {
+      handledHeapPressure = heapPressureMonitor.getExceededCount();
+    }
+    final List<LogSegment> toEvict = evictionPolicy.evict(new Context<>(reason, closedSegments.getSegments(),
+        followerIndices, flushedIndex, lastAppliedIndex, maxCachedSegments, evictionByteLimit, hotDuration));
     for (LogSegment s : toEvict) {
       s.evictCache();
     }
+    LOG.debug("{}: evicted {} segment(s) for {}", name, toEvict.size(), reason);
+    return toEvict.size();
   }
 
 
@@ -312,7 +419,7 @@ class RaftLogCache {
   }
 
   void addOpenSegment(long startIndex) {
-    setOpenSegment(LogSegment.newOpenSegment(storage, startIndex));
+    setOpenSegment(LogSegment.newOpenSegment(storage, mappedReader, offHeapCache, startIndex));
   }
 
   private void setOpenSegment(LogSegment openSegment) {
@@ -359,6 +466,20 @@ class RaftLogCache {
     return segment == null ? null : segment.getLogRecord(index);
   }
 
+  /** @return the size of the entries in the segment files from the given index to the end. */
+  long getSizeFrom(long index) {
+    long size = 0;
+    for(long i = Math.max(index, getStartIndex());;) {
+      final LogSegment s = getSegment(i);
+      final LogRecord record = s == null? null: s.getLogRecord(i);
+      if (record == null) {
+        return size;
+      }
+      size += s.getTotalSize() - record.getOffset();
+      i = s.getEndIndex() + 1;
+    }
+  }
+
   /**
    * @param startIndex inclusive
    * @param endIndex exclusive
@@ -436,6 +557,14 @@ class RaftLogCache {
     return new EntryIterator(startIndex);
   }
 
+  /**
+   * Purge the closed segments with end index less than or equal to the given index.
+   * The open segment and the last closed segment are never purged.
+   */
+  List<SegmentFileInfo> purge(long index) {
+    return closedSegments.purge(index);
+  }
+
   static class TruncateIndices {
     final int arrayIndex;
     final long truncateIndex;
@@ -550,5 +679,11 @@ class RaftLogCache {
       clearOpenSegment();
     }
     closedSegments.clear();
+    if (mappedReader != null) {
+      mappedReader.close();
+    }
+    if (offHeapCache != null) {
+      offHeapCache.close();
+    }
   }
 }
@@ -17,14 +17,18 @@
  */
 package org.apache.ratis.server.storage;
 
-import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
 import com.codahale.metrics.Timer;
 import org.apache.ratis.conf.RaftProperties;
 import org.apache.ratis.metrics.RatisMetricsRegistry;
+import org.apache.ratis.protocol.RaftGroupId;
 import org.apache.ratis.protocol.RaftPeerId;
 import org.apache.ratis.protocol.TimeoutIOException;
 import org.apache.ratis.server.RaftServerConfigKeys;
 import org.apache.ratis.server.impl.RaftServerConstants;
+import org.apache.ratis.server.impl.RaftServerMetrics;
+import org.apache.ratis.server.impl.RequestTracer;
 import org.apache.ratis.server.impl.ServerProtoUtils;
 import org.apache.ratis.server.storage.RaftLogCache.SegmentFileInfo;
 import org.apache.ratis.server.storage.RaftLogCache.TruncationSegments;
@@ -37,6 +41,11 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
@@ -52,6 +61,9 @@ class RaftLogWorker implements Runnable {
 
   static final TimeDuration ONE_SECOND = TimeDuration.valueOf(1, TimeUnit.SECONDS);
 
+  /** The injection point before syncing the log, e.g. for simulating a slow disk. */
+  public static final String FLUSH_WRITES = RaftLogWorker.class.getSimpleName() + ".flushWrites";
+
   static class StateMachineDataPolicy {
     private final boolean sync;
     private final TimeDuration syncTimeout;
@@ -85,6 +97,7 @@ class RaftLogWorker implements Runnable {
     }
   }
 
+  private final RaftPeerId selfId;
   private final String name;
   /**
    * The task queue accessed by rpc handler threads and the io worker thread.
@@ -98,6 +111,10 @@ class RaftLogWorker implements Runnable {
   private final Runnable submitUpdateCommitEvent;
   private final StateMachine stateMachine;
   private final Supplier<Timer> logFlushTimer;
+  private final Supplier<Timer> logSyncTimer;
+  private final Supplier<Histogram> groupCommitBatchSizeHistogram;
+  private final Supplier<Timer> purgeTimer;
+  private final Supplier<Counter> purgeBytesCounter;
 
   /**
    * The number of entries that have been written into the LogOutputStream but
@@ -116,14 +133,42 @@ class RaftLogWorker implements Runnable {
   private final int bufferSize;
 
   private final StateMachineDataPolicy stateMachineDataPolicy;
+  private final boolean segmentIndexEnabled;
+
+  private final boolean groupCommitEnabled;
+  private final int groupCommitBatchNumMax;
+  /**
+   * In group commit mode, the tasks which have been executed
+   * but are waiting for the batch to be flushed.
+   */
+  private final List<Task> unflushedTasks = new ArrayList<>();
+
+  /** The shared log providing the durability; null means that the segment files are synced directly. */
+  private final SharedWriteAheadLog.Member sharedLog;
+  /** The entries written to the segment file but not yet appended to the shared log. */
+  private final List<LogEntryProto> unsyncedEntries = new ArrayList<>();
+
+  private final RequestTracer tracer;
+  /** The volume measuring the writes and the syncs; null in unit tests. */
+  private final StorageVolume volume;
 
   RaftLogWorker(RaftPeerId selfId, StateMachine stateMachine, Runnable submitUpdateCommitEvent,
       RaftStorage storage, RaftProperties properties) {
+    this(selfId, null, stateMachine, submitUpdateCommitEvent, null, RequestTracer.DISABLED, null, storage, properties);
+  }
+
+  RaftLogWorker(RaftPeerId selfId, RaftGroupId groupId, StateMachine stateMachine, Runnable submitUpdateCommitEvent,
+      SharedWriteAheadLog.Member sharedLog, RequestTracer tracer, StorageVolume volume,
+      RaftStorage storage, RaftProperties properties) {
+    this.selfId = selfId;
     this.name = selfId + "-" + getClass().getSimpleName();
     LOG.info("new {} for {}", name, storage);
 
     this.submitUpdateCommitEvent = submitUpdateCommitEvent;
     this.stateMachine = stateMachine;
+    this.sharedLog = sharedLog;
+    this.tracer = tracer;
+    this.volume = volume;
 
     this.storage = storage;
 
@@ -137,12 +182,25 @@ class RaftLogWorker implements Runnable {
     this.forceSyncNum = RaftServerConfigKeys.Log.forceSyncNum(properties);
 
     this.stateMachineDataPolicy = new StateMachineDataPolicy(properties);
+    this.segmentIndexEnabled = RaftServerConfigKeys.Log.segmentIndexEnabled(properties);
+
+    this.groupCommitEnabled = RaftServerConfigKeys.Log.GroupCommit.enabled(properties);
+    this.groupCommitBatchNumMax = RaftServerConfigKeys.Log.GroupCommit.batchNumMax(properties);
 
     this.workerThread = new Thread(this, name);
 
-    // Server Id can be null in unit tests
+    // Server Id can be null in unit tests.
+    // The metrics are named with the group id so that they are removed with the group.
     this.logFlushTimer = JavaUtils.memoize(() -> RatisMetricsRegistry.getRegistry()
-        .timer(MetricRegistry.name(RaftLogWorker.class, selfId.toString(), "flush-time")));
+        .timer(RaftServerMetrics.getMetricName(RaftLogWorker.class, selfId, groupId, "flush-time")));
+    this.logSyncTimer = JavaUtils.memoize(() -> RatisMetricsRegistry.getRegistry()
+        .timer(RaftServerMetrics.getMetricName(RaftLogWorker.class, selfId, groupId, "sync-time")));
+    this.groupCommitBatchSizeHistogram = JavaUtils.memoize(() -> RatisMetricsRegistry.getRegistry()
+        .histogram(RaftServerMetrics.getMetricName(RaftLogWorker.class, selfId, groupId, "group-commit-batch-size")));
+    this.purgeTimer = JavaUtils.memoize(() -> RatisMetricsRegistry.getRegistry()
+        .timer(RaftServerMetrics.getMetricName(RaftLogWorker.class, selfId, groupId, "purge-time")));
+    this.purgeBytesCounter = JavaUtils.memoize(() -> RatisMetricsRegistry.getRegistry()
+        .counter(RaftServerMetrics.getMetricName(RaftLogWorker.class, selfId, groupId, "purge-bytes")));
   }
 
   void start(long latestIndex, File openSegmentFile) throws IOException {
@@ -164,6 +222,14 @@ class RaftLogWorker implements Runnable {
       workerThread.join(3000);
     } catch (InterruptedException ignored) {
     }
+    if (sharedLog != null) {
+      try {
+        syncSegment();
+        sharedLog.close();
+      } catch (IOException e) {
+        LOG.warn(name + ": Failed to sync the open segment", e);
+      }
+    }
     IOUtils.cleanup(LOG, out);
     LOG.info("{} close()", name);
   }
@@ -177,6 +243,14 @@ class RaftLogWorker implements Runnable {
     lastWrittenIndex = lastSnapshotIndex;
     flushedIndex = lastSnapshotIndex;
     pendingFlushNum = 0;
+    if (sharedLog != null) {
+      // the entries after the snapshot in the shared log are stale
+      try {
+        IOUtils.getFromFuture(sharedLog.truncate(lastSnapshotIndex + 1), () -> this + "-truncateSharedLog");
+      } catch (IOException e) {
+        LOG.warn(name + ": Failed to truncate the shared log at " + (lastSnapshotIndex + 1), e);
+      }
+    }
   }
 
   @Override
@@ -213,20 +287,22 @@ class RaftLogWorker implements Runnable {
   public void run() {
     while (running) {
       try {
-        Task task = queue.poll(ONE_SECOND);
-        if (task != null) {
-          try {
-            task.execute();
-          } catch (IOException e) {
-            if (task.getEndIndex() < lastWrittenIndex) {
-              LOG.info("Ignore IOException when handling task " + task
-                  + " which is smaller than the lastWrittenIndex."
-                  + " There should be a snapshot installed.", e);
-            } else {
-              throw e;
-            }
+        if (groupCommitEnabled) {
+          final List<Task> batch = queue.pollAll(groupCommitBatchNumMax, ONE_SECOND);
+          if (!batch.isEmpty()) {
+            executeBatch(batch);
+          }
+        } else {
+          Task task = queue.poll(ONE_SECOND);
+          if (task != null) {
+            execute(task);
+            task.done();
           }
-          task.done();
+        }
+        if (sharedLog != null && sharedLog.needsSync()) {
+          final long seq = sharedLog.getCurrentSeq();
+          syncSegment();
+          sharedLog.synced(seq);
         }
       } catch (InterruptedException e) {
         if (running) {
@@ -253,7 +329,55 @@ class RaftLogWorker implements Runnable {
     }
   }
 
+  private void execute(Task task) throws IOException {
+    try {
+      task.execute();
+    } catch (IOException e) {
+      if (task.getEndIndex() < lastWrittenIndex) {
+        LOG.info("Ignore IOException when handling task " + task
+            + " which is smaller than the lastWrittenIndex."
+            + " There should be a snapshot installed.", e);
+      } else {
+        throw e;
+      }
+    }
+  }
+
+  /**
+   * Execute the given batch of tasks in order.
+   * The entries written by the {@link WriteLog} tasks are flushed together
+   * and then the futures of the tasks are completed together.
+   * Any other task is executed only after the pending writes are flushed.
+   */
+  private void executeBatch(List<Task> batch) throws IOException {
+    LOG.debug("{}: executeBatch with {} tasks", name, batch.size());
+    groupCommitBatchSizeHistogram.get().update(batch.size());
+    for(Task task : batch) {
+      if (task instanceof WriteLog) {
+        execute(task);
+        unflushedTasks.add(task);
+      } else {
+        flushUnflushedTasks();
+        execute(task);
+        task.done();
+      }
+    }
+    flushUnflushedTasks();
+  }
+
+  private void flushUnflushedTasks() throws IOException {
+    if (pendingFlushNum > 0) {
+      flushWrites();
+    }
+    unflushedTasks.forEach(Task::done);
+    unflushedTasks.clear();
+  }
+
   private boolean shouldFlush() {
+    if (groupCommitEnabled) {
+      // the batch is flushed at once by executeBatch
+      return false;
+    }
     return pendingFlushNum >= forceSyncNum ||
         (pendingFlushNum > 0 && queue.isEmpty());
   }
@@ -269,7 +393,20 @@ class RaftLogWorker implements Runnable {
         if (stateMachineDataPolicy.isSync()) {
           stateMachineDataPolicy.getFromFuture(f, () -> this + "-flushStateMachineData");
         }
-        out.flush();
+        final Timer.Context syncTimerContext = logSyncTimer.get().time();
+        try {
+          CodeInjectionForTesting.execute(FLUSH_WRITES, selfId, null, lastWrittenIndex);
+          if (sharedLog != null) {
+            appendSharedLog();
+          } else {
+            out.flush();
+          }
+        } finally {
+          final long syncNanos = syncTimerContext.stop();
+          if (volume != null) {
+            volume.onSync(syncNanos);
+          }
+        }
         if (!stateMachineDataPolicy.isSync()) {
           IOUtils.getFromFuture(f, () -> this + "-flushStateMachineData");
         }
@@ -280,10 +417,32 @@ class RaftLogWorker implements Runnable {
     }
   }
 
+  /** Write the unsynced entries to the segment file and then sync them with the shared log. */
+  private void appendSharedLog() throws IOException {
+    out.flushWithoutSync();
+    if (!unsyncedEntries.isEmpty()) {
+      final CompletableFuture<Void> f = sharedLog.append(new ArrayList<>(unsyncedEntries));
+      unsyncedEntries.clear();
+      IOUtils.getFromFuture(f, () -> this + "-appendSharedLog");
+    }
+  }
+
+  /**
+   * Sync the open segment file so that its entries are no longer needed in the shared log,
+   * e.g. before the segment is closed or truncated.
+   */
+  private void syncSegment() throws IOException {
+    if (out != null) {
+      out.flush();
+    }
+    unsyncedEntries.clear();
+  }
+
   private void updateFlushedIndex() {
     LOG.debug("{}: updateFlushedIndex {} -> {}", name, flushedIndex, lastWrittenIndex);
     flushedIndex = lastWrittenIndex;
     pendingFlushNum = 0;
+    tracer.stampUpTo(flushedIndex, RequestTracer.Stage.LOG_FLUSH);
     Optional.ofNullable(submitUpdateCommitEvent).ifPresent(Runnable::run);
   }
 
@@ -315,6 +474,11 @@ class RaftLogWorker implements Runnable {
     return addIOTask(new TruncateLog(ts, index));
   }
 
+  Task purge(List<SegmentFileInfo> segments) {
+    LOG.info("{}: Purging segments {}", name, segments);
+    return addIOTask(new PurgeLog(segments));
+  }
+
   private class WriteLog extends Task {
     private final LogEntryProto entry;
     private final CompletableFuture<?> stateMachineFuture;
@@ -350,6 +514,7 @@ class RaftLogWorker implements Runnable {
 
     @Override
     public void execute() throws IOException {
+      tracer.stamp(entry.getIndex(), RequestTracer.Stage.LOG_DEQUEUE);
       if (stateMachineDataPolicy.isSync() && stateMachineFuture != null) {
         stateMachineDataPolicy.getFromFuture(stateMachineFuture, () -> this + "-writeStateMachineData");
       }
@@ -358,6 +523,13 @@ class RaftLogWorker implements Runnable {
       Preconditions.assertTrue(lastWrittenIndex + 1 == entry.getIndex(),
           "lastWrittenIndex == %s, entry == %s", lastWrittenIndex, entry);
       out.write(entry);
+      tracer.stamp(entry.getIndex(), RequestTracer.Stage.LOG_WRITE);
+      if (volume != null) {
+        volume.onWrite(getSerializedSize());
+      }
+      if (sharedLog != null) {
+        unsyncedEntries.add(entry);
+      }
       lastWrittenIndex = entry.getIndex();
       pendingFlushNum++;
       if (shouldFlush()) {
@@ -379,15 +551,23 @@ class RaftLogWorker implements Runnable {
   private class FinalizeLogSegment extends Task {
     private final long startIndex;
     private final long endIndex;
+    /** The index to be written to the index file; null means no index file. */
+    private final LogSegmentIndex index;
 
     FinalizeLogSegment(LogSegment segmentToClose) {
       Preconditions.assertTrue(segmentToClose != null, "Log segment to be rolled is null");
       this.startIndex = segmentToClose.getStartIndex();
       this.endIndex = segmentToClose.getEndIndex();
+      // the index is built from the cached entries before they may be evicted
+      this.index = segmentIndexEnabled? segmentToClose.newIndex(): null;
     }
 
     @Override
     public void execute() throws IOException {
+      if (sharedLog != null) {
+        // a closed segment is synced since it is no longer synced by the checkpoints
+        syncSegment();
+      }
       IOUtils.cleanup(LOG, out);
       out = null;
 
@@ -401,6 +581,7 @@ class RaftLogWorker implements Runnable {
 
         FileUtils.move(openFile, dstFile);
         LOG.info("{}: Rolled log segment from {} to {}", name, openFile, dstFile);
+        writeIndex(dstFile);
       } else { // delete the file of the empty segment
         FileUtils.deleteFile(openFile);
         LOG.info("{}: Deleted empty log segment {}", name, openFile);
@@ -408,6 +589,19 @@ class RaftLogWorker implements Runnable {
       updateFlushedIndex();
     }
 
+    /** Failing to write the index is not fatal since the segment can be loaded without it. */
+    private void writeIndex(File segmentFile) {
+      if (index == null || index.getEndIndex() != endIndex) {
+        return;
+      }
+      final File indexFile = RaftStorageDirectory.getLogIndexFile(segmentFile);
+      try {
+        index.write(indexFile);
+      } catch (IOException e) {
+        LOG.warn(name + ": Failed to write index file " + indexFile, e);
+      }
+    }
+
     @Override
     long getEndIndex() {
       return endIndex;
@@ -457,6 +651,9 @@ class RaftLogWorker implements Runnable {
 
     @Override
     void execute() throws IOException {
+      if (sharedLog != null) {
+        syncSegment();
+      }
       IOUtils.cleanup(null, out);
       out = null;
       CompletableFuture<Void> stateMachineFuture = null;
@@ -474,6 +671,11 @@ class RaftLogWorker implements Runnable {
         Preconditions.assertTrue(fileToTruncate.exists(),
             "File %s to be truncated does not exist", fileToTruncate);
         FileUtils.truncateFile(fileToTruncate, segments.toTruncate.targetLength);
+        if (sharedLog != null) {
+          // otherwise, the truncated entries may come back after a crash
+          syncFile(fileToTruncate);
+        }
+        deleteIndex(segments.toTruncate);
 
         // rename the file
         File dstFile = storage.getStorageDir().getClosedLogFile(
@@ -501,18 +703,37 @@ class RaftLogWorker implements Runnable {
               "File %s to be deleted does not exist", delFile);
           FileUtils.deleteFile(delFile);
           LOG.info("{}: Deleted log file {}", name, delFile);
+          deleteIndex(del);
           minStart = Math.min(minStart, del.startIndex);
         }
         if (segments.toTruncate == null) {
           lastWrittenIndex = minStart - 1;
         }
       }
+      if (sharedLog != null) {
+        IOUtils.getFromFuture(sharedLog.truncate(truncateIndex), () -> this + "-truncateSharedLog");
+      }
       if (stateMachineFuture != null) {
         IOUtils.getFromFuture(stateMachineFuture, () -> this + "-truncateStateMachineData");
       }
       updateFlushedIndex();
     }
 
+    private void syncFile(File f) throws IOException {
+      try (FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.WRITE)) {
+        channel.force(true);
+      }
+    }
+
+    /** A truncated segment is loaded with a full scan since its index file is deleted. */
+    private void deleteIndex(SegmentFileInfo info) throws IOException {
+      if (!info.isOpen) {
+        final File indexFile = RaftStorageDirectory.getLogIndexFile(
+            storage.getStorageDir().getClosedLogFile(info.startIndex, info.endIndex));
+        Files.deleteIfExists(indexFile.toPath());
+      }
+    }
+
     @Override
     long getEndIndex() {
       if (segments.toTruncate != null) {
@@ -529,6 +750,53 @@ class RaftLogWorker implements Runnable {
     }
   }
 
+  /**
+   * Delete the files of the closed segments which have been removed from the log.
+   * Unlike the other tasks, it does not change the written or the flushed index,
+   * and a failure only leaves the files behind.
+   */
+  private class PurgeLog extends Task {
+    private final List<SegmentFileInfo> segments;
+
+    PurgeLog(List<SegmentFileInfo> segments) {
+      Preconditions.assertTrue(!segments.isEmpty());
+      this.segments = segments;
+    }
+
+    @Override
+    void execute() {
+      final Timer.Context timerContext = purgeTimer.get().time();
+      try {
+        for (SegmentFileInfo info : segments) {
+          Preconditions.assertTrue(!info.isOpen, "Cannot purge open segment %s", info);
+          final File file = storage.getStorageDir().getClosedLogFile(info.startIndex, info.endIndex);
+          final File indexFile = RaftStorageDirectory.getLogIndexFile(file);
+          try {
+            final long length = file.length() + indexFile.length();
+            Files.deleteIfExists(file.toPath());
+            Files.deleteIfExists(indexFile.toPath());
+            purgeBytesCounter.get().inc(length);
+            LOG.info("{}: Purged log file {}", name, file);
+          } catch (IOException e) {
+            LOG.warn(name + ": Failed to purge log file " + file, e);
+          }
+        }
+      } finally {
+        timerContext.stop();
+      }
+    }
+
+    @Override
+    long getEndIndex() {
+      return segments.get(segments.size() - 1).endIndex;
+    }
+
+    @Override
+    public String toString() {
+      return super.toString() + ": " + segments;
+    }
+  }
+
   long getFlushedIndex() {
     return flushedIndex;
   }
@@ -46,7 +46,16 @@ public class RaftStorage implements Closeable {
 
   public RaftStorage(File dir, RaftServerConstants.StartupOption option)
       throws IOException {
-    storageDir = new RaftStorageDirectory(dir);
+    this(dir, dir, option);
+  }
+
+  /**
+   * @param dir the directory for the state machine and the snapshot files.
+   * @param logDir the directory for the log segments and the metadata files.
+   */
+  public RaftStorage(File dir, File logDir, RaftServerConstants.StartupOption option)
+      throws IOException {
+    storageDir = new RaftStorageDirectory(dir, logDir);
     if (option == RaftServerConstants.StartupOption.FORMAT) {
       if (storageDir.analyzeStorage(false) == StorageState.NON_EXISTENT) {
         throw new IOException("Cannot format " + storageDir);
@@ -53,6 +53,7 @@ public class RaftStorageDirectory {
   static final Pattern CLOSED_SEGMENT_REGEX = Pattern.compile("log_(\\d+)-(\\d+)");
   static final Pattern OPEN_SEGMENT_REGEX = Pattern.compile("log_inprogress_(\\d+)(?:\\..*)?");
   private static final String CONF_EXTENSION = ".conf";
+  static final String LOG_INDEX_EXTENSION = ".index";
 
 
   enum StorageState {
@@ -87,15 +88,28 @@ public class RaftStorageDirectory {
   }
 
   private final File root; // root directory
+  private final File logRoot; // root directory of the log, which may be on a different device
   private FileLock lock;   // storage lock
+  private FileLock logLock; // storage lock of the log root, if it is separated
 
   /**
    * Constructor
    * @param dir directory corresponding to the storage
    */
   RaftStorageDirectory(File dir) {
+    this(dir, dir);
+  }
+
+  /**
+   * Constructor
+   * @param dir directory for the state machine and the snapshot files
+   * @param logDir directory for the log segments and the metadata files
+   */
+  RaftStorageDirectory(File dir, File logDir) {
     this.root = dir;
+    this.logRoot = logDir;
     this.lock = null;
+    this.logLock = null;
   }
 
   /**
@@ -106,6 +120,20 @@ public class RaftStorageDirectory {
     return root;
   }
 
+  /** @return the root directory of the log, which is the same as {@link #getRoot()} unless it is separated. */
+  public File getLogRoot() {
+    return logRoot;
+  }
+
+  boolean isLogSeparated() {
+    return !logRoot.getAbsoluteFile().equals(root.getAbsoluteFile());
+  }
+
+  /** @return the roots to be analyzed and locked. */
+  private List<File> getRoots() {
+    return isLogSeparated()? Arrays.asList(root, logRoot): Collections.singletonList(root);
+  }
+
   /**
    * Clear and re-create storage directory.
    * <p>
@@ -137,7 +165,7 @@ public class RaftStorageDirectory {
    * @return the directory path
    */
   File getCurrentDir() {
-    return new File(root, STORAGE_DIR_CURRENT);
+    return new File(logRoot, STORAGE_DIR_CURRENT);
   }
 
   File getMetaFile() {
@@ -169,6 +197,11 @@ public class RaftStorageDirectory {
     return LOG_FILE_PREFIX + "_" + startIndex + "-" + endIndex;
   }
 
+  /** @return the index file of the given closed log segment file. */
+  static File getLogIndexFile(File closedLogFile) {
+    return new File(closedLogFile.getParentFile(), closedLogFile.getName() + LOG_INDEX_EXTENSION);
+  }
+
   public File getStateMachineDir() {
     return new File(getRoot(), STATE_MACHINE);
   }
@@ -239,30 +272,25 @@ public class RaftStorageDirectory {
    */
   StorageState analyzeStorage(boolean toLock) throws IOException {
     Objects.requireNonNull(root, "root directory is null");
+    Objects.requireNonNull(logRoot, "log root directory is null");
 
-    String rootPath = root.getCanonicalPath();
-    try { // check that storage exists
-      if (!root.exists()) {
-        LOG.info("The storage directory " + rootPath + " does not exist. Creating ...");
-        FileUtils.createDirectories(root);
-      }
-      // or is inaccessible
-      if (!root.isDirectory()) {
-        LOG.warn(rootPath + " is not a directory");
+    for(File dir : getRoots()) {
+      if (!isAccessible(dir)) {
         return StorageState.NON_EXISTENT;
       }
-      if (!Files.isWritable(root.toPath())) {
-        LOG.warn("The storage directory " + rootPath + " is not writable.");
-        return StorageState.NON_EXISTENT;
-      }
-    } catch(SecurityException ex) {
-      LOG.warn("Cannot access storage directory " + rootPath, ex);
-      return StorageState.NON_EXISTENT;
     }
 
     if (toLock) {
       this.lock(); // lock storage if it exists
     }
+    if (isLogSeparated()) {
+      try {
+        moveCurrentToLogRoot();
+      } catch (IOException e) {
+        unlock();
+        throw e;
+      }
+    }
 
     // check whether current directory is valid
     if (hasMetaFile()) {
@@ -272,6 +300,49 @@ public class RaftStorageDirectory {
     }
   }
 
+  /** Check that the given root exists, creating it if necessary, and is a writable directory. */
+  private static boolean isAccessible(File dir) throws IOException {
+    String rootPath = dir.getCanonicalPath();
+    try { // check that storage exists
+      if (!dir.exists()) {
+        LOG.info("The storage directory " + rootPath + " does not exist. Creating ...");
+        FileUtils.createDirectories(dir);
+      }
+      // or is inaccessible
+      if (!dir.isDirectory()) {
+        LOG.warn(rootPath + " is not a directory");
+        return false;
+      }
+      if (!Files.isWritable(dir.toPath())) {
+        LOG.warn("The storage directory " + rootPath + " is not writable.");
+        return false;
+      }
+    } catch(SecurityException ex) {
+      LOG.warn("Cannot access storage directory " + rootPath, ex);
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * When the log is separated from an existing storage,
+   * move the existing log from the storage root to the log root.
+   * The log root must not have a log already; otherwise, the storage is inconsistent.
+   */
+  private void moveCurrentToLogRoot() throws IOException {
+    final File oldCurrent = new File(root, STORAGE_DIR_CURRENT);
+    if (!oldCurrent.exists()) {
+      return;
+    }
+    if (!isCurrentEmpty()) {
+      throw new IOException("Both " + oldCurrent + " and " + getCurrentDir()
+          + " exist: the log of " + this + " is inconsistent");
+    }
+    LOG.info("Move the log {} to the separated log directory {}", oldCurrent, getCurrentDir());
+    FileUtils.deleteFully(getCurrentDir());
+    FileUtils.move(oldCurrent, getCurrentDir());
+  }
+
   public boolean hasMetaFile() {
     return getMetaFile().exists();
   }
@@ -288,13 +359,24 @@ public class RaftStorageDirectory {
    * @throws IOException if locking fails
    */
   public void lock() throws IOException {
-    FileLock newLock = tryLock();
+    FileLock newLock = tryLock(root);
     if (newLock == null) {
       String msg = "Cannot lock storage " + this.root
           + ". The directory is already locked";
       LOG.info(msg);
       throw new IOException(msg);
     }
+    if (isLogSeparated()) {
+      final FileLock newLogLock;
+      try {
+        newLogLock = tryLock(logRoot);
+      } catch (IOException e) {
+        newLock.release();
+        newLock.channel().close();
+        throw e;
+      }
+      logLock = newLogLock;
+    }
     // Don't overwrite lock until success - this way if we accidentally
     // call lock twice, the internal state won't be cleared by the second
     // (failed) lock attempt
@@ -308,7 +390,7 @@ public class RaftStorageDirectory {
    * <code>null</code> if storage is already locked.
    * @throws IOException if locking fails.
    */
-  private FileLock tryLock() throws IOException {
+  private static FileLock tryLock(File root) throws IOException {
     boolean deletionHookAdded = false;
     File lockF = new File(root, STORAGE_FILE_LOCK);
     if (!lockF.exists()) {
@@ -331,7 +413,7 @@ public class RaftStorageDirectory {
       LOG.error("It appears that another process "
           + "has already locked the storage directory: " + root, oe);
       file.close();
-      throw new IOException("Failed to lock storage " + this.root + ". The directory is already locked", oe);
+      throw new IOException("Failed to lock storage " + root + ". The directory is already locked", oe);
     } catch(IOException e) {
       LOG.error("Failed to acquire lock on " + lockF
           + ". If this storage directory is mounted via NFS, "
@@ -352,6 +434,11 @@ public class RaftStorageDirectory {
    * Unlock storage.
    */
   public void unlock() throws IOException {
+    if (this.logLock != null) {
+      logLock.release();
+      logLock.channel().close();
+      logLock = null;
+    }
     if (this.lock == null)
       return;
     this.lock.release();
@@ -361,6 +448,6 @@ public class RaftStorageDirectory {
 
   @Override
   public String toString() {
-    return "Storage Directory " + this.root;
+    return "Storage Directory " + this.root + (isLogSeparated()? " (log: " + logRoot + ")": "");
   }
 }
@@ -17,30 +17,49 @@
  */
 package org.apache.ratis.server.storage;
 
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
+import com.codahale.metrics.Timer;
 import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.metrics.RatisMetricsRegistry;
+import org.apache.ratis.protocol.RaftGroupId;
 import org.apache.ratis.protocol.RaftPeerId;
 import org.apache.ratis.server.RaftServerConfigKeys;
 import org.apache.ratis.server.impl.RaftServerImpl;
+import org.apache.ratis.server.impl.RaftServerMetrics;
+import org.apache.ratis.server.impl.RequestTracer;
 import org.apache.ratis.server.impl.ServerProtoUtils;
 import org.apache.ratis.server.protocol.TermIndex;
+import org.apache.ratis.server.storage.CacheInvalidationPolicy.Reason;
 import org.apache.ratis.server.storage.LogSegment.LogRecord;
 import org.apache.ratis.server.storage.LogSegment.LogRecordWithEntry;
+import org.apache.ratis.server.storage.RaftLogCache.SegmentFileInfo;
 import org.apache.ratis.server.storage.RaftLogCache.TruncateIndices;
 import org.apache.ratis.server.storage.RaftStorageDirectory.LogPathAndIndex;
 import org.apache.ratis.proto.RaftProtos.LogEntryProto;
 import org.apache.ratis.statemachine.StateMachine;
 import org.apache.ratis.util.AutoCloseableLock;
+import org.apache.ratis.util.IOUtils;
 import org.apache.ratis.util.JavaUtils;
 import org.apache.ratis.util.Preconditions;
+import org.apache.ratis.util.TimeDuration;
+import org.apache.ratis.util.TimeoutScheduler;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 /**
  * The RaftLog implementation that writes log entries into segmented files in
@@ -98,43 +117,126 @@ public class SegmentedRaftLog extends RaftLog {
     }
   }
 
+  /** The max number of entries read from a mapped segment file at once. */
+  static final int MAPPED_READ_RANGE = 64;
+
   private final Optional<RaftServerImpl> server;
   private final RaftStorage storage;
   private final RaftLogCache cache;
   private final RaftLogWorker fileLogWorker;
+  private final SharedWriteAheadLog.Member sharedLog;
   private final long segmentMaxSize;
   private final boolean stateMachineCachingEnabled;
 
+  private final Counter cacheHitCounter;
+  private final Counter cacheMissCounter;
+  private final Counter cacheEvictionCounter;
+  private final Map<Reason, Counter> cacheEvictionReasonCounters = new EnumMap<>(Reason.class);
+  private final Timer segmentLoadTimer;
+
+  /** For evicting the cache in the background; null if the server is unavailable, e.g. in unit tests. */
+  private final TimeoutScheduler evictionScheduler;
+  private final AtomicBoolean evictionScheduled = new AtomicBoolean();
+  private final Runnable heapPressureListener = this::checkAndEvictCache;
+
   public SegmentedRaftLog(RaftPeerId selfId, RaftServerImpl server,
       RaftStorage storage, long lastIndexInSnapshot, RaftProperties properties) {
+    this(selfId, server, null, storage, lastIndexInSnapshot, properties);
+  }
+
+  public SegmentedRaftLog(RaftPeerId selfId, RaftServerImpl server, SharedWriteAheadLog.Member sharedLog,
+      RaftStorage storage, long lastIndexInSnapshot, RaftProperties properties) {
     this(selfId, server, server != null? server.getStateMachine(): null,
         server != null? server::submitUpdateCommitEvent: null,
-        storage, lastIndexInSnapshot, properties);
+        sharedLog, storage, lastIndexInSnapshot, properties);
   }
 
   SegmentedRaftLog(RaftPeerId selfId, RaftServerImpl server,
       StateMachine stateMachine, Runnable submitUpdateCommitEvent,
       RaftStorage storage, long lastIndexInSnapshot, RaftProperties properties) {
+    this(selfId, server, stateMachine, submitUpdateCommitEvent, null, storage, lastIndexInSnapshot, properties);
+  }
+
+  private SegmentedRaftLog(RaftPeerId selfId, RaftServerImpl server,
+      StateMachine stateMachine, Runnable submitUpdateCommitEvent, SharedWriteAheadLog.Member sharedLog,
+      RaftStorage storage, long lastIndexInSnapshot, RaftProperties properties) {
     super(selfId, lastIndexInSnapshot, RaftServerConfigKeys.Log.Appender.bufferByteLimit(properties).getSizeInt());
     this.server = Optional.ofNullable(server);
     this.storage = storage;
     segmentMaxSize = RaftServerConfigKeys.Log.segmentSizeMax(properties).getSize();
     cache = new RaftLogCache(selfId, storage, properties);
-    this.fileLogWorker = new RaftLogWorker(selfId, stateMachine, submitUpdateCommitEvent, storage, properties);
+    this.sharedLog = sharedLog;
+    final StorageVolume volume = this.server.map(RaftServerImpl::getProxy)
+        .map(p -> p.getStorageVolume(storage.getStorageDir().getLogRoot().getParentFile()))
+        .orElse(null);
+    // the group id is used for removing the metrics with the group; the server can be null in unit tests
+    final RaftGroupId groupId = server != null? server.getGroupId(): null;
+    this.fileLogWorker = new RaftLogWorker(selfId, groupId, stateMachine, submitUpdateCommitEvent, sharedLog,
+        this.server.map(RaftServerImpl::getTracer).orElse(RequestTracer.DISABLED), volume, storage, properties);
     stateMachineCachingEnabled = RaftServerConfigKeys.Log.StateMachineData.cachingEnabled(properties);
+
+    final MetricRegistry registry = RatisMetricsRegistry.getRegistry();
+    cacheHitCounter = registry.counter(RaftServerMetrics.getMetricName(RaftLogCache.class, selfId, groupId, "hit"));
+    cacheMissCounter = registry.counter(RaftServerMetrics.getMetricName(RaftLogCache.class, selfId, groupId, "miss"));
+    cacheEvictionCounter = registry.counter(
+        RaftServerMetrics.getMetricName(RaftLogCache.class, selfId, groupId, "eviction"));
+    for(Reason reason : Reason.values()) {
+      cacheEvictionReasonCounters.put(reason, registry.counter(RaftServerMetrics.getMetricName(
+          RaftLogCache.class, selfId, groupId, "eviction-" + reason.name().toLowerCase().replace('_', '-'))));
+    }
+    registerGauge(registry, RaftServerMetrics.getMetricName(RaftLogCache.class, selfId, groupId, "hit-ratio"),
+        new RatioGauge() {
+          @Override
+          protected Ratio getRatio() {
+            final long hits = cacheHitCounter.getCount();
+            return Ratio.of(hits, hits + cacheMissCounter.getCount());
+          }
+        });
+    registerGauge(registry, RaftServerMetrics.getMetricName(RaftLogCache.class, selfId, groupId, "cached-bytes"),
+        (Gauge<Long>) cache::getCachedSize);
+    segmentLoadTimer = registry.timer(
+        RaftServerMetrics.getMetricName(RaftLogCache.class, selfId, groupId, "segment-load-time"));
+    evictionScheduler = this.server.map(RaftServerImpl::getProxy)
+        .map(p -> p.getExecutors().getScheduler())
+        .orElse(null);
+  }
+
+  private static void registerGauge(MetricRegistry registry, String name, Gauge<?> gauge) {
+    registry.remove(name);
+    registry.register(name, gauge);
   }
 
   @Override
   protected void openImpl(long lastIndexInSnapshot, Consumer<LogEntryProto> consumer) throws IOException {
     loadLogSegments(lastIndexInSnapshot, consumer);
+    Optional.ofNullable(cache.getHeapPressureMonitor()).ifPresent(m -> m.addListener(heapPressureListener));
     File openSegmentFile = null;
     LogSegment openSegment = cache.getOpenSegment();
     if (openSegment != null) {
       openSegmentFile = storage.getStorageDir()
           .getOpenLogFile(openSegment.getStartIndex());
     }
-    fileLogWorker.start(Math.max(cache.getEndIndex(), lastIndexInSnapshot),
-        openSegmentFile);
+    final long latestIndex = Math.max(cache.getEndIndex(), lastIndexInSnapshot);
+    fileLogWorker.start(latestIndex, openSegmentFile);
+    if (sharedLog != null) {
+      replaySharedLog(latestIndex + 1, consumer);
+    }
+  }
+
+  /** Append the entries which are in the shared log but missing in the segment files, e.g. after a crash. */
+  private void replaySharedLog(long fromIndex, Consumer<LogEntryProto> consumer) throws IOException {
+    final List<LogEntryProto> entries = sharedLog.getEntriesToReplay(fromIndex);
+    if (entries.isEmpty()) {
+      return;
+    }
+    LOG.info("{}: replay {} entries from the shared log starting at index {}",
+        getSelfId(), entries.size(), fromIndex);
+    CompletableFuture<Long> last = null;
+    for(LogEntryProto e : entries) {
+      consumer.accept(e);
+      last = appendEntryToSegment(e);
+    }
+    IOUtils.getFromFuture(last, () -> getSelfId() + "-replaySharedLog");
   }
 
   @Override
@@ -156,7 +258,9 @@ public class SegmentedRaftLog extends RaftLog {
         // so that during the initial loading we can apply part of the log
         // entries to the state machine
         boolean keepEntryInCache = (paths.size() - i++) <= cache.getMaxCachedSegments();
-        cache.loadSegment(pi, keepEntryInCache, logConsumer);
+        try(Timer.Context ignored = segmentLoadTimer.time()) {
+          cache.loadSegment(pi, keepEntryInCache, logConsumer);
+        }
       }
 
       // if the largest index is smaller than the last index in snapshot, we do
@@ -187,19 +291,77 @@ public class SegmentedRaftLog extends RaftLog {
         return null;
       }
       if (recordAndEntry.hasEntry()) {
+        cacheHitCounter.inc();
         return recordAndEntry.getEntry();
       }
     }
 
     // the entry is not in the segment's cache. Load the cache without holding
     // RaftLog's lock.
+    cacheMissCounter.inc();
     checkAndEvictCache();
-    return segment.loadCache(recordAndEntry.getRecord());
+    try(Timer.Context ignored = segmentLoadTimer.time()) {
+      return segment.loadCache(recordAndEntry.getRecord());
+    }
   }
 
   @Override
   public EntryWithData getEntryWithData(long index) throws RaftLogIOException {
-    final LogEntryProto entry = get(index);
+    return toEntryWithData(get(index));
+  }
+
+  /**
+   * The entries of a closed segment not in the cache are read as ranges from its mapped file,
+   * so that the mapping is looked up and locked once for each range; see {@link MappedSegmentReader}.
+   * A range has at most {@link #MAPPED_READ_RANGE} entries
+   * so that only a few entries are decoded in vain when the consumer stops.
+   */
+  @Override
+  public void getEntriesWithData(long startIndex, long endIndex, Predicate<EntryWithData> consumer)
+      throws RaftLogIOException {
+    for(long i = startIndex; i < endIndex; ) {
+      final List<LogEntryProto> mapped = readMapped(i, Math.min(endIndex, i + MAPPED_READ_RANGE));
+      if (mapped == null || mapped.isEmpty()) {
+        if (!consumer.test(getEntryWithData(i++))) {
+          return;
+        }
+        continue;
+      }
+      for(LogEntryProto entry : mapped) {
+        if (!consumer.test(toEntryWithData(entry))) {
+          return;
+        }
+      }
+      i += mapped.size();
+    }
+  }
+
+  /**
+   * @return the entries in [startIndex, endIndex) of a closed segment read from its mapped file,
+   *         or null if the entry at startIndex is cached or it is not in a closed segment.
+   */
+  private List<LogEntryProto> readMapped(long startIndex, long endIndex) throws RaftLogIOException {
+    checkLogState();
+    final LogSegment segment;
+    try (AutoCloseableLock readLock = readLock()) {
+      segment = cache.getSegment(startIndex);
+      if (segment == null || segment.isOpen()) {
+        return null;
+      }
+      final LogRecordWithEntry first = segment.getEntryWithoutLoading(startIndex);
+      if (first == null || first.hasEntry()) {
+        return null;
+      }
+    }
+
+    final List<LogEntryProto> entries = segment.readMapped(startIndex, Math.min(endIndex, segment.getEndIndex() + 1));
+    if (entries != null) {
+      cacheMissCounter.inc(entries.size());
+    }
+    return entries;
+  }
+
+  private EntryWithData toEntryWithData(LogEntryProto entry) throws RaftLogIOException {
     if (!ServerProtoUtils.shouldReadStateMachineData(entry)) {
       return new EntryWithData(entry, null);
     }
@@ -214,13 +376,44 @@ public class SegmentedRaftLog extends RaftLog {
     }
   }
 
-  private void checkAndEvictCache() {
+  /** Evict the cache in the background, or evict it directly if there is no scheduler. */
+  void checkAndEvictCache() {
     if (server.isPresent() && cache.shouldEvict()) {
       // TODO if the cache is hitting the maximum size and we cannot evict any
       // segment's cache, should block the new entry appending or new segment
       // allocation.
-      final RaftServerImpl s = server.get();
-      cache.evictCache(s.getFollowerNextIndices(), fileLogWorker.getFlushedIndex(), s.getState().getLastAppliedIndex());
+      if (evictionScheduler == null) {
+        evictCache();
+      } else if (evictionScheduled.compareAndSet(false, true)) {
+        evictionScheduler.onTimeout(TimeDuration.valueOf(0, TimeUnit.MILLISECONDS), () -> {
+          evictionScheduled.set(false);
+          try (AutoCloseableLock readLock = readLock()) {
+            if (isOpened()) {
+              evictCache();
+            }
+          }
+        }, LOG, () -> getSelfId() + ": Failed to evict cache");
+      }
+    }
+  }
+
+  private void evictCache() {
+    final Reason reason = cache.getEvictionReason();
+    if (reason == null) {
+      return;
+    }
+    final RaftServerImpl s = server.get();
+    final int evicted = cache.evictCache(reason,
+        s.getFollowerNextIndices(), fileLogWorker.getFlushedIndex(), s.getState().getLastAppliedIndex());
+    cacheEvictionCounter.inc(evicted);
+    cacheEvictionReasonCounters.get(reason).inc(evicted);
+  }
+
+  @Override
+  public long getSizeFrom(long index) {
+    checkLogState();
+    try(AutoCloseableLock readLock = readLock()) {
+      return cache.getSizeFrom(index);
     }
   }
 
@@ -275,6 +468,13 @@ public class SegmentedRaftLog extends RaftLog {
     }
     try(AutoCloseableLock writeLock = writeLock()) {
       validateLogEntry(entry);
+      return appendEntryToSegment(entry);
+    }
+  }
+
+  /** Append the given entry, which is already validated, to the open segment. */
+  private CompletableFuture<Long> appendEntryToSegment(LogEntryProto entry) {
+    try(AutoCloseableLock writeLock = writeLock()) {
       final LogSegment currentOpenSegment = cache.getOpenSegment();
       if (currentOpenSegment == null) {
         cache.addOpenSegment(entry.getIndex());
@@ -389,12 +589,29 @@ public class SegmentedRaftLog extends RaftLog {
   @Override
   public void syncWithSnapshot(long lastSnapshotIndex) {
     fileLogWorker.syncWithSnapshot(lastSnapshotIndex);
-    // TODO purge log files and normal/tmp/corrupt snapshot files
+    // The segments included in the snapshot are purged by the StateMachineUpdater
+    // once the snapshot is loaded, if purge is enabled.
+    // TODO purge normal/tmp/corrupt snapshot files
     // if the last index in snapshot is larger than the index of the last
     // log entry, we should delete all the log entries and their cache to avoid
     // gaps between log segments.
   }
 
+  @Override
+  public CompletableFuture<Long> purge(long suggestedIndex) {
+    checkLogState();
+    try(AutoCloseableLock writeLock = writeLock()) {
+      final List<SegmentFileInfo> purged = cache.purge(suggestedIndex);
+      if (purged.isEmpty()) {
+        return CompletableFuture.completedFuture(getStartIndex());
+      }
+      final long startIndex = getStartIndex();
+      LOG.info("{}: purge {} segments up to index {}, new start index {}",
+          getSelfId(), purged.size(), suggestedIndex, startIndex);
+      return fileLogWorker.purge(purged).getFuture().thenApply(endIndex -> startIndex);
+    }
+  }
+
   @Override
   public boolean isConfigEntry(TermIndex ti) {
     return cache.isConfigEntry(ti);
@@ -402,6 +619,7 @@ public class SegmentedRaftLog extends RaftLog {
 
   @Override
   public void close() throws IOException {
+    Optional.ofNullable(cache.getHeapPressureMonitor()).ifPresent(m -> m.removeListener(heapPressureListener));
     try(AutoCloseableLock writeLock = writeLock()) {
       super.close();
       cache.clear();
@@ -0,0 +1,466 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.storage;
+
+import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.proto.RaftProtos.LogEntryProto;
+import org.apache.ratis.proto.RaftProtos.SharedLogRecordProto;
+import org.apache.ratis.protocol.AlreadyClosedException;
+import org.apache.ratis.protocol.RaftGroupId;
+import org.apache.ratis.server.RaftServerConfigKeys;
+import org.apache.ratis.util.Daemon;
+import org.apache.ratis.util.FileUtils;
+import org.apache.ratis.util.IOUtils;
+import org.apache.ratis.util.JavaUtils;
+import org.apache.ratis.util.Preconditions;
+import org.apache.ratis.util.ProtoUtils;
+import org.apache.ratis.util.PureJavaCrc32C;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * A write-ahead log shared by all the groups in a server using the same storage directory.
+ *
+ * The {@link RaftLogWorker}s of the groups append their entries to a journal,
+ * which is synced once for each batch of appends from many groups.
+ * The entries are also written to the segment files of the groups but the segment files are not synced,
+ * so that N groups issue one sync instead of N syncs.
+ *
+ * The journal is a sequence of files named "journal_<seq>".
+ * A journal file can be deleted once every group which has appended to it
+ * has synced its segment files after the journal rolled over the file;
+ * see {@link Member#needsSync()}.
+ * When a group is opened, the entries in the journal but missing in its segment files are replayed.
+ *
+ * Journal file format: a header followed by the records, where each record is
+ *   (1) 4-byte length n of the serialized {@link SharedLogRecordProto},
+ *   (2) the serialized record,
+ *   (3) 4-byte checksum of the serialized record.
+ */
+public class SharedWriteAheadLog implements Closeable {
+  public static final Logger LOG = LoggerFactory.getLogger(SharedWriteAheadLog.class);
+
+  public static final String DIR_NAME = "shared-wal";
+  static final String FILE_PREFIX = "journal_";
+  static final Pattern FILE_REGEX = Pattern.compile(FILE_PREFIX + "(\\d+)");
+  private static final byte[] HEADER = "RaftSharedLog1".getBytes(StandardCharsets.UTF_8);
+
+  /** The records appended by a member, to be synced in a batch. */
+  private static class PendingAppend {
+    private final Member member;
+    private final List<SharedLogRecordProto> records;
+    private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+    PendingAppend(Member member, List<SharedLogRecordProto> records) {
+      this.member = member;
+      this.records = records;
+    }
+  }
+
+  /** A group using this shared log. */
+  public static class Member {
+    private final SharedWriteAheadLog log;
+    private final RaftGroupId groupId;
+    /** The largest seq of the journal files containing a record of this member. */
+    private volatile long lastAppendedSeq;
+    /** The segment files are synced after the journal has rolled over the files with seq < syncedSeq. */
+    private volatile long syncedSeq;
+    private volatile boolean closed = false;
+
+    private Member(SharedWriteAheadLog log, RaftGroupId groupId, long lastAppendedSeq, long syncedSeq) {
+      this.log = log;
+      this.groupId = groupId;
+      this.lastAppendedSeq = lastAppendedSeq;
+      this.syncedSeq = syncedSeq;
+    }
+
+    /** Append the given entries; the returned future is completed once the entries are synced. */
+    CompletableFuture<Void> append(List<LogEntryProto> entries) {
+      return log.append(this, entries.stream().map(this::toRecord).collect(Collectors.toList()));
+    }
+
+    /** Record a truncation; the entries with index >= the given index will not be replayed. */
+    CompletableFuture<Void> truncate(long index) {
+      return log.append(this, Collections.singletonList(newRecordBuilder().setTruncateIndex(index).build()));
+    }
+
+    private SharedLogRecordProto.Builder newRecordBuilder() {
+      return SharedLogRecordProto.newBuilder().setGroupId(ProtoUtils.toRaftGroupIdProtoBuilder(groupId));
+    }
+
+    private SharedLogRecordProto toRecord(LogEntryProto entry) {
+      return newRecordBuilder().setLogEntry(entry).build();
+    }
+
+    /** @return the entries in the journal starting from the given index. */
+    List<LogEntryProto> getEntriesToReplay(long fromIndex) {
+      return getEntries(log.removeRecovered(groupId), fromIndex);
+    }
+
+    long getCurrentSeq() {
+      return log.currentSeq;
+    }
+
+    /**
+     * Does this member need to sync its segment files?
+     * It is true when the journal has rolled over a file containing a record of this member
+     * and the member has not yet synced after that.
+     */
+    boolean needsSync() {
+      final long last = lastAppendedSeq;
+      return last >= 0 && last < log.currentSeq && syncedSeq <= last;
+    }
+
+    /** The segment files are synced, where the sync started when the current seq was the given seq. */
+    void synced(long seq) {
+      syncedSeq = Math.max(syncedSeq, seq);
+    }
+
+    /** The segment files are synced and closed. */
+    void close() {
+      closed = true;
+      syncedSeq = Long.MAX_VALUE;
+    }
+
+    @Override
+    public String toString() {
+      return log + ":" + groupId;
+    }
+  }
+
+  private final String name;
+  private final File dir;
+  private final File volume;
+  private final long journalSizeMax;
+  private final int bufferSize;
+
+  private final BlockingQueue<PendingAppend> queue = new LinkedBlockingQueue<>();
+  private final Daemon worker;
+  private volatile boolean running = true;
+
+  private final Map<RaftGroupId, Member> members = new ConcurrentHashMap<>();
+  /** The records read from the existing journal files, to be replayed by the groups. */
+  private final Map<RaftGroupId, List<SharedLogRecordProto>> recovered = new ConcurrentHashMap<>();
+  /** For the journal files recovered, the largest seq containing a record of each group. */
+  private final Map<RaftGroupId, Long> recoveredLastSeqs = new ConcurrentHashMap<>();
+  /** Journal seq -> the groups having appended to the journal file; accessed by the worker only. */
+  private final NavigableMap<Long, Set<RaftGroupId>> writers = new TreeMap<>();
+
+  private volatile long currentSeq;
+  private RandomAccessFile raf;
+  private BufferedWriteChannel out;
+  private final PureJavaCrc32C checksum = new PureJavaCrc32C();
+
+  /** Create a shared log in the given storage directory (volume) and then recover the existing journal files. */
+  public SharedWriteAheadLog(File volume, RaftProperties properties) throws IOException {
+    this.volume = volume;
+    this.dir = new File(volume, DIR_NAME);
+    this.name = getClass().getSimpleName() + "(" + dir + ")";
+    this.journalSizeMax = RaftServerConfigKeys.Log.SharedWal.journalSizeMax(properties).getSize();
+    this.bufferSize = RaftServerConfigKeys.Log.writeBufferSize(properties).getSizeInt();
+
+    FileUtils.createDirectories(dir);
+    long lastSeq = -1;
+    for(Map.Entry<Long, File> e : listJournalFiles(dir).entrySet()) {
+      final long seq = e.getKey();
+      writers.put(seq, readJournal(seq, e.getValue()));
+      lastSeq = seq;
+    }
+    LOG.info("{}: recovered {} journal file(s) with records from {} group(s)",
+        name, writers.size(), recovered.size());
+    startJournal(lastSeq + 1);
+
+    this.worker = new Daemon(this::run);
+    worker.setName(name);
+    worker.start();
+  }
+
+  static NavigableMap<Long, File> listJournalFiles(File dir) {
+    final NavigableMap<Long, File> files = new TreeMap<>();
+    Optional.ofNullable(dir.listFiles()).map(Arrays::stream).ifPresent(s -> s.forEach(f -> {
+      final Matcher m = FILE_REGEX.matcher(f.getName());
+      if (m.matches()) {
+        files.put(Long.parseLong(m.group(1)), f);
+      }
+    }));
+    return files;
+  }
+
+  private File getJournalFile(long seq) {
+    return new File(dir, FILE_PREFIX + seq);
+  }
+
+  /** Read the records in the given journal file; a partially written record at the end is ignored. */
+  private Set<RaftGroupId> readJournal(long seq, File file) throws IOException {
+    final Set<RaftGroupId> groups = new HashSet<>();
+    int count = 0;
+    try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      final byte[] header = new byte[HEADER.length];
+      in.readFully(header);
+      Preconditions.assertTrue(Arrays.equals(HEADER, header), () -> "Invalid header in " + file);
+      for(;; count++) {
+        final byte[] bytes;
+        try {
+          final int length = in.readInt();
+          if (length <= 0) {
+            break;
+          }
+          bytes = new byte[length];
+          in.readFully(bytes);
+          final int sum = in.readInt();
+          checksum.reset();
+          checksum.update(bytes, 0, bytes.length);
+          if (sum != (int) checksum.getValue()) {
+            LOG.warn("{}: checksum mismatched for record #{} in {}, ignoring the remaining", name, count, file);
+            break;
+          }
+        } catch (EOFException e) {
+          break;
+        }
+        final SharedLogRecordProto record = SharedLogRecordProto.parseFrom(bytes);
+        final RaftGroupId groupId = RaftGroupId.valueOf(record.getGroupId().getId());
+        recovered.computeIfAbsent(groupId, k -> new ArrayList<>()).add(record);
+        recoveredLastSeqs.put(groupId, seq);
+        groups.add(groupId);
+      }
+    } catch (EOFException e) {
+      LOG.warn("{}: incomplete header in {}", name, file);
+    }
+    LOG.info("{}: read {} record(s) from {}", name, count, file);
+    return groups;
+  }
+
+  private void startJournal(long seq) throws IOException {
+    final File file = getJournalFile(seq);
+    Preconditions.assertTrue(!file.exists(), () -> "Journal file " + file + " already exists");
+    raf = new RandomAccessFile(file, "rw");
+    out = new BufferedWriteChannel(raf.getChannel(), bufferSize);
+    out.write(HEADER);
+    out.flush(true);
+    writers.put(seq, new HashSet<>());
+    currentSeq = seq;
+    LOG.info("{}: started journal file {}", name, file);
+  }
+
+  private void closeJournal() {
+    IOUtils.cleanup(LOG, out, raf);
+    out = null;
+    raf = null;
+  }
+
+  /** Register the given group as a member of this log. */
+  public Member register(RaftGroupId groupId) {
+    return members.compute(groupId, (id, previous) -> {
+      if (previous == null) {
+        return new Member(this, id, recoveredLastSeqs.getOrDefault(id, -1L), -1);
+      }
+      Preconditions.assertTrue(previous.closed, () -> previous + " is already registered");
+      // the previous member has synced all its records when it was closed
+      return new Member(this, id, previous.lastAppendedSeq, currentSeq);
+    });
+  }
+
+  private List<SharedLogRecordProto> removeRecovered(RaftGroupId groupId) {
+    return Optional.ofNullable(recovered.remove(groupId)).orElse(Collections.emptyList());
+  }
+
+  /**
+   * Apply the given records in order.
+   *
+   * @return the entries starting from the given index.
+   */
+  static List<LogEntryProto> getEntries(List<SharedLogRecordProto> records, long fromIndex) {
+    final NavigableMap<Long, LogEntryProto> entries = new TreeMap<>();
+    for(SharedLogRecordProto r : records) {
+      if (r.hasLogEntry()) {
+        final long index = r.getLogEntry().getIndex();
+        // appending an entry replaces the entry and removes all the entries after it
+        entries.tailMap(index, true).clear();
+        entries.put(index, r.getLogEntry());
+      } else {
+        entries.tailMap(r.getTruncateIndex(), true).clear();
+      }
+    }
+
+    final List<LogEntryProto> list = new ArrayList<>();
+    long next = fromIndex;
+    for(LogEntryProto e : entries.tailMap(fromIndex, true).values()) {
+      if (e.getIndex() != next) {
+        break;
+      }
+      list.add(e);
+      next++;
+    }
+    return list;
+  }
+
+  private CompletableFuture<Void> append(Member member, List<SharedLogRecordProto> records) {
+    final PendingAppend pending = new PendingAppend(member, records);
+    if (!running) {
+      return JavaUtils.completeExceptionally(new AlreadyClosedException(name + " is already closed"));
+    }
+    queue.offer(pending);
+    if (!running && queue.remove(pending)) {
+      // the worker may have exited before the offer
+      pending.future.completeExceptionally(new AlreadyClosedException(name + " is already closed"));
+    }
+    return pending.future;
+  }
+
+  private void run() {
+    final List<PendingAppend> batch = new ArrayList<>();
+    while (running) {
+      try {
+        final PendingAppend first = queue.poll(1, TimeUnit.SECONDS);
+        if (first != null) {
+          batch.add(first);
+          queue.drainTo(batch);
+          writeBatch(batch);
+          batch.clear();
+          if (out.position() >= journalSizeMax) {
+            roll();
+          }
+        }
+        deleteObsoleteFiles();
+      } catch (InterruptedException e) {
+        if (running) {
+          LOG.warn("{} got interrupted while still running", name);
+        }
+        Thread.currentThread().interrupt();
+        break;
+      } catch (Throwable t) {
+        LOG.error(name + ": failed to write " + batch.size() + " append(s)", t);
+        batch.forEach(p -> p.future.completeExceptionally(t));
+        batch.clear();
+      }
+    }
+    final AlreadyClosedException e = new AlreadyClosedException(name + " is closed");
+    batch.forEach(p -> p.future.completeExceptionally(e));
+    queue.forEach(p -> p.future.completeExceptionally(e));
+  }
+
+  /** Write all the records in the batch and then sync once. */
+  private void writeBatch(List<PendingAppend> batch) throws IOException {
+    final Set<RaftGroupId> current = writers.get(currentSeq);
+    for(PendingAppend p : batch) {
+      for(SharedLogRecordProto r : p.records) {
+        write(r);
+      }
+      p.member.lastAppendedSeq = currentSeq;
+      current.add(p.member.groupId);
+    }
+    out.flush(true);
+    LOG.debug("{}: synced {} append(s)", name, batch.size());
+    batch.forEach(p -> p.future.complete(null));
+  }
+
+  private void write(SharedLogRecordProto record) throws IOException {
+    final byte[] bytes = record.toByteArray();
+    checksum.reset();
+    checksum.update(bytes, 0, bytes.length);
+    final ByteBuffer buffer = ByteBuffer.allocate(bytes.length + 8);
+    buffer.putInt(bytes.length).put(bytes).putInt((int) checksum.getValue());
+    buffer.flip();
+    out.write(buffer);
+  }
+
+  private void roll() throws IOException {
+    closeJournal();
+    startJournal(currentSeq + 1);
+  }
+
+  /** Delete the journal files whose records have been synced to the segment files of all the groups. */
+  private void deleteObsoleteFiles() {
+    for(Iterator<Map.Entry<Long, Set<RaftGroupId>>> i = writers.entrySet().iterator(); i.hasNext(); ) {
+      final Map.Entry<Long, Set<RaftGroupId>> e = i.next();
+      final long seq = e.getKey();
+      if (seq >= currentSeq) {
+        return;
+      }
+      if (!e.getValue().stream().allMatch(groupId -> isSynced(groupId, seq))) {
+        return;
+      }
+      final File file = getJournalFile(seq);
+      try {
+        FileUtils.deleteFile(file);
+        LOG.info("{}: deleted journal file {}", name, file);
+      } catch (IOException ex) {
+        LOG.warn(name + ": failed to delete journal file " + file, ex);
+        return;
+      }
+      i.remove();
+    }
+  }
+
+  private boolean isSynced(RaftGroupId groupId, long seq) {
+    final Member m = members.get(groupId);
+    if (m != null) {
+      return m.syncedSeq > seq;
+    }
+    // the group is not yet opened; its records are not needed only if its directory is removed
+    return !new File(volume, groupId.getUuid().toString()).exists();
+  }
+
+  @Override
+  public void close() {
+    running = false;
+    worker.interrupt();
+    try {
+      worker.join(3000);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    closeJournal();
+    LOG.info("{} closed", name);
+  }
+
+  @Override
+  public String toString() {
+    return name;
+  }
+}
@@ -18,9 +18,11 @@
 package org.apache.ratis.server.storage;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
 
 import org.apache.ratis.io.MD5Hash;
 import org.apache.ratis.protocol.RaftPeerId;
@@ -31,7 +33,6 @@ import org.apache.ratis.statemachine.StateMachine;
 import org.apache.ratis.util.FileUtils;
 import org.apache.ratis.util.IOUtils;
 import org.apache.ratis.util.MD5FileUtil;
-import org.apache.ratis.util.Preconditions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -43,92 +44,167 @@ import org.slf4j.LoggerFactory;
 public class SnapshotManager {
   private static final Logger LOG = LoggerFactory.getLogger(SnapshotManager.class);
 
-  private final RaftStorage storage;
-  private final RaftPeerId selfId;
-
-  public SnapshotManager(RaftStorage storage, RaftPeerId selfId)
-      throws IOException {
-    this.storage = storage;
-    this.selfId = selfId;
-  }
-
-  public void installSnapshot(StateMachine stateMachine,
-      InstallSnapshotRequestProto request) throws IOException {
-    final long lastIncludedIndex = request.getTermIndex().getIndex();
-    final RaftStorageDirectory dir = storage.getStorageDir();
-
-    File tmpDir = dir.getNewTempDir();
-    FileUtils.createDirectories(tmpDir);
-    tmpDir.deleteOnExit();
+  /**
+   * A snapshot installation, which spans over the requests with the same requestId.
+   * The requests must arrive in order.
+   * The file being written is kept open across the chunks
+   * and its digest is computed as the data arrive.
+   */
+  private static class Installation {
+    private final String requestId;
+    private final File tmpDir;
+    private int nextRequestIndex = 0;
 
-    LOG.info("Installing snapshot:{}, to tmp dir:{}", request, tmpDir);
+    private File file;
+    private FileChannel out;
+    private MessageDigest digester;
+    private long nextOffset;
 
-    // TODO: Make sure that subsequent requests for the same installSnapshot are coming in order,
-    // and are not lost when whole request cycle is done. Check requestId and requestIndex here
+    Installation(String requestId, File tmpDir) {
+      this.requestId = requestId;
+      this.tmpDir = tmpDir;
+    }
 
-    for (FileChunkProto chunk : request.getFileChunksList()) {
-      SnapshotInfo pi = stateMachine.getLatestSnapshot();
-      if (pi != null && pi.getTermIndex().getIndex() >= lastIncludedIndex) {
-        throw new IOException("There exists snapshot file "
-            + pi.getFiles() + " in " + selfId
-            + " with endIndex >= lastIncludedIndex " + lastIncludedIndex);
+    void write(FileChunkProto chunk, File tmpSnapshotFile) throws IOException {
+      if (chunk.getOffset() == 0) {
+        closeFile();
+        // delete any existing temp snapshot file
+        if (tmpSnapshotFile.exists()) {
+          FileUtils.deleteFully(tmpSnapshotFile);
+        }
+        file = tmpSnapshotFile;
+        out = FileChannel.open(file.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        digester = MD5Hash.newDigester();
+        nextOffset = 0;
+      } else if (!tmpSnapshotFile.equals(file) || chunk.getOffset() != nextOffset) {
+        throw new IOException("Unexpected chunk " + chunk.getChunkIndex() + " of " + tmpSnapshotFile
+            + " at offset " + chunk.getOffset() + ", expected offset " + nextOffset + " of " + file);
       }
 
-      String fileName = chunk.getFilename(); // this is relative to the root dir
-      // TODO: assumes flat layout inside SM dir
-      File tmpSnapshotFile = new File(tmpDir,
-          new File(dir.getRoot(), fileName).getName());
-
-      FileOutputStream out = null;
-      try {
-        // if offset is 0, delete any existing temp snapshot file if it has the
-        // same last index.
-        if (chunk.getOffset() == 0) {
-          if (tmpSnapshotFile.exists()) {
-            FileUtils.deleteFully(tmpSnapshotFile);
-          }
-          // create the temp snapshot file and put padding inside
-          out = new FileOutputStream(tmpSnapshotFile);
-        } else {
-          Preconditions.assertTrue(tmpSnapshotFile.exists());
-          out = new FileOutputStream(tmpSnapshotFile, true);
-          FileChannel fc = out.getChannel();
-          fc.position(chunk.getOffset());
+      // write data to the file
+      for (ByteBuffer buffer : chunk.getData().asReadOnlyByteBufferList()) {
+        digester.update(buffer.duplicate());
+        while (buffer.hasRemaining()) {
+          out.write(buffer);
         }
-
-        // write data to the file
-        out.write(chunk.getData().toByteArray());
-      } finally {
-        IOUtils.cleanup(null, out);
       }
+      nextOffset += chunk.getData().size();
 
-      // rename the temp snapshot file if this is the last chunk. also verify
-      // the md5 digest and create the md5 meta-file.
+      // verify the md5 digest and create the md5 meta-file if this is the last chunk.
       if (chunk.getDone()) {
-        final MD5Hash expectedDigest =
-            new MD5Hash(chunk.getFileDigest().toByteArray());
-        // calculate the checksum of the snapshot file and compare it with the
-        // file digest in the request
-        MD5Hash digest = MD5FileUtil.computeMd5ForFile(tmpSnapshotFile);
+        out.force(false);
+        closeFile();
+        final MD5Hash expectedDigest = new MD5Hash(chunk.getFileDigest().toByteArray());
+        final MD5Hash digest = new MD5Hash(digester.digest());
         if (!digest.equals(expectedDigest)) {
           LOG.warn("The snapshot md5 digest {} does not match expected {}",
               digest, expectedDigest);
           // rename the temp snapshot file to .corrupt
 //          NativeIO.renameTo(tmpSnapshotFile, // TODO:
 //              dir.getCorruptSnapshotFile(lastIncludedTerm, lastIncludedIndex));
-          throw new IOException("MD5 mismatch for snapshot-" + lastIncludedIndex
-              + " installation");
+          throw new IOException("MD5 mismatch for snapshot file " + tmpSnapshotFile);
         } else {
           MD5FileUtil.saveMD5File(tmpSnapshotFile, digest);
         }
       }
     }
 
+    void closeFile() {
+      IOUtils.cleanup(LOG, out);
+      out = null;
+    }
+  }
+
+  private final RaftStorage storage;
+  private final RaftPeerId selfId;
+  /** The installation in progress, if there is any. */
+  private Installation installation;
+
+  public SnapshotManager(RaftStorage storage, RaftPeerId selfId)
+      throws IOException {
+    this.storage = storage;
+    this.selfId = selfId;
+  }
+
+  /**
+   * Install the chunks in the given request.
+   *
+   * @return true if the request is accepted;
+   *         otherwise, the request does not continue the installation in progress,
+   *         e.g. this server has restarted, so that the installation has to start over.
+   */
+  public synchronized boolean installSnapshot(StateMachine stateMachine,
+      InstallSnapshotRequestProto request) throws IOException {
+    final long lastIncludedIndex = request.getTermIndex().getIndex();
+    final RaftStorageDirectory dir = storage.getStorageDir();
+
+    SnapshotInfo pi = stateMachine.getLatestSnapshot();
+    if (pi != null && pi.getTermIndex().getIndex() >= lastIncludedIndex) {
+      throw new IOException("There exists snapshot file "
+          + pi.getFiles() + " in " + selfId
+          + " with endIndex >= lastIncludedIndex " + lastIncludedIndex);
+    }
+
+    if (installation == null || !installation.requestId.equals(request.getRequestId())) {
+      if (request.getRequestIndex() != 0) {
+        LOG.warn("{}: Installation {} not found for request #{}",
+            selfId, request.getRequestId(), request.getRequestIndex());
+        return false;
+      }
+      abort();
+      final File tmpDir = dir.getNewTempDir();
+      FileUtils.createDirectories(tmpDir);
+      tmpDir.deleteOnExit();
+      installation = new Installation(request.getRequestId(), tmpDir);
+      LOG.info("Installing snapshot:{}, to tmp dir:{}", request, tmpDir);
+    }
+
+    final int requestIndex = request.getRequestIndex();
+    if (requestIndex < installation.nextRequestIndex) {
+      // the leader has resumed the installation from an earlier request
+      LOG.debug("{}: Skip the installed request #{} of {}", selfId, requestIndex, installation.requestId);
+      return true;
+    } else if (requestIndex > installation.nextRequestIndex) {
+      LOG.warn("{}: Request #{} of {} is out of order, expected #{}",
+          selfId, requestIndex, installation.requestId, installation.nextRequestIndex);
+      return false;
+    }
+
+    try {
+      for (FileChunkProto chunk : request.getFileChunksList()) {
+        String fileName = chunk.getFilename(); // this is relative to the root dir
+        // TODO: assumes flat layout inside SM dir
+        File tmpSnapshotFile = new File(installation.tmpDir,
+            new File(dir.getRoot(), fileName).getName());
+        installation.write(chunk, tmpSnapshotFile);
+      }
+    } catch (IOException e) {
+      abort();
+      throw e;
+    }
+    installation.nextRequestIndex++;
+
     if (request.getDone()) {
+      final File tmpDir = installation.tmpDir;
+      installation = null;
       LOG.info("Install snapshot is done, renaming tnp dir:{} to:{}",
           tmpDir, dir.getStateMachineDir());
       dir.getStateMachineDir().delete();
       tmpDir.renameTo(dir.getStateMachineDir());
     }
+    return true;
+  }
+
+  /** Abort the installation in progress, if there is any. */
+  private void abort() {
+    if (installation != null) {
+      installation.closeFile();
+      try {
+        FileUtils.deleteFully(installation.tmpDir);
+      } catch (IOException e) {
+        LOG.warn(selfId + ": Failed to delete " + installation.tmpDir, e);
+      }
+      installation = null;
+    }
   }
 }
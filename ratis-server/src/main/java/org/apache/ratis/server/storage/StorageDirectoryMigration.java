@@ -0,0 +1,222 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.storage;
+
+import org.apache.ratis.util.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Migrate a group directory from a {@link StorageVolume} to another in two phases.
+ * <ol>
+ *   <li>{@link #copy()}, while the group is running, copies all the files.
+ *       Most of them, the closed log segments and the snapshots, do not change afterward.</li>
+ *   <li>{@link #finish()}, after the group is shut down, copies the files changed since the first phase,
+ *       such as the open log segment and the metadata files, syncs the copy
+ *       and then switches the group directory to the target volume.</li>
+ * </ol>
+ * The copy is made in the {@link StorageVolume#MIGRATION_DIR_NAME} directory of the target volume.
+ * Before the switch, the source is moved to the {@link StorageVolume#MIGRATION_DIR_NAME} directory
+ * of the source volume, so that {@link #recover(Collection)} can complete an interrupted migration.
+ */
+public class StorageDirectoryMigration {
+  static final Logger LOG = LoggerFactory.getLogger(StorageDirectoryMigration.class);
+
+  /** The files modified within this time before the first phase are copied again in the second phase. */
+  private static final long MODIFICATION_TIME_GRANULARITY_MS = 2000;
+
+  private final File source;
+  private final File target;
+  /** The copy in the target volume. */
+  private final File copy;
+  /** The source moved out of the way before the switch. */
+  private final File retired;
+
+  private long copyStartTime = Long.MIN_VALUE;
+  /** Has the copy been moved to the target? */
+  private boolean switched = false;
+
+  public StorageDirectoryMigration(File source, StorageVolume targetVolume) {
+    this.source = source.getAbsoluteFile();
+    final String name = source.getName();
+    this.target = targetVolume.getGroupDir(name);
+    this.copy = new File(targetVolume.getMigrationDir(), name);
+    this.retired = new File(new File(this.source.getParentFile(), StorageVolume.MIGRATION_DIR_NAME), name);
+  }
+
+  public File getTarget() {
+    return target;
+  }
+
+  /** The first phase: copy all the files while the group is still running. */
+  public void copy() throws IOException {
+    if (target.exists()) {
+      throw new IOException("Failed to migrate " + source + ": " + target + " already exists");
+    }
+    FileUtils.deleteFully(copy);
+    FileUtils.createDirectories(copy);
+    copyStartTime = System.currentTimeMillis();
+    final int n = copyFiles(Long.MAX_VALUE);
+    LOG.info("Copied {} files from {} to {}", n, source, copy);
+  }
+
+  /** The second phase: copy the changed files, sync the copy and switch, after the group is shut down. */
+  public void finish() throws IOException {
+    final int n = copyFiles(copyStartTime - MODIFICATION_TIME_GRANULARITY_MS);
+    final int deleted = deleteRemovedFiles();
+    LOG.info("Copied {} changed files and deleted {} removed files from {} to {}", n, deleted, source, copy);
+    for(Path p : listFiles(copy.toPath())) {
+      try(FileChannel channel = FileChannel.open(p, StandardOpenOption.WRITE)) {
+        channel.force(true);
+      }
+    }
+
+    FileUtils.createDirectories(retired.getParentFile());
+    FileUtils.move(source, retired);
+    FileUtils.move(copy, target);
+    switched = true;
+    FileUtils.deleteFully(retired);
+    LOG.info("Migrated {} to {}", source, target);
+  }
+
+  /**
+   * Abort this migration after a failure in {@link #copy()} or {@link #finish()}, when the group is not running.
+   * The source is moved back if it has been retired, and then the copy and the target are deleted.
+   */
+  public void abort() throws IOException {
+    if (!source.exists() && retired.exists()) {
+      FileUtils.move(retired, source);
+    }
+    if (!source.exists()) {
+      throw new IOException("Failed to abort the migration: " + source + " does not exist");
+    }
+    if (switched) {
+      FileUtils.deleteFully(target);
+    }
+    FileUtils.deleteFully(copy);
+    LOG.info("Aborted the migration of {} to {}", source, target);
+  }
+
+  /**
+   * Copy the files in the source which do not exist in the copy,
+   * have a different size or have been modified since the given time.
+   *
+   * @return the number of files copied.
+   */
+  private int copyFiles(long modifiedSince) throws IOException {
+    final Path from = source.toPath();
+    final Path to = copy.toPath();
+    int count = 0;
+    for(Path src : listFiles(from)) {
+      if (src.getFileName().toString().equals(RaftStorageDirectory.STORAGE_FILE_LOCK)) {
+        continue;
+      }
+      final Path dst = to.resolve(from.relativize(src));
+      if (Files.exists(dst) && Files.size(dst) == Files.size(src)
+          && Files.getLastModifiedTime(src).toMillis() < modifiedSince) {
+        continue;
+      }
+      FileUtils.createDirectories(dst.getParent());
+      Files.copy(src, dst, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+      count++;
+    }
+    return count;
+  }
+
+  /** Delete the files in the copy which no longer exist in the source, e.g. the purged log segments. */
+  private int deleteRemovedFiles() throws IOException {
+    final Path from = source.toPath();
+    final Path to = copy.toPath();
+    int count = 0;
+    for(Path dst : listFiles(to)) {
+      if (!Files.exists(from.resolve(to.relativize(dst)))) {
+        FileUtils.delete(dst);
+        count++;
+      }
+    }
+    return count;
+  }
+
+  private static List<Path> listFiles(Path dir) throws IOException {
+    final List<Path> files = new ArrayList<>();
+    Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+        if (attrs.isRegularFile()) {
+          files.add(file);
+        }
+        return FileVisitResult.CONTINUE;
+      }
+    });
+    return files;
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + ":" + source + "->" + target;
+  }
+
+  /**
+   * Recover the migrations interrupted by a failure.
+   * A directory left in a migration directory is either an incomplete copy or a retired source
+   * when the group directory exists in a volume; then, it is deleted.
+   * Otherwise, the failure happened between the two moves in {@link #finish()}, so it is complete
+   * and it is moved back as the group directory.
+   */
+  public static void recover(Collection<File> volumes) throws IOException {
+    for(File volume : volumes) {
+      final File migrationDir = new File(volume, StorageVolume.MIGRATION_DIR_NAME);
+      final File[] leftovers = Optional.ofNullable(migrationDir.listFiles()).orElse(new File[0]);
+      for(File leftover : leftovers) {
+        final String name = leftover.getName();
+        final List<File> existing = volumes.stream()
+            .map(v -> new File(v, name))
+            .filter(File::exists)
+            .collect(Collectors.toList());
+        if (!existing.isEmpty()) {
+          LOG.info("Delete the leftover {} of a migration since {} exists", leftover, existing);
+          FileUtils.deleteFully(leftover);
+        } else {
+          final File dir = new File(volume, name);
+          LOG.info("Recover the interrupted migration of {} to {}", leftover, dir);
+          FileUtils.move(leftover, dir);
+        }
+      }
+      if (Optional.ofNullable(migrationDir.list()).map(Stream::of).map(Stream::count).orElse(-1L) == 0) {
+        FileUtils.deleteFully(migrationDir);
+      }
+    }
+  }
+}
@@ -0,0 +1,189 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.storage;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import org.apache.ratis.metrics.RatisMetricsRegistry;
+import org.apache.ratis.protocol.RaftPeerId;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A storage volume, i.e. one of the configured storage directories of a server.
+ * It measures the write rate and the sync latency of the groups placed on it
+ * so that a new group can be placed on, and an existing group can be migrated to, a less loaded volume.
+ */
+public class StorageVolume {
+  /** The subdirectory holding the group directories being migrated to or from this volume. */
+  public static final String MIGRATION_DIR_NAME = "migration";
+
+  private final File dir;
+  private final String[] metricNames;
+  private final Meter writeBytes;
+  private final Timer syncTime;
+
+  /** Create a volume without registering its metrics, e.g. in unit tests. */
+  public StorageVolume(File dir) {
+    this(null, dir);
+  }
+
+  public StorageVolume(RaftPeerId serverId, File dir) {
+    this.dir = dir.getAbsoluteFile();
+    if (serverId == null) {
+      this.metricNames = new String[0];
+      this.writeBytes = new Meter();
+      this.syncTime = new Timer();
+      return;
+    }
+
+    // the path separators and the dots in the directory path are not valid in a metric name component
+    final String volume = this.dir.getPath().replaceAll("[^A-Za-z0-9_-]", "_");
+    final String writeBytesName = getMetricName(serverId, volume, "write-bytes");
+    final String syncTimeName = getMetricName(serverId, volume, "sync-time");
+    final String usableSpaceName = getMetricName(serverId, volume, "usable-space");
+    this.metricNames = new String[]{writeBytesName, syncTimeName, usableSpaceName};
+
+    final MetricRegistry registry = RatisMetricsRegistry.getRegistry();
+    this.writeBytes = registry.meter(writeBytesName);
+    this.syncTime = registry.timer(syncTimeName);
+    registry.remove(usableSpaceName);
+    registry.register(usableSpaceName, (Gauge<Long>) this::getUsableSpace);
+  }
+
+  private static String getMetricName(RaftPeerId serverId, String volume, String name) {
+    return MetricRegistry.name(StorageVolume.class, serverId.toString(), volume, name);
+  }
+
+  public File getDir() {
+    return dir;
+  }
+
+  /** @return the directory of the given group in this volume. */
+  public File getGroupDir(String groupDirName) {
+    return new File(dir, groupDirName);
+  }
+
+  File getMigrationDir() {
+    return new File(dir, MIGRATION_DIR_NAME);
+  }
+
+  /** Record the given number of bytes written to the log. */
+  void onWrite(long numBytes) {
+    writeBytes.mark(numBytes);
+  }
+
+  /** Record the time spent on a log sync. */
+  void onSync(long nanos) {
+    syncTime.update(nanos, TimeUnit.NANOSECONDS);
+  }
+
+  /** @return the one-minute moving average of the bytes written per second. */
+  public double getWriteBytesRate() {
+    return writeBytes.getOneMinuteRate();
+  }
+
+  /** @return the mean sync latency, in nanoseconds, of the recent syncs. */
+  public double getSyncLatency() {
+    return syncTime.getSnapshot().getMean();
+  }
+
+  /** @return the usable space of the volume; the directory may not exist yet. */
+  public long getUsableSpace() {
+    for(File f = dir; f != null; f = f.getParentFile()) {
+      if (f.exists()) {
+        return f.getUsableSpace();
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * @return the number of the group directories in this volume,
+   *         excluding the other subdirectories such as the migration and the shared log directories.
+   */
+  public int getNumGroups() {
+    return (int) Optional.ofNullable(dir.listFiles()).map(Stream::of).orElseGet(Stream::empty)
+        .filter(File::isDirectory)
+        .map(File::getName)
+        .filter(StorageVolume::isGroupDirName)
+        .count();
+  }
+
+  /** Is the given name a group directory name, i.e. a group id? */
+  static boolean isGroupDirName(String name) {
+    try {
+      UUID.fromString(name);
+      return true;
+    } catch (IllegalArgumentException e) {
+      return false;
+    }
+  }
+
+  /** Remove the metrics of this volume. */
+  public void unregister() {
+    final MetricRegistry registry = RatisMetricsRegistry.getRegistry();
+    for(String name : metricNames) {
+      registry.remove(name);
+    }
+  }
+
+  /**
+   * Choose the least loaded volume.
+   * The load of a volume is the sum of its write rate, its sync latency and its number of groups,
+   * where each of them is divided by its maximum over all the volumes.
+   * The ties are broken by the usable space.
+   * The volumes with usable space less than minFreeSpace are skipped unless all of them are.
+   */
+  public static Optional<StorageVolume> chooseLeastLoaded(Collection<StorageVolume> volumes, long minFreeSpace) {
+    final List<StorageVolume> candidates = volumes.stream()
+        .filter(v -> v.getUsableSpace() >= minFreeSpace)
+        .collect(Collectors.toList());
+    final Collection<StorageVolume> chosen = candidates.isEmpty()? volumes: candidates;
+
+    final double maxRate = chosen.stream().mapToDouble(StorageVolume::getWriteBytesRate).max().orElse(0);
+    final double maxLatency = chosen.stream().mapToDouble(StorageVolume::getSyncLatency).max().orElse(0);
+    final double maxGroups = chosen.stream().mapToInt(StorageVolume::getNumGroups).max().orElse(0);
+    final Comparator<StorageVolume> byLoad = Comparator.comparingDouble(
+        v -> ratio(v.getWriteBytesRate(), maxRate) + ratio(v.getSyncLatency(), maxLatency)
+            + ratio(v.getNumGroups(), maxGroups));
+    return chosen.stream().min(byLoad.thenComparing(
+        Comparator.comparingLong(StorageVolume::getUsableSpace).reversed()));
+  }
+
+  private static double ratio(double value, double max) {
+    return max > 0? value / max: 0;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s(writeBytesRate=%.1f/s, syncLatency=%.3fms, groups=%d, usableSpace=%d)",
+        dir, getWriteBytesRate(), getSyncLatency() / TimeUnit.MILLISECONDS.toNanos(1),
+        getNumGroups(), getUsableSpace());
+  }
+}
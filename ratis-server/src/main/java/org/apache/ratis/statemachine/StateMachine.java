@@ -29,15 +29,19 @@ import org.apache.ratis.server.storage.RaftStorage;
 import org.apache.ratis.proto.RaftProtos.RoleInfoProto;
 import org.apache.ratis.proto.RaftProtos.LogEntryProto;
 import org.apache.ratis.thirdparty.com.google.protobuf.ByteString;
+import org.apache.ratis.util.JavaUtils;
 import org.apache.ratis.util.LifeCycle;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 
 /**
  * StateMachine is the entry point for the custom implementation of replicated state as defined in
@@ -193,6 +197,71 @@ public interface StateMachine extends Closeable {
   // TODO: We do not need to return CompletableFuture
   CompletableFuture<Message> applyTransaction(TransactionContext trx);
 
+  /**
+   * Apply a committed log entry of a batched write request,
+   * see {@link org.apache.ratis.client.RaftClientConfigKeys.Batch}.
+   * This method is called, instead of {@link #applyTransaction(TransactionContext)},
+   * when the state machine log entry has the batch flag set.
+   *
+   * The default implementation calls {@link #applyTransaction(TransactionContext)}
+   * for each message in order on the calling thread, without waiting for the returned futures,
+   * as the updater does for non-batch entries.  Each transaction has a log entry
+   * with the same term and index as the batch but with only the message as the log data.
+   * A state machine may override it in order to apply a batch more efficiently.
+   *
+   * @param trx the transaction of the batch.
+   * @param messages the messages in the batch.
+   * @return a future of the replies, one for each message in the same order.
+   *         As the reply of {@link #applyTransaction(TransactionContext)}, a reply can be null.
+   */
+  default CompletableFuture<List<Message>> applyTransactionBatch(TransactionContext trx, List<Message> messages) {
+    final LogEntryProto batch = trx.getLogEntry();
+    final List<CompletableFuture<Message>> futures = new ArrayList<>(messages.size());
+    for(Message message : messages) {
+      final LogEntryProto entry = batch.toBuilder().setStateMachineLogEntry(
+          batch.getStateMachineLogEntry().toBuilder().setLogData(message.getContent()).setBatch(false)).build();
+      final TransactionContext t = TransactionContext.newBuilder()
+          .setServerRole(trx.getServerRole())
+          .setStateMachine(this)
+          .setLogEntry(entry)
+          .build();
+      futures.add(applyTransaction(t));
+    }
+    return JavaUtils.allOf(futures).thenApply(v -> futures.stream()
+        .map(CompletableFuture::join)
+        .collect(Collectors.toList()));
+  }
+
+  /**
+   * Get the partition key of a committed transaction for the parallel apply mode,
+   * see {@link org.apache.ratis.server.RaftServerConfigKeys.ApplyTransaction}.
+   * The transactions with equal keys are applied in the log order;
+   * the transactions with different keys may be applied in parallel.
+   * This method is called sequentially after {@link #applyTransactionSerial(TransactionContext)}.
+   *
+   * Since the transactions with different keys may complete out of order,
+   * the server tracks the last applied index and notifies it with
+   * {@link #notifyTransactionsApplied(TermIndex)}.
+   * Therefore, {@link #applyTransaction(TransactionContext)} must not update the last applied index
+   * of a transaction with a non-null key; e.g. it must not call
+   * {@link org.apache.ratis.statemachine.impl.BaseStateMachine#updateLastAppliedTermIndex(long, long)}.
+   *
+   * @return the partition key, or null if the transaction may conflict with any other transaction.
+   *         A transaction with a null key is applied only after all the previous transactions
+   *         have completed.
+   */
+  default Object getPartitionKey(TransactionContext trx) {
+    return null;
+  }
+
+  /**
+   * In the parallel apply mode, notify the state machine that all the transactions
+   * up to the given term-index have been applied.
+   * The notifications are in the log order.
+   */
+  default void notifyTransactionsApplied(TermIndex applied) {
+  }
+
   TermIndex getLastAppliedTermIndex();
 
   /**
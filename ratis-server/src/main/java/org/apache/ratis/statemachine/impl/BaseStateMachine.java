@@ -107,6 +107,11 @@ public class BaseStateMachine implements StateMachine {
     lastAppliedTermIndex.set(newTI);
   }
 
+  @Override
+  public void notifyTransactionsApplied(TermIndex applied) {
+    updateLastAppliedTermIndex(applied.getTerm(), applied.getIndex());
+  }
+
   protected boolean updateLastAppliedTermIndex(long term, long index) {
     final TermIndex newTI = TermIndex.newTermIndex(term, index);
     final TermIndex oldTI = lastAppliedTermIndex.getAndSet(newTI);
@@ -331,12 +331,21 @@ public abstract class MiniRaftCluster implements Closeable {
     LOG.info("newRaftServer: {}, {}, format? {}", id, group, format);
     try {
       final File dir = getStorageDir(id);
+      // if the log is separated, use a log directory for each server
+      final File logDir = RaftServerConfigKeys.Log.dirs(properties).isEmpty()? null
+          : new File(rootTestDir.get(), id + "-log");
       if (format) {
         FileUtils.deleteFully(dir);
         LOG.info("Formatted directory {}", dir);
+        if (logDir != null) {
+          FileUtils.deleteFully(logDir);
+        }
       }
       final RaftProperties prop = new RaftProperties(properties);
       RaftServerConfigKeys.setStorageDirs(prop, Collections.singletonList(dir));
+      if (logDir != null) {
+        RaftServerConfigKeys.Log.setDirs(prop, Collections.singletonList(logDir));
+      }
       return newRaftServer(id, getStateMachineRegistry(properties), group, prop);
     } catch (IOException e) {
       throw new RuntimeException(e);
@@ -26,19 +26,25 @@ import org.apache.ratis.conf.RaftProperties;
 import org.apache.ratis.proto.RaftProtos.CommitInfoProto;
 import org.apache.ratis.proto.RaftProtos.LogEntryProto;
 import org.apache.ratis.protocol.AlreadyClosedException;
+import org.apache.ratis.protocol.ClientId;
 import org.apache.ratis.protocol.Message;
 import org.apache.ratis.protocol.RaftClientReply;
+import org.apache.ratis.protocol.RaftClientRequest;
 import org.apache.ratis.protocol.RaftGroup;
 import org.apache.ratis.protocol.RaftPeerId;
 import org.apache.ratis.protocol.RaftRetryFailureException;
 import org.apache.ratis.protocol.StateMachineException;
+import org.apache.ratis.protocol.TimeoutIOException;
 import org.apache.ratis.retry.RetryPolicies;
 import org.apache.ratis.retry.RetryPolicies.RetryLimited;
 import org.apache.ratis.retry.RetryPolicy;
 import org.apache.ratis.server.RaftServerConfigKeys;
 import org.apache.ratis.server.impl.RaftServerImpl;
+import org.apache.ratis.server.impl.RaftServerTestUtil;
+import org.apache.ratis.server.storage.RaftLog;
 import org.apache.ratis.statemachine.SimpleStateMachine4Testing;
 import org.apache.ratis.statemachine.StateMachine;
+import org.apache.ratis.statemachine.TransactionContext;
 import org.apache.ratis.thirdparty.com.google.protobuf.ByteString;
 import org.apache.ratis.thirdparty.com.google.protobuf.InvalidProtocolBufferException;
 import org.apache.ratis.util.JavaUtils;
@@ -56,8 +62,11 @@ import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 import static org.apache.ratis.RaftTestUtil.waitForLeader;
 
@@ -343,6 +352,202 @@ public abstract class RaftAsyncTests<CLUSTER extends MiniRaftCluster> extends Ba
     }
   }
 
+  @Test
+  public void testLinearizableReadAsync() throws Exception {
+    final RaftServerConfigKeys.Read.Option oldOption = RaftServerConfigKeys.Read.option(getProperties());
+    RaftServerConfigKeys.Read.setOption(getProperties(), RaftServerConfigKeys.Read.Option.LINEARIZABLE);
+    runWithNewCluster(NUM_SERVERS, this::runTestLinearizableReadAsync);
+    RaftServerConfigKeys.Read.setOption(getProperties(), oldOption);
+  }
+
+  /** Apply the transactions in a separate thread, so that the apply futures are completed later. */
+  public static class DelayedApplyStateMachine extends SimpleStateMachine4Testing {
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private volatile CompletableFuture<Void> blocked = CompletableFuture.completedFuture(null);
+
+    void blockApply() {
+      blocked = new CompletableFuture<>();
+    }
+
+    void unblockApply() {
+      blocked.complete(null);
+    }
+
+    @Override
+    public CompletableFuture<Message> applyTransaction(TransactionContext trx) {
+      return CompletableFuture.supplyAsync(() -> {
+        try {
+          TimeUnit.MILLISECONDS.sleep(20);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        blocked.join();
+        return super.applyTransaction(trx).join();
+      }, executor);
+    }
+
+    @Override
+    public void close() {
+      executor.shutdown();
+      super.close();
+    }
+  }
+
+  @Test
+  public void testLinearizableReadWithDelayedApply() throws Exception {
+    final RaftServerConfigKeys.Read.Option oldOption = RaftServerConfigKeys.Read.option(getProperties());
+    RaftServerConfigKeys.Read.setOption(getProperties(), RaftServerConfigKeys.Read.Option.LINEARIZABLE);
+    getProperties().setClass(MiniRaftCluster.STATEMACHINE_CLASS_KEY,
+        DelayedApplyStateMachine.class, StateMachine.class);
+    runWithNewCluster(NUM_SERVERS, this::runTestLinearizableReadWithDelayedApply);
+    getProperties().setClass(MiniRaftCluster.STATEMACHINE_CLASS_KEY,
+        SimpleStateMachine4Testing.class, StateMachine.class);
+    RaftServerConfigKeys.Read.setOption(getProperties(), oldOption);
+  }
+
+  void runTestLinearizableReadWithDelayedApply(CLUSTER cluster) throws Exception {
+    final RaftLog log = waitForLeader(cluster).getState().getLog();
+    final int numMesssages = 10;
+    try (RaftClient writer = cluster.createClient(); RaftClient reader = cluster.createClient()) {
+      final long lastIndex = log.getNextIndex() - 1 + numMesssages;
+      for (int i = 0; i < numMesssages; i++) {
+        writer.sendAsync(new SimpleMessage("m" + i));
+      }
+      // the writes are committed but their apply futures may not yet be completed
+      JavaUtils.attempt(() -> log.getLastCommittedIndex() >= lastIndex, 100, 10, "commit " + lastIndex, LOG);
+
+      // a read sent by another client after the commit must see all the writes
+      for (int i = 0; i < numMesssages; i++) {
+        Assert.assertTrue(reader.sendReadOnly(new SimpleMessage("m" + i)).isSuccess());
+      }
+    }
+  }
+
+  @Test
+  public void testLeaderLeaseReadAsync() throws Exception {
+    final RaftServerConfigKeys.Read.Option oldOption = RaftServerConfigKeys.Read.option(getProperties());
+    RaftServerConfigKeys.Read.setOption(getProperties(), RaftServerConfigKeys.Read.Option.LINEARIZABLE);
+    RaftServerConfigKeys.Read.LeaderLease.setEnabled(getProperties(), true);
+    runWithNewCluster(NUM_SERVERS, this::runTestLeaderLeaseReadAsync);
+    RaftServerConfigKeys.Read.LeaderLease.setEnabled(getProperties(), false);
+    RaftServerConfigKeys.Read.setOption(getProperties(), oldOption);
+  }
+
+  void runTestLeaderLeaseReadAsync(CLUSTER cluster) throws Exception {
+    // the counters are shared by the servers with the same id in a JVM
+    final long hitsBefore = getLeaseHitCount(cluster);
+    runTestLinearizableReadAsync(cluster);
+    final long hits = getLeaseHitCount(cluster) - hitsBefore;
+    LOG.info("{} reads are served by the leader lease", hits);
+    Assert.assertTrue("No reads are served by the leader lease", hits > 0);
+  }
+
+  static long getLeaseHitCount(MiniRaftCluster cluster) {
+    return cluster.getServers().stream()
+        .mapToLong(s -> RaftServerTestUtil.getLeaseHitCount(s.getId()))
+        .sum();
+  }
+
+  @Test
+  public void testFollowerReadAsync() throws Exception {
+    RaftServerConfigKeys.Read.setFollowerEnabled(getProperties(), true);
+    runWithNewCluster(NUM_SERVERS, this::runTestFollowerReadAsync);
+    RaftServerConfigKeys.Read.setFollowerEnabled(getProperties(), false);
+  }
+
+  @Test
+  public void testFollowerReadTimeout() throws Exception {
+    final TimeDuration oldTimeout = RaftServerConfigKeys.Read.timeout(getProperties());
+    RaftServerConfigKeys.Read.setFollowerEnabled(getProperties(), true);
+    RaftServerConfigKeys.Read.setTimeout(getProperties(), TimeDuration.valueOf(1, TimeUnit.SECONDS));
+    getProperties().setClass(MiniRaftCluster.STATEMACHINE_CLASS_KEY,
+        DelayedApplyStateMachine.class, StateMachine.class);
+    runWithNewCluster(NUM_SERVERS, this::runTestFollowerReadTimeout);
+    getProperties().setClass(MiniRaftCluster.STATEMACHINE_CLASS_KEY,
+        SimpleStateMachine4Testing.class, StateMachine.class);
+    RaftServerConfigKeys.Read.setTimeout(getProperties(), oldTimeout);
+    RaftServerConfigKeys.Read.setFollowerEnabled(getProperties(), false);
+  }
+
+  void runTestFollowerReadTimeout(CLUSTER cluster) throws Exception {
+    waitForLeader(cluster);
+    final RaftServerImpl follower = cluster.getFollowers().get(0);
+    final DelayedApplyStateMachine stateMachine = (DelayedApplyStateMachine) follower.getStateMachine();
+    try (RaftClient client = cluster.createClient()) {
+      // the follower lags behind since it cannot apply the write
+      stateMachine.blockApply();
+      Assert.assertTrue(client.send(new SimpleMessage("m")).isSuccess());
+
+      final RaftClientRequest read = new RaftClientRequest(ClientId.randomId(), follower.getId(),
+          cluster.getGroupId(), 1, 0, new SimpleMessage("m"), RaftClientRequest.followerReadRequestType());
+      try {
+        follower.submitClientRequestAsync(read).get();
+        Assert.fail("Expected " + TimeoutIOException.class.getSimpleName());
+      } catch (ExecutionException e) {
+        Assert.assertTrue("Unexpected " + e.getCause(), e.getCause() instanceof TimeoutIOException);
+      }
+    } finally {
+      stateMachine.unblockApply();
+    }
+  }
+
+  void runTestFollowerReadAsync(CLUSTER cluster) throws Exception {
+    final int numMesssages = 20;
+    try (RaftClient client = cluster.createClient()) {
+      final RaftPeerId leader = RaftTestUtil.waitForLeader(cluster).getId();
+      final List<RaftPeerId> followers = cluster.getFollowers().stream()
+          .map(RaftServerImpl::getId).collect(Collectors.toList());
+      Assert.assertFalse(followers.contains(leader));
+
+      // once a write has completed, a read from any follower must see it
+      final List<CompletableFuture<Void>> futures = new ArrayList<>();
+      for (int i = 0; i < numMesssages; i++) {
+        final String s = "" + i;
+        final RaftPeerId follower = followers.get(i % followers.size());
+        futures.add(client.sendAsync(new SimpleMessage(s)).thenCompose(writeReply -> {
+          Assert.assertTrue(writeReply.isSuccess());
+          return client.sendReadOnlyAsync(new SimpleMessage(s), follower);
+        }).thenAccept(readReply -> {
+          Assert.assertTrue(readReply.isSuccess());
+          Assert.assertEquals(follower, readReply.getServerId());
+          try {
+            final LogEntryProto entry = LogEntryProto.parseFrom(readReply.getMessage().getContent());
+            Assert.assertEquals(s, entry.getStateMachineLogEntry().getLogData().toStringUtf8());
+          } catch (InvalidProtocolBufferException e) {
+            throw new CompletionException(e);
+          }
+        }));
+      }
+      JavaUtils.allOf(futures).join();
+    }
+  }
+
+  void runTestLinearizableReadAsync(CLUSTER cluster) throws Exception {
+    final int numMesssages = 50;
+    try (RaftClient client = cluster.createClient()) {
+      RaftTestUtil.waitForLeader(cluster);
+
+      // each read is sent after the corresponding write has completed, so that it must see the write
+      final List<CompletableFuture<Void>> futures = new ArrayList<>();
+      for (int i = 0; i < numMesssages; i++) {
+        final String s = "" + i;
+        futures.add(client.sendAsync(new SimpleMessage(s)).thenCompose(writeReply -> {
+          Assert.assertTrue(writeReply.isSuccess());
+          return client.sendReadOnlyAsync(new SimpleMessage(s));
+        }).thenAccept(readReply -> {
+          Assert.assertTrue(readReply.isSuccess());
+          try {
+            final LogEntryProto entry = LogEntryProto.parseFrom(readReply.getMessage().getContent());
+            Assert.assertEquals(s, entry.getStateMachineLogEntry().getLogData().toStringUtf8());
+          } catch (InvalidProtocolBufferException e) {
+            throw new CompletionException(e);
+          }
+        }));
+      }
+      JavaUtils.allOf(futures).join();
+    }
+  }
+
   @Test
   public void testRequestTimeout() throws Exception {
     final TimeDuration oldExpiryTime = RaftServerConfigKeys.RetryCache.expiryTime(getProperties());
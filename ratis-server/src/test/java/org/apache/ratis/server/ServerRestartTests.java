@@ -252,11 +252,12 @@ public abstract class ServerRestartTests<CLUSTER extends MiniRaftCluster>
         leaderId, loggedCommitIndex, ServerProtoUtils.toLogEntryString(lastCommittedEntry));
     Assert.assertTrue(lastCommittedEntry.hasStateMachineLogEntry());
 
-    // check follower logs
+    // check follower logs; the leader may commit before all the followers have caught up.
     for(RaftServerImpl s : cluster.iterateServerImpls()) {
       if (!s.getId().equals(leaderId)) {
         ids.add(s.getId());
-        RaftTestUtil.assertSameLog(leaderLog, s.getState().getLog());
+        JavaUtils.attempt(() -> RaftTestUtil.assertSameLog(leaderLog, s.getState().getLog()),
+            10, sleepTime, s.getId() + "(sameLog)", LOG);
       }
     }
 
@@ -17,8 +17,11 @@
  */
 package org.apache.ratis.server.impl;
 
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
 import org.apache.log4j.Level;
 import org.apache.ratis.MiniRaftCluster;
+import org.apache.ratis.metrics.RatisMetricsRegistry;
 import org.apache.ratis.protocol.ClientId;
 import org.apache.ratis.protocol.RaftGroupId;
 import org.apache.ratis.protocol.RaftPeer;
@@ -108,4 +111,11 @@ public class RaftServerTestUtil {
   public static RaftServerImpl getRaftServerImpl(RaftServerProxy proxy, RaftGroupId groupId) {
     return JavaUtils.callAsUnchecked(() -> proxy.getImpl(groupId));
   }
+
+  /** @return the number of linearizable reads served by the leader lease of the given server. */
+  public static long getLeaseHitCount(RaftPeerId serverId) {
+    final Counter hits = RatisMetricsRegistry.getRegistry().getCounters().get(
+        MetricRegistry.name(LeaderState.class, serverId.toString(), "lease-hit"));
+    return hits == null? 0: hits.getCount();
+  }
 }
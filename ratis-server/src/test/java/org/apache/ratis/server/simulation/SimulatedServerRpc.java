@@ -112,6 +112,14 @@ class SimulatedServerRpc implements RaftServerRpc {
     return reply.getRequestVote();
   }
 
+  @Override
+  public ReadIndexReplyProto readIndex(ReadIndexRequestProto request)
+      throws IOException {
+    RaftServerReply reply = serverHandler.getRpc()
+        .sendRequest(new RaftServerRequest(request));
+    return reply.getReadIndex();
+  }
+
   @Override
   public void addPeers(Iterable<RaftPeer> peers) {
     // do nothing
@@ -138,6 +146,8 @@ class SimulatedServerRpc implements RaftServerRpc {
         return new RaftServerReply(server.requestVote(r.getRequestVote()));
       } else if (r.isInstallSnapshot()) {
         return new RaftServerReply(server.installSnapshot(r.getInstallSnapshot()));
+      } else if (r.isReadIndex()) {
+        return new RaftServerReply(server.readIndex(r.getReadIndex()));
       } else {
         throw new IllegalStateException("unexpected state");
       }
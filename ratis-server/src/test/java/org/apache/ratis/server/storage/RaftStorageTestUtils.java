@@ -18,7 +18,9 @@
 package org.apache.ratis.server.storage;
 
 import org.apache.log4j.Level;
+import org.apache.ratis.protocol.RaftGroupId;
 import org.apache.ratis.protocol.RaftPeerId;
+import org.apache.ratis.server.impl.RaftServerMetrics;
 import org.apache.ratis.server.impl.ServerProtoUtils;
 import org.apache.ratis.server.protocol.TermIndex;
 import org.apache.ratis.proto.RaftProtos;
@@ -32,8 +34,20 @@ public interface RaftStorageTestUtils {
     LogUtils.setLogLevel(RaftLogWorker.LOG, level);
   }
 
-  static String getLogFlushTimeMetric(RaftPeerId serverId) {
-    return RaftLogWorker.class.getName() + "." + serverId + ".flush-time";
+  static String getLogFlushTimeMetric(RaftPeerId serverId, RaftGroupId groupId) {
+    return RaftServerMetrics.getMetricName(RaftLogWorker.class, serverId, groupId, "flush-time");
+  }
+
+  static String getLogSyncTimeMetric(RaftPeerId serverId, RaftGroupId groupId) {
+    return RaftServerMetrics.getMetricName(RaftLogWorker.class, serverId, groupId, "sync-time");
+  }
+
+  static String getGroupCommitBatchSizeMetric(RaftPeerId serverId, RaftGroupId groupId) {
+    return RaftServerMetrics.getMetricName(RaftLogWorker.class, serverId, groupId, "group-commit-batch-size");
+  }
+
+  static String getLogPurgeBytesMetric(RaftPeerId serverId, RaftGroupId groupId) {
+    return RaftServerMetrics.getMetricName(RaftLogWorker.class, serverId, groupId, "purge-bytes");
   }
 
   static void printLog(RaftLog log, Consumer<String> println) {
@@ -0,0 +1,189 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.client.impl;
+
+import org.apache.ratis.BaseTest;
+import org.apache.ratis.client.RaftClientConfigKeys;
+import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.proto.RaftProtos.ReplicationLevel;
+import org.apache.ratis.protocol.AlreadyClosedException;
+import org.apache.ratis.protocol.ClientId;
+import org.apache.ratis.protocol.Message;
+import org.apache.ratis.protocol.NotReplicatedException;
+import org.apache.ratis.protocol.RaftClientReply;
+import org.apache.ratis.protocol.RaftException;
+import org.apache.ratis.protocol.RaftGroupId;
+import org.apache.ratis.protocol.RaftPeerId;
+import org.apache.ratis.util.JavaUtils;
+import org.apache.ratis.util.TimeDuration;
+import org.apache.ratis.util.TimeoutScheduler;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+public class TestRequestBatcher extends BaseTest {
+  static final ClientId CLIENT_ID = ClientId.randomId();
+  static final RaftPeerId SERVER_ID = RaftPeerId.valueOf("s0");
+  static final RaftGroupId GROUP_ID = RaftGroupId.randomId();
+
+  static RaftClientReply newReply(boolean success, Message message, RaftException exception) {
+    return new RaftClientReply(CLIENT_ID, SERVER_ID, GROUP_ID, 1, success, message, exception, 10, null);
+  }
+
+  /** Reply each message of a batch with the message itself. */
+  static RaftClientReply newBatchReply(Message batch) {
+    try {
+      return newReply(true, ClientProtoUtils.toBatchMessage(ClientProtoUtils.toMessages(batch.getContent())), null);
+    } catch (Exception e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  static RequestBatcher newBatcher(RaftProperties properties,
+      Function<Message, CompletableFuture<RaftClientReply>> sendBatch) {
+    // the batches are flushed explicitly in the tests
+    RaftClientConfigKeys.Batch.setDelay(properties, TimeDuration.valueOf(1, TimeUnit.MINUTES));
+    return new RequestBatcher("test-batcher", properties, TimeoutScheduler.newInstance(1),
+        message -> JavaUtils.completeExceptionally(new AssertionError("Unexpected single message " + message)),
+        sendBatch);
+  }
+
+  static List<CompletableFuture<RaftClientReply>> submit(RequestBatcher batcher, List<Message> messages, int n) {
+    final List<CompletableFuture<RaftClientReply>> futures = new ArrayList<>();
+    for(int i = 0; i < n; i++) {
+      final Message m = Message.valueOf("m" + i);
+      messages.add(m);
+      futures.add(batcher.submit(m));
+    }
+    return futures;
+  }
+
+  @Test(timeout = 10000)
+  public void testFailedBatchReply() throws Exception {
+    final NotReplicatedException nre = new NotReplicatedException(1, ReplicationLevel.ALL, 10);
+    final RequestBatcher batcher = newBatcher(new RaftProperties(),
+        batch -> CompletableFuture.completedFuture(newReply(false, batch, nre)));
+
+    final List<Message> messages = new ArrayList<>();
+    final List<CompletableFuture<RaftClientReply>> futures = submit(batcher, messages, 3);
+    batcher.flush();
+
+    // each message gets a reply with the original exception, as an unbatched request
+    for(int i = 0; i < futures.size(); i++) {
+      final RaftClientReply reply = futures.get(i).get();
+      Assert.assertFalse(reply.isSuccess());
+      Assert.assertSame(nre, reply.getNotReplicatedException());
+      Assert.assertEquals(messages.get(i).getContent(), reply.getMessage().getContent());
+      Assert.assertEquals(10, reply.getLogIndex());
+    }
+  }
+
+  @Test
+  public void testNullMessages() throws Exception {
+    final List<Message> messages = new ArrayList<>();
+    messages.add(Message.valueOf("m0"));
+    messages.add(null);
+    messages.add(Message.EMPTY);
+    messages.add(null);
+
+    final List<Message> decoded = ClientProtoUtils.toMessages(ClientProtoUtils.toBatchMessage(messages).getContent());
+    Assert.assertEquals(messages.size(), decoded.size());
+    for(int i = 0; i < messages.size(); i++) {
+      if (messages.get(i) == null) {
+        Assert.assertNull(decoded.get(i));
+      } else {
+        Assert.assertEquals(messages.get(i).getContent(), decoded.get(i).getContent());
+      }
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void testNullReplies() throws Exception {
+    // the state machine replies null for each message
+    final RequestBatcher batcher = newBatcher(new RaftProperties(), batch -> {
+      final List<Message> replies = new ArrayList<>();
+      for(int i = 0; i < 3; i++) {
+        replies.add(null);
+      }
+      return CompletableFuture.completedFuture(newReply(true, ClientProtoUtils.toBatchMessage(replies), null));
+    });
+
+    final List<CompletableFuture<RaftClientReply>> futures = submit(batcher, new ArrayList<>(), 3);
+    batcher.flush();
+    for(CompletableFuture<RaftClientReply> f : futures) {
+      final RaftClientReply reply = f.get();
+      Assert.assertTrue(reply.isSuccess());
+      Assert.assertNull(reply.getMessage());
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void testCloseWaitsForOutstandingBatches() throws Exception {
+    final RequestBatcher batcher = newBatcher(new RaftProperties(),
+        batch -> CompletableFuture.supplyAsync(() -> {
+          try {
+            TimeUnit.MILLISECONDS.sleep(200);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          return newBatchReply(batch);
+        }));
+
+    final List<Message> messages = new ArrayList<>();
+    final List<CompletableFuture<RaftClientReply>> futures = submit(batcher, messages, 3);
+    // close sends the pending batch and waits for its reply
+    batcher.close();
+    for(int i = 0; i < futures.size(); i++) {
+      Assert.assertTrue(futures.get(i).isDone());
+      final RaftClientReply reply = futures.get(i).get();
+      Assert.assertTrue(reply.isSuccess());
+      Assert.assertEquals(messages.get(i).getContent(), reply.getMessage().getContent());
+    }
+
+    assertAlreadyClosed(batcher.submit(Message.valueOf("closed")));
+  }
+
+  @Test(timeout = 10000)
+  public void testCloseTimeout() throws Exception {
+    final RaftProperties properties = new RaftProperties();
+    RaftClientConfigKeys.Rpc.setRequestTimeout(properties, TimeDuration.valueOf(100, TimeUnit.MILLISECONDS));
+    // the batch is never replied
+    final RequestBatcher batcher = newBatcher(properties, batch -> new CompletableFuture<>());
+
+    final List<CompletableFuture<RaftClientReply>> futures = submit(batcher, new ArrayList<>(), 3);
+    batcher.close();
+    for(CompletableFuture<RaftClientReply> f : futures) {
+      assertAlreadyClosed(f);
+    }
+  }
+
+  static void assertAlreadyClosed(CompletableFuture<RaftClientReply> future) throws InterruptedException {
+    try {
+      future.get();
+      Assert.fail("Expected " + AlreadyClosedException.class.getSimpleName());
+    } catch (ExecutionException e) {
+      Assert.assertTrue(e.getCause() instanceof AlreadyClosedException);
+    }
+  }
+}
@@ -0,0 +1,251 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.grpc;
+
+import org.apache.ratis.BaseTest;
+import org.apache.ratis.MiniRaftCluster;
+import org.apache.ratis.RaftTestUtil;
+import org.apache.ratis.client.RaftClient;
+import org.apache.ratis.client.RaftClientConfigKeys;
+import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.proto.RaftProtos.LogEntryProto;
+import org.apache.ratis.protocol.Message;
+import org.apache.ratis.protocol.RaftClientReply;
+import org.apache.ratis.server.impl.RaftServerImpl;
+import org.apache.ratis.server.storage.RaftLog;
+import org.apache.ratis.statemachine.StateMachine;
+import org.apache.ratis.statemachine.TransactionContext;
+import org.apache.ratis.statemachine.impl.BaseStateMachine;
+import org.apache.ratis.util.JavaUtils;
+import org.apache.ratis.util.SizeInBytes;
+import org.apache.ratis.util.TimeDuration;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class TestRequestBatchingWithGrpc extends BaseTest implements MiniRaftClusterWithGrpc.FactoryGet {
+  {
+    final RaftProperties p = getProperties();
+    RaftClientConfigKeys.Batch.setEnabled(p, true);
+    RaftClientConfigKeys.Batch.setByteLimit(p, SizeInBytes.valueOf("1KB"));
+    RaftClientConfigKeys.Batch.setDelay(p, TimeDuration.valueOf(20, TimeUnit.MILLISECONDS));
+  }
+
+  @Test
+  public void testBatching() throws Exception {
+    runWithNewCluster(3, this::runTestBatching);
+  }
+
+  void runTestBatching(MiniRaftCluster cluster) throws Exception {
+    final RaftServerImpl leader = RaftTestUtil.waitForLeader(cluster);
+    final int numMessages = 200;
+    final List<CompletableFuture<RaftClientReply>> lastFutures = new ArrayList<>();
+    try (final RaftClient client = cluster.createClient()) {
+      final List<Message> messages = new ArrayList<>();
+      final List<CompletableFuture<RaftClientReply>> futures = new ArrayList<>();
+      for(int i = 0; i < numMessages; i++) {
+        final Message m = Message.valueOf("message-" + i);
+        messages.add(m);
+        futures.add(client.sendAsync(m));
+      }
+
+      // the default state machine replies the message itself
+      for(int i = 0; i < numMessages; i++) {
+        final RaftClientReply reply = futures.get(i).get();
+        Assert.assertTrue(reply.isSuccess());
+        Assert.assertEquals(messages.get(i).getContent(), reply.getMessage().getContent());
+      }
+
+      // a single message is sent after the delay
+      final Message single = Message.valueOf("single");
+      Assert.assertEquals(single.getContent(), client.sendAsync(single).get().getMessage().getContent());
+
+      // the client is closed before the delay; close sends the pending batch and waits for it
+      for(int i = 0; i < 3; i++) {
+        lastFutures.add(client.sendAsync(Message.valueOf("last-" + i)));
+      }
+    }
+    for(int i = 0; i < lastFutures.size(); i++) {
+      Assert.assertTrue(lastFutures.get(i).isDone());
+      final RaftClientReply reply = lastFutures.get(i).get();
+      Assert.assertTrue(reply.isSuccess());
+      Assert.assertEquals("last-" + i, reply.getMessage().getContent().toStringUtf8());
+    }
+
+    // the messages are appended as far fewer entries
+    final RaftLog log = leader.getState().getLog();
+    int numEntries = 0;
+    int numBatches = 0;
+    for(long i = log.getStartIndex(); i <= log.getLastEntryTermIndex().getIndex(); i++) {
+      final LogEntryProto e = log.get(i);
+      if (e.hasStateMachineLogEntry()) {
+        numEntries++;
+        if (e.getStateMachineLogEntry().getBatch()) {
+          numBatches++;
+        }
+      }
+    }
+    LOG.info("{} messages are appended as {} entries including {} batches", numMessages + 4, numEntries, numBatches);
+    Assert.assertTrue(numBatches > 0);
+    Assert.assertTrue(numEntries < numMessages);
+
+    // the followers apply the batches as well
+    for(RaftServerImpl s : cluster.getFollowers()) {
+      JavaUtils.attempt(() -> RaftTestUtil.assertSameLog(log, s.getState().getLog()),
+          10, 500, s.getId() + "(sameLog)", LOG);
+    }
+  }
+
+  /**
+   * A state machine completing the apply futures on another thread.
+   * It records the messages in the order they are applied
+   * and asserts that applyTransaction is never called concurrently.
+   */
+  public static class DelayedReplyStateMachine extends BaseStateMachine {
+    private static final Executor REPLY_EXECUTOR = command -> new Thread(command).start();
+
+    private final List<String> applied = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicBoolean applying = new AtomicBoolean();
+
+    @Override
+    public CompletableFuture<Message> applyTransaction(TransactionContext trx) {
+      Assert.assertTrue("applyTransaction is called concurrently", applying.compareAndSet(false, true));
+      try {
+        final String s = trx.getLogEntry().getStateMachineLogEntry().getLogData().toStringUtf8();
+        applied.add(s);
+        return CompletableFuture.supplyAsync(() -> {
+          try {
+            TimeUnit.MILLISECONDS.sleep(ThreadLocalRandom.current().nextInt(5));
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          return Message.valueOf(s);
+        }, REPLY_EXECUTOR);
+      } finally {
+        applying.set(false);
+      }
+    }
+  }
+
+  @Test
+  public void testBatchingWithDelayedReplies() throws Exception {
+    getProperties().setClass(MiniRaftCluster.STATEMACHINE_CLASS_KEY,
+        DelayedReplyStateMachine.class, StateMachine.class);
+    runWithNewCluster(3, this::runTestBatchingWithDelayedReplies);
+  }
+
+  void runTestBatchingWithDelayedReplies(MiniRaftCluster cluster) throws Exception {
+    RaftTestUtil.waitForLeader(cluster);
+    final int numMessages = 200;
+    final List<String> messages = new ArrayList<>();
+    try (final RaftClient client = cluster.createClient()) {
+      final List<CompletableFuture<RaftClientReply>> futures = new ArrayList<>();
+      for(int i = 0; i < numMessages; i++) {
+        final String m = "message-" + i;
+        messages.add(m);
+        futures.add(client.sendAsync(Message.valueOf(m)));
+      }
+      for(int i = 0; i < numMessages; i++) {
+        final RaftClientReply reply = futures.get(i).get();
+        Assert.assertTrue(reply.isSuccess());
+        Assert.assertEquals(messages.get(i), reply.getMessage().getContent().toStringUtf8());
+      }
+    }
+
+    // every server applies all the messages in the log order
+    for(RaftServerImpl s : cluster.iterateServerImpls()) {
+      final DelayedReplyStateMachine sm = (DelayedReplyStateMachine) s.getStateMachine();
+      JavaUtils.attempt(() -> {
+        synchronized (sm.applied) {
+          Assert.assertEquals(messages, sm.applied);
+        }
+      }, 10, 500, s.getId() + "(applied)", LOG);
+    }
+  }
+
+  /** A state machine replying null for the messages starting with {@link #NULL_REPLY}. */
+  public static class NullReplyStateMachine extends BaseStateMachine {
+    static final String NULL_REPLY = "null-reply";
+
+    @Override
+    public CompletableFuture<Message> applyTransaction(TransactionContext trx) {
+      final String s = trx.getLogEntry().getStateMachineLogEntry().getLogData().toStringUtf8();
+      return CompletableFuture.completedFuture(s.startsWith(NULL_REPLY)? null: Message.valueOf(s));
+    }
+  }
+
+  @Test
+  public void testBatchingWithNullReplies() throws Exception {
+    getProperties().setClass(MiniRaftCluster.STATEMACHINE_CLASS_KEY,
+        NullReplyStateMachine.class, StateMachine.class);
+    runWithNewCluster(3, this::runTestBatchingWithNullReplies);
+  }
+
+  void runTestBatchingWithNullReplies(MiniRaftCluster cluster) throws Exception {
+    RaftTestUtil.waitForLeader(cluster);
+    final int numMessages = 100;
+    try (final RaftClient client = cluster.createClient()) {
+      final List<String> messages = new ArrayList<>();
+      final List<CompletableFuture<RaftClientReply>> futures = new ArrayList<>();
+      for(int i = 0; i < numMessages; i++) {
+        final String m = (i % 3 == 0? NullReplyStateMachine.NULL_REPLY: "message") + "-" + i;
+        messages.add(m);
+        futures.add(client.sendAsync(Message.valueOf(m)));
+      }
+      for(int i = 0; i < numMessages; i++) {
+        final RaftClientReply reply = futures.get(i).get();
+        Assert.assertTrue(reply.isSuccess());
+        if (messages.get(i).startsWith(NullReplyStateMachine.NULL_REPLY)) {
+          Assert.assertNull(reply.getMessage());
+        } else {
+          Assert.assertEquals(messages.get(i), reply.getMessage().getContent().toStringUtf8());
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testFlushBeforeRead() throws Exception {
+    // the batches are only sent when they are full or flushed
+    RaftClientConfigKeys.Batch.setDelay(getProperties(), TimeDuration.valueOf(1, TimeUnit.HOURS));
+    runWithNewCluster(3, this::runTestFlushBeforeRead);
+  }
+
+  void runTestFlushBeforeRead(MiniRaftCluster cluster) throws Exception {
+    RaftTestUtil.waitForLeader(cluster);
+    try (final RaftClient client = cluster.createClient()) {
+      final List<CompletableFuture<RaftClientReply>> futures = new ArrayList<>();
+      for(int i = 0; i < 3; i++) {
+        futures.add(client.sendAsync(Message.valueOf("message-" + i)));
+      }
+      // the read sends the pending batch before itself
+      Assert.assertTrue(client.sendReadOnlyAsync(Message.valueOf("read")).get().isSuccess());
+      for(CompletableFuture<RaftClientReply> f : futures) {
+        Assert.assertTrue(f.get(10, TimeUnit.SECONDS).isSuccess());
+      }
+    }
+  }
+}
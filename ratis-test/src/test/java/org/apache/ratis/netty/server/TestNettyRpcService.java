@@ -0,0 +1,54 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.netty.server;
+
+import org.apache.ratis.BaseTest;
+import org.apache.ratis.MiniRaftCluster;
+import org.apache.ratis.RaftTestUtil;
+import org.apache.ratis.netty.MiniRaftClusterWithNetty;
+import org.apache.ratis.proto.netty.NettyProtos.RaftNettyServerReplyProto;
+import org.apache.ratis.proto.netty.NettyProtos.RaftNettyServerRequestProto;
+import org.apache.ratis.util.ProtoUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class TestNettyRpcService extends BaseTest implements MiniRaftClusterWithNetty.FactoryGet {
+  @Test
+  public void testUnsetRequestCase() throws Exception {
+    runWithNewCluster(1, this::runTestUnsetRequestCase);
+  }
+
+  void runTestUnsetRequestCase(MiniRaftCluster cluster) throws Exception {
+    RaftTestUtil.waitForLeader(cluster);
+    final NettyRpcService service = (NettyRpcService) cluster.getServers().iterator().next().getServerRpc();
+
+    // the failure must be replied instead of escaping the handler
+    final long callId = 7;
+    final RaftNettyServerReplyProto reply = service.handleAsync(
+        RaftNettyServerRequestProto.newBuilder().setCallId(callId).build()).get(10, TimeUnit.SECONDS);
+    Assert.assertEquals(RaftNettyServerReplyProto.RaftNettyServerReplyCase.EXCEPTIONREPLY,
+        reply.getRaftNettyServerReplyCase());
+    Assert.assertEquals(callId, reply.getCallId());
+    Assert.assertEquals(callId, reply.getExceptionReply().getRpcReply().getCallId());
+    final Throwable t = ProtoUtils.toThrowable(reply.getExceptionReply().getException());
+    LOG.info("exception reply: {}", t.toString());
+    Assert.assertTrue(t.getCause() instanceof IllegalArgumentException);
+  }
+}
@@ -18,12 +18,14 @@
 
 package org.apache.ratis.server;
 
+import com.codahale.metrics.Histogram;
 import com.codahale.metrics.Timer;
 import org.apache.log4j.Level;
 import org.apache.ratis.BaseTest;
 import org.apache.ratis.MiniRaftCluster;
 import org.apache.ratis.RaftTestUtil;
 import org.apache.ratis.client.RaftClient;
+import org.apache.ratis.conf.RaftProperties;
 import org.apache.ratis.metrics.RatisMetricsRegistry;
 import org.apache.ratis.server.impl.RaftServerImpl;
 import org.apache.ratis.server.simulation.MiniRaftClusterWithSimulatedRpc;
@@ -80,6 +82,32 @@ public class TestRaftLogMetrics extends BaseTest
     }
   }
 
+  @Test
+  public void testGroupCommitMetric() throws Exception {
+    final RaftProperties p = getProperties();
+    RaftServerConfigKeys.Log.GroupCommit.setEnabled(p, true);
+    // use different ids so that the metrics are not shared with testFlushMetric
+    final String[] ids = MiniRaftCluster.generateIds(NUM_SERVERS, NUM_SERVERS);
+    try(final MiniRaftCluster cluster = getFactory().newCluster(ids, p)) {
+      cluster.start();
+      runTestFlushMetric(cluster);
+
+      for(RaftServerImpl s : cluster.iterateServerImpls()) {
+        final Histogram batchSize = RatisMetricsRegistry.getRegistry().getHistograms()
+            .get(RaftStorageTestUtils.getGroupCommitBatchSizeMetric(s.getId(), s.getGroupId()));
+        Assert.assertNotNull(batchSize);
+        Assert.assertTrue(batchSize.getCount() > 0);
+
+        final Timer syncTime = RatisMetricsRegistry.getRegistry().getTimers()
+            .get(RaftStorageTestUtils.getLogSyncTimeMetric(s.getId(), s.getGroupId()));
+        Assert.assertNotNull(syncTime);
+        Assert.assertTrue(syncTime.getCount() > 0);
+      }
+    } finally {
+      RaftServerConfigKeys.Log.GroupCommit.setEnabled(p, RaftServerConfigKeys.Log.GroupCommit.ENABLED_DEFAULT);
+    }
+  }
+
   static void runTestFlushMetric(MiniRaftCluster cluster) throws Exception {
     int numMsg = 2;
     final RaftTestUtil.SimpleMessage[] messages = RaftTestUtil.SimpleMessage.create(numMsg);
@@ -90,17 +118,15 @@ public class TestRaftLogMetrics extends BaseTest
       }
     }
 
-    // For leader, flush must happen before client can get replies.
-    assertFlushCount(cluster.getLeader());
-
-    // For followers, flush can be lagged behind.  Attempt multiple times.
-    for(RaftServerImpl f : cluster.getFollowers()) {
-      JavaUtils.attempt(() -> assertFlushCount(f), 10, 100, f.getId() + "-assertFlushCount", null);
+    // The leader commits on a majority without waiting for its own flush,
+    // so the flush can be lagged behind, even for the leader.  Attempt multiple times.
+    for(RaftServerImpl s : cluster.iterateServerImpls()) {
+      JavaUtils.attempt(() -> assertFlushCount(s), 10, 100, s.getId() + "-assertFlushCount", null);
     }
   }
 
   static void assertFlushCount(RaftServerImpl server) throws Exception {
-      final String flushTimeMetric = RaftStorageTestUtils.getLogFlushTimeMetric(server.getId());
+      final String flushTimeMetric = RaftStorageTestUtils.getLogFlushTimeMetric(server.getId(), server.getGroupId());
       Timer tm = RatisMetricsRegistry.getRegistry().getTimers().get(flushTimeMetric);
       Assert.assertNotNull(tm);
 
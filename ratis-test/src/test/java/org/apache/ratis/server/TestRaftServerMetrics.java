@@ -0,0 +1,208 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import org.apache.ratis.BaseTest;
+import org.apache.ratis.MiniRaftCluster;
+import org.apache.ratis.RaftTestUtil;
+import org.apache.ratis.client.RaftClient;
+import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.metrics.PrometheusHttpServer;
+import org.apache.ratis.metrics.PrometheusTextFormat;
+import org.apache.ratis.metrics.RatisMetricsRegistry;
+import org.apache.ratis.protocol.RaftGroupId;
+import org.apache.ratis.protocol.RaftPeerId;
+import org.apache.ratis.server.impl.RaftServerImpl;
+import org.apache.ratis.server.impl.RaftServerMetrics;
+import org.apache.ratis.server.impl.RequestTracer;
+import org.apache.ratis.server.simulation.MiniRaftClusterWithSimulatedRpc;
+import org.apache.ratis.util.JavaUtils;
+import org.apache.ratis.util.TimeDuration;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+
+public class TestRaftServerMetrics extends BaseTest
+    implements MiniRaftClusterWithSimulatedRpc.FactoryGet {
+  public static final int NUM_SERVERS = 3;
+
+  static String getMetricName(RaftServerImpl server, String name) {
+    return RaftServerMetrics.getMetricName(RaftServerImpl.class, server.getId(), server.getGroupId(), name);
+  }
+
+  static Timer getTimer(RaftServerImpl server, String name) {
+    final Timer timer = RatisMetricsRegistry.getRegistry().getTimers().get(getMetricName(server, name));
+    Assert.assertNotNull(name + " not found for " + server.getId(), timer);
+    return timer;
+  }
+
+  static Gauge getGauge(String name) {
+    final Gauge gauge = RatisMetricsRegistry.getRegistry().getGauges().get(name);
+    Assert.assertNotNull(name + " not found", gauge);
+    return gauge;
+  }
+
+  static boolean hasMetrics(RaftPeerId id, RaftGroupId groupId) {
+    final String key = "." + id + "." + groupId + ".";
+    return RatisMetricsRegistry.getRegistry().getNames().stream().anyMatch(name -> name.contains(key));
+  }
+
+  @Test
+  public void testServerMetrics() throws Exception {
+    final RaftProperties p = getProperties();
+    // use different ids so that the metrics are not shared with the other tests
+    final String[] ids = MiniRaftCluster.generateIds(NUM_SERVERS, 2 * NUM_SERVERS);
+    try(final MiniRaftCluster cluster = getFactory().newCluster(ids, p)) {
+      cluster.start();
+      final RaftServerImpl leader = RaftTestUtil.waitForLeader(cluster);
+      Assert.assertTrue(getTimer(leader, "election-time").getCount() > 0);
+
+      final int numMessages = 10;
+      try(final RaftClient client = cluster.createClient(leader.getId())) {
+        for (RaftTestUtil.SimpleMessage m : RaftTestUtil.SimpleMessage.create(numMessages)) {
+          Assert.assertTrue(client.send(m).isSuccess());
+        }
+      }
+
+      Assert.assertTrue(getTimer(leader, "commit-latency").getCount() >= numMessages);
+      Assert.assertTrue(getTimer(leader, "apply-latency").getCount() >= numMessages);
+      Assert.assertTrue(RatisMetricsRegistry.getRegistry().counter(
+          getMetricName(leader, "retry-cache-miss")).getCount() >= numMessages);
+      Assert.assertEquals(0, getGauge(getMetricName(leader, "pending-requests")).getValue());
+
+      for(RaftServerImpl f : cluster.getFollowers()) {
+        JavaUtils.attempt(() -> getTimer(f, "append-entries-latency").getCount() > 0,
+            10, 100, f.getId() + "-appendEntriesLatency", LOG);
+        Assert.assertTrue(getTimer(leader, "follower." + f.getId() + ".append-entries-rtt").getCount() > 0);
+
+        final String lagEntries = getMetricName(leader, "follower." + f.getId() + ".lag-entries");
+        JavaUtils.attempt(() -> (Long) getGauge(lagEntries).getValue() == 0L,
+            10, 100, f.getId() + "-lagEntries", LOG);
+        final String lagBytes = getMetricName(leader, "follower." + f.getId() + ".lag-bytes");
+        JavaUtils.attempt(() -> (Long) getGauge(lagBytes).getValue() == 0L,
+            10, 100, f.getId() + "-lagBytes", LOG);
+      }
+
+      // the metrics of a server in the group are removed when it is closed
+      final RaftServerImpl follower = cluster.getFollowers().get(0);
+      Assert.assertTrue(hasMetrics(follower.getId(), follower.getGroupId()));
+      cluster.killServer(follower.getId());
+      Assert.assertFalse(hasMetrics(follower.getId(), follower.getGroupId()));
+    }
+  }
+
+  @Test
+  public void testTracing() throws Exception {
+    final RaftProperties p = new RaftProperties(getProperties());
+    RaftServerConfigKeys.Metrics.Tracing.setSamplingInterval(p, 1);
+
+    final String[] ids = MiniRaftCluster.generateIds(NUM_SERVERS, 4 * NUM_SERVERS);
+    try(final MiniRaftCluster cluster = getFactory().newCluster(ids, p)) {
+      cluster.start();
+      final RaftServerImpl leader = RaftTestUtil.waitForLeader(cluster);
+
+      final int numMessages = 10;
+      try(final RaftClient client = cluster.createClient(leader.getId())) {
+        for (RaftTestUtil.SimpleMessage m : RaftTestUtil.SimpleMessage.create(numMessages)) {
+          Assert.assertTrue(client.send(m).isSuccess());
+        }
+      }
+
+      // all the requests are sampled and each of them has gone through all the stages
+      final Map<String, Timer> timers = RatisMetricsRegistry.getRegistry().getTimers();
+      for(RequestTracer.Stage stage : RequestTracer.Stage.values()) {
+        if (stage == RequestTracer.Stage.RECEIVED) {
+          continue;
+        }
+        final String name = RequestTracer.getStageMetricName(leader.getId(), leader.getGroupId(), stage);
+        final Timer timer = timers.get(name);
+        Assert.assertNotNull(name + " not found", timer);
+        if (stage == RequestTracer.Stage.REPLY) {
+          JavaUtils.attempt(() -> timer.getCount() == numMessages, 10, 100, name, LOG);
+        } else {
+          Assert.assertTrue(name + " count is " + timer.getCount(), timer.getCount() > 0);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testReporters() throws Exception {
+    final RaftProperties p = new RaftProperties(getProperties());
+    final File dir = new File(getTestDir(), "csv");
+    RaftServerConfigKeys.Metrics.Csv.setEnabled(p, true);
+    RaftServerConfigKeys.Metrics.Csv.setDir(p, dir);
+    RaftServerConfigKeys.Metrics.Csv.setPeriod(p, TimeDuration.valueOf(100, TimeUnit.MILLISECONDS));
+    RaftServerConfigKeys.Metrics.Prometheus.setEnabled(p, true);
+    RaftServerConfigKeys.Metrics.Prometheus.setPort(p, 0);
+
+    final String[] ids = MiniRaftCluster.generateIds(1, 3 * NUM_SERVERS);
+    try(final MiniRaftCluster cluster = getFactory().newCluster(ids, p)) {
+      cluster.start();
+      final RaftServerImpl leader = RaftTestUtil.waitForLeader(cluster);
+      try(final RaftClient client = cluster.createClient(leader.getId())) {
+        Assert.assertTrue(client.send(new RaftTestUtil.SimpleMessage("m")).isSuccess());
+      }
+
+      final InetSocketAddress address = cluster.getServer(leader.getId()).getPrometheusAddress().orElse(null);
+      Assert.assertNotNull(address);
+      final URL url = new URL("http", "localhost", address.getPort(), PrometheusHttpServer.PATH);
+      final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+      final String text;
+      try(InputStream in = connection.getInputStream();
+          Scanner scanner = new Scanner(in, StandardCharsets.UTF_8.name()).useDelimiter("\\A")) {
+        text = scanner.next();
+      } finally {
+        connection.disconnect();
+      }
+      final String commitLatency = getMetricName(leader, "commit-latency").replaceAll("[^a-zA-Z0-9_:]", "_");
+      Assert.assertTrue(text, text.contains("# TYPE " + commitLatency + " summary"));
+      Assert.assertTrue(text, text.contains(commitLatency + "_count "));
+
+      final String csv = getMetricName(leader, "apply-latency") + ".csv";
+      JavaUtils.attempt(() -> new File(dir, csv).exists(), 20, 100, "csv", LOG);
+    }
+  }
+
+  @Test
+  public void testPrometheusTextFormat() throws Exception {
+    final MetricRegistry registry = new MetricRegistry();
+    registry.counter("test.counter").inc(2);
+    registry.meter("test.meter").mark(3);
+
+    final StringWriter out = new StringWriter();
+    PrometheusTextFormat.write(registry, out);
+    final String text = out.toString();
+    Assert.assertTrue(text, text.contains("# TYPE test_counter counter\ntest_counter 2\n"));
+    // the type line must have the same name as the sample line
+    Assert.assertTrue(text, text.contains("# TYPE test_meter_total counter\ntest_meter_total 3\n"));
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.impl;
+
+import org.apache.ratis.BaseTest;
+import org.apache.ratis.proto.RaftProtos.AppendEntriesReplyProto;
+import org.apache.ratis.proto.RaftProtos.StateMachineLogEntryProto;
+import org.apache.ratis.protocol.RaftGroupId;
+import org.apache.ratis.protocol.RaftPeerId;
+import org.apache.ratis.server.protocol.TermIndex;
+import org.apache.ratis.server.storage.MemoryRaftLog;
+import org.apache.ratis.server.storage.RaftLog;
+import org.apache.ratis.thirdparty.com.google.protobuf.ByteString;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.apache.ratis.proto.RaftProtos.AppendEntriesReplyProto.AppendResult.INCONSISTENCY;
+
+/** Test the leader backtracking the log of a follower with conflicting entries. */
+public class TestLogBacktracking extends BaseTest {
+  static final RaftPeerId LEADER = RaftPeerId.valueOf("leader");
+  static final RaftPeerId FOLLOWER = RaftPeerId.valueOf("follower");
+  static final RaftGroupId GROUP_ID = RaftGroupId.randomId();
+
+  /**
+   * Create a log with the entries of the given terms,
+   * where the i-th pair is the term and the number of entries.
+   */
+  static RaftLog newLog(RaftPeerId id, long... termsAndCounts) throws IOException {
+    final RaftLog log = new MemoryRaftLog(id, RaftServerConstants.INVALID_LOG_INDEX, 1024);
+    log.open(RaftServerConstants.INVALID_LOG_INDEX, null);
+    final StateMachineLogEntryProto smLog = StateMachineLogEntryProto.newBuilder()
+        .setLogData(ByteString.copyFromUtf8("data")).build();
+    long index = 0;
+    for(int i = 0; i < termsAndCounts.length; i += 2) {
+      for(long n = 0; n < termsAndCounts[i + 1]; n++) {
+        log.appendEntry(ServerProtoUtils.toLogEntryProto(smLog, termsAndCounts[i], index++));
+      }
+    }
+    return log;
+  }
+
+  static class Backtracking {
+    private int roundTrips = 0;
+    private long matchIndex;
+
+    /** Run the leader side of the AppendEntries consistency check until the logs match. */
+    Backtracking run(RaftLog leader, RaftLog follower, boolean withConflictHint) {
+      for(long nextIndex = leader.getNextIndex(); ; ) {
+        roundTrips++;
+        final TermIndex previous = leader.getTermIndex(nextIndex - 1);
+        if (follower.contains(previous)) {
+          matchIndex = previous.getIndex();
+          return this;
+        }
+        final TermIndex conflict = withConflictHint? RaftServerImpl.getConflictTermIndex(follower, previous): null;
+        final AppendEntriesReplyProto reply = ServerProtoUtils.toAppendEntriesReplyProto(
+            LEADER, FOLLOWER, GROUP_ID, 0, -1, Math.min(follower.getNextIndex(), previous.getIndex()),
+            INCONSISTENCY, roundTrips, conflict);
+        // as in FollowerInfo.decreaseNextIndex
+        nextIndex = Math.min(nextIndex - 1, LogAppender.getNextIndexForInconsistency(leader, reply));
+      }
+    }
+  }
+
+  void runTest(RaftLog leader, RaftLog follower, long expectedMatchIndex, int expectedRoundTrips) {
+    final Backtracking before = new Backtracking().run(leader, follower, false);
+    final Backtracking after = new Backtracking().run(leader, follower, true);
+    LOG.info("round trips: {} (without conflict hints), {} (with conflict hints)",
+        before.roundTrips, after.roundTrips);
+    Assert.assertEquals(expectedMatchIndex, before.matchIndex);
+    Assert.assertEquals(expectedMatchIndex, after.matchIndex);
+    Assert.assertEquals(expectedRoundTrips, after.roundTrips);
+    Assert.assertTrue(after.roundTrips < before.roundTrips);
+  }
+
+  @Test
+  public void testDeposedLeader() throws Exception {
+    // the follower was a leader in term 2 with many uncommitted entries
+    final RaftLog leader = newLog(LEADER, 1, 10, 3, 50);
+    final RaftLog follower = newLog(FOLLOWER, 1, 10, 2, 100);
+    runTest(leader, follower, 9, 2);
+  }
+
+  @Test
+  public void testMultipleConflictingTerms() throws Exception {
+    final RaftLog leader = newLog(LEADER, 1, 10, 2, 10, 3, 40, 5, 20);
+    final RaftLog follower = newLog(FOLLOWER, 1, 10, 2, 20, 4, 20);
+    runTest(leader, follower, 19, 4);
+  }
+
+  @Test
+  public void testFindIndex() throws Exception {
+    final RaftLog log = newLog(LEADER, 1, 10, 2, 10, 4, 10);
+    Assert.assertEquals(0, log.findFirstIndex(1, 100));
+    Assert.assertEquals(9, log.findLastIndex(1, 100));
+    Assert.assertEquals(10, log.findFirstIndex(2, 100));
+    Assert.assertEquals(19, log.findLastIndex(2, 100));
+    Assert.assertEquals(15, log.findLastIndex(2, 15));
+    Assert.assertEquals(-1, log.findFirstIndex(2, 9));
+    Assert.assertEquals(-1, log.findFirstIndex(3, 100));
+    Assert.assertEquals(-1, log.findLastIndex(3, 100));
+    Assert.assertEquals(20, log.findFirstIndex(4, 100));
+    Assert.assertEquals(29, log.findLastIndex(4, 100));
+    Assert.assertEquals(-1, log.findLastIndex(5, 100));
+  }
+}
@@ -0,0 +1,186 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.impl;
+
+import org.apache.ratis.BaseTest;
+import org.apache.ratis.MiniRaftCluster;
+import org.apache.ratis.RaftTestUtil;
+import org.apache.ratis.client.RaftClient;
+import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.proto.RaftProtos.LogEntryProto;
+import org.apache.ratis.proto.RaftProtos.RaftPeerRole;
+import org.apache.ratis.proto.RaftProtos.StateMachineLogEntryProto;
+import org.apache.ratis.protocol.Message;
+import org.apache.ratis.protocol.RaftClientReply;
+import org.apache.ratis.server.RaftServerConfigKeys;
+import org.apache.ratis.server.protocol.TermIndex;
+import org.apache.ratis.server.simulation.MiniRaftClusterWithSimulatedRpc;
+import org.apache.ratis.statemachine.StateMachine;
+import org.apache.ratis.statemachine.TransactionContext;
+import org.apache.ratis.statemachine.impl.BaseStateMachine;
+import org.apache.ratis.thirdparty.com.google.protobuf.ByteString;
+import org.apache.ratis.util.JavaUtils;
+import org.apache.ratis.util.SerialExecutor;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+public class TestParallelApplier extends BaseTest implements MiniRaftClusterWithSimulatedRpc.FactoryGet {
+  static final String BARRIER = "barrier";
+
+  /**
+   * The key of a transaction is its log data; {@link #BARRIER} means no key.
+   * As a typical state machine, it updates the last applied index for the transactions without a key.
+   */
+  public static class KeyedStateMachine extends BaseStateMachine {
+    /** The indices of the transactions dispatched, i.e. the partition key is computed. */
+    private final Set<Long> dispatched = ConcurrentHashMap.newKeySet();
+    private final Set<Long> applied = ConcurrentHashMap.newKeySet();
+    private final Map<String, List<Long>> appliedByKey = new ConcurrentHashMap<>();
+
+    @Override
+    public Object getPartitionKey(TransactionContext trx) {
+      dispatched.add(trx.getLogEntry().getIndex());
+      final String key = trx.getStateMachineLogEntry().getLogData().toStringUtf8();
+      return BARRIER.equals(key)? null: key;
+    }
+
+    @Override
+    public CompletableFuture<Message> applyTransaction(TransactionContext trx) {
+      final LogEntryProto entry = trx.getLogEntry();
+      final String key = trx.getStateMachineLogEntry().getLogData().toStringUtf8();
+      if (BARRIER.equals(key)) {
+        // all the previous transactions must have been applied
+        dispatched.stream().filter(i -> i < entry.getIndex()).forEach(
+            i -> Assert.assertTrue("index " + i + " is not applied", applied.contains(i)));
+        updateLastAppliedTermIndex(entry.getTerm(), entry.getIndex());
+      } else {
+        try {
+          TimeUnit.MICROSECONDS.sleep(ThreadLocalRandom.current().nextInt(500));
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      appliedByKey.computeIfAbsent(key, k -> new ArrayList<>()).add(entry.getIndex());
+      applied.add(entry.getIndex());
+      return CompletableFuture.completedFuture(Message.valueOf(key));
+    }
+  }
+
+  static TransactionContext newTransaction(KeyedStateMachine stateMachine, String key, long index) {
+    final StateMachineLogEntryProto smLog = StateMachineLogEntryProto.newBuilder()
+        .setLogData(ByteString.copyFromUtf8(key)).build();
+    return TransactionContext.newBuilder()
+        .setServerRole(RaftPeerRole.FOLLOWER)
+        .setStateMachine(stateMachine)
+        .setLogEntry(ServerProtoUtils.toLogEntryProto(smLog, 1, index))
+        .build();
+  }
+
+  @Test(timeout = 60000)
+  public void testParallelApply() throws Exception {
+    final KeyedStateMachine stateMachine = new KeyedStateMachine();
+    final ExecutorService pool = Executors.newFixedThreadPool(2);
+    final ParallelApplier applier = new ParallelApplier("test", stateMachine, 4,
+        () -> new SerialExecutor(pool), -1, () -> {});
+    final int numEntries = 2000;
+    final List<CompletableFuture<Message>> futures = new ArrayList<>();
+    try {
+      for(int i = 0; i < numEntries; i++) {
+        final String key = i % 500 == 499? BARRIER: "k" + ThreadLocalRandom.current().nextInt(10);
+        futures.add(applier.applyTransaction(newTransaction(stateMachine, key, i)));
+
+        // the entries up to the last applied index must have been applied
+        final long smApplied = getLastAppliedIndex(stateMachine);
+        final long lastApplied = applier.getLastAppliedIndex();
+        Assert.assertTrue(smApplied <= lastApplied);
+        Assert.assertTrue(lastApplied <= i);
+        for(long j = 0; j <= lastApplied; j++) {
+          Assert.assertTrue("index " + j + " is not applied", stateMachine.applied.contains(j));
+        }
+      }
+      applier.waitForAll();
+      futures.forEach(CompletableFuture::join);
+      Assert.assertEquals(numEntries - 1, applier.getLastAppliedIndex());
+      Assert.assertEquals(numEntries - 1, getLastAppliedIndex(stateMachine));
+      Assert.assertEquals(numEntries, stateMachine.applied.size());
+
+      // the transactions with the same key are applied in the log order
+      for(List<Long> indices : stateMachine.appliedByKey.values()) {
+        for(int i = 1; i < indices.size(); i++) {
+          Assert.assertTrue(indices + " is out of order", indices.get(i - 1) < indices.get(i));
+        }
+      }
+    } finally {
+      applier.close();
+      pool.shutdownNow();
+    }
+  }
+
+  static long getLastAppliedIndex(StateMachine stateMachine) {
+    final TermIndex applied = stateMachine.getLastAppliedTermIndex();
+    return applied == null? -1: applied.getIndex();
+  }
+
+  @Test
+  public void testParallelApplyInCluster() throws Exception {
+    final RaftProperties p = getProperties();
+    RaftServerConfigKeys.ApplyTransaction.setParallelEnabled(p, true);
+    RaftServerConfigKeys.ApplyTransaction.setParallelLanes(p, 4);
+    p.setClass(MiniRaftCluster.STATEMACHINE_CLASS_KEY, KeyedStateMachine.class, StateMachine.class);
+    runWithNewCluster(3, this::runTestParallelApplyInCluster);
+  }
+
+  void runTestParallelApplyInCluster(MiniRaftCluster cluster) throws Exception {
+    final RaftServerImpl leader = RaftTestUtil.waitForLeader(cluster);
+    final int numMessages = 500;
+    final List<CompletableFuture<RaftClientReply>> futures = new ArrayList<>();
+    try (final RaftClient client = cluster.createClient()) {
+      for(int i = 0; i < numMessages; i++) {
+        final String key = i % 100 == 99? BARRIER: "k" + ThreadLocalRandom.current().nextInt(10);
+        futures.add(client.sendAsync(Message.valueOf(key)));
+      }
+      for(CompletableFuture<RaftClientReply> f : futures) {
+        Assert.assertTrue(f.get().isSuccess());
+      }
+    }
+
+    // the state machine last applied index is advanced by the applier in order
+    final long lastIndex = Collections.max(((KeyedStateMachine) leader.getStateMachine()).applied);
+    for(RaftServerImpl s : cluster.iterateServerImpls()) {
+      final KeyedStateMachine sm = (KeyedStateMachine) s.getStateMachine();
+      JavaUtils.attempt(() -> getLastAppliedIndex(sm) >= lastIndex, 10, 500, s.getId() + "(lastApplied)", LOG);
+      for(List<Long> indices : sm.appliedByKey.values()) {
+        for(int i = 1; i < indices.size(); i++) {
+          Assert.assertTrue(indices + " is out of order", indices.get(i - 1) < indices.get(i));
+        }
+      }
+    }
+  }
+}
@@ -17,10 +17,12 @@
  */
 package org.apache.ratis.server.storage;
 
+import com.codahale.metrics.MetricRegistry;
 import org.apache.ratis.BaseTest;
 import org.apache.ratis.MiniRaftCluster;
 import org.apache.ratis.RaftTestUtil.SimpleOperation;
 import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.metrics.RatisMetricsRegistry;
 import org.apache.ratis.proto.RaftProtos.LogEntryProto;
 import org.apache.ratis.protocol.RaftPeerId;
 import org.apache.ratis.server.RaftServerConfigKeys;
@@ -28,21 +30,28 @@ import org.apache.ratis.server.impl.RaftServerConstants;
 import org.apache.ratis.server.impl.RaftServerImpl;
 import org.apache.ratis.server.impl.ServerProtoUtils;
 import org.apache.ratis.server.impl.ServerState;
+import org.apache.ratis.server.impl.RaftServerMetrics;
+import org.apache.ratis.server.storage.CacheInvalidationPolicy.CacheInvalidationPolicyByteBudget;
 import org.apache.ratis.server.storage.CacheInvalidationPolicy.CacheInvalidationPolicyDefault;
+import org.apache.ratis.server.storage.CacheInvalidationPolicy.Context;
+import org.apache.ratis.server.storage.CacheInvalidationPolicy.Reason;
 import org.apache.ratis.server.storage.RaftLogCache.LogSegmentList;
 import org.apache.ratis.server.storage.TestSegmentedRaftLog.SegmentRange;
 import org.apache.ratis.statemachine.SimpleStateMachine4Testing;
 import org.apache.ratis.statemachine.StateMachine;
 import org.apache.ratis.util.SizeInBytes;
+import org.apache.ratis.util.TimeDuration;
 import org.junit.Assert;
 import org.junit.Test;
 import org.mockito.Mockito;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 public class TestCacheEviction extends BaseTest {
   private static final CacheInvalidationPolicy policy = new CacheInvalidationPolicyDefault();
@@ -144,6 +153,124 @@ public class TestCacheEviction extends BaseTest {
     Assert.assertEquals(0, evicted.size());
   }
 
+  static List<LogSegment> prepareCachedSegments(int numSegments, long start, long size) {
+    final List<LogSegment> segments = new ArrayList<>();
+    for (int i = 0; i < numSegments; i++) {
+      final LogSegment s = LogSegment.newOpenSegment(null, start + i * size);
+      for (long index = s.getStartIndex(); index < s.getStartIndex() + size; index++) {
+        SimpleOperation m = new SimpleOperation(new String(new byte[1024]));
+        s.appendToOpenSegment(ServerProtoUtils.toLogEntryProto(m.getLogEntryContent(), 1, index));
+      }
+      s.close();
+      Assert.assertTrue(s.hasCache());
+      segments.add(s);
+    }
+    return segments;
+  }
+
+  static Context<LogSegment> newContext(Reason reason, List<LogSegment> segments, long[] followerNextIndices,
+      long flushedIndex, long lastAppliedIndex, int maxCached, long byteLimit, TimeDuration hotDuration) {
+    return new Context<>(reason, segments, followerNextIndices, flushedIndex, lastAppliedIndex,
+        maxCached, byteLimit, hotDuration);
+  }
+
+  @Test
+  public void testByteBudgetEviction() throws Exception {
+    final CacheInvalidationPolicy byteBudget = new CacheInvalidationPolicyByteBudget();
+    final List<LogSegment> segments = prepareCachedSegments(6, 10, 10);
+    final long segmentSize = segments.get(0).getCachedSize();
+    Assert.assertTrue(segmentSize > 10 * 1024);
+    final TimeDuration hot = TimeDuration.valueOf(500, TimeUnit.MILLISECONDS);
+    Thread.sleep(hot.toLong(TimeUnit.MILLISECONDS) * 2);
+    // a lagging follower is re-reading segment 4
+    segments.get(4).loadCache(segments.get(4).getLogRecord(55));
+
+    // case 1, the segments being read by the followers and by the state machine are kept.
+    // evict the segments already read first, then the cold segment and then the hot segment.
+    Context<LogSegment> c = newContext(Reason.BYTE_LIMIT, segments, new long[]{35, 55}, 69, 65,
+        6, 3 * segmentSize, hot);
+    Assert.assertEquals(Arrays.asList(segments.get(0), segments.get(1), segments.get(3)), byteBudget.evict(c));
+    c = newContext(Reason.BYTE_LIMIT, segments, new long[]{35}, 69, 65, 6, segmentSize, hot);
+    Assert.assertEquals(Arrays.asList(segments.get(0), segments.get(1), segments.get(3), segments.get(4)),
+        byteBudget.evict(c));
+
+    // case 2, the segments not flushed cannot be evicted
+    c = newContext(Reason.BYTE_LIMIT, segments, new long[]{35}, 45, 65, 6, segmentSize, hot);
+    Assert.assertEquals(Arrays.asList(segments.get(0), segments.get(1)), byteBudget.evict(c));
+
+    // case 3, the number of the cached segments exceeds the limit
+    c = newContext(Reason.SEGMENT_NUM, segments, null, 69, 69, 4, 0, hot);
+    Assert.assertEquals(Arrays.asList(segments.get(0), segments.get(1)), byteBudget.evict(c));
+
+    // case 4, evict half of the cache under heap pressure even if there is no byte limit
+    c = newContext(Reason.HEAP_PRESSURE, segments, null, 69, 69, 6, 0, hot);
+    Assert.assertEquals(6 * segmentSize, c.getCachedBytes());
+    Assert.assertEquals(Arrays.asList(segments.get(0), segments.get(1), segments.get(2)), byteBudget.evict(c));
+
+    // case 5, evict nothing when the cache is within the limits
+    c = newContext(Reason.BYTE_LIMIT, segments, null, 69, 69, 6, 6 * segmentSize, hot);
+    Assert.assertTrue(byteBudget.evict(c).isEmpty());
+
+    segments.get(0).evictCache();
+    Assert.assertEquals(0, segments.get(0).getCachedSize());
+  }
+
+  @Test
+  public void testByteLimitInSegmentedLog() throws Exception {
+    final RaftProperties prop = new RaftProperties();
+    prop.setClass(MiniRaftCluster.STATEMACHINE_CLASS_KEY,
+        SimpleStateMachine4Testing.class, StateMachine.class);
+    RaftServerConfigKeys.Log.setSegmentSizeMax(prop, SizeInBytes.valueOf("8KB"));
+    RaftServerConfigKeys.Log.setPreallocatedSize(prop, SizeInBytes.valueOf("8KB"));
+    RaftServerConfigKeys.Log.CacheEviction.setPolicy(prop, CacheInvalidationPolicyByteBudget.class);
+    final SizeInBytes byteLimit = SizeInBytes.valueOf("16KB");
+    RaftServerConfigKeys.Log.CacheEviction.setByteLimit(prop, byteLimit);
+    final RaftPeerId peerId = RaftPeerId.valueOf("s-byte-limit");
+
+    final File storageDir = getTestDir();
+    RaftServerConfigKeys.setStorageDirs(prop, Collections.singletonList(storageDir));
+    final RaftStorage storage = new RaftStorage(storageDir, RaftServerConstants.StartupOption.REGULAR);
+
+    final RaftServerImpl server = Mockito.mock(RaftServerImpl.class);
+    final ServerState state = Mockito.mock(ServerState.class);
+    Mockito.when(server.getState()).thenReturn(state);
+    Mockito.when(server.getFollowerNextIndices()).thenReturn(new long[]{});
+    Mockito.when(state.getLastAppliedIndex()).thenReturn(0L);
+
+    try (SegmentedRaftLog raftLog = new SegmentedRaftLog(peerId, server, storage, -1, prop)) {
+      raftLog.open(RaftServerConstants.INVALID_LOG_INDEX, null);
+      final List<LogEntryProto> entries = new ArrayList<>();
+      for (int i = 0; i < 100; i++) {
+        SimpleOperation m = new SimpleOperation(new String(new byte[1024]));
+        entries.add(ServerProtoUtils.toLogEntryProto(m.getLogEntryContent(), 1, i));
+      }
+      raftLog.append(entries.toArray(new LogEntryProto[0])).forEach(CompletableFuture::join);
+
+      final RaftLogCache cache = raftLog.getRaftLogCache();
+      Mockito.when(state.getLastAppliedIndex()).thenReturn(99L);
+      raftLog.checkAndEvictCache();
+      Assert.assertNull(cache.getEvictionReason());
+      final long openSize = cache.getOpenSegment().getCachedSize();
+      Assert.assertTrue(cache.getCachedSize() - openSize <= byteLimit.getSize());
+
+      final MetricRegistry registry = RatisMetricsRegistry.getRegistry();
+      final String byteLimitName = RaftServerMetrics.getMetricName(RaftLogCache.class, peerId, null,
+          "eviction-byte-limit");
+      Assert.assertTrue(registry.counter(byteLimitName).getCount() > 0);
+      final String segmentNumName = RaftServerMetrics.getMetricName(RaftLogCache.class, peerId, null,
+          "eviction-segment-num");
+      Assert.assertEquals(0, registry.counter(segmentNumName).getCount());
+
+      // the evicted entries are reloaded from the segment files
+      for (LogEntryProto e : entries) {
+        Assert.assertEquals(e, raftLog.get(e.getIndex()));
+      }
+      final double hitRatio = (Double) registry.getGauges().get(
+          RaftServerMetrics.getMetricName(RaftLogCache.class, peerId, null, "hit-ratio")).getValue();
+      Assert.assertTrue(hitRatio > 0 && hitRatio < 1);
+    }
+  }
+
   @Test
   public void testEvictionInSegmentedLog() throws Exception {
     final RaftProperties prop = new RaftProperties();
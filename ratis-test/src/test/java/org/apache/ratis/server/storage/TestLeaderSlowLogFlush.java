@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.storage;
+
+import org.apache.ratis.BaseTest;
+import org.apache.ratis.MiniRaftCluster;
+import org.apache.ratis.RaftTestUtil;
+import org.apache.ratis.RaftTestUtil.SimpleMessage;
+import org.apache.ratis.client.RaftClient;
+import org.apache.ratis.server.impl.DelayLocalExecutionInjection;
+import org.apache.ratis.server.impl.RaftServerImpl;
+import org.apache.ratis.server.simulation.MiniRaftClusterWithSimulatedRpc;
+import org.apache.ratis.util.JavaUtils;
+import org.apache.ratis.util.Timestamp;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/** Test that the local log flush of the leader is not required for committing. */
+public class TestLeaderSlowLogFlush extends BaseTest implements MiniRaftClusterWithSimulatedRpc.FactoryGet {
+  static final int DELAY_MS = 2000;
+
+  private final DelayLocalExecutionInjection flushDelay = new DelayLocalExecutionInjection(RaftLogWorker.FLUSH_WRITES);
+
+  @After
+  public void clearDelay() {
+    flushDelay.clear();
+  }
+
+  @Test
+  public void testSlowLeader() throws Exception {
+    runWithNewCluster(3, this::runTestSlowLeader);
+  }
+
+  void runTestSlowLeader(MiniRaftCluster cluster) throws Exception {
+    try (final RaftClient client = cluster.createClient()) {
+      final RaftServerImpl leader = RaftTestUtil.waitForLeader(cluster);
+      Assert.assertTrue(client.send(new SimpleMessage("first")).isSuccess());
+
+      flushDelay.setDelayMs(leader.getId().toString(), DELAY_MS);
+      final Timestamp start = Timestamp.currentTime();
+      for(int i = 0; i < 5; i++) {
+        Assert.assertTrue(client.send(new SimpleMessage("m" + i)).isSuccess());
+      }
+      final long elapsed = start.elapsedTimeMs();
+      LOG.info("5 writes with a slow leader disk: {} ms", elapsed);
+
+      // committed by the followers while the leader is still flushing
+      final RaftLog log = leader.getState().getLog();
+      Assert.assertTrue(log.getLastCommittedIndex() > log.getLatestFlushedIndex());
+      Assert.assertTrue("elapsed = " + elapsed, elapsed < DELAY_MS);
+
+      flushDelay.clear();
+      JavaUtils.attempt(() -> log.getLatestFlushedIndex() >= log.getLastCommittedIndex(),
+          20, 500, "leader flush", LOG);
+    }
+  }
+
+  @Test
+  public void testSlowLeaderAndFollower() throws Exception {
+    runWithNewCluster(3, this::runTestSlowLeaderAndFollower);
+  }
+
+  void runTestSlowLeaderAndFollower(MiniRaftCluster cluster) throws Exception {
+    try (final RaftClient client = cluster.createClient()) {
+      final RaftServerImpl leader = RaftTestUtil.waitForLeader(cluster);
+      Assert.assertTrue(client.send(new SimpleMessage("first")).isSuccess());
+
+      // a majority, which must include a slow server, is required for committing
+      final int delayMs = DELAY_MS / 4;
+      flushDelay.setDelayMs(leader.getId().toString(), delayMs);
+      flushDelay.setDelayMs(cluster.getFollowers().get(0).getId().toString(), delayMs);
+      final Timestamp start = Timestamp.currentTime();
+      Assert.assertTrue(client.send(new SimpleMessage("slow")).isSuccess());
+      final long elapsed = start.elapsedTimeMs();
+      LOG.info("a write with a slow leader and a slow follower: {} ms", elapsed);
+      Assert.assertTrue("elapsed = " + elapsed, elapsed >= delayMs);
+    }
+  }
+}
@@ -0,0 +1,182 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.storage;
+
+import org.apache.ratis.BaseTest;
+import org.apache.ratis.MiniRaftCluster;
+import org.apache.ratis.RaftTestUtil.SimpleOperation;
+import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.proto.RaftProtos.LogEntryProto;
+import org.apache.ratis.protocol.RaftPeerId;
+import org.apache.ratis.server.RaftServerConfigKeys;
+import org.apache.ratis.server.impl.RaftServerConstants;
+import org.apache.ratis.server.impl.RaftServerImpl;
+import org.apache.ratis.server.impl.ServerProtoUtils;
+import org.apache.ratis.server.impl.ServerState;
+import org.apache.ratis.server.protocol.TermIndex;
+import org.apache.ratis.statemachine.SimpleStateMachine4Testing;
+import org.apache.ratis.statemachine.StateMachine;
+import org.apache.ratis.util.SizeInBytes;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+public class TestOffHeapEntryCache extends BaseTest {
+  static LogEntryProto newEntry(long term, long index, int dataSize) {
+    final SimpleOperation m = new SimpleOperation(new String(new byte[dataSize]));
+    return ServerProtoUtils.toLogEntryProto(m.getLogEntryContent(), term, index);
+  }
+
+  static LogEntryProto getCached(LogSegment segment, long index) {
+    return segment.getEntryWithoutLoading(index).getEntry();
+  }
+
+  @Test
+  public void testRecords() {
+    final LogSegment segment = LogSegment.newOpenSegment(null, 10);
+    final List<LogEntryProto> entries = new ArrayList<>();
+    for(int term = 1; term <= 3; term++) {
+      for(int i = 0; i < 3; i++) {
+        final LogEntryProto e = newEntry(term, 10 + entries.size(), 10);
+        entries.add(e);
+        segment.appendToOpenSegment(e);
+      }
+    }
+    for(LogEntryProto e : entries) {
+      Assert.assertEquals(ServerProtoUtils.toTermIndex(e), segment.getLogRecord(e.getIndex()).getTermIndex());
+    }
+    Assert.assertEquals(TermIndex.newTermIndex(3, 18), segment.getLastTermIndex());
+
+    // truncate in the middle of the second term
+    segment.truncate(14);
+    Assert.assertEquals(TermIndex.newTermIndex(2, 13), segment.getLastTermIndex());
+    Assert.assertNull(segment.getLogRecord(14));
+    Assert.assertEquals(entries.get(3).getIndex(), segment.getEndIndex());
+  }
+
+  @Test
+  public void testEviction() {
+    // each slab holds exactly one entry
+    final int slabSize = 128;
+    final OffHeapEntryCache cache = new OffHeapEntryCache(getClass().getSimpleName(), slabSize, 10 * slabSize);
+    try {
+      final LogSegment closed = LogSegment.newOpenSegment(null, null, cache, 0);
+      final List<LogEntryProto> entries = new ArrayList<>();
+      for(int i = 0; i < 30; i++) {
+        final LogEntryProto e = newEntry(1, i, 80);
+        entries.add(e);
+        closed.appendToOpenSegment(e);
+      }
+      closed.close();
+      final LogSegment open = LogSegment.newOpenSegment(null, null, cache, 30);
+      for(int i = 30; i < 33; i++) {
+        final LogEntryProto e = newEntry(1, i, 80);
+        entries.add(e);
+        open.appendToOpenSegment(e);
+      }
+      Assert.assertEquals(33, cache.getNumSlabs());
+      Assert.assertTrue(cache.shouldEvict());
+      for(LogEntryProto e : entries) {
+        Assert.assertEquals(e, getCached(e.getIndex() < 30? closed: open, e.getIndex()));
+      }
+
+      // touch entry 20 so that it becomes the most recently used
+      Assert.assertEquals(entries.get(20), getCached(closed, 20));
+
+      // the follower is reading entry 15 and the state machine has applied entry 29
+      Assert.assertEquals(23, cache.evict(new long[]{15}, 32, 29));
+      Assert.assertEquals(10 * slabSize, cache.getCachedBytes());
+      Assert.assertFalse(cache.shouldEvict());
+
+      // the entries passed by all the readers are evicted first
+      for(int i = 0; i < 15; i++) {
+        Assert.assertNull(getCached(closed, i));
+      }
+      // the entry being read is kept
+      Assert.assertEquals(entries.get(15), getCached(closed, 15));
+      // then, the least recently used entries are evicted
+      for(int i = 16; i < 25; i++) {
+        Assert.assertEquals(i == 20? entries.get(i): null, getCached(closed, i));
+      }
+      for(int i = 25; i < 33; i++) {
+        Assert.assertEquals(entries.get(i), getCached(i < 30? closed: open, i));
+      }
+
+      // the buffers of the evicted slabs are reused
+      final LogSegment next = LogSegment.newOpenSegment(null, null, cache, 33);
+      next.appendToOpenSegment(newEntry(1, 33, 80));
+      Assert.assertEquals(11 * slabSize, cache.getCachedBytes());
+
+      closed.clear();
+      Assert.assertEquals(4 * slabSize, cache.getCachedBytes());
+      Assert.assertEquals(entries.get(30), getCached(open, 30));
+    } finally {
+      cache.close();
+    }
+  }
+
+  @Test
+  public void testEvictionInSegmentedLog() throws Exception {
+    final RaftProperties prop = new RaftProperties();
+    prop.setClass(MiniRaftCluster.STATEMACHINE_CLASS_KEY,
+        SimpleStateMachine4Testing.class, StateMachine.class);
+    RaftServerConfigKeys.Log.setSegmentSizeMax(prop, SizeInBytes.valueOf("8KB"));
+    RaftServerConfigKeys.Log.setPreallocatedSize(prop, SizeInBytes.valueOf("8KB"));
+    RaftServerConfigKeys.Log.OffHeapCache.setEnabled(prop, true);
+    RaftServerConfigKeys.Log.OffHeapCache.setSlabSize(prop, SizeInBytes.valueOf("4KB"));
+    final SizeInBytes sizeMax = SizeInBytes.valueOf("16KB");
+    RaftServerConfigKeys.Log.OffHeapCache.setSizeMax(prop, sizeMax);
+
+    final File storageDir = getTestDir();
+    RaftServerConfigKeys.setStorageDirs(prop, Collections.singletonList(storageDir));
+    final RaftStorage storage = new RaftStorage(storageDir, RaftServerConstants.StartupOption.REGULAR);
+
+    final RaftServerImpl server = Mockito.mock(RaftServerImpl.class);
+    final ServerState state = Mockito.mock(ServerState.class);
+    Mockito.when(server.getState()).thenReturn(state);
+    Mockito.when(server.getFollowerNextIndices()).thenReturn(new long[]{});
+    Mockito.when(state.getLastAppliedIndex()).thenReturn(0L);
+
+    try (SegmentedRaftLog raftLog = new SegmentedRaftLog(RaftPeerId.valueOf("s0"), server, storage, -1, prop)) {
+      raftLog.open(RaftServerConstants.INVALID_LOG_INDEX, null);
+      final List<LogEntryProto> entries = new ArrayList<>();
+      for(int i = 0; i < 100; i++) {
+        entries.add(newEntry(1, i, 1024));
+      }
+      raftLog.append(entries.toArray(new LogEntryProto[0])).forEach(CompletableFuture::join);
+
+      final RaftLogCache cache = raftLog.getRaftLogCache();
+      final OffHeapEntryCache offHeap = cache.getOffHeapCache();
+      Assert.assertNotNull(offHeap);
+      Mockito.when(state.getLastAppliedIndex()).thenReturn(99L);
+      cache.evictCache(new long[]{50}, raftLog.getLatestFlushedIndex(), 99);
+      Assert.assertTrue(offHeap.getCachedBytes() <= sizeMax.getSize());
+
+      // the evicted entries are reloaded from the segment files
+      for(LogEntryProto e : entries) {
+        Assert.assertEquals(e, raftLog.get(e.getIndex()));
+      }
+    }
+  }
+}
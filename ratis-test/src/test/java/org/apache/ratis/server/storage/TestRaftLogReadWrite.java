@@ -39,6 +39,7 @@ import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
@@ -122,6 +123,41 @@ public class TestRaftLogReadWrite extends BaseTest {
     Assert.assertArrayEquals(entries, readEntries);
   }
 
+  /**
+   * Write entries of different sizes, including the entries larger than the write buffer,
+   * so that both the direct and the scratch encoding paths are used, then read.
+   */
+  @Test
+  public void testReadWriteLargeEntries() throws IOException {
+    final RaftStorage storage = new RaftStorage(storageDir, StartupOption.REGULAR);
+    File openSegment = storage.getStorageDir().getOpenLogFile(0);
+    long size = SegmentedRaftLogFormat.getHeaderLength();
+
+    final LogEntryProto[] entries = new LogEntryProto[20];
+    try (LogOutputStream out =
+             new LogOutputStream(openSegment, false, segmentMaxSize,
+                 preallocatedSize, bufferSize)) {
+      for (int i = 0; i < entries.length; i++) {
+        final int length = i % 3 == 0? 2 * bufferSize: i * 100;
+        final char[] chars = new char[length];
+        Arrays.fill(chars, (char)('a' + i));
+        SimpleOperation m = new SimpleOperation(new String(chars));
+        entries[i] = ServerProtoUtils.toLogEntryProto(m.getLogEntryContent(), 0, i);
+        final int s = entries[i].getSerializedSize();
+        size += CodedOutputStream.computeUInt32SizeNoTag(s) + s + 4;
+        out.write(entries[i]);
+      }
+    } finally {
+      storage.close();
+    }
+
+    Assert.assertEquals(size, openSegment.length());
+
+    LogEntryProto[] readEntries = readLog(openSegment, 0,
+        RaftServerConstants.INVALID_LOG_INDEX, true);
+    Assert.assertArrayEquals(entries, readEntries);
+  }
+
   @Test
   public void testAppendLog() throws IOException {
     final RaftStorage storage = new RaftStorage(storageDir, StartupOption.REGULAR);
@@ -20,6 +20,7 @@ package org.apache.ratis.server.storage;
 import org.apache.ratis.BaseTest;
 import org.apache.ratis.RaftTestUtil.SimpleOperation;
 import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.protocol.ChecksumException;
 import org.apache.ratis.server.RaftServerConfigKeys;
 import org.apache.ratis.server.impl.RaftServerConstants.StartupOption;
 import org.apache.ratis.server.impl.ServerProtoUtils;
@@ -38,6 +39,7 @@ import org.junit.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
@@ -180,6 +182,116 @@ public class TestRaftLogSegment extends BaseTest {
     Assert.assertEquals(loadInitial ? 0 : 1, closedSegment.getLoadingTimes());
   }
 
+  @Test
+  public void testLoadSegmentWithCorruptTail() throws Exception {
+    final RaftStorage storage = new RaftStorage(storageDir, StartupOption.REGULAR);
+
+    // an open segment is truncated back to the last valid entry
+    final File openSegmentFile = prepareLog(true, 0, 100, 0, false);
+    final long openLength = LogSegment.loadSegment(storage, openSegmentFile, 0,
+        INVALID_LOG_INDEX, true, true, null).getTotalSize();
+    corruptLastByte(openSegmentFile, openLength);
+    final LogSegment openSegment = LogSegment.loadSegment(storage, openSegmentFile, 0,
+        INVALID_LOG_INDEX, true, true, null);
+    checkLogSegment(openSegment, 0, 98, true, openSegmentFile.length(), 0);
+    Assert.assertTrue(openSegmentFile.length() < openLength);
+
+    // a closed segment is not truncated
+    final File closedSegmentFile = prepareLog(false, 1000, 100, 1, false);
+    final long closedLength = LogSegment.loadSegment(storage, closedSegmentFile,
+        1000, 1099, false, true, null).getTotalSize();
+    corruptLastByte(closedSegmentFile, closedLength);
+    testFailureCase("load corrupt closed segment", () -> LogSegment.loadSegment(storage, closedSegmentFile,
+        1000, 1099, false, true, null), ChecksumException.class, LOG);
+    Assert.assertEquals(closedLength, closedSegmentFile.length());
+    storage.close();
+  }
+
+  /** Flip the last byte, which is in the checksum of the last entry. */
+  static void corruptLastByte(File file, long length) throws IOException {
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      raf.seek(length - 1);
+      final int b = raf.read();
+      raf.seek(length - 1);
+      raf.write(b ^ 0xFF);
+    }
+  }
+
+  @Test
+  public void testMappedReader() throws Exception {
+    final File file1 = prepareLog(false, 1000, 100, 1, false);
+    final File file2 = prepareLog(false, 2000, 100, 2, false);
+    final RaftStorage storage = new RaftStorage(storageDir, StartupOption.REGULAR);
+    // only one segment can be mapped at a time
+    final MappedSegmentReader reader = new MappedSegmentReader("test", file1.length() * 3 / 2);
+
+    final LogSegment segment1 = LogSegment.loadSegment(storage, reader, file1,
+        1000, 1099, false, false, null);
+    checkMappedEntries(segment1, 1000, 1099, 1);
+    Assert.assertEquals(0, segment1.getLoadingTimes());
+    Assert.assertFalse(segment1.hasCache());
+    Assert.assertTrue(reader.isMapped(segment1));
+    Assert.assertEquals(segment1.getTotalSize(), reader.getMappedBytes());
+
+    // read a range of entries
+    final List<LogSegment.LogRecord> records = new ArrayList<>();
+    for (long i = 1010; i < 1020; i++) {
+      records.add(segment1.getLogRecord(i));
+    }
+    final List<LogEntryProto> range = reader.readEntries(segment1, file1, records);
+    Assert.assertEquals(records.size(), range.size());
+    for (int i = 0; i < range.size(); i++) {
+      assertEntry(1010 + i, 1000, 1, range.get(i));
+    }
+    Assert.assertEquals(range, segment1.readMapped(1010, 1020));
+    // the range exceeds the segment
+    Assert.assertNull(segment1.readMapped(1090, 1110));
+
+    // mapping the second segment unmaps the first one
+    final LogSegment segment2 = LogSegment.loadSegment(storage, reader, file2,
+        2000, 2099, false, false, null);
+    checkMappedEntries(segment2, 2000, 2099, 2);
+    Assert.assertFalse(reader.isMapped(segment1));
+    Assert.assertTrue(reader.isMapped(segment2));
+    Assert.assertEquals(1, reader.getNumMappings());
+
+    // truncate unmaps the segment
+    segment2.truncate(2050);
+    Assert.assertFalse(reader.isMapped(segment2));
+    Assert.assertEquals(0, reader.getMappedBytes());
+
+    // a segment larger than the max mapped size is loaded from the file
+    final MappedSegmentReader small = new MappedSegmentReader("small", file1.length() / 2);
+    final LogSegment segment3 = LogSegment.loadSegment(storage, small, file1,
+        1000, 1099, false, false, null);
+    checkMappedEntries(segment3, 1000, 1099, 1);
+    Assert.assertEquals(1, segment3.getLoadingTimes());
+    Assert.assertEquals(0, small.getNumMappings());
+
+    // clear unmaps the segment
+    checkMappedEntries(segment1, 1000, 1099, 1);
+    Assert.assertTrue(reader.isMapped(segment1));
+    segment1.clear();
+    Assert.assertFalse(reader.isMapped(segment1));
+    Assert.assertEquals(0, reader.getMappedBytes());
+    storage.close();
+  }
+
+  private static void assertEntry(long index, long startIndex, long term, LogEntryProto entry) {
+    Assert.assertEquals(term, entry.getTerm());
+    Assert.assertEquals(index, entry.getIndex());
+    Assert.assertEquals("m" + (index - startIndex),
+        entry.getStateMachineLogEntry().getLogData().toStringUtf8());
+  }
+
+  private static void checkMappedEntries(LogSegment segment, long start, long end, long term)
+      throws Exception {
+    for (long i = start; i <= end; i++) {
+      final LogEntryProto entry = segment.loadCache(segment.getLogRecord(i));
+      assertEntry(i, start, term, entry);
+    }
+  }
+
   @Test
   public void testAppendEntries() throws Exception {
     final long start = 1000;
@@ -182,6 +182,66 @@ public class TestRaftStorage extends BaseTest {
     }
   }
 
+  @Test
+  public void testSeparatedLog() throws Exception {
+    final File dataDir = new File(storageDir, "data");
+    final File logDir = new File(storageDir, "log");
+    RaftStorage storage = new RaftStorage(dataDir, logDir, StartupOption.REGULAR);
+    Assert.assertEquals(StorageState.NORMAL, storage.getState());
+    final RaftStorageDirectory sd = storage.getStorageDir();
+    Assert.assertEquals(new File(logDir, RaftStorageDirectory.STORAGE_DIR_CURRENT), sd.getCurrentDir());
+    Assert.assertTrue(sd.getMetaFile().exists());
+    Assert.assertEquals(new File(dataDir, RaftStorageDirectory.STATE_MACHINE), sd.getStateMachineDir());
+    Assert.assertEquals(dataDir, sd.getNewTempDir().getParentFile().getParentFile());
+    Assert.assertFalse(new File(dataDir, RaftStorageDirectory.STORAGE_DIR_CURRENT).exists());
+
+    // both the directories are locked
+    for(File dir : new File[]{dataDir, logDir}) {
+      try {
+        new RaftStorage(dir, StartupOption.REGULAR);
+        Assert.fail("the storage " + dir + " should be locked");
+      } catch (IOException e) {
+        Assert.assertTrue(e.getMessage().contains("directory is already locked"));
+      }
+    }
+    new MetaFile(sd.getMetaFile()).set(123, "peer1");
+    storage.close();
+
+    // format clears both the log and the state machine directory
+    FileUtils.createDirectories(sd.getStateMachineDir());
+    storage = new RaftStorage(dataDir, logDir, StartupOption.FORMAT);
+    Assert.assertEquals(MetaFile.DEFAULT_TERM, storage.getMetaFile().getTerm());
+    Assert.assertTrue(sd.getStateMachineDir().exists());
+    Assert.assertEquals(0, sd.getStateMachineDir().list().length);
+    storage.close();
+  }
+
+  /** The existing log is moved to the log directory once the log is separated. */
+  @Test
+  public void testSeparateExistingLog() throws Exception {
+    final File dataDir = new File(storageDir, "data");
+    final File logDir = new File(storageDir, "log");
+    RaftStorage storage = new RaftStorage(dataDir, StartupOption.REGULAR);
+    new MetaFile(storage.getStorageDir().getMetaFile()).set(123, "peer1");
+    storage.close();
+
+    storage = new RaftStorage(dataDir, logDir, StartupOption.REGULAR);
+    Assert.assertEquals(StorageState.NORMAL, storage.getState());
+    Assert.assertEquals(123, storage.getMetaFile().getTerm());
+    Assert.assertEquals("peer1", storage.getMetaFile().getVotedFor());
+    Assert.assertFalse(new File(dataDir, RaftStorageDirectory.STORAGE_DIR_CURRENT).exists());
+    storage.close();
+
+    // the storage is inconsistent if both the directories have a log
+    new RaftStorage(new File(storageDir, "other"), dataDir, StartupOption.REGULAR).close();
+    try {
+      new RaftStorage(dataDir, logDir, StartupOption.REGULAR);
+      Assert.fail("the log should be inconsistent");
+    } catch (IOException e) {
+      Assert.assertTrue(e.getMessage().contains("inconsistent"));
+    }
+  }
+
   @Test
   public void testSnapshotFileName() throws Exception {
     final long term = ThreadLocalRandom.current().nextLong(Long.MAX_VALUE);
@@ -17,10 +17,12 @@
  */
 package org.apache.ratis.server.storage;
 
+import com.codahale.metrics.Counter;
 import org.apache.log4j.Level;
 import org.apache.ratis.BaseTest;
 import org.apache.ratis.RaftTestUtil.SimpleOperation;
 import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.metrics.RatisMetricsRegistry;
 import org.apache.ratis.protocol.RaftPeerId;
 import org.apache.ratis.protocol.TimeoutIOException;
 import org.apache.ratis.server.RaftServerConfigKeys;
@@ -46,6 +48,7 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
@@ -56,6 +59,7 @@ import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.doCallRealMethod;
@@ -182,6 +186,93 @@ public class TestSegmentedRaftLog extends BaseTest {
     }
   }
 
+  @Test
+  public void testLoadWithSegmentIndex() throws Exception {
+    RaftServerConfigKeys.Log.setMaxCachedSegmentNum(properties, 1);
+    final List<SegmentRange> ranges = prepareRanges(0, 5, 200, 0);
+    final List<LogEntryProto> entries = prepareLogEntries(ranges, null);
+    // a metadata entry must be loaded even if the segment is loaded with the index
+    final long commitIndex = 40;
+    entries.set(50, ServerProtoUtils.toLogEntryProto(commitIndex, 0, 50));
+
+    try (SegmentedRaftLog raftLog =
+             new SegmentedRaftLog(peerId, null, storage, -1, properties)) {
+      raftLog.open(RaftServerConstants.INVALID_LOG_INDEX, null);
+      entries.stream().map(raftLog::appendEntry).forEach(CompletableFuture::join);
+    }
+
+    final List<File> indexFiles = ranges.stream().filter(r -> !r.isOpen)
+        .map(r -> storage.getStorageDir().getClosedLogFile(r.start, r.end))
+        .map(RaftStorageDirectory::getLogIndexFile)
+        .collect(Collectors.toList());
+    indexFiles.forEach(f -> Assert.assertTrue(f + " does not exist", f.exists()));
+
+    try (SegmentedRaftLog raftLog =
+             new SegmentedRaftLog(peerId, null, storage, -1, properties)) {
+      raftLog.open(RaftServerConstants.INVALID_LOG_INDEX, null);
+      Assert.assertEquals(commitIndex, raftLog.getLastCommittedIndex());
+      checkEntries(raftLog, entries, 0, entries.size());
+    }
+
+    // a corrupted index file is ignored and deleted
+    final File corrupted = indexFiles.get(0);
+    try (FileOutputStream out = new FileOutputStream(corrupted, true)) {
+      out.write(1);
+    }
+    try (SegmentedRaftLog raftLog =
+             new SegmentedRaftLog(peerId, null, storage, -1, properties)) {
+      raftLog.open(RaftServerConstants.INVALID_LOG_INDEX, null);
+      Assert.assertEquals(commitIndex, raftLog.getLastCommittedIndex());
+      checkEntries(raftLog, entries, 0, entries.size());
+      Assert.assertFalse(corrupted.exists());
+
+      // truncate deletes the index files of the truncated segments
+      raftLog.truncate(350).join();
+      checkEntries(raftLog, entries, 0, 350);
+    }
+    indexFiles.forEach(f -> Assert.assertFalse(f + " still exists", f.exists()));
+  }
+
+  @Test
+  public void testPurge() throws Exception {
+    final List<SegmentRange> ranges = prepareRanges(0, 5, 200, 0);
+    final List<LogEntryProto> entries = prepareLogEntries(ranges, null);
+    final Counter purgeBytes = RatisMetricsRegistry.getRegistry()
+        .counter(RaftStorageTestUtils.getLogPurgeBytesMetric(peerId, null));
+    final long purgeBytesBefore = purgeBytes.getCount();
+
+    try (SegmentedRaftLog raftLog =
+             new SegmentedRaftLog(peerId, null, storage, -1, properties)) {
+      raftLog.open(RaftServerConstants.INVALID_LOG_INDEX, null);
+      entries.stream().map(raftLog::appendEntry).forEach(CompletableFuture::join);
+
+      // only the entire segments are purged
+      Assert.assertEquals(0, raftLog.purge(198).join().longValue());
+      Assert.assertEquals(400, raftLog.purge(450).join().longValue());
+      checkEntries(raftLog, entries, 400, entries.size() - 400);
+      Assert.assertNull(raftLog.get(399));
+
+      // the last closed segment and the open segment are kept
+      Assert.assertEquals(600, raftLog.purge(entries.size()).join().longValue());
+      checkEntries(raftLog, entries, 600, entries.size() - 600);
+    }
+
+    for (SegmentRange r : ranges.subList(0, 3)) {
+      final File file = storage.getStorageDir().getClosedLogFile(r.start, r.end);
+      Assert.assertFalse(file + " still exists", file.exists());
+      Assert.assertFalse(RaftStorageDirectory.getLogIndexFile(file).exists());
+    }
+    Assert.assertTrue(purgeBytes.getCount() > purgeBytesBefore);
+
+    // the purged entries are not loaded after restart
+    try (SegmentedRaftLog raftLog =
+             new SegmentedRaftLog(peerId, null, storage, -1, properties)) {
+      raftLog.open(RaftServerConstants.INVALID_LOG_INDEX, null);
+      Assert.assertEquals(600, raftLog.getStartIndex());
+      checkEntries(raftLog, entries, 600, entries.size() - 600);
+    }
+  }
+
   static List<LogEntryProto> prepareLogEntries(List<SegmentRange> slist,
       Supplier<String> stringSupplier) {
     List<LogEntryProto> eList = new ArrayList<>();
@@ -254,6 +345,36 @@ public class TestSegmentedRaftLog extends BaseTest {
     }
   }
 
+  /**
+   * Append entries with group commit enabled and check if log state is correct.
+   */
+  @Test
+  public void testAppendEntryWithGroupCommit() throws Exception {
+    RaftServerConfigKeys.Log.GroupCommit.setEnabled(properties, true);
+    RaftServerConfigKeys.Log.setPreallocatedSize(properties, SizeInBytes.valueOf("16KB"));
+    RaftServerConfigKeys.Log.setSegmentSizeMax(properties, SizeInBytes.valueOf("128KB"));
+    List<SegmentRange> ranges = prepareRanges(0, 3, 500, 0);
+    List<LogEntryProto> entries = prepareLogEntries(ranges, null);
+
+    try (SegmentedRaftLog raftLog =
+             new SegmentedRaftLog(peerId, null, storage, -1, properties)) {
+      raftLog.open(RaftServerConstants.INVALID_LOG_INDEX, null);
+      // append all the entries before waiting so that they can be batched
+      final List<CompletableFuture<Long>> futures = entries.stream()
+          .map(raftLog::appendEntry).collect(Collectors.toList());
+      for (int i = 0; i < futures.size(); i++) {
+        Assert.assertEquals(entries.get(i).getIndex(), futures.get(i).join().longValue());
+      }
+      Assert.assertEquals(entries.get(entries.size() - 1).getIndex(), raftLog.getLatestFlushedIndex());
+    }
+
+    try (SegmentedRaftLog raftLog =
+             new SegmentedRaftLog(peerId, null, storage, -1, properties)) {
+      raftLog.open(RaftServerConstants.INVALID_LOG_INDEX, null);
+      checkEntries(raftLog, entries, 0, entries.size());
+    }
+  }
+
   /**
    * Keep appending entries, make sure the rolling is correct.
    */
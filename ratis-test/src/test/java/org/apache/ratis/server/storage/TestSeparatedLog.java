@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.storage;
+
+import org.apache.ratis.BaseTest;
+import org.apache.ratis.MiniRaftCluster;
+import org.apache.ratis.RaftTestUtil;
+import org.apache.ratis.RaftTestUtil.SimpleMessage;
+import org.apache.ratis.client.RaftClient;
+import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.protocol.RaftPeerId;
+import org.apache.ratis.server.RaftServerConfigKeys;
+import org.apache.ratis.server.impl.RaftServerImpl;
+import org.apache.ratis.server.simulation.MiniRaftClusterWithSimulatedRpc;
+import org.apache.ratis.util.SizeInBytes;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Collections;
+
+/** Test a cluster with the log separated from the state machine and the snapshot files. */
+public class TestSeparatedLog extends BaseTest implements MiniRaftClusterWithSimulatedRpc.FactoryGet {
+  {
+    final RaftProperties p = getProperties();
+    // the cluster uses a log directory for each server
+    RaftServerConfigKeys.Log.setDirs(p, Collections.singletonList(new File("log")));
+    RaftServerConfigKeys.Log.setSegmentSizeMax(p, SizeInBytes.valueOf("4KB"));
+  }
+
+  @Test
+  public void testRestart() throws Exception {
+    runWithNewCluster(3, this::runTestRestart);
+  }
+
+  void runTestRestart(MiniRaftCluster cluster) throws Exception {
+    try (final RaftClient client = cluster.createClient()) {
+      RaftTestUtil.waitForLeader(cluster);
+      for(int i = 0; i < 50; i++) {
+        Assert.assertTrue(client.send(new SimpleMessage("m" + i)).isSuccess());
+      }
+
+      final RaftServerImpl follower = cluster.getFollowers().get(0);
+      final RaftPeerId id = follower.getId();
+      final RaftStorageDirectory dir = follower.getState().getStorage().getStorageDir();
+      Assert.assertTrue(dir.isLogSeparated());
+      Assert.assertFalse(dir.getLogSegmentFiles().isEmpty());
+      Assert.assertFalse(new File(dir.getRoot(), RaftStorageDirectory.STORAGE_DIR_CURRENT).exists());
+      final long lastIndex = follower.getState().getLog().getLastEntryTermIndex().getIndex();
+
+      // the log and the metadata are recovered from the log directory
+      final RaftServerImpl restarted = cluster.restartServer(id, false);
+      Assert.assertEquals(dir.getLogRoot(), restarted.getState().getStorage().getStorageDir().getLogRoot());
+      Assert.assertTrue(restarted.getState().getLog().getLastEntryTermIndex().getIndex() >= lastIndex);
+      Assert.assertTrue(restarted.getState().getCurrentTerm() > 0);
+
+      for(int i = 0; i < 10; i++) {
+        Assert.assertTrue(client.send(new SimpleMessage("after" + i)).isSuccess());
+      }
+    }
+  }
+}
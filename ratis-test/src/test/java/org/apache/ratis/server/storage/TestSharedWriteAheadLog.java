@@ -0,0 +1,195 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.storage;
+
+import org.apache.log4j.Level;
+import org.apache.ratis.BaseTest;
+import org.apache.ratis.RaftTestUtil.SimpleOperation;
+import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.proto.RaftProtos.LogEntryProto;
+import org.apache.ratis.proto.RaftProtos.SharedLogRecordProto;
+import org.apache.ratis.protocol.RaftGroupId;
+import org.apache.ratis.protocol.RaftPeerId;
+import org.apache.ratis.server.RaftServerConfigKeys;
+import org.apache.ratis.server.impl.RaftServerConstants;
+import org.apache.ratis.server.impl.ServerProtoUtils;
+import org.apache.ratis.util.FileUtils;
+import org.apache.ratis.util.JavaUtils;
+import org.apache.ratis.util.LogUtils;
+import org.apache.ratis.util.SizeInBytes;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+public class TestSharedWriteAheadLog extends BaseTest {
+  static {
+    LogUtils.setLogLevel(SharedWriteAheadLog.LOG, Level.DEBUG);
+  }
+
+  private static final RaftPeerId PEER_ID = RaftPeerId.valueOf("s0");
+
+  private File volume;
+  private RaftProperties properties;
+
+  @Before
+  public void setup() {
+    volume = getTestDir();
+    properties = new RaftProperties();
+    RaftServerConfigKeys.Log.SharedWal.setEnabled(properties, true);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    FileUtils.deleteFully(volume);
+  }
+
+  static LogEntryProto newEntry(long term, long index) {
+    return ServerProtoUtils.toLogEntryProto(
+        new SimpleOperation("m" + index).getLogEntryContent(), term, index);
+  }
+
+  static SharedLogRecordProto newRecord(long term, long index) {
+    return SharedLogRecordProto.newBuilder().setLogEntry(newEntry(term, index)).build();
+  }
+
+  static SharedLogRecordProto newTruncation(long index) {
+    return SharedLogRecordProto.newBuilder().setTruncateIndex(index).build();
+  }
+
+  static void assertEntries(List<LogEntryProto> entries, long startIndex, long... terms) {
+    Assert.assertEquals(terms.length, entries.size());
+    for(int i = 0; i < terms.length; i++) {
+      Assert.assertEquals(startIndex + i, entries.get(i).getIndex());
+      Assert.assertEquals(terms[i], entries.get(i).getTerm());
+    }
+  }
+
+  @Test
+  public void testGetEntries() {
+    final List<SharedLogRecordProto> records = new ArrayList<>();
+    for(int i = 0; i < 10; i++) {
+      records.add(newRecord(1, i));
+    }
+    assertEntries(SharedWriteAheadLog.getEntries(records, 7), 7, 1, 1, 1);
+
+    // overwrite index 5 with term 2, which removes 6 to 9
+    records.add(newRecord(2, 5));
+    assertEntries(SharedWriteAheadLog.getEntries(records, 3), 3, 1, 1, 2);
+
+    records.add(newRecord(2, 6));
+    records.add(newTruncation(6));
+    assertEntries(SharedWriteAheadLog.getEntries(records, 4), 4, 1, 2);
+    Assert.assertTrue(SharedWriteAheadLog.getEntries(records, 6).isEmpty());
+  }
+
+  private SegmentedRaftLog newRaftLog(SharedWriteAheadLog shared, RaftGroupId groupId) throws IOException {
+    final RaftStorage storage = new RaftStorage(
+        new File(volume, groupId.getUuid().toString()), RaftServerConstants.StartupOption.REGULAR);
+    final SegmentedRaftLog log = new SegmentedRaftLog(PEER_ID, null, shared.register(groupId),
+        storage, RaftServerConstants.INVALID_LOG_INDEX, properties);
+    log.open(RaftServerConstants.INVALID_LOG_INDEX, null);
+    return log;
+  }
+
+  static void append(RaftLog log, long term, long startIndex, int n) throws Exception {
+    final List<CompletableFuture<Long>> futures = new ArrayList<>();
+    for(int i = 0; i < n; i++) {
+      futures.addAll(log.append(newEntry(term, startIndex + i)));
+    }
+    futures.forEach(CompletableFuture::join);
+  }
+
+  static void assertLog(RaftLog log, long... terms) throws IOException {
+    Assert.assertEquals(terms.length, log.getNextIndex());
+    for(int i = 0; i < terms.length; i++) {
+      final LogEntryProto e = log.get(i);
+      Assert.assertEquals(terms[i], e.getTerm());
+      Assert.assertEquals(newEntry(terms[i], i).getStateMachineLogEntry().getLogData(),
+          e.getStateMachineLogEntry().getLogData());
+    }
+  }
+
+  /** Remove the segment files as if the unsynced writes were lost. */
+  static void deleteSegmentFiles(RaftGroupId groupId, File volume) throws IOException {
+    final File groupDir = new File(volume, groupId.getUuid().toString());
+    final File dir = new File(groupDir, RaftStorageDirectory.STORAGE_DIR_CURRENT);
+    for(File f : dir.listFiles((d, name) -> name.startsWith("log_"))) {
+      FileUtils.deleteFile(f);
+    }
+  }
+
+  @Test
+  public void testReplay() throws Exception {
+    final RaftGroupId group1 = RaftGroupId.randomId();
+    final RaftGroupId group2 = RaftGroupId.randomId();
+
+    try(SharedWriteAheadLog shared = new SharedWriteAheadLog(volume, properties);
+        SegmentedRaftLog log1 = newRaftLog(shared, group1);
+        SegmentedRaftLog log2 = newRaftLog(shared, group2)) {
+      append(log1, 1, 0, 10);
+      append(log2, 1, 0, 10);
+      // replace the entries from index 5 in group 2
+      log2.truncate(5).join();
+      append(log2, 2, 5, 3);
+      assertLog(log2, 1, 1, 1, 1, 1, 2, 2, 2);
+    }
+    final File dir = new File(volume, SharedWriteAheadLog.DIR_NAME);
+    Assert.assertEquals(1, SharedWriteAheadLog.listJournalFiles(dir).size());
+
+    deleteSegmentFiles(group1, volume);
+    deleteSegmentFiles(group2, volume);
+
+    try(SharedWriteAheadLog shared = new SharedWriteAheadLog(volume, properties);
+        SegmentedRaftLog log1 = newRaftLog(shared, group1);
+        SegmentedRaftLog log2 = newRaftLog(shared, group2)) {
+      assertLog(log1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1);
+      assertLog(log2, 1, 1, 1, 1, 1, 2, 2, 2);
+    }
+  }
+
+  @Test
+  public void testDeleteJournalFiles() throws Exception {
+    RaftServerConfigKeys.Log.SharedWal.setJournalSizeMax(properties, SizeInBytes.valueOf("1KB"));
+    final File dir = new File(volume, SharedWriteAheadLog.DIR_NAME);
+    final long[] terms = new long[200];
+    Arrays.fill(terms, 1);
+
+    try(SharedWriteAheadLog shared = new SharedWriteAheadLog(volume, properties);
+        SegmentedRaftLog log1 = newRaftLog(shared, RaftGroupId.randomId());
+        SegmentedRaftLog log2 = newRaftLog(shared, RaftGroupId.randomId())) {
+      for(int i = 0; i < terms.length; i += 20) {
+        append(log1, 1, i, 20);
+        append(log2, 1, i, 20);
+      }
+      assertLog(log1, terms);
+      assertLog(log2, terms);
+
+      // once the groups have synced their segment files, the old journal files are deleted
+      JavaUtils.attempt(() -> SharedWriteAheadLog.listJournalFiles(dir).size() <= 2,
+          20, 500, "deleteJournalFiles", LOG);
+    }
+  }
+}
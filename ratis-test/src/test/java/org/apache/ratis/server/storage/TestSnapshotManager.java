@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.storage;
+
+import org.apache.ratis.BaseTest;
+import org.apache.ratis.io.MD5Hash;
+import org.apache.ratis.proto.RaftProtos.FileChunkProto;
+import org.apache.ratis.proto.RaftProtos.InstallSnapshotRequestProto;
+import org.apache.ratis.proto.RaftProtos.TermIndexProto;
+import org.apache.ratis.protocol.RaftPeerId;
+import org.apache.ratis.server.impl.RaftServerConstants.StartupOption;
+import org.apache.ratis.statemachine.SnapshotInfo;
+import org.apache.ratis.statemachine.StateMachine;
+import org.apache.ratis.statemachine.impl.BaseStateMachine;
+import org.apache.ratis.thirdparty.com.google.protobuf.ByteString;
+import org.apache.ratis.util.FileUtils;
+import org.apache.ratis.util.MD5FileUtil;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+public class TestSnapshotManager extends BaseTest {
+  static final String FILE_NAME = "snapshot.1_100";
+  static final int CHUNK_SIZE = 1000;
+
+  static final StateMachine STATE_MACHINE = new BaseStateMachine() {
+    @Override
+    public SnapshotInfo getLatestSnapshot() {
+      return null;
+    }
+  };
+
+  static List<InstallSnapshotRequestProto> newRequests(String requestId, byte[] data, MD5Hash digest) {
+    final TermIndexProto termIndex = TermIndexProto.newBuilder().setTerm(1).setIndex(100).build();
+    final List<InstallSnapshotRequestProto> requests = new ArrayList<>();
+    for(int offset = 0, i = 0; offset < data.length; offset += CHUNK_SIZE, i++) {
+      final int length = Math.min(CHUNK_SIZE, data.length - offset);
+      final boolean done = offset + length == data.length;
+      final FileChunkProto chunk = FileChunkProto.newBuilder()
+          .setFilename(FILE_NAME)
+          .setTotalSize(data.length)
+          .setFileDigest(ByteString.copyFrom(digest.getDigest()))
+          .setChunkIndex(i)
+          .setOffset(offset)
+          .setData(ByteString.copyFrom(data, offset, length))
+          .setDone(done)
+          .build();
+      requests.add(InstallSnapshotRequestProto.newBuilder()
+          .setRequestId(requestId)
+          .setRequestIndex(i)
+          .setTermIndex(termIndex)
+          .addFileChunks(chunk)
+          .setTotalSize(data.length)
+          .setDone(done)
+          .build());
+    }
+    return requests;
+  }
+
+  static byte[] randomBytes(int length) {
+    final byte[] data = new byte[length];
+    ThreadLocalRandom.current().nextBytes(data);
+    return data;
+  }
+
+  private RaftStorage storage;
+  private SnapshotManager manager;
+
+  @Before
+  public void setup() throws IOException {
+    storage = new RaftStorage(getTestDir(), StartupOption.REGULAR);
+    manager = new SnapshotManager(storage, RaftPeerId.valueOf("s0"));
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    if (storage != null) {
+      storage.close();
+      FileUtils.deleteFully(getTestDir());
+    }
+  }
+
+  @Test
+  public void testResumeInstallation() throws Exception {
+    final byte[] data = randomBytes(10 * CHUNK_SIZE + 123);
+    final MD5Hash digest = MD5Hash.digest(data);
+    final List<InstallSnapshotRequestProto> requests = newRequests("r0", data, digest);
+
+    // a new installation must start from the first request
+    Assert.assertFalse(manager.installSnapshot(STATE_MACHINE, requests.get(1)));
+
+    for(int i = 0; i < 6; i++) {
+      Assert.assertTrue(manager.installSnapshot(STATE_MACHINE, requests.get(i)));
+    }
+    // a request skipping some requests is rejected
+    Assert.assertFalse(manager.installSnapshot(STATE_MACHINE, requests.get(8)));
+
+    // resume from an earlier request; the installed requests are skipped
+    for(int i = 3; i < requests.size(); i++) {
+      Assert.assertTrue(manager.installSnapshot(STATE_MACHINE, requests.get(i)));
+    }
+
+    final File installed = new File(storage.getStorageDir().getStateMachineDir(), FILE_NAME);
+    Assert.assertArrayEquals(data, Files.readAllBytes(installed.toPath()));
+    Assert.assertEquals(digest, MD5FileUtil.readStoredMd5ForFile(installed));
+  }
+
+  @Test
+  public void testDigestMismatch() throws Exception {
+    final byte[] data = randomBytes(5 * CHUNK_SIZE);
+    final List<InstallSnapshotRequestProto> corrupted = newRequests("r0", data, MD5Hash.digest(new byte[1]));
+    for(int i = 0; i < corrupted.size() - 1; i++) {
+      Assert.assertTrue(manager.installSnapshot(STATE_MACHINE, corrupted.get(i)));
+    }
+    testFailureCase("digest mismatch",
+        () -> manager.installSnapshot(STATE_MACHINE, corrupted.get(corrupted.size() - 1)),
+        IOException.class);
+    // the failed installation is aborted
+    Assert.assertFalse(manager.installSnapshot(STATE_MACHINE, corrupted.get(corrupted.size() - 1)));
+
+    // a new installation starts over
+    final MD5Hash digest = MD5Hash.digest(data);
+    for(InstallSnapshotRequestProto request : newRequests("r1", data, digest)) {
+      Assert.assertTrue(manager.installSnapshot(STATE_MACHINE, request));
+    }
+    final File installed = new File(storage.getStorageDir().getStateMachineDir(), FILE_NAME);
+    Assert.assertArrayEquals(data, Files.readAllBytes(installed.toPath()));
+  }
+}
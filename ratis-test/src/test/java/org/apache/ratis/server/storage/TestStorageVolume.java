@@ -0,0 +1,224 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.storage;
+
+import org.apache.ratis.BaseTest;
+import org.apache.ratis.MiniRaftCluster;
+import org.apache.ratis.RaftTestUtil;
+import org.apache.ratis.RaftTestUtil.SimpleMessage;
+import org.apache.ratis.client.RaftClient;
+import org.apache.ratis.protocol.RaftGroupId;
+import org.apache.ratis.server.RaftServerConfigKeys;
+import org.apache.ratis.server.impl.RaftServerImpl;
+import org.apache.ratis.server.impl.RaftServerProxy;
+import org.apache.ratis.server.simulation.MiniRaftClusterWithSimulatedRpc;
+import org.apache.ratis.util.FileUtils;
+import org.apache.ratis.util.JavaUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** Test the placement of groups by the load of the volumes and the migration between volumes. */
+public class TestStorageVolume extends BaseTest implements MiniRaftClusterWithSimulatedRpc.FactoryGet {
+  private File testDir;
+
+  @Before
+  public void setup() {
+    testDir = new File(getTestDir(), Long.toHexString(System.nanoTime()));
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    FileUtils.deleteFully(testDir);
+  }
+
+  static String newGroupDirName() {
+    return RaftGroupId.randomId().getUuid().toString();
+  }
+
+  @Test
+  public void testNumGroups() throws Exception {
+    final StorageVolume volume = new StorageVolume(new File(testDir, "volume"));
+    Assert.assertEquals(0, volume.getNumGroups());
+    FileUtils.createDirectories(volume.getGroupDir(newGroupDirName()));
+    FileUtils.createDirectories(volume.getGroupDir(newGroupDirName()));
+    // the other subdirectories are not groups
+    FileUtils.createDirectories(volume.getMigrationDir());
+    FileUtils.createDirectories(volume.getGroupDir(SharedWriteAheadLog.DIR_NAME));
+    Assert.assertEquals(2, volume.getNumGroups());
+  }
+
+  @Test
+  public void testChooseLeastLoaded() throws Exception {
+    final StorageVolume busy = new StorageVolume(new File(testDir, "busy"));
+    final StorageVolume slow = new StorageVolume(new File(testDir, "slow"));
+    final StorageVolume idle = new StorageVolume(new File(testDir, "idle"));
+    final List<StorageVolume> volumes = Arrays.asList(busy, slow, idle);
+
+    // a volume with fewer groups is chosen when there is no load
+    FileUtils.createDirectories(busy.getGroupDir(newGroupDirName()));
+    FileUtils.createDirectories(slow.getGroupDir(newGroupDirName()));
+    Assert.assertSame(idle, StorageVolume.chooseLeastLoaded(volumes, 0).get());
+
+    // a volume with a high write rate or a high sync latency is avoided even if it has fewer groups
+    FileUtils.createDirectories(idle.getGroupDir(newGroupDirName()));
+    FileUtils.createDirectories(idle.getGroupDir(newGroupDirName()));
+    busy.onWrite(1 << 30);
+    slow.onSync(TimeUnit.SECONDS.toNanos(1));
+    idle.onSync(TimeUnit.MILLISECONDS.toNanos(1));
+    // the meter rates are only updated every five seconds
+    JavaUtils.attempt(() -> busy.getWriteBytesRate() > 0, 10, 1000, "rate", LOG);
+    Assert.assertSame(idle, StorageVolume.chooseLeastLoaded(volumes, 0).get());
+
+    // all the volumes are candidates when none has enough free space
+    Assert.assertSame(idle, StorageVolume.chooseLeastLoaded(volumes, Long.MAX_VALUE).get());
+    Assert.assertFalse(StorageVolume.chooseLeastLoaded(Arrays.asList(), 0).isPresent());
+  }
+
+  static void write(File f, String s) throws IOException {
+    FileUtils.createDirectories(f.getParentFile());
+    Files.write(f.toPath(), s.getBytes(StandardCharsets.UTF_8));
+  }
+
+  static String read(File f) throws IOException {
+    return new String(Files.readAllBytes(f.toPath()), StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void testMigrate() throws Exception {
+    final StorageVolume source = new StorageVolume(new File(testDir, "source"));
+    final StorageVolume target = new StorageVolume(new File(testDir, "target"));
+    final File group = source.getGroupDir("group");
+    write(new File(group, "current/log_0-9"), "closed");
+    write(new File(group, "current/log_inprogress_10"), "open");
+    write(new File(group, "current/raft-meta"), "term=1");
+    write(new File(group, "in_use.lock"), "lock");
+
+    final StorageDirectoryMigration migration = new StorageDirectoryMigration(group, target);
+    migration.copy();
+
+    // the changes after the first phase
+    write(new File(group, "current/log_inprogress_10"), "open, appended");
+    Files.move(new File(group, "current/log_inprogress_10").toPath(), new File(group, "current/log_10-20").toPath());
+    write(new File(group, "current/raft-meta"), "term=2");
+    Files.delete(new File(group, "current/log_0-9").toPath());
+    Files.delete(new File(group, "in_use.lock").toPath());
+
+    migration.finish();
+    final File migrated = target.getGroupDir("group");
+    Assert.assertEquals(migrated, migration.getTarget());
+    Assert.assertFalse(group.exists());
+    Assert.assertEquals("open, appended", read(new File(migrated, "current/log_10-20")));
+    Assert.assertEquals("term=2", read(new File(migrated, "current/raft-meta")));
+    Assert.assertFalse(new File(migrated, "current/log_0-9").exists());
+    Assert.assertFalse(new File(migrated, "current/log_inprogress_10").exists());
+    Assert.assertFalse(new File(migrated, "in_use.lock").exists());
+
+    // the group directory already exists in the target
+    testFailureCase("migrate to the same volume",
+        () -> new StorageDirectoryMigration(migrated, target).copy(), IOException.class);
+  }
+
+  @Test
+  public void testAbort() throws Exception {
+    final StorageVolume source = new StorageVolume(new File(testDir, "source"));
+    final StorageVolume target = new StorageVolume(new File(testDir, "target"));
+    final File group = source.getGroupDir("group");
+    write(new File(group, "current/raft-meta"), "term=1");
+
+    // the migration is aborted after the switch
+    final StorageDirectoryMigration migration = new StorageDirectoryMigration(group, target);
+    migration.copy();
+    migration.finish();
+    Assert.assertFalse(group.exists());
+    migration.abort();
+    Assert.assertEquals("term=1", read(new File(group, "current/raft-meta")));
+    Assert.assertFalse(target.getGroupDir("group").exists());
+    Assert.assertFalse(new File(target.getMigrationDir(), "group").exists());
+
+    // the migration is aborted after a failed copy; the existing target is kept
+    write(new File(target.getGroupDir("group"), "current/raft-meta"), "existing");
+    final StorageDirectoryMigration failed = new StorageDirectoryMigration(group, target);
+    testFailureCase("target exists", failed::copy, IOException.class);
+    failed.abort();
+    Assert.assertEquals("term=1", read(new File(group, "current/raft-meta")));
+    Assert.assertEquals("existing", read(new File(target.getGroupDir("group"), "current/raft-meta")));
+  }
+
+  @Test
+  public void testRecover() throws Exception {
+    final StorageVolume source = new StorageVolume(new File(testDir, "source"));
+    final StorageVolume target = new StorageVolume(new File(testDir, "target"));
+    final List<File> volumes = Arrays.asList(source.getDir(), target.getDir());
+
+    // an incomplete copy is deleted
+    write(new File(source.getGroupDir("copied"), "raft-meta"), "source");
+    write(new File(target.getMigrationDir(), "copied/raft-meta"), "incomplete");
+    // a complete copy whose source has been retired is moved to the group directory
+    write(new File(source.getMigrationDir(), "switched/raft-meta"), "retired");
+    write(new File(target.getMigrationDir(), "switched/raft-meta"), "complete");
+
+    StorageDirectoryMigration.recover(volumes);
+    Assert.assertEquals("source", read(new File(source.getGroupDir("copied"), "raft-meta")));
+    Assert.assertFalse(target.getGroupDir("copied").exists());
+    Assert.assertTrue(source.getGroupDir("switched").exists() ^ target.getGroupDir("switched").exists());
+    Assert.assertFalse(source.getMigrationDir().exists());
+    Assert.assertFalse(target.getMigrationDir().exists());
+  }
+
+  @Test
+  public void testMigrateGroup() throws Exception {
+    runWithNewCluster(3, this::runTestMigrateGroup);
+  }
+
+  void runTestMigrateGroup(MiniRaftCluster cluster) throws Exception {
+    try (final RaftClient client = cluster.createClient()) {
+      final RaftServerImpl leader = RaftTestUtil.waitForLeader(cluster);
+      for(int i = 0; i < 10; i++) {
+        Assert.assertTrue(client.send(new SimpleMessage("before" + i)).isSuccess());
+      }
+
+      final RaftServerProxy follower = cluster.getServer(cluster.getFollowers().get(0).getId());
+      final File source = follower.getImpl(cluster.getGroupId()).getState().getStorage().getStorageDir().getRoot();
+      final File volume = source.getParentFile();
+      final File targetVolume = new File(volume.getParentFile(), volume.getName() + "-target");
+      RaftServerConfigKeys.setStorageDirs(follower.getProperties(), Arrays.asList(volume, targetVolume));
+
+      final File migrated = follower.migrateGroupStorageAsync(cluster.getGroupId(), targetVolume).get();
+      Assert.assertEquals(new File(targetVolume, source.getName()).getAbsoluteFile(), migrated);
+      Assert.assertFalse(source.exists());
+      Assert.assertEquals(migrated, follower.getImpl(cluster.getGroupId()).getState().getStorage()
+          .getStorageDir().getRoot().getAbsoluteFile());
+
+      for(int i = 0; i < 10; i++) {
+        Assert.assertTrue(client.send(new SimpleMessage("after" + i)).isSuccess());
+      }
+      JavaUtils.attempt(() -> RaftTestUtil.assertSameLog(leader.getState().getLog(),
+          follower.getImpl(cluster.getGroupId()).getState().getLog()), 10, 500, "sameLog", LOG);
+    }
+  }
+}
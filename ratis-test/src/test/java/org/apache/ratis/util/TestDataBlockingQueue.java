@@ -22,6 +22,7 @@ import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Arrays;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -55,6 +56,19 @@ public class TestDataBlockingQueue {
     runTestBlockingCalls(fast, slow, q);
   }
 
+  @Test(timeout = 1000)
+  public void testPollAll() throws Exception {
+    Assert.assertTrue(q.pollAll(elementLimit, fast).isEmpty());
+
+    for(int i = 1; i <= 5; i++) {
+      Assert.assertTrue(q.offer(i));
+    }
+    Assert.assertEquals(Arrays.asList(1, 2, 3), q.pollAll(3, fast));
+    Assert.assertEquals(Arrays.asList(4, 5), q.pollAll(elementLimit, fast));
+    Assert.assertTrue(q.isEmpty());
+    Assert.assertEquals(0, q.getNumBytes());
+  }
+
   static void assertOfferPull(int offering, int polled, int elementLimit) {
     Assert.assertTrue(offering >= polled);
     Assert.assertTrue(offering - polled <= elementLimit + 1);
@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.ThreadLocalRandom;
+
+public class TestPureJavaCrc32C {
+  @Test
+  public void testUpdateByteBuffer() {
+    final ThreadLocalRandom random = ThreadLocalRandom.current();
+    final byte[] bytes = new byte[1000];
+    random.nextBytes(bytes);
+
+    final ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+    direct.put(bytes);
+    final ByteBuffer littleEndian = direct.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    final ByteBuffer heap = ByteBuffer.wrap(bytes);
+
+    for(int i = 0; i < 100; i++) {
+      final int off = random.nextInt(bytes.length);
+      final int len = random.nextInt(bytes.length - off + 1);
+      final long expected = computeCrc(bytes, off, len);
+      Assert.assertEquals(expected, computeCrc(direct, off, len));
+      Assert.assertEquals(expected, computeCrc(littleEndian, off, len));
+      Assert.assertEquals(expected, computeCrc(heap, off, len));
+    }
+    // the position and the limit are not changed
+    Assert.assertEquals(bytes.length, direct.position());
+    Assert.assertEquals(bytes.length, direct.limit());
+  }
+
+  static long computeCrc(byte[] b, int off, int len) {
+    final PureJavaCrc32C crc = new PureJavaCrc32C();
+    crc.update(b, off, len);
+    return crc.getValue();
+  }
+
+  static long computeCrc(ByteBuffer b, int off, int len) {
+    final PureJavaCrc32C crc = new PureJavaCrc32C();
+    crc.update(b, off, len);
+    return crc.getValue();
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestSerialExecutor {
+  @Test(timeout = 10000)
+  public void testOrderAndMutualExclusion() throws Exception {
+    final int numExecutors = 20;
+    final int numTasks = 1000;
+    final ExecutorService pool = Executors.newFixedThreadPool(4);
+    try {
+      final List<List<Integer>> results = new ArrayList<>();
+      final List<SerialExecutor> executors = new ArrayList<>();
+      final AtomicInteger[] running = new AtomicInteger[numExecutors];
+      for(int i = 0; i < numExecutors; i++) {
+        results.add(new ArrayList<>());
+        executors.add(new SerialExecutor(pool));
+        running[i] = new AtomicInteger();
+      }
+
+      final CountDownLatch done = new CountDownLatch(numExecutors * numTasks);
+      final AtomicInteger overlaps = new AtomicInteger();
+      for(int t = 0; t < numTasks; t++) {
+        for(int i = 0; i < numExecutors; i++) {
+          final int executor = i;
+          final int task = t;
+          executors.get(i).execute(() -> {
+            if (running[executor].incrementAndGet() > 1) {
+              overlaps.incrementAndGet();
+            }
+            results.get(executor).add(task);
+            running[executor].decrementAndGet();
+            done.countDown();
+          });
+        }
+      }
+      Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+
+      Assert.assertEquals(0, overlaps.get());
+      for(List<Integer> r : results) {
+        Assert.assertEquals(numTasks, r.size());
+        for(int t = 0; t < numTasks; t++) {
+          Assert.assertEquals(t, r.get(t).intValue());
+        }
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void testFailedTask() throws Exception {
+    final ExecutorService pool = Executors.newSingleThreadExecutor();
+    try {
+      final SerialExecutor executor = new SerialExecutor(pool);
+      final CountDownLatch done = new CountDownLatch(1);
+      executor.execute(() -> {
+        throw new IllegalStateException("test");
+      });
+      // the tasks after a failed task still run
+      executor.execute(done::countDown);
+      Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+      Assert.assertEquals(0, executor.getQueueSize());
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,162 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.util;
+
+import org.apache.ratis.BaseTest;
+import org.apache.ratis.client.impl.ClientProtoUtils;
+import org.apache.ratis.proto.RaftProtos.RaftClientReplyProto;
+import org.apache.ratis.proto.RaftProtos.ReplicationLevel;
+import org.apache.ratis.proto.RaftProtos.ThrowableProto;
+import org.apache.ratis.protocol.ChecksumException;
+import org.apache.ratis.protocol.ClientId;
+import org.apache.ratis.protocol.GroupMismatchException;
+import org.apache.ratis.protocol.NotLeaderException;
+import org.apache.ratis.protocol.NotReplicatedException;
+import org.apache.ratis.protocol.RaftClientReply;
+import org.apache.ratis.protocol.RaftGroupId;
+import org.apache.ratis.protocol.RaftPeer;
+import org.apache.ratis.protocol.RaftPeerId;
+import org.apache.ratis.protocol.StateMachineException;
+import org.apache.ratis.protocol.TimeoutIOException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+
+public class TestThrowableProto extends BaseTest {
+  @Test
+  public void testWithoutStackTrace() {
+    final IOException cause = new IOException("cause");
+    final GroupMismatchException e = new GroupMismatchException("mismatch");
+    e.initCause(cause);
+
+    final ThrowableProto proto = ProtoUtils.toThrowableProto(e, false);
+    Assert.assertEquals(0, proto.getStackTraceCount());
+    Assert.assertEquals(0, proto.getCause().getStackTraceCount());
+
+    final IOException decoded = ProtoUtils.toIOException(proto);
+    Assert.assertEquals(GroupMismatchException.class, decoded.getClass());
+    Assert.assertEquals(e.getMessage(), decoded.getMessage());
+    Assert.assertEquals(IOException.class, decoded.getCause().getClass());
+    Assert.assertEquals(cause.getMessage(), decoded.getCause().getMessage());
+  }
+
+  @Test
+  public void testWithStackTrace() {
+    final IOException e = new IOException("with stack trace", new IllegalStateException());
+    final Throwable decoded = ProtoUtils.toThrowable(ProtoUtils.toThrowableProto(e, true));
+    Assert.assertArrayEquals(e.getStackTrace(), decoded.getStackTrace());
+    Assert.assertArrayEquals(e.getCause().getStackTrace(), decoded.getCause().getStackTrace());
+    Assert.assertNull(decoded.getCause().getMessage());
+  }
+
+  static class NotInstantiableException extends IOException {
+    NotInstantiableException(int value) {
+      super("value=" + value);
+    }
+  }
+
+  @Test
+  public void testNotInstantiable() {
+    final NotInstantiableException e = new NotInstantiableException(1);
+    final IOException decoded = ProtoUtils.toIOException(ProtoUtils.toThrowableProto(e, false));
+    Assert.assertEquals(IOException.class, decoded.getClass());
+    Assert.assertTrue(decoded.getMessage().startsWith(NotInstantiableException.class.getName()));
+    Assert.assertTrue(decoded.getMessage().contains(e.getMessage()));
+  }
+
+  @Test
+  public void testNotLeaderException() {
+    final RaftPeer leader = new RaftPeer(RaftPeerId.valueOf("s1"), "localhost:1");
+    final RaftPeer[] peers = {leader, new RaftPeer(RaftPeerId.valueOf("s2"), "localhost:2")};
+    final NotLeaderException e = new NotLeaderException(RaftPeerId.valueOf("s0"), leader, peers);
+    final IOException decoded = ProtoUtils.toIOException(ProtoUtils.toThrowableProto(e, false));
+    Assert.assertEquals(NotLeaderException.class, decoded.getClass());
+    final NotLeaderException nle = (NotLeaderException) decoded;
+    Assert.assertEquals(e.getMessage(), nle.getMessage());
+    Assert.assertEquals(e.getServerId(), nle.getServerId());
+    Assert.assertEquals(leader, nle.getSuggestedLeader());
+    Assert.assertArrayEquals(peers, nle.getPeers());
+
+    // without a suggested leader
+    final NotLeaderException noLeader = new NotLeaderException(RaftPeerId.valueOf("s0"), null, peers);
+    final NotLeaderException decodedNoLeader = (NotLeaderException) ProtoUtils.toIOException(
+        ProtoUtils.toThrowableProto(noLeader, false));
+    Assert.assertNull(decodedNoLeader.getSuggestedLeader());
+    Assert.assertEquals(noLeader.getMessage(), decodedNoLeader.getMessage());
+  }
+
+  @Test
+  public void testNotReplicatedException() {
+    final NotReplicatedException e = new NotReplicatedException(5, ReplicationLevel.ALL, 10);
+    final IOException decoded = ProtoUtils.toIOException(ProtoUtils.toThrowableProto(e, false));
+    Assert.assertEquals(NotReplicatedException.class, decoded.getClass());
+    final NotReplicatedException nre = (NotReplicatedException) decoded;
+    Assert.assertEquals(e.getMessage(), nre.getMessage());
+    Assert.assertEquals(5, nre.getCallId());
+    Assert.assertEquals(ReplicationLevel.ALL, nre.getRequiredReplication());
+    Assert.assertEquals(10, nre.getLogIndex());
+  }
+
+  @Test
+  public void testExceptionsWithoutMessageConstructor() {
+    final TimeoutIOException timeout = new TimeoutIOException("timeout", new IOException("cause"));
+    final IOException decodedTimeout = ProtoUtils.toIOException(ProtoUtils.toThrowableProto(timeout, false));
+    Assert.assertEquals(TimeoutIOException.class, decodedTimeout.getClass());
+    Assert.assertEquals(timeout.getMessage(), decodedTimeout.getMessage());
+    Assert.assertEquals("cause", decodedTimeout.getCause().getMessage());
+
+    final ChecksumException checksum = new ChecksumException("corrupt", 123);
+    final IOException decodedChecksum = ProtoUtils.toIOException(ProtoUtils.toThrowableProto(checksum, false));
+    Assert.assertEquals(ChecksumException.class, decodedChecksum.getClass());
+    Assert.assertEquals(checksum.getMessage(), decodedChecksum.getMessage());
+    Assert.assertEquals(123, ((ChecksumException) decodedChecksum).getPos());
+  }
+
+  @Test
+  public void testCyclicCause() {
+    final IOException a = new IOException("a");
+    final IOException b = new IOException("b", a);
+    a.initCause(b);
+
+    final ThrowableProto proto = ProtoUtils.toThrowableProto(a, false);
+    Assert.assertEquals("b", proto.getCause().getErrorMessage());
+    Assert.assertFalse(proto.getCause().hasCause());
+  }
+
+  @Test
+  public void testStateMachineExceptionReply() {
+    final RaftPeerId serverId = RaftPeerId.valueOf("s0");
+    final StateMachineException sme = new StateMachineException(serverId, new IOException("failed"));
+    final RaftClientReply reply = new RaftClientReply(ClientId.randomId(), serverId, RaftGroupId.randomId(),
+        1, false, null, sme, 0, Collections.emptyList());
+
+    final RaftClientReplyProto withoutStackTrace = ClientProtoUtils.toRaftClientReplyProto(reply);
+    Assert.assertEquals(0, withoutStackTrace.getStateMachineException().getStackTraceCount());
+    final StateMachineException decoded = ClientProtoUtils.toRaftClientReply(withoutStackTrace)
+        .getStateMachineException();
+    Assert.assertEquals(IOException.class, decoded.getCause().getClass());
+    Assert.assertEquals("failed", decoded.getCause().getMessage());
+
+    final RaftClientReplyProto withStackTrace = ClientProtoUtils.toRaftClientReplyProto(reply, true);
+    Assert.assertTrue(withStackTrace.getSerializedSize() > withoutStackTrace.getSerializedSize());
+    Assert.assertArrayEquals(sme.getCause().getStackTrace(),
+        ClientProtoUtils.toRaftClientReply(withStackTrace).getStateMachineException().getStackTrace());
+  }
+}